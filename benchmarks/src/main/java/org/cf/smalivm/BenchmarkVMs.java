@@ -0,0 +1,24 @@
+package org.cf.smalivm;
+
+import java.io.IOException;
+
+/**
+ * Virtual machines for benchmarks. Paths are relative to the root project, which is the working directory of the jmh
+ * task.
+ */
+public class BenchmarkVMs {
+
+    public static final String DEMOAPP_SMALI_PATH = "demoapp/resources/";
+    public static final String BENCHMARK_SMALI_PATH = "benchmarks/resources/smali/";
+
+    private static final VirtualMachineFactory vmFactory = new VirtualMachineFactory();
+
+    public static VirtualMachine spawnDemoVM() throws IOException {
+        return vmFactory.build(DEMOAPP_SMALI_PATH);
+    }
+
+    public static VirtualMachine spawnBenchmarkVM() throws IOException {
+        return vmFactory.build(BENCHMARK_SMALI_PATH);
+    }
+
+}
@@ -0,0 +1,44 @@
+package org.cf.smalivm;
+
+import org.cf.smalivm.type.ClassManager;
+import org.cf.smalivm.type.VirtualGeneric;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/**
+ * Looking up types which are already parsed, which ops do constantly for type checks, field and method references.
+ */
+@State(Scope.Thread)
+public class ClassManagerBenchmark {
+
+    private ClassManager classManager;
+
+    @Setup
+    public void setUp() throws IOException {
+        classManager = BenchmarkVMs.spawnDemoVM().getClassManager();
+        // Parse everything up front
+        getLocalType();
+        getFrameworkType();
+        getArrayType();
+    }
+
+    @Benchmark
+    public VirtualGeneric getLocalType() {
+        return classManager.getVirtualType("Lorg/cf/demosmali/Base64;");
+    }
+
+    @Benchmark
+    public VirtualGeneric getFrameworkType() {
+        return classManager.getVirtualType("Ljava/lang/String;");
+    }
+
+    @Benchmark
+    public VirtualGeneric getArrayType() {
+        return classManager.getVirtualType("[B");
+    }
+
+}
@@ -0,0 +1,34 @@
+package org.cf.smalivm;
+
+import org.cf.smalivm.context.ExecutionGraph;
+import org.cf.smalivm.type.VirtualMethod;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/**
+ * Spawning an execution graph from an already built template, which happens for every method call.
+ */
+@State(Scope.Thread)
+public class ExecutionGraphBenchmark {
+
+    private VirtualMachine vm;
+    private VirtualMethod method;
+
+    @Setup
+    public void setUp() throws IOException {
+        vm = BenchmarkVMs.spawnDemoVM();
+        method = vm.getClassManager().getMethod("Lorg/cf/demosmali/Base64;->decode([B)[B");
+        // Build the template
+        vm.spawnInstructionGraph(method);
+    }
+
+    @Benchmark
+    public ExecutionGraph spawnFromTemplate() {
+        return vm.spawnInstructionGraph(method);
+    }
+
+}
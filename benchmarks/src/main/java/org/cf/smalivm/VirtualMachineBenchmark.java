@@ -0,0 +1,46 @@
+package org.cf.smalivm;
+
+import org.cf.smalivm.context.ExecutionContext;
+import org.cf.smalivm.context.ExecutionGraph;
+import org.cf.smalivm.context.MethodState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Executing whole methods from the demo app.
+ */
+@State(Scope.Thread)
+public class VirtualMachineBenchmark {
+
+    private static final String DECODE_SIGNATURE = "Lorg/cf/demosmali/Base64;->decode([B)[B";
+    private static final String HELLO_WORLD_SIGNATURE = "Lorg/cf/demosmali/Main;->helloWorld()V";
+    private static final byte[] ENCODED = "c21hbGl2bSBiZW5jaG1hcmsgaW5wdXQ=".getBytes(StandardCharsets.US_ASCII);
+
+    private VirtualMachine vm;
+
+    @Setup
+    public void setUp() throws IOException {
+        vm = BenchmarkVMs.spawnDemoVM();
+    }
+
+    @Benchmark
+    public ExecutionGraph base64Decode() throws VirtualMachineException {
+        ExecutionContext context = vm.spawnRootContext(DECODE_SIGNATURE);
+        MethodState mState = context.getMethodState();
+        mState.assignParameter(mState.getParameterStart(), ENCODED.clone(), "[B");
+
+        return vm.execute(DECODE_SIGNATURE, context);
+    }
+
+    @Benchmark
+    public ExecutionGraph helloWorld() throws VirtualMachineException {
+        // Decodes a constant array with Base64.decode, then builds a string and prints it
+        return vm.execute(HELLO_WORLD_SIGNATURE);
+    }
+
+}
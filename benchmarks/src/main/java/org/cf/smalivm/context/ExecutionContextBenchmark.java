@@ -0,0 +1,36 @@
+package org.cf.smalivm.context;
+
+import org.cf.smalivm.BenchmarkVMs;
+import org.cf.smalivm.VirtualMachine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/**
+ * Spawning a child context, which happens for every executed node.
+ */
+@State(Scope.Thread)
+public class ExecutionContextBenchmark {
+
+    private ExecutionContext rootContext;
+
+    @Setup
+    public void setUp() throws IOException {
+        VirtualMachine vm = BenchmarkVMs.spawnDemoVM();
+        rootContext = vm.spawnRootContext("Lorg/cf/demosmali/Base64;->decode([B)[B");
+    }
+
+    @Benchmark
+    public ExecutionContext spawnChild() {
+        return rootContext.spawnChild();
+    }
+
+    @Benchmark
+    public MethodState spawnChildAndReadMethodState() {
+        return rootContext.spawnChild().getMethodState();
+    }
+
+}
@@ -0,0 +1,82 @@
+package org.cf.smalivm.context;
+
+import com.rits.cloning.Cloner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Reads and writes from a new heap at the end of a parent chain, like a node's first access of a register set many
+ * instructions earlier.
+ */
+@State(Scope.Thread)
+public class HeapBenchmark {
+
+    private static final int HEAP_ID = MethodState.METHOD_HEAP;
+    private static final int REGISTER_COUNT = 16;
+
+    @Param({ "1", "64", "1024" })
+    public int depth;
+
+    private Cloner cloner;
+    private Heap leaf;
+    private int register;
+
+    @Setup
+    public void setUp() {
+        cloner = new Cloner();
+        Heap root = new Heap(cloner);
+        for (int i = 0; i < REGISTER_COUNT; i++) {
+            root.set(HEAP_ID, i, i, "I");
+        }
+
+        // Each heap in the chain sets one register, like executed instructions do
+        leaf = root;
+        for (int i = 1; i < depth; i++) {
+            Heap child = new Heap(cloner);
+            child.setParent(leaf);
+            child.set(HEAP_ID, i % REGISTER_COUNT, i, "I");
+            leaf = child;
+        }
+    }
+
+    @Benchmark
+    public HeapItem get() {
+        return spawnChild().get(HEAP_ID, nextRegister());
+    }
+
+    @Benchmark
+    public Heap set() {
+        Heap heap = spawnChild();
+        heap.set(HEAP_ID, nextRegister(), 42, "I");
+
+        return heap;
+    }
+
+    @Benchmark
+    public HeapItem setThenGet() {
+        Heap heap = spawnChild();
+        int register = nextRegister();
+        heap.set(HEAP_ID, register, 42, "I");
+        HeapItem item = heap.get(HEAP_ID, register);
+
+        return item;
+    }
+
+    private Heap spawnChild() {
+        Heap heap = new Heap(cloner);
+        heap.setParent(leaf);
+
+        return heap;
+    }
+
+    private int nextRegister() {
+        register = (register + 1) % REGISTER_COUNT;
+
+        return register;
+    }
+
+}
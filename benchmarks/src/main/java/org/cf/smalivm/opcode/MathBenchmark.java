@@ -0,0 +1,41 @@
+package org.cf.smalivm.opcode;
+
+import org.cf.smalivm.BenchmarkVMs;
+import org.cf.smalivm.VirtualMachine;
+import org.cf.smalivm.VirtualMachineException;
+import org.cf.smalivm.context.ExecutionContext;
+import org.cf.smalivm.context.ExecutionGraph;
+import org.cf.smalivm.context.MethodState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/**
+ * Executing an arithmetic heavy decryption loop with a known key, where most of the time goes to math, conversion, and
+ * compare ops rather than invocations or heap lookups.
+ */
+@State(Scope.Thread)
+public class MathBenchmark {
+
+    private static final String DECRYPT_SIGNATURE = "Lop_benchmark;->arithmeticDecrypt(I)I";
+
+    private VirtualMachine vm;
+
+    @Setup
+    public void setUp() throws IOException {
+        vm = BenchmarkVMs.spawnBenchmarkVM();
+    }
+
+    @Benchmark
+    public ExecutionGraph arithmeticDecrypt() throws VirtualMachineException {
+        ExecutionContext context = vm.spawnRootContext(DECRYPT_SIGNATURE);
+        MethodState mState = context.getMethodState();
+        mState.assignParameter(mState.getParameterStart(), 0x1234, "I");
+
+        return vm.execute(DECRYPT_SIGNATURE, context);
+    }
+
+}
@@ -0,0 +1,84 @@
+package org.cf.smalivm.opcode;
+
+import org.cf.smalivm.BenchmarkVMs;
+import org.cf.smalivm.VirtualMachine;
+import org.cf.smalivm.context.ExecutionContext;
+import org.cf.smalivm.context.ExecutionGraph;
+import org.cf.smalivm.context.ExecutionNode;
+import org.cf.smalivm.context.MethodState;
+import org.cf.smalivm.type.VirtualMethod;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/**
+ * Executing a single node for a few common ops. Each execution includes spawning its context, like every executed node,
+ * so compare against {@link org.cf.smalivm.context.ExecutionContextBenchmark#spawnChild()}.
+ */
+@State(Scope.Thread)
+public class OpBenchmark {
+
+    private static final String CLASS_NAME = "Lop_benchmark;";
+
+    private NodeFixture binaryMath;
+    private NodeFixture branch;
+    private NodeFixture invoke;
+
+    @Setup
+    public void setUp() throws IOException {
+        VirtualMachine vm = BenchmarkVMs.spawnBenchmarkVM();
+        binaryMath = new NodeFixture(vm, "binaryMath(II)I");
+        binaryMath.assignParameter(0, 3);
+        binaryMath.assignParameter(1, 4);
+        branch = new NodeFixture(vm, "branch(I)I");
+        branch.assignParameter(0, 1);
+        // Unknown argument, so the call is executed rather than summarized
+        invoke = new NodeFixture(vm, "invoke(I)I");
+    }
+
+    @Benchmark
+    public ExecutionNode binaryMathOp() {
+        return binaryMath.execute();
+    }
+
+    @Benchmark
+    public ExecutionNode ifOp() {
+        return branch.execute();
+    }
+
+    @Benchmark
+    public ExecutionNode invokeOp() {
+        return invoke.execute();
+    }
+
+    private static class NodeFixture {
+
+        private final ExecutionNode templateNode;
+        private final ExecutionContext rootContext;
+
+        NodeFixture(VirtualMachine vm, String methodDescriptor) {
+            VirtualMethod method = vm.getClassManager().getMethod(CLASS_NAME, methodDescriptor);
+            ExecutionGraph graph = vm.spawnInstructionGraph(method);
+            templateNode = graph.getTemplateNode(0);
+            rootContext = vm.spawnRootContext(method);
+        }
+
+        void assignParameter(int parameter, int value) {
+            MethodState mState = rootContext.getMethodState();
+            mState.assignParameter(mState.getParameterStart() + parameter, value, "I");
+        }
+
+        ExecutionNode execute() {
+            ExecutionNode node = new ExecutionNode(templateNode);
+            node.setContext(rootContext.spawnChild());
+            node.execute();
+
+            return node;
+        }
+
+    }
+
+}
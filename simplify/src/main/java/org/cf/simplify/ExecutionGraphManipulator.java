@@ -6,15 +6,12 @@ import gnu.trove.list.TIntList;
 import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.map.TIntObjectMap;
 
-import org.cf.smalivm.SideEffect;
 import org.cf.smalivm.VirtualMachine;
 import org.cf.smalivm.context.ExecutionContext;
 import org.cf.smalivm.context.ExecutionGraph;
 import org.cf.smalivm.context.ExecutionNode;
 import org.cf.smalivm.context.MethodState;
 import org.cf.smalivm.opcode.FillArrayDataPayloadOp;
-import org.cf.smalivm.opcode.InvokeOp;
-import org.cf.smalivm.opcode.NewInstanceOp;
 import org.cf.smalivm.opcode.NopOp;
 import org.cf.smalivm.opcode.Op;
 import org.cf.smalivm.opcode.OpCreator;
@@ -39,6 +36,7 @@ import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -65,6 +63,8 @@ public class ExecutionGraphManipulator extends ExecutionGraph {
     private final List<MethodLocation> reexecuteLocations;
     private final OpCreator opCreator;
     private boolean recreateOrExecuteAgain;
+    private boolean batching;
+    private boolean hasPendingEdits;
 
     public ExecutionGraphManipulator(ExecutionGraph graph, VirtualMethod method, VirtualMachine vm,
                                      DexBuilder dexBuilder) {
@@ -96,7 +96,7 @@ public class ExecutionGraphManipulator extends ExecutionGraph {
             log.error("Error invoking MethodLocation.mergeInto(). Wrong dexlib version?", e);
         }
 
-        rebuildGraph();
+        rebuildGraphUnlessBatching();
     }
 
     public void addInstruction(int address, BuilderInstruction newInstruction) {
@@ -120,7 +120,13 @@ public class ExecutionGraphManipulator extends ExecutionGraph {
 
         Set<Integer> registersRead = new HashSet<>();
         Set<Integer> registersAssigned = new HashSet<>();
+        // Nodes where merged paths join are reachable from several parents
+        Set<ExecutionNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
         while ((node = stack.poll()) != null) {
+            if (!visited.add(node)) {
+                continue;
+            }
+
             MethodState mState = node.getContext().getMethodState();
             for (Integer register : registers) {
                 if (registersRead.contains(register) || registersAssigned.contains(register)) {
@@ -193,7 +199,7 @@ public class ExecutionGraphManipulator extends ExecutionGraph {
         int index = location.getIndex();
         implementation.removeInstruction(index);
         removeEmptyTryCatchBlocks();
-        rebuildGraph();
+        rebuildGraphUnlessBatching();
     }
 
     public void removeInstruction(int address) {
@@ -205,7 +211,15 @@ public class ExecutionGraphManipulator extends ExecutionGraph {
         Collections.reverse(addresses);
 
         log.debug("Removing instructions: {}", addresses);
-        addresses.forEach(this::removeInstruction);
+        boolean wasBatching = batching;
+        startBatch();
+        try {
+            addresses.forEach(this::removeInstruction);
+        } finally {
+            if (!wasBatching) {
+                finishBatch();
+            }
+        }
     }
 
     public void replaceInstruction(int insertAddress, BuilderInstruction instruction) {
@@ -215,17 +229,37 @@ public class ExecutionGraphManipulator extends ExecutionGraph {
     }
 
     public void replaceInstruction(int insertAddress, List<BuilderInstruction> instructions) {
+        // Insert everything before the replaced location so this works while addresses are stale during a batch
+        MethodLocation location = getLocation(insertAddress);
         recreateOrExecuteAgain = false;
-        int address = insertAddress;
         for (BuilderInstruction instruction : instructions) {
-            addInstruction(address, instruction);
-            address += instruction.getCodeUnits();
+            addInstruction(location, instruction);
         }
-        MethodLocation location = getLocation(address);
         recreateOrExecuteAgain = true;
         removeInstruction(location);
     }
 
+    /**
+     * Start collecting edits instead of updating the graph after each one. The graph is updated once, when the batch
+     * is finished, so making many edits costs about the same as making one.
+     *
+     * Until the batch is finished, addresses and node piles only describe the graph before the batch started. Edits
+     * must be made in descending address order so each address still refers to the instruction it did originally.
+     */
+    public void startBatch() {
+        batching = true;
+    }
+
+    /**
+     * Update the graph with all edits made since {@link #startBatch()}.
+     */
+    public void finishBatch() {
+        batching = false;
+        if (hasPendingEdits) {
+            rebuildGraph();
+        }
+    }
+
     public String toSmali() {
         int[] addresses = getAddresses();
         Arrays.sort(addresses);
@@ -248,18 +282,13 @@ public class ExecutionGraphManipulator extends ExecutionGraph {
         return getNodePile(address).get(0).getContext().getMethodState().getRegisterCount();
     }
 
-    private void addToNodePile(MethodLocation newLocation) {
+    private void addToNodePile(MethodLocation newLocation,
+                               Map<MethodLocation, List<ExecutionNode>> locationToNodePile) {
         // Returns node which need to be re-executed after graph / mappings are rebuilt
         // E.g. branch offset instructions can't be created without accurate mappings
         int oldIndex = newLocation.getIndex() + 1;
-        MethodLocation shiftedLocation = null;
-        for (MethodLocation location : locationToNodePile.keySet()) {
-            if (location.getIndex() == oldIndex) {
-                shiftedLocation = location;
-                break;
-            }
-        }
-        assert shiftedLocation != null;
+        MethodLocation shiftedLocation = implementation.getInstructions().get(oldIndex).getLocation();
+        assert locationToNodePile.containsKey(shiftedLocation);
 
         List<ExecutionNode> shiftedNodePile = locationToNodePile.get(shiftedLocation);
         List<ExecutionNode> newNodePile = new ArrayList<>();
@@ -323,30 +352,7 @@ public class ExecutionGraphManipulator extends ExecutionGraph {
 
         for (MethodLocation location : recreateLocations) {
             Op op = opCreator.create(location);
-            List<ExecutionNode> pile = locationToNodePile.get(location);
-
-            // TODO: move side effects out of ops and into nodes or graph
-            // This is a big ugly.
-            if (op instanceof NewInstanceOp || op instanceof InvokeOp) {
-                ExecutionNode node = pile.get(0);
-
-                try {
-                    SideEffect.Level originalLevel = node.getOp().getSideEffectLevel();
-                    Class<? extends Op> klazz;
-                    if (op instanceof NewInstanceOp) {
-                        klazz = NewInstanceOp.class;
-                    } else { // InvokeOp
-                        klazz = InvokeOp.class;
-                    }
-                    Field f = klazz.getDeclaredField("sideEffectLevel");
-                    f.setAccessible(true);
-                    f.set(op, originalLevel);
-                } catch (Exception e) {
-                    // Ugly.
-                    e.printStackTrace();
-                }
-            }
-
+            List<ExecutionNode> pile = getNodePileByLocation(location);
             for (ExecutionNode aPile : pile) {
                 aPile.setOp(op);
             }
@@ -357,7 +363,7 @@ public class ExecutionGraphManipulator extends ExecutionGraph {
         Collections.sort(reexecuteLocations, (e1, e2) -> Integer.compare(e1.getCodeAddress(), e2.getCodeAddress()));
         Set<MethodLocation> reexecute = new LinkedHashSet<>(reexecuteLocations);
         for (MethodLocation location : reexecute) {
-            List<ExecutionNode> pile = locationToNodePile.get(location);
+            List<ExecutionNode> pile = getNodePileByLocation(location);
             for (int i = 0; i < pile.size(); i++) {
                 ExecutionNode node = pile.get(i);
                 if (i == TEMPLATE_NODE_INDEX) {
@@ -375,25 +381,38 @@ public class ExecutionGraphManipulator extends ExecutionGraph {
     private void rebuildGraph() {
         // This seems like overkill until you realize implementation may change from under us.
         // Multiple new instructions may be added from adding or removing a single instruction.
+        Map<MethodLocation, List<ExecutionNode>> locationToNodePile = getLocationToNodePile();
         Set<MethodLocation> staleLocations = locationToNodePile.keySet();
         Set<MethodLocation> implementationLocations =
                 implementation.getInstructions().stream().map(BuilderInstruction::getLocation)
                         .collect(Collectors.toSet());
 
-        Set<MethodLocation> addedLocations = new HashSet<>(implementationLocations);
+        // Add from last to first so the location following each one, which it's spliced in front of, already has a pile
+        List<MethodLocation> addedLocations = new ArrayList<>(implementationLocations);
         addedLocations.removeAll(staleLocations);
+        addedLocations.sort((l1, l2) -> Integer.compare(l2.getIndex(), l1.getIndex()));
         for (MethodLocation location : addedLocations) {
-            addToNodePile(location);
+            addToNodePile(location, locationToNodePile);
         }
         Set<MethodLocation> removedLocations = new HashSet<>(staleLocations);
         removedLocations.removeAll(implementationLocations);
-        removedLocations.forEach(this::removeFromNodePile);
+        removedLocations.forEach(location -> removeFromNodePile(location, locationToNodePile));
 
         TIntObjectMap<MethodLocation> newAddressToLocation = buildAddressToLocation(implementation);
         addressToLocation.clear();
         addressToLocation.putAll(newAddressToLocation);
+        setNodePiles(locationToNodePile);
 
         recreateAndExecute();
+        hasPendingEdits = false;
+    }
+
+    private void rebuildGraphUnlessBatching() {
+        if (batching) {
+            hasPendingEdits = true;
+        } else {
+            rebuildGraph();
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -460,7 +479,8 @@ public class ExecutionGraphManipulator extends ExecutionGraph {
         return null;
     }
 
-    private void removeFromNodePile(MethodLocation location) {
+    private void removeFromNodePile(MethodLocation location,
+                                    Map<MethodLocation, List<ExecutionNode>> locationToNodePile) {
         List<ExecutionNode> nodePile = locationToNodePile.remove(location);
         Map<MethodLocation, ExecutionNode> locationToChildNodeToRemove = new HashMap<>();
         for (ExecutionNode removedNode : nodePile) {
@@ -490,7 +510,10 @@ public class ExecutionGraphManipulator extends ExecutionGraph {
 
         for (Entry<MethodLocation, ExecutionNode> entry : locationToChildNodeToRemove.entrySet()) {
             List<ExecutionNode> pile = locationToNodePile.get(entry.getKey());
-            pile.remove(entry.getValue());
+            if (pile != null) {
+                // May have been removed in the same batch
+                pile.remove(entry.getValue());
+            }
         }
     }
 
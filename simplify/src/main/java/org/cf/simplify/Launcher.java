@@ -3,6 +3,7 @@ package org.cf.simplify;
 import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
+import org.cf.smalivm.Profiler;
 import org.cf.smalivm.UnhandledVirtualException;
 import org.cf.smalivm.VirtualMachine;
 import org.cf.smalivm.VirtualMachineException;
@@ -17,7 +18,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.net.URI;
 import java.nio.file.AccessMode;
 import java.nio.file.FileSystem;
@@ -25,11 +28,20 @@ import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Pattern;
 
 import ch.qos.logback.classic.Level;
@@ -41,10 +53,21 @@ public class Launcher {
     private static final Pattern SUPPORT_LIBRARY_PATTERN = Pattern.compile("Landroid/support/(annotation|v\\d{1,2})/");
 
     private final VirtualMachineFactory vmFactory;
+    private final List<VirtualMachine> vms;
+
+    /*
+     * Method implementations are shared by every worker. Execution only reads them, but optimization rewrites them
+     * and interns new references into the shared DexBuilder. Any number of methods may execute at once, but an
+     * optimizer must have the implementations to itself.
+     */
+    private final ReadWriteLock implementationLock;
     private SimplifyOptions opts;
+    private Profiler profiler;
 
     public Launcher(VirtualMachineFactory vmFactory) {
         this.vmFactory = vmFactory;
+        vms = new CopyOnWriteArrayList<>();
+        implementationLock = new ReentrantReadWriteLock(true);
     }
 
     private static void filterMethods(Collection<VirtualMethod> methods, Pattern positive, Pattern negative) {
@@ -84,6 +107,17 @@ public class Launcher {
         return opts;
     }
 
+    private static void writeProfile(Profiler profiler, File reportFile) throws IOException {
+        File stacksFile = new File(reportFile.getPath() + ".collapsed");
+        System.out.println("Writing profile to " + reportFile + " and " + stacksFile);
+        try (Writer writer = new FileWriter(reportFile)) {
+            profiler.writeReport(writer);
+        }
+        try (Writer writer = new FileWriter(stacksFile)) {
+            profiler.writeCollapsedStacks(writer);
+        }
+    }
+
     private static void setLogLevel(SimplifyOptions bean) {
         if (bean.isQuiet()) {
             ch.qos.logback.classic.Logger rootLogger =
@@ -142,15 +176,32 @@ public class Launcher {
             log.info("Options:\n{}", opts.toString());
         }
 
+        if (opts.getProfileFile() != null) {
+            profiler = new Profiler();
+        }
+
         long startTime = System.currentTimeMillis();
         VirtualMachine vm = vmFactory.build(opts.getInFile(), opts.getOutputAPILevel(), opts.getMaxAddressVisits(),
                 opts.getMaxCallDepth(), opts.getMaxMethodVisits(), opts.getMaxExecutionTime());
+        vm.setMergeJoinStates(opts.isMergeJoinStates());
+        vm.setLoopWideningThreshold(opts.getLoopWideningThreshold());
+        vm.setExecuteBasicBlocks(opts.isExecuteBasicBlocks());
+        vm.setExecuteConcretely(opts.isExecuteConcretely());
+        vm.setCompileMethods(opts.isCompileMethods());
+        vm.setProfiler(profiler);
+        vms.add(vm);
         ClassManager classManager = vm.getClassManager();
         Set<String> classNames = classManager.getNonFrameworkClassNames();
+        List<Integer> methodCounts;
+        if (opts.getThreadCount() > 1) {
+            methodCounts = executeClassesInParallel(vm, classNames);
+        } else {
+            methodCounts = executeClasses(vm, classNames);
+        }
+
         int classCount = 0;
         int methodCount = 0;
-        for (String className : classNames) {
-            int newCount = executeClass(vm, className);
+        for (int newCount : methodCounts) {
             classCount += newCount > 0 ? 1 : 0;
             methodCount += newCount;
         }
@@ -159,6 +210,16 @@ public class Launcher {
         System.out.println(
                 "Simplified " + methodCount + " methods from " + classCount + " classes in " + totalTime + " ms.");
         System.out.println(Optimizer.getTotalOptimizationCounts());
+        long summaryHits = 0;
+        long summaryMisses = 0;
+        for (VirtualMachine currentVM : vms) {
+            summaryHits += currentVM.getMethodSummaryCache().getHitCount();
+            summaryMisses += currentVM.getMethodSummaryCache().getMissCount();
+        }
+        System.out.println("Method summary cache: " + summaryHits + " hits, " + summaryMisses + " misses");
+        if (profiler != null) {
+            writeProfile(profiler, opts.getProfileFile());
+        }
 
         System.out.println("Writing output to " + opts.getOutFile());
         classManager.getDexBuilder().writeTo(new FileDataStore(opts.getOutDexFile()));
@@ -168,10 +229,67 @@ public class Launcher {
         }
     }
 
+    private VirtualMachine buildWorkerVirtualMachine(ClassManager classManager) {
+        // Executing keeps per-VM state such as visit counts and template graphs, but parsed classes can be shared.
+        VirtualMachine vm = vmFactory.build(classManager, opts.getMaxAddressVisits(), opts.getMaxCallDepth(),
+                opts.getMaxMethodVisits(), opts.getMaxExecutionTime());
+        vm.setMergeJoinStates(opts.isMergeJoinStates());
+        vm.setLoopWideningThreshold(opts.getLoopWideningThreshold());
+        vm.setExecuteBasicBlocks(opts.isExecuteBasicBlocks());
+        vm.setExecuteConcretely(opts.isExecuteConcretely());
+        vm.setCompileMethods(opts.isCompileMethods());
+        vm.setProfiler(profiler);
+        vms.add(vm);
+
+        return vm;
+    }
+
+    private List<Integer> executeClasses(VirtualMachine vm, Set<String> classNames) {
+        List<Integer> methodCounts = new ArrayList<>(classNames.size());
+        for (String className : classNames) {
+            methodCounts.add(executeClass(vm, className));
+        }
+
+        return methodCounts;
+    }
+
+    private List<Integer> executeClassesInParallel(VirtualMachine vm, Set<String> classNames) {
+        ClassManager classManager = vm.getClassManager();
+        ThreadLocal<VirtualMachine> workerVM = ThreadLocal.withInitial(() -> buildWorkerVirtualMachine(classManager));
+        ExecutorService executor = Executors.newFixedThreadPool(opts.getThreadCount());
+        List<Future<Integer>> futures = new ArrayList<>(classNames.size());
+        for (String className : classNames) {
+            futures.add(executor.submit(() -> executeClass(workerVM.get(), className)));
+        }
+        executor.shutdown();
+
+        List<Integer> methodCounts = new ArrayList<>(futures.size());
+        try {
+            for (Future<Integer> future : futures) {
+                methodCounts.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for classes to finish", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error executing class", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return methodCounts;
+    }
+
     private int executeClass(VirtualMachine vm, String className) {
         ClassManager classManager = vm.getClassManager();
         DexBuilder dexBuilder = classManager.getDexBuilder();
-        Collection<VirtualMethod> methods = classManager.getVirtualClass(className).getMethods();
+        Collection<VirtualMethod> methods;
+        implementationLock.readLock().lock();
+        try {
+            methods = classManager.getVirtualClass(className).getMethods();
+        } finally {
+            implementationLock.readLock().unlock();
+        }
         filterMethods(methods, opts.getIncludeFilter(), opts.getExcludeFilter());
         if (!opts.includeSupportLibrary()) {
             filterSupportLibrary(methods);
@@ -182,10 +300,13 @@ public class Launcher {
             do {
                 System.out.println("Executing: " + method);
                 ExecutionGraph graph = null;
+                implementationLock.readLock().lock();
                 try {
                     graph = vm.execute(method);
                 } catch (VirtualMachineException e) {
                     System.err.println("Aborting execution; exception: " + e);
+                } finally {
+                    implementationLock.readLock().unlock();
                 }
 
                 if (null == graph) {
@@ -193,11 +314,23 @@ public class Launcher {
                     break;
                 }
 
-                Optimizer optimizer = new Optimizer(graph, method, vm, dexBuilder, opts);
-                optimizer.simplify(opts.getMaxOptimizationPasses());
-                if (optimizer.madeChanges()) {
-                    // Optimizer changed the implementation. Re-build graph to include changes.
-                    vm.updateInstructionGraph(method);
+                Optimizer optimizer;
+                implementationLock.writeLock().lock();
+                try {
+                    optimizer = new Optimizer(graph, method, vm, dexBuilder, opts);
+                    optimizer.simplify(opts.getMaxOptimizationPasses());
+                    if (optimizer.madeChanges()) {
+                        // Optimizer changed the implementation. Re-build graph to include changes.
+                        vm.updateInstructionGraph(method);
+                        for (VirtualMachine otherVM : vms) {
+                            if (otherVM != vm) {
+                                // Other workers may have a template built from the old implementation.
+                                otherVM.invalidateInstructionGraph(method);
+                            }
+                        }
+                    }
+                } finally {
+                    implementationLock.writeLock().unlock();
                 }
                 System.out.println(optimizer.getOptimizationCounts());
 
@@ -0,0 +1,29 @@
+package org.cf.simplify;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import org.cf.smalivm.jfr.VirtualMachineEvent;
+
+@Name("org.cf.simplify.Optimization")
+@Label("Optimization")
+@Description("Optimization passes over one execution of a method")
+public class OptimizationEvent extends VirtualMachineEvent {
+
+    @Label("Passes")
+    private int passes;
+
+    public OptimizationEvent(String methodSignature) {
+        super(methodSignature);
+    }
+
+    public int getPasses() {
+        return passes;
+    }
+
+    public void setPasses(int passes) {
+        this.passes = passes;
+    }
+
+}
@@ -7,6 +7,7 @@ import org.cf.simplify.strategy.PeepholeStrategy;
 import org.cf.simplify.strategy.UnreflectionStrategy;
 import org.cf.smalivm.VirtualMachine;
 import org.cf.smalivm.context.ExecutionGraph;
+import org.cf.smalivm.jfr.VirtualMachineEvent;
 import org.cf.smalivm.type.VirtualMethod;
 import org.jf.dexlib2.writer.builder.DexBuilder;
 import org.slf4j.Logger;
@@ -100,21 +101,35 @@ public class Optimizer {
     public void simplify(int maxPasses) {
         System.out.println("Simplifying: " + method);
 
+        OptimizationEvent event = new OptimizationEvent(method.getSignature());
+        event.begin();
         int pass = 0;
         madeAnyChanges = false;
-        boolean madeChange;
-        do {
-            madeChange = false;
-            for (OptimizationStrategy strategy : reoptimizeStrategies) {
-                madeChange |= strategy.perform();
-            }
-            for (OptimizationStrategy strategy : reexecuteStrategies) {
-                shouldReexecute |= strategy.perform();
-            }
+        boolean madeChange = false;
+        String outcome = VirtualMachineEvent.EXCEPTION;
+        try {
+            do {
+                madeChange = false;
+                for (OptimizationStrategy strategy : reoptimizeStrategies) {
+                    madeChange |= strategy.perform();
+                }
+                for (OptimizationStrategy strategy : reexecuteStrategies) {
+                    shouldReexecute |= strategy.perform();
+                }
 
-            madeAnyChanges |= madeChange | shouldReexecute;
-            pass++;
-        } while (madeChange && pass < maxPasses);
+                madeAnyChanges |= madeChange | shouldReexecute;
+                pass++;
+            } while (madeChange && pass < maxPasses);
+            // Still changing after the last pass means it stopped early
+            outcome = madeChange ? VirtualMachineEvent.LIMIT_EXCEEDED : VirtualMachineEvent.SUCCESS;
+        } finally {
+            if (event.shouldCommit()) {
+                event.setNodeCount(manipulator.getNodeCount());
+                event.setPasses(pass);
+                event.setOutcome(outcome);
+                event.commit();
+            }
+        }
 
         updateOptimizationCounts();
     }
@@ -15,22 +15,29 @@ public class SimplifyOptions implements Serializable {
     private static final byte[] PK_ZIP_MAGIC = new byte[] { 0x50, 0x4b, 0x3 };
     private static final long serialVersionUID = -8592147369856820020L;
 
+    private boolean compileMethods;
     private Pattern excludeFilter;
+    private boolean executeBasicBlocks;
+    private boolean executeConcretely;
     private boolean help;
     private Pattern includeFilter;
     private boolean includeSupportLibrary;
     private File inFile;
     private InputType inputType;
+    private int loopWideningThreshold = 0;
     private int maxAddressVisits = 10000;
     private int maxCallDepth = 50;
     private int maxExecutionTime = 5 * 60;
     private int maxMethodVisits = 1_000_000;
     private int maxOptimizationPasses = 100;
+    private boolean mergeJoinStates;
     private File outDexFile;
     private File outFile;
     private int outputAPILevel = SmaliParser.DEFAULT_API_LEVEL;
+    private File profileFile;
     private boolean quiet;
     private boolean removeWeak = true;
+    private int threadCount = 1;
     private int verbosity = 0;
 
     public Pattern getExcludeFilter() {
@@ -132,6 +139,14 @@ public class SimplifyOptions implements Serializable {
         this.outputAPILevel = outputAPILevel;
     }
 
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    protected void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
     public int getVerbosity() {
         return verbosity;
     }
@@ -160,6 +175,54 @@ public class SimplifyOptions implements Serializable {
         return quiet;
     }
 
+    public boolean isCompileMethods() {
+        return compileMethods;
+    }
+
+    protected void setCompileMethods(boolean compileMethods) {
+        this.compileMethods = compileMethods;
+    }
+
+    public boolean isExecuteBasicBlocks() {
+        return executeBasicBlocks;
+    }
+
+    protected void setExecuteBasicBlocks(boolean executeBasicBlocks) {
+        this.executeBasicBlocks = executeBasicBlocks;
+    }
+
+    public boolean isExecuteConcretely() {
+        return executeConcretely;
+    }
+
+    protected void setExecuteConcretely(boolean executeConcretely) {
+        this.executeConcretely = executeConcretely;
+    }
+
+    public int getLoopWideningThreshold() {
+        return loopWideningThreshold;
+    }
+
+    protected void setLoopWideningThreshold(int loopWideningThreshold) {
+        this.loopWideningThreshold = loopWideningThreshold;
+    }
+
+    public boolean isMergeJoinStates() {
+        return mergeJoinStates;
+    }
+
+    protected void setMergeJoinStates(boolean mergeJoinStates) {
+        this.mergeJoinStates = mergeJoinStates;
+    }
+
+    public File getProfileFile() {
+        return profileFile;
+    }
+
+    protected void setProfileFile(File profileFile) {
+        this.profileFile = profileFile;
+    }
+
     public boolean isRemoveWeak() {
         return removeWeak;
     }
@@ -184,7 +247,14 @@ public class SimplifyOptions implements Serializable {
         sb.append("Max call depth: ").append(getMaxCallDepth()).append('\n');
         sb.append("Max method visits: ").append(getMaxMethodVisits()).append('\n');
         sb.append("Max optimization passes: ").append(getMaxOptimizationPasses()).append('\n');
+        sb.append("Merge join states: ").append(isMergeJoinStates()).append('\n');
+        sb.append("Loop widening threshold: ").append(getLoopWideningThreshold()).append('\n');
+        sb.append("Execute basic blocks: ").append(isExecuteBasicBlocks()).append('\n');
+        sb.append("Execute concretely: ").append(isExecuteConcretely()).append('\n');
+        sb.append("Compile methods: ").append(isCompileMethods()).append('\n');
         sb.append("Output API level: ").append(getOutputAPILevel()).append('\n');
+        sb.append("Profile file: ").append(getProfileFile()).append('\n');
+        sb.append("Threads: ").append(getThreadCount()).append('\n');
         sb.append("Include support library: ").append(includeSupportLibrary).append('\n');
 
         return sb.toString().trim();
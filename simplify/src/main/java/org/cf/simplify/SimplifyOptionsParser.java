@@ -57,6 +57,24 @@ public class SimplifyOptionsParser {
                 case "max-method-visits":
                     simplifyOpts.setMaxMethodVisits(Integer.parseInt(val));
                     break;
+                case "merge-joins":
+                    simplifyOpts.setMergeJoinStates(true);
+                    break;
+                case "widen-loops":
+                    simplifyOpts.setLoopWideningThreshold(Integer.parseInt(val));
+                    break;
+                case "basic-blocks":
+                    simplifyOpts.setExecuteBasicBlocks(true);
+                    break;
+                case "concrete":
+                    simplifyOpts.setExecuteConcretely(true);
+                    break;
+                case "compile":
+                    simplifyOpts.setCompileMethods(true);
+                    break;
+                case "profile":
+                    simplifyOpts.setProfileFile(new File(val));
+                    break;
                 case "include-support":
                     simplifyOpts.setIncludeSupportLibrary(Boolean.parseBoolean(val));
                     break;
@@ -66,6 +84,13 @@ public class SimplifyOptionsParser {
                 case "max-passes":
                     simplifyOpts.setMaxOptimizationPasses(Integer.parseInt(val));
                     break;
+                case "threads":
+                    int threadCount = Integer.parseInt(val);
+                    if (threadCount < 1) {
+                        throw new ParseException("Thread count must be at least 1: " + val);
+                    }
+                    simplifyOpts.setThreadCount(threadCount);
+                    break;
                 case "output-api-level":
                     simplifyOpts.setOutputAPILevel(Integer.parseInt(val));
                     break;
@@ -146,11 +171,47 @@ public class SimplifyOptionsParser {
                                                      "that method, default: " + simplifyOpts.getMaxMethodVisits())
                                                .build();
 
+        Option mergeJoinsOption = Option.builder().longOpt("merge-joins")
+                                          .desc("Merge execution paths where they meet, making differing values " +
+                                                "unknown; faster for methods with many branches but less precise, " +
+                                                "default: " + simplifyOpts.isMergeJoinStates()).build();
+
+        Option widenLoopsOption = Option.builder().longOpt("widen-loops").hasArg().argName("N")
+                                          .desc("After N iterations of a loop whose exit depends on an unknown " +
+                                                "value, make values which change each iteration unknown so the " +
+                                                "loop stops early; 0 disables, default: " +
+                                                simplifyOpts.getLoopWideningThreshold()).build();
+
+        Option basicBlocksOption = Option.builder().longOpt("basic-blocks")
+                                           .desc("Execute invoked methods a basic block at a time instead of an " +
+                                                 "instruction at a time; faster and uses less memory, " +
+                                                 "default: " + simplifyOpts.isExecuteBasicBlocks()).build();
+
+        Option concreteOption = Option.builder().longOpt("concrete")
+                                        .desc("Execute invoked methods whose arguments are all known along their " +
+                                              "only path, falling back to every path if a branch is unknown; much " +
+                                              "faster for string decryptors, default: " +
+                                              simplifyOpts.isExecuteConcretely()).build();
+
+        Option compileOption = Option.builder().longOpt("compile")
+                                     .desc("Compile simple invoked methods without side effects to JVM bytecode " +
+                                           "and run them directly when arguments are known, default: " +
+                                           simplifyOpts.isCompileMethods()).build();
+
+        Option profileOption = Option.builder().longOpt("profile").hasArg().argName("file")
+                                       .desc("Profile execution and write a report of time spent in each op and " +
+                                             "method to FILE, and collapsed stacks for flame graphs to " +
+                                             "FILE.collapsed").build();
+
         Option includeSupportOption = Option.builder().longOpt("include-support")
                                               .desc("Attempt to execute and optimize classes in Android support " +
                                                     "library packages, default: " +
                                                     simplifyOpts.includeSupportLibrary()).build();
 
+        Option threadsOption = Option.builder().longOpt("threads").hasArg().argName("N")
+                                       .desc("Execute and optimize N classes at the same time, default: " +
+                                             simplifyOpts.getThreadCount()).build();
+
         // Optimization
         Option removeWeakOption = Option.builder().longOpt("remove-weak")
                                           .desc("Remove code even if there are weak side effects, default: " +
@@ -186,7 +247,14 @@ public class SimplifyOptionsParser {
         options.addOption(maxAddressVisitsOption);
         options.addOption(maxCallDepthOption);
         options.addOption(maxMethodVisitsOption);
+        options.addOption(mergeJoinsOption);
+        options.addOption(widenLoopsOption);
+        options.addOption(basicBlocksOption);
+        options.addOption(concreteOption);
+        options.addOption(compileOption);
+        options.addOption(profileOption);
         options.addOption(includeSupportOption);
+        options.addOption(threadsOption);
         options.addOption(removeWeakOption);
         options.addOption(maxPassesOption);
         options.addOption(outputAPILevelOption);
@@ -47,17 +47,23 @@ public class ConstantPropagationStrategy implements OptimizationStrategy {
 
         List<Integer> addresses = getValidAddresses();
         Collections.sort(addresses, Collections.reverseOrder());
-        for (int address : addresses) {
-            madeChanges = true;
-            BuilderInstruction original = manipulator.getInstruction(address);
-            BuilderInstruction constInstruction = ConstantBuilder.buildConstant(address, manipulator);
-            boolean isReturn = original.getOpcode().name().startsWith("RETURN");
-            if (isReturn) {
-                manipulator.addInstruction(address, constInstruction);
-            } else {
-                manipulator.replaceInstruction(address, constInstruction);
+        // Addresses are in descending order, so the graph only needs to be updated once, after every edit
+        manipulator.startBatch();
+        try {
+            for (int address : addresses) {
+                madeChanges = true;
+                BuilderInstruction original = manipulator.getInstruction(address);
+                BuilderInstruction constInstruction = ConstantBuilder.buildConstant(address, manipulator);
+                boolean isReturn = original.getOpcode().name().startsWith("RETURN");
+                if (isReturn) {
+                    manipulator.addInstruction(address, constInstruction);
+                } else {
+                    manipulator.replaceInstruction(address, constInstruction);
+                }
+                constantCount++;
             }
-            constantCount++;
+        } finally {
+            manipulator.finishBatch();
         }
 
         return madeChanges;
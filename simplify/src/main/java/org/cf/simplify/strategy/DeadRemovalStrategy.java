@@ -248,7 +248,7 @@ public class DeadRemovalStrategy implements OptimizationStrategy {
             }
 
             Op op = manipulator.getOp(address);
-            if (isSideEffectAboveThreshold(op.getSideEffectLevel())) {
+            if (isSideEffectAboveThreshold(manipulator.getHighestSideEffectLevel(address))) {
                 invalidAddresses.add(address);
                 continue;
             }
@@ -322,7 +322,7 @@ public class DeadRemovalStrategy implements OptimizationStrategy {
         }
 
         Op op = manipulator.getOp(address);
-        if (isSideEffectAboveThreshold(op.getSideEffectLevel())) {
+        if (isSideEffectAboveThreshold(manipulator.getHighestSideEffectLevel(address))) {
             return false;
         }
 
@@ -353,7 +353,7 @@ public class DeadRemovalStrategy implements OptimizationStrategy {
         }
 
         log.debug("Dead result test @{} for: {}", address, op);
-        if (isSideEffectAboveThreshold(op.getSideEffectLevel())) {
+        if (isSideEffectAboveThreshold(manipulator.getHighestSideEffectLevel(address))) {
             return false;
         }
 
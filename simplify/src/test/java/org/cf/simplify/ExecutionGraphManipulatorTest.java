@@ -367,6 +367,35 @@ public class ExecutionGraphManipulatorTest {
         assertEquals(2, consensus.getValue());
     }
 
+    @Test
+    public void batchOfReplacementsModifiesStateCorrectly() {
+        //@formatter:off
+        Object[][] expected = new Object[][] {
+                        { 0, Opcode.CONST_4, new Object[][][] { { { 1, Opcode.CONST_16 } } } },
+                        { 1, Opcode.CONST_16, new Object[][][] { { { 3, Opcode.CONST_4 } } } },
+                        { 3, Opcode.CONST_4, new Object[][][] { { { 4, Opcode.CONST_16 } } } },
+                        { 4, Opcode.CONST_16, new Object[][][] { { { 6, Opcode.CONST_4 } } } },
+                        { 6, Opcode.CONST_4, new Object[][][] { { { 7, Opcode.RETURN_VOID } } } },
+                        { 7, Opcode.RETURN_VOID, new Object[1][0][0] },
+        };
+        //@formatter:on
+
+        manipulator = OptimizerTester.getGraphManipulator(CLASS_NAME, "verySimple()V");
+        manipulator.startBatch();
+        manipulator.replaceInstruction(3, new BuilderInstruction21s(Opcode.CONST_16, 3, 7));
+        manipulator.replaceInstruction(1, new BuilderInstruction21s(Opcode.CONST_16, 1, 5));
+        manipulator.finishBatch();
+
+        test(expected, manipulator);
+        testHeritage(manipulator, 0);
+        testHeritage(manipulator, 1);
+        testHeritage(manipulator, 3);
+        testHeritage(manipulator, 4);
+
+        assertEquals(5, manipulator.getRegisterConsensus(1, 1).getValue());
+        assertEquals(7, manipulator.getRegisterConsensus(4, 3).getValue());
+    }
+
     @Test
     public void replacingInstructionGetsLabelsAtInsertionAddress() {
         manipulator = OptimizerTester.getGraphManipulator(CLASS_NAME, "hasLabelOnConstantizableOp(I)I");
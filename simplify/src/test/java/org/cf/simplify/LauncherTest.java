@@ -22,6 +22,17 @@ public class LauncherTest {
         Files.delete(outFile.toPath());
     }
 
+    @Test
+    public void runsWithoutMajorFailureWithMultipleThreads() throws IOException, UnhandledVirtualException {
+        Launcher launcher = new Launcher(new VirtualMachineFactory());
+        File outFile = File.createTempFile("simplify-test", ".tmp");
+        launcher.run(new String[] { "obfuscated-example", "-it", "WhiteNoise", "--threads", "2", "-o",
+                                    outFile.getAbsolutePath() });
+
+        assertTrue(outFile.exists());
+        Files.delete(outFile.toPath());
+    }
+
     @Test
     public void runsWithoutMajorFailureWithDexFile() throws IOException, UnhandledVirtualException {
         Launcher launcher = new Launcher(new VirtualMachineFactory());
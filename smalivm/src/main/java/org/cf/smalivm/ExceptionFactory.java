@@ -3,8 +3,6 @@ package org.cf.smalivm;
 import org.cf.smalivm.opcode.Op;
 import org.cf.util.ClassNameUtils;
 
-import java.lang.reflect.Constructor;
-
 public class ExceptionFactory {
 
     private final VirtualMachine vm;
@@ -13,27 +11,19 @@ public class ExceptionFactory {
         this.vm = vm;
     }
 
-    public Throwable build(Op op, String className) {
+    public VirtualException build(Op op, String className) {
         return build(op, className, null);
     }
 
-    public Throwable build(Op op, Class<? extends Throwable> exceptionClass) {
+    public VirtualException build(Op op, Class<? extends Throwable> exceptionClass) {
         return build(op, exceptionClass, null);
     }
 
-    public Throwable build(Op op, Class<? extends Throwable> exceptionClass, String message) {
-        try {
-            Constructor<? extends Throwable> ctor = exceptionClass.getDeclaredConstructor(String.class);
-            ctor.setAccessible(true);
-            return ctor.newInstance(message);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        return new Exception();
+    public VirtualException build(Op op, Class<? extends Throwable> exceptionClass, String message) {
+        return new VirtualException(exceptionClass, message);
     }
 
-    public Throwable build(Op op, String className, String message) {
+    public VirtualException build(Op op, String className, String message) {
         String binaryName = ClassNameUtils.internalToBinary(className);
         try {
             @SuppressWarnings("unchecked")
@@ -43,6 +33,6 @@ public class ExceptionFactory {
             e.printStackTrace();
         }
 
-        return new Exception();
+        return new VirtualException(Exception.class, null);
     }
 }
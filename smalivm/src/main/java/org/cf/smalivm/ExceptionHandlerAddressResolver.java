@@ -1,5 +1,8 @@
 package org.cf.smalivm;
 
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
 import org.cf.smalivm.type.ClassManager;
 import org.cf.smalivm.type.VirtualClass;
 import org.cf.smalivm.type.VirtualMethod;
@@ -8,88 +11,157 @@ import org.jf.dexlib2.builder.BuilderTryBlock;
 import org.jf.dexlib2.iface.ExceptionHandler;
 import org.jf.dexlib2.iface.TryBlock;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Finds the handler of an exception thrown at an address. Try blocks are indexed when this is built, so resolving only
+ * looks up the handlers covering the address. Since the try blocks are read once, build a new one if they change.
+ */
 public class ExceptionHandlerAddressResolver {
 
+    private static final int NO_HANDLER = -1;
+
     private final ClassManager classManager;
-    private final List<BuilderTryBlock> tryBlocks;
+    // Handlers of every address covered by a try block, with addresses covered by the same try blocks sharing handlers
+    private final Handlers[] addressToHandlers;
 
-    ExceptionHandlerAddressResolver(ClassManager classManager, VirtualMethod localMethod) {
+    public ExceptionHandlerAddressResolver(ClassManager classManager, VirtualMethod localMethod) {
         this.classManager = classManager;
-        tryBlocks = localMethod.getTryBlocks();
+        addressToHandlers = buildAddressToHandlers(localMethod.getTryBlocks());
+    }
+
+    /*
+     * Split the method into ranges of addresses covered by the same try blocks and build handlers for each range.
+     */
+    private static Handlers[] buildAddressToHandlers(List<BuilderTryBlock> tryBlocks) {
+        int tryBlockCount = tryBlocks.size();
+        int[] startAddresses = new int[tryBlockCount];
+        int[] endAddresses = new int[tryBlockCount];
+        int[] boundaries = new int[tryBlockCount * 2];
+        for (int i = 0; i < tryBlockCount; i++) {
+            TryBlock<? extends ExceptionHandler> tryBlock = tryBlocks.get(i);
+            startAddresses[i] = tryBlock.getStartCodeAddress();
+            endAddresses[i] = startAddresses[i] + tryBlock.getCodeUnitCount();
+            boundaries[i * 2] = startAddresses[i];
+            boundaries[i * 2 + 1] = endAddresses[i];
+        }
+        Arrays.sort(boundaries);
+
+        Handlers[] addressToHandlers = new Handlers[tryBlockCount == 0 ? 0 : boundaries[boundaries.length - 1]];
+        for (int i = 0; i < boundaries.length - 1; i++) {
+            int rangeStart = boundaries[i];
+            int rangeEnd = boundaries[i + 1];
+            if (rangeStart == rangeEnd) {
+                continue;
+            }
+
+            List<TryBlock<? extends ExceptionHandler>> coveringTryBlocks = new ArrayList<>();
+            for (int j = 0; j < tryBlockCount; j++) {
+                if (startAddresses[j] <= rangeStart && rangeStart < endAddresses[j]) {
+                    coveringTryBlocks.add(tryBlocks.get(j));
+                }
+            }
+            if (!coveringTryBlocks.isEmpty()) {
+                Arrays.fill(addressToHandlers, rangeStart, rangeEnd, new Handlers(coveringTryBlocks));
+            }
+        }
+
+        return addressToHandlers;
+    }
+
+    /*
+     * This will try to find the most "immediate" exception handler in terms of class hierarchy. If a handler for the
+     * exact exception type can't be found, it'll try to find one for the exception type's parent, parent's parent,
+     * and so on. If there's none, it'll look for a catch-all handler.
+     */
+    private static int findHandlerCodeAddress(Handlers handlers, VirtualClass exceptionClass) {
+        List<VirtualClass> lineage = new LinkedList<>();
+        lineage.add(exceptionClass);
+        lineage.addAll(exceptionClass.getAncestors());
+        for (VirtualClass currentExceptionClass : lineage) {
+            String className = currentExceptionClass.getName();
+            if (handlers.typeToHandlerAddress.containsKey(className)) {
+                return handlers.typeToHandlerAddress.get(className);
+            }
+        }
+
+        return handlers.catchAllAddress;
     }
 
     int resolve(String className, int address) {
-        VirtualClass exceptionClass = classManager.getVirtualClass(className);
+        Handlers handlers = getHandlers(address);
+        if (handlers == null) {
+            return NO_HANDLER;
+        }
+
+        Integer handlerAddress = handlers.classNameToResolvedAddress.get(className);
+        if (handlerAddress == null) {
+            VirtualClass exceptionClass = classManager.getVirtualClass(className);
+            handlerAddress = findHandlerCodeAddress(handlers, exceptionClass);
+            handlers.classNameToResolvedAddress.put(className, handlerAddress);
+        }
 
-        return resolve(exceptionClass, address);
+        return handlerAddress;
     }
 
     int resolve(Throwable ex, int address) {
-        String className = ClassNameUtils.binaryToInternal(ex.getClass().getName());
+        return resolve(ex.getClass(), address);
+    }
+
+    int resolve(VirtualException ex, int address) {
+        return resolve(ex.getExceptionClass(), address);
+    }
+
+    int resolve(Class<? extends Throwable> exceptionClass, int address) {
+        String className = ClassNameUtils.binaryToInternal(exceptionClass.getName());
 
         return resolve(className, address);
     }
 
     int resolve(VirtualClass exceptionClass, int address) {
-        int handlerAddress = findHandlerCodeAddress(exceptionClass, address, false);
-        if (handlerAddress != -1) {
-            return handlerAddress;
-        }
+        return resolve(exceptionClass.getName(), address);
+    }
 
-        handlerAddress = findHandlerCodeAddress(exceptionClass, address, true);
-        return handlerAddress;
+    private Handlers getHandlers(int address) {
+        return address >= 0 && address < addressToHandlers.length ? addressToHandlers[address] : null;
     }
 
-    /*
-     * Given an exception type and an address in code, this will try and find the correct exception handler. This is
-     * complicated by the fact that handlers may overlap. There may be 6 overlapping exception handlers over one
-     * particular address each catching different exception types with one handler as a catch-all.
-     * This will try to find the most "immediate" exception handler in terms of class hierarchy.  If a handler for
-     * the exact exception type can't be found, it'll try to find one for the exception type's parent, parent's
-     * parent, and so on. If catchAll is true, it'll look for catch-all exception handlers.
-     */
-    private int findHandlerCodeAddress(VirtualClass exceptionClass, int address, boolean catchAll) {
-        List<VirtualClass> lineage = new LinkedList<>();
-        lineage.add(exceptionClass);
-        lineage.addAll(exceptionClass.getAncestors());
+    private static class Handlers {
 
-        for (VirtualClass currentExceptionClass : lineage) {
-            String className = currentExceptionClass.getName();
-            for (TryBlock<? extends ExceptionHandler> tryBlock : tryBlocks) {
-                int startAddress = tryBlock.getStartCodeAddress();
-                int endAddress = tryBlock.getStartCodeAddress() + tryBlock.getCodeUnitCount();
-                boolean inTryBlock = (address >= startAddress && address < endAddress);
-                if (!inTryBlock) {
-                    continue;
-                }
+        // Handler of each exception type; when several try blocks overlap, the first one listed wins
+        private final TObjectIntMap<String> typeToHandlerAddress;
+        private final int catchAllAddress;
+        // Exceptions are usually thrown by the same few classes, so remember where each class was resolved to
+        private final Map<String, Integer> classNameToResolvedAddress;
 
+        Handlers(List<TryBlock<? extends ExceptionHandler>> tryBlocks) {
+            typeToHandlerAddress = new TObjectIntHashMap<>();
+            int catchAllAddress = NO_HANDLER;
+            for (TryBlock<? extends ExceptionHandler> tryBlock : tryBlocks) {
                 List<? extends ExceptionHandler> handlers = tryBlock.getExceptionHandlers();
-                if (catchAll) {
-                    // If it's the last handler and it's null, it's a catchall
-                    ExceptionHandler handler = handlers.get(handlers.size() - 1);
-                    if (null == handler.getExceptionType()) {
-                        return handler.getHandlerCodeAddress();
-                    }
-                } else {
-                    for (ExceptionHandler handler : handlers) {
-                        String handlerType = handler.getExceptionType();
-                        if (className.equals(handlerType)) {
-                            return handler.getHandlerCodeAddress();
-                        }
+                for (ExceptionHandler handler : handlers) {
+                    String handlerType = handler.getExceptionType();
+                    if (handlerType != null && !typeToHandlerAddress.containsKey(handlerType)) {
+                        typeToHandlerAddress.put(handlerType, handler.getHandlerCodeAddress());
                     }
                 }
-            }
 
-            if (catchAll) {
-                // This loop is unnecessary for catch-all because it doesn't look at the exception class.
-                return -1;
+                // If it's the last handler and it's null, it's a catchall
+                ExceptionHandler lastHandler = handlers.get(handlers.size() - 1);
+                if (catchAllAddress == NO_HANDLER && null == lastHandler.getExceptionType()) {
+                    catchAllAddress = lastHandler.getHandlerCodeAddress();
+                }
             }
+            this.catchAllAddress = catchAllAddress;
+            // Templates, and their resolvers, are shared by graphs executing on other threads
+            classNameToResolvedAddress = new ConcurrentHashMap<>();
         }
 
-        return -1;
     }
 
 }
@@ -1,41 +1,108 @@
 package org.cf.smalivm;
 
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.TObjectIntMap;
 import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
 
+import org.apache.commons.lang3.mutable.MutableInt;
 import org.cf.smalivm.context.ExecutionGraph;
 import org.cf.smalivm.context.ExecutionNode;
-import org.cf.smalivm.type.ClassManager;
+import org.cf.smalivm.opcode.IfOp;
+import org.cf.smalivm.opcode.Op;
+import org.cf.smalivm.opcode.SwitchPayloadOp;
 import org.cf.smalivm.type.VirtualMethod;
+import org.jf.dexlib2.builder.MethodLocation;
+import org.jf.dexlib2.iface.ExceptionHandler;
+import org.jf.dexlib2.iface.TryBlock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Deque;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.function.IntPredicate;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
 
+import javax.annotation.Nullable;
+
 public class MethodExecutor {
 
     private static Logger log = LoggerFactory.getLogger(MethodExecutor.class.getSimpleName());
 
-    private final ClassManager classManager;
     private final int maxAddressVisits;
     private final int maxCallDepth;
     private final int maxExecutionTime;
     private final int maxMethodVisits;
-    private int totalVisits;
+    // Per thread since a root method and all of its callees are executed by one thread, but other threads may be
+    // executing other root methods with the same executor.
+    private final ThreadLocal<MutableInt> totalVisits;
+    private boolean mergeJoinStates;
+    private boolean executeBasicBlocks;
+    private boolean executeConcretely;
+    private int loopWideningThreshold;
+    private volatile Profiler profiler;
 
-    MethodExecutor(ClassManager classManager, int maxCallDepth, int maxAddressVisits, int maxMethodVisits,
-                   int maxExecutionTime) {
-        this.classManager = classManager;
+    MethodExecutor(int maxCallDepth, int maxAddressVisits, int maxMethodVisits, int maxExecutionTime) {
         this.maxCallDepth = maxCallDepth;
         this.maxAddressVisits = maxAddressVisits;
         this.maxMethodVisits = maxMethodVisits;
         this.maxExecutionTime = maxExecutionTime;
-        totalVisits = 0;
+        totalVisits = ThreadLocal.withInitial(MutableInt::new);
     }
 
     ExecutionGraph execute(ExecutionGraph graph) throws VirtualMachineException {
+        return execute(graph, false);
+    }
+
+    /**
+     * @param callee true if the graph is only used by the virtual machine, e.g. to get the result of an invoked
+     *               method, so it may be executed a basic block per node if that's enabled
+     */
+    ExecutionGraph execute(ExecutionGraph graph, boolean callee) throws VirtualMachineException {
+        return profileAndExecute(graph, callee && executeBasicBlocks, false);
+    }
+
+    /**
+     * Execute a graph along its only path, with one node for as long as possible instead of one for each instruction.
+     * This is much cheaper when every value which decides a branch is known, e.g. for a decryption method invoked with
+     * constant arguments.
+     *
+     * @return the graph, or null if a branch or exception couldn't be decided, in which case the graph is incomplete and
+     * should be discarded
+     */
+    @Nullable
+    ExecutionGraph executeConcretely(ExecutionGraph graph) throws VirtualMachineException {
+        return profileAndExecute(graph, false, true);
+    }
+
+    private ExecutionGraph profileAndExecute(ExecutionGraph graph, boolean basicBlocks,
+                                             boolean concrete) throws VirtualMachineException {
+        Profiler profiler = this.profiler;
+        if (profiler == null) {
+            return executeNodes(graph, basicBlocks, concrete, null);
+        }
+
+        profiler.enterMethod(graph.getMethod().getSignature());
+        try {
+            return executeNodes(graph, basicBlocks, concrete, profiler);
+        } finally {
+            profiler.exitMethod();
+        }
+    }
+
+    private ExecutionGraph executeNodes(ExecutionGraph graph, boolean basicBlocks, boolean concrete,
+                                        @Nullable Profiler profiler) throws VirtualMachineException {
         TIntIntMap addressToVisitCount = new TIntIntHashMap();
         VirtualMethod method = graph.getMethod();
         ExecutionNode node = graph.getRoot();
@@ -50,16 +117,53 @@ public class MethodExecutor {
             resetTotalVisits();
         }
 
-        NodeExecutor nodeExecutor = new NodeExecutor(graph, classManager);
-        Deque<ExecutionNode> stack = new ArrayDeque<>();
-        stack.push(node);
+        NodeExecutor nodeExecutor = new NodeExecutor(graph, profiler);
+        Queue<ExecutionNode> queue;
+        TIntObjectMap<ExecutionNode> addressToPendingNode = null;
+        if (mergeJoinStates) {
+            TIntIntMap addressToOrder = buildExecutionOrder(graph);
+            int lastOrder = addressToOrder.size();
+            ToIntFunction<ExecutionNode> order = n -> addressToOrder.containsKey(n.getAddress()) ?
+                                                      addressToOrder.get(n.getAddress()) :
+                                                      lastOrder + n.getAddress();
+            queue = new PriorityQueue<>(Comparator.comparingInt(order));
+            addressToPendingNode = new TIntObjectHashMap<>();
+        } else {
+            queue = new ArrayDeque<>();
+        }
+        queue.add(node);
+        MutableInt totalVisits = this.totalVisits.get();
+        int initialTotalVisits = totalVisits.intValue();
+        boolean findLoops = !concrete && (loopWideningThreshold > 0 || basicBlocks);
+        TIntObjectMap<TIntSet> loopHeaderToBody = findLoops ? findLoops(graph) : new TIntObjectHashMap<>();
+        TIntSet loopHeaders = loopHeaderToBody.keySet();
+        IntPredicate continuesAt = null;
+        if (concrete) {
+            continuesAt = a -> countContinuation(a, totalVisits, addressToVisitCount);
+        } else if (basicBlocks) {
+            TIntSet blockContinuations = findBlockContinuations(graph, loopHeaders);
+            continuesAt = a -> blockContinuations.contains(a) && countContinuation(a, totalVisits, addressToVisitCount);
+        }
+        ExecutionNode rootNode = node;
+        TObjectIntMap<ExecutionNode> nodeToAmbiguousIterations = new TObjectIntHashMap<>();
         long endTime = System.currentTimeMillis() + (maxExecutionTime * 1000);
         boolean warnedMultipleExecutionPaths = false;
-        while ((node = stack.poll()) != null) {
-            totalVisits += 1;
-            checkMaxVisits(node, method, addressToVisitCount);
+        while ((node = queue.poll()) != null) {
+            totalVisits.increment();
+            checkMaxVisits(node, method, totalVisits.intValue(), addressToVisitCount);
 
-            nodeExecutor.execute(node);
+            int address = node.getAddress();
+            if (continuesAt == null || node == rootNode || loopHeaders.contains(address)) {
+                // The root must stay in the first pile, and iterations are found by nodes at loop headers
+                nodeExecutor.execute(node);
+            } else {
+                nodeExecutor.execute(node, continuesAt);
+            }
+            if (concrete && node.getChildren().size() > 1) {
+                log.debug("{} has more than one execution path at {}, giving up concrete execution", method, node);
+                totalVisits.setValue(initialTotalVisits);
+                return null;
+            }
             if (node.getChildren().size() > 1 && !warnedMultipleExecutionPaths) {
                 warnedMultipleExecutionPaths = true;
                 String children =
@@ -68,14 +172,294 @@ public class MethodExecutor {
                 // Let the user know if they're listening.
                 log.debug("{} has multiple execution paths starting at {}: {}", method, node, children);
             }
+            if (loopWideningThreshold > 0 && !loopHeaders.isEmpty()) {
+                widenLoopIterations(graph, node, loopHeaderToBody, nodeToAmbiguousIterations);
+            }
 
-            stack.addAll(node.getChildren());
+            if (mergeJoinStates) {
+                if (addressToPendingNode.get(address) == node) {
+                    addressToPendingNode.remove(address);
+                }
+                queueOrMergeChildren(graph, node, queue, addressToPendingNode);
+            } else {
+                queue.addAll(node.getChildren());
+            }
             checkMaxExecutionTime(endTime, method);
         }
 
         return graph;
     }
 
+    boolean isMergingJoinStates() {
+        return mergeJoinStates;
+    }
+
+    void setMergeJoinStates(boolean mergeJoinStates) {
+        this.mergeJoinStates = mergeJoinStates;
+    }
+
+    boolean isExecutingConcretely() {
+        return executeConcretely;
+    }
+
+    void setExecuteConcretely(boolean executeConcretely) {
+        this.executeConcretely = executeConcretely;
+    }
+
+    boolean isExecutingBasicBlocks() {
+        return executeBasicBlocks;
+    }
+
+    void setExecuteBasicBlocks(boolean executeBasicBlocks) {
+        this.executeBasicBlocks = executeBasicBlocks;
+    }
+
+    @Nullable
+    Profiler getProfiler() {
+        return profiler;
+    }
+
+    void setProfiler(@Nullable Profiler profiler) {
+        this.profiler = profiler;
+    }
+
+    int getLoopWideningThreshold() {
+        return loopWideningThreshold;
+    }
+
+    void setLoopWideningThreshold(int loopWideningThreshold) {
+        this.loopWideningThreshold = loopWideningThreshold;
+    }
+
+    /*
+     * Addresses which are the target of a back edge, i.e. the first instruction of a loop, and the addresses in the
+     * body of each loop. The body is every address which reaches a back edge without going through the loop header.
+     */
+    private static TIntObjectMap<TIntSet> findLoops(ExecutionGraph graph) {
+        TIntObjectMap<TIntSet> loopHeaderToBody = new TIntObjectHashMap<>();
+        TIntObjectMap<TIntList> addressToParents = new TIntObjectHashMap<>();
+        TIntSet visited = new TIntHashSet();
+        TIntSet onStack = new TIntHashSet();
+        Deque<int[]> stack = new ArrayDeque<>();
+        int rootAddress = graph.getRoot().getAddress();
+        visited.add(rootAddress);
+        onStack.add(rootAddress);
+        // Pairs of address and index of the next child to visit
+        stack.push(new int[] { rootAddress, 0 });
+        while (!stack.isEmpty()) {
+            int[] entry = stack.peek();
+            MethodLocation[] children = graph.getTemplateNode(entry[0]).getOp().getChildren();
+            if (entry[1] < children.length) {
+                int childAddress = children[entry[1]].getCodeAddress();
+                entry[1] += 1;
+                TIntList parents = addressToParents.get(childAddress);
+                if (parents == null) {
+                    parents = new TIntArrayList(1);
+                    addressToParents.put(childAddress, parents);
+                }
+                parents.add(entry[0]);
+                if (onStack.contains(childAddress)) {
+                    TIntSet body = loopHeaderToBody.get(childAddress);
+                    if (body == null) {
+                        body = new TIntHashSet();
+                        body.add(childAddress);
+                        loopHeaderToBody.put(childAddress, body);
+                    }
+                    // Back edge sources, to be filled in with the rest of the body once every edge is known
+                    body.add(entry[0]);
+                } else if (visited.add(childAddress)) {
+                    onStack.add(childAddress);
+                    stack.push(new int[] { childAddress, 0 });
+                }
+            } else {
+                onStack.remove(entry[0]);
+                stack.pop();
+            }
+        }
+
+        loopHeaderToBody.forEachEntry((header, body) -> {
+            TIntList pending = new TIntArrayList(body);
+            while (!pending.isEmpty()) {
+                int address = pending.removeAt(pending.size() - 1);
+                TIntList parents = address == header ? null : addressToParents.get(address);
+                if (parents == null) {
+                    continue;
+                }
+                parents.forEach(parent -> {
+                    if (body.add(parent)) {
+                        pending.add(parent);
+                    }
+                    return true;
+                });
+            }
+            return true;
+        });
+
+        return loopHeaderToBody;
+    }
+
+    /*
+     * Addresses which may be executed by the node which executed the instruction before them, i.e. they're only reached
+     * from that one instruction. Exception handlers and loop headers always start a new node.
+     */
+    private static TIntSet findBlockContinuations(ExecutionGraph graph, TIntSet loopHeaders) {
+        TIntIntMap addressToPredecessorCount = new TIntIntHashMap();
+        for (int address : graph.getAddresses()) {
+            for (MethodLocation child : graph.getTemplateNode(address).getOp().getChildren()) {
+                addressToPredecessorCount.adjustOrPutValue(child.getCodeAddress(), 1, 1);
+            }
+        }
+        for (TryBlock<? extends ExceptionHandler> tryBlock : graph.getMethod().getTryBlocks()) {
+            for (ExceptionHandler handler : tryBlock.getExceptionHandlers()) {
+                addressToPredecessorCount.put(handler.getHandlerCodeAddress(), -1);
+            }
+        }
+
+        TIntSet blockContinuations = new TIntHashSet();
+        int rootAddress = graph.getRoot().getAddress();
+        addressToPredecessorCount.forEachEntry((address, count) -> {
+            if (count == 1 && address != rootAddress && !loopHeaders.contains(address)) {
+                blockContinuations.add(address);
+            }
+            return true;
+        });
+
+        return blockContinuations;
+    }
+
+    /*
+     * A loop whose exit depends on an unknown value never stops taking both branches, so it would run until visit
+     * limits are exceeded. Once a loop has gone around enough times without knowing whether to exit, widen the state
+     * starting each iteration against the state which started the one before. Values which keep changing become
+     * unknown, and when an iteration would start with the same state as the one before, it's dropped since it can't
+     * reach anything new. Unknown branches which stay inside the loop don't count since they don't keep the loop going.
+     */
+    private void widenLoopIterations(ExecutionGraph graph, ExecutionNode node, TIntObjectMap<TIntSet> loopHeaderToBody,
+                                     TObjectIntMap<ExecutionNode> nodeToAmbiguousIterations) {
+        for (ExecutionNode child : new ArrayList<>(node.getChildren())) {
+            TIntSet body = loopHeaderToBody.get(child.getAddress());
+            if (body == null) {
+                continue;
+            }
+
+            boolean ambiguous = false;
+            ExecutionNode previous = node;
+            while (previous != null && previous.getAddress() != child.getAddress()) {
+                ambiguous |= isAmbiguousExit(previous, body);
+                previous = previous.getParent();
+            }
+            if (previous == null || !(ambiguous || isAmbiguousExit(previous, body))) {
+                // First iteration, or it was known whether the last iteration would exit
+                continue;
+            }
+
+            int iterations = nodeToAmbiguousIterations.get(previous) + 1;
+            nodeToAmbiguousIterations.put(child, iterations);
+            if (iterations < loopWideningThreshold) {
+                continue;
+            }
+
+            if (!child.getContext().widen(previous.getContext())) {
+                log.debug("Loop at {} reached a fixed point", child);
+                node.removeChild(child);
+                graph.removeNode(child);
+            }
+        }
+    }
+
+    /*
+     * A branch which took both a path staying in the loop and a path leaving it.
+     */
+    private static boolean isAmbiguousExit(ExecutionNode node, TIntSet loopBody) {
+        Op op = node.getOp();
+        if (!(op instanceof IfOp || op instanceof SwitchPayloadOp) || node.getChildren().size() < 2) {
+            return false;
+        }
+
+        boolean stays = false;
+        boolean leaves = false;
+        for (ExecutionNode child : node.getChildren()) {
+            if (loopBody.contains(child.getAddress())) {
+                stays = true;
+            } else {
+                leaves = true;
+            }
+        }
+
+        return stays && leaves;
+    }
+
+    /*
+     * Reverse post-order of the instructions, so an instruction is executed only after every instruction which leads
+     * to it, ignoring back edges. This gives every path to a join point a chance to arrive before it's executed.
+     * Exception handlers aren't children of any instruction, so they're missing and are executed last.
+     */
+    private static TIntIntMap buildExecutionOrder(ExecutionGraph graph) {
+        TIntList postOrder = new TIntArrayList();
+        TIntSet visited = new TIntHashSet();
+        Deque<int[]> stack = new ArrayDeque<>();
+        int rootAddress = graph.getRoot().getAddress();
+        visited.add(rootAddress);
+        // Pairs of address and index of the next child to visit
+        stack.push(new int[] { rootAddress, 0 });
+        while (!stack.isEmpty()) {
+            int[] entry = stack.peek();
+            MethodLocation[] children = graph.getTemplateNode(entry[0]).getOp().getChildren();
+            if (entry[1] < children.length) {
+                int childAddress = children[entry[1]].getCodeAddress();
+                entry[1] += 1;
+                if (visited.add(childAddress)) {
+                    stack.push(new int[] { childAddress, 0 });
+                }
+            } else {
+                postOrder.add(entry[0]);
+                stack.pop();
+            }
+        }
+
+        TIntIntMap addressToOrder = new TIntIntHashMap(postOrder.size());
+        for (int i = 0; i < postOrder.size(); i++) {
+            addressToOrder.put(postOrder.get(i), postOrder.size() - 1 - i);
+        }
+
+        return addressToOrder;
+    }
+
+    /*
+     * If another path already reached a child's address and is waiting to be executed, merge the child into it rather
+     * than executing both. This keeps the graph linear in the size of the method instead of growing with the number of
+     * paths.
+     */
+    private static void queueOrMergeChildren(ExecutionGraph graph, ExecutionNode node, Queue<ExecutionNode> queue,
+                                             TIntObjectMap<ExecutionNode> addressToPendingNode) {
+        for (ExecutionNode child : new ArrayList<>(node.getChildren())) {
+            ExecutionNode pendingNode = addressToPendingNode.get(child.getAddress());
+            if (pendingNode == null) {
+                addressToPendingNode.put(child.getAddress(), child);
+            } else if (pendingNode.getContext().merge(child.getContext())) {
+                graph.removeNode(child);
+                node.replaceChildWithJoin(child, pendingNode);
+                continue;
+            }
+            queue.add(child);
+        }
+    }
+
+    /*
+     * Count an instruction executed by continuing a node like a visit, so loops within one node are still limited. Once
+     * a limit is reached the node stops and the limit exception is thrown when its child is visited.
+     */
+    private boolean countContinuation(int address, MutableInt totalVisits, TIntIntMap addressToVisitCount) {
+        if (totalVisits.intValue() >= getMaxMethodVisits() || addressToVisitCount.get(address) > getMaxAddressVisits()) {
+            return false;
+        }
+
+        totalVisits.increment();
+        addressToVisitCount.adjustOrPutValue(address, 1, 1);
+
+        return true;
+    }
+
     private void checkMaxExecutionTime(long endTime,
                                        VirtualMethod localMethod) throws MaxExecutionTimeExceededException {
         if (maxExecutionTime == 0) {
@@ -87,7 +471,7 @@ public class MethodExecutor {
         }
     }
 
-    private void checkMaxVisits(ExecutionNode node, VirtualMethod localMethod,
+    private void checkMaxVisits(ExecutionNode node, VirtualMethod localMethod, int totalVisits,
                                 TIntIntMap addressToVisitCount) throws MaxAddressVisitsExceededException, MaxMethodVisitsExceededException {
         if (totalVisits > getMaxMethodVisits()) {
             throw new MaxMethodVisitsExceededException(node, localMethod.getSignature());
@@ -117,7 +501,7 @@ public class MethodExecutor {
     }
 
     private void resetTotalVisits() {
-        totalVisits = 0;
+        totalVisits.get().setValue(0);
     }
 
 }
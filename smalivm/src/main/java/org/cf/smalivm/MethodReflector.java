@@ -4,6 +4,8 @@ import org.apache.commons.beanutils.ConstructorUtils;
 import org.apache.commons.beanutils.MethodUtils;
 import org.cf.smalivm.context.HeapItem;
 import org.cf.smalivm.context.MethodState;
+import org.cf.smalivm.jfr.MethodReflectionEvent;
+import org.cf.smalivm.jfr.VirtualMachineEvent;
 import org.cf.smalivm.type.VirtualMethod;
 import org.cf.util.ClassNameUtils;
 import org.cf.util.Utils;
@@ -29,8 +31,12 @@ public class MethodReflector {
         }
 
         Object returnValue;
+        MethodReflectionEvent event = new MethodReflectionEvent(method.getSignature());
+        event.begin();
+        String outcome = VirtualMachineEvent.EXCEPTION;
         try {
             returnValue = invoke(mState);
+            outcome = VirtualMachineEvent.SUCCESS;
         } catch (NullPointerException | ClassNotFoundException | NoSuchMethodException | SecurityException | InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
             //            e.printStackTrace();
             if (log.isWarnEnabled()) {
@@ -40,6 +46,9 @@ public class MethodReflector {
                 log.debug("Stack trace:", e);
             }
             throw e;
+        } finally {
+            event.setOutcome(outcome);
+            event.commit();
         }
 
         if (!method.returnsVoid()) {
@@ -0,0 +1,136 @@
+package org.cf.smalivm;
+
+import org.cf.smalivm.context.HeapItem;
+import org.cf.smalivm.type.VirtualMethod;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * Remembers the outcome of local method calls so calling the same method with the same arguments, e.g. a string
+ * decryption method called with constants, doesn't execute it again.
+ *
+ * Only calls whose outcome depends on nothing but the arguments should be stored. That means every argument is known
+ * and immutable, and the method doesn't access static fields, initialize classes, or throw.
+ *
+ * It's thread safe so it may be shared by virtual machines on different threads.
+ */
+public class MethodSummaryCache {
+
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    private final Map<Key, MethodSummary> keyToSummary;
+    private long hitCount;
+    private long missCount;
+
+    public MethodSummaryCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public MethodSummaryCache(int maxSize) {
+        // Access ordered, so the eldest entry is the least recently used one
+        keyToSummary = new LinkedHashMap<Key, MethodSummary>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, MethodSummary> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    @Nullable
+    public synchronized MethodSummary get(VirtualMethod method, HeapItem[] arguments) {
+        MethodSummary summary = keyToSummary.get(new Key(method, arguments));
+        if (summary == null) {
+            missCount++;
+        } else {
+            hitCount++;
+        }
+
+        return summary;
+    }
+
+    public synchronized void put(VirtualMethod method, HeapItem[] arguments, MethodSummary summary) {
+        keyToSummary.put(new Key(method, arguments), summary);
+    }
+
+    public synchronized void clear() {
+        keyToSummary.clear();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized int size() {
+        return keyToSummary.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "hits=" + hitCount + ", misses=" + missCount + ", size=" + size();
+    }
+
+    public static class MethodSummary {
+
+        private final HeapItem returnItem;
+        private final SideEffect.Level sideEffectLevel;
+
+        public MethodSummary(@Nullable HeapItem returnItem, SideEffect.Level sideEffectLevel) {
+            this.returnItem = returnItem;
+            this.sideEffectLevel = sideEffectLevel;
+        }
+
+        /**
+         * @return return value consensus, or null if the method returns void
+         */
+        @Nullable
+        public HeapItem getReturnItem() {
+            return returnItem;
+        }
+
+        public SideEffect.Level getSideEffectLevel() {
+            return sideEffectLevel;
+        }
+
+    }
+
+    private static class Key {
+
+        private final VirtualMethod method;
+        private final HeapItem[] arguments;
+        private final int hashCode;
+
+        Key(VirtualMethod method, HeapItem[] arguments) {
+            this.method = method;
+            this.arguments = arguments;
+            hashCode = 31 * method.hashCode() + Arrays.hashCode(arguments);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+
+            return method.equals(other.method) && Arrays.equals(arguments, other.arguments);
+        }
+
+    }
+
+}
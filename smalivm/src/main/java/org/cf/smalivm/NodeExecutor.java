@@ -2,22 +2,37 @@ package org.cf.smalivm;
 
 import org.cf.smalivm.context.ExecutionGraph;
 import org.cf.smalivm.context.ExecutionNode;
+import org.cf.smalivm.opcode.FillArrayDataOp;
+import org.cf.smalivm.opcode.FillArrayDataPayloadOp;
+import org.cf.smalivm.opcode.InvokeOp;
 import org.cf.smalivm.opcode.Op;
-import org.cf.smalivm.type.ClassManager;
+import org.cf.smalivm.opcode.SGetOp;
+import org.cf.smalivm.opcode.SPutOp;
+import org.cf.smalivm.opcode.SwitchPayloadOp;
 import org.jf.dexlib2.builder.MethodLocation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.function.IntPredicate;
+
+import javax.annotation.Nullable;
+
 public class NodeExecutor {
 
     private static Logger log = LoggerFactory.getLogger(NodeExecutor.class.getSimpleName());
 
     private final ExecutionGraph graph;
     private final ExceptionHandlerAddressResolver exceptionResolver;
+    private final Profiler profiler;
+
+    public NodeExecutor(ExecutionGraph graph) {
+        this(graph, null);
+    }
 
-    public NodeExecutor(ExecutionGraph graph, ClassManager classManager) {
+    public NodeExecutor(ExecutionGraph graph, @Nullable Profiler profiler) {
         this.graph = graph;
-        exceptionResolver = new ExceptionHandlerAddressResolver(classManager, graph.getMethod());
+        exceptionResolver = graph.getExceptionResolver();
+        this.profiler = profiler;
     }
 
     private static ExecutionNode spawnChild(ExecutionGraph graph, ExecutionNode parentNode, int childAddress) {
@@ -39,7 +54,7 @@ public class NodeExecutor {
     private static void spawnExceptionChildren(ExecutionGraph graph, ExecutionNode node,
                                                ExceptionHandlerAddressResolver exceptionResolver) throws UnhandledVirtualException {
         if (node.mayThrowException()) {
-            for (Throwable exception : node.getExceptions()) {
+            for (VirtualException exception : node.getExceptions()) {
                 if (log.isTraceEnabled()) {
                     log.trace("{} may throw virtual exception: {}", node, exception);
                 }
@@ -47,7 +62,7 @@ public class NodeExecutor {
                 int childAddress = exceptionResolver.resolve(exception, node.getAddress());
                 if (childAddress >= 0) {
                     ExecutionNode childNode = spawnChild(graph, node, childAddress);
-                    childNode.getContext().getMethodState().assignExceptionRegister(exception);
+                    childNode.getContext().getMethodState().assignExceptionRegister(exception.getThrowable());
                 } else {
                     if (node.getChildLocations().length == 0) {
                         if (log.isErrorEnabled()) {
@@ -55,7 +70,7 @@ public class NodeExecutor {
                             log.error("{} unhandled virtual exception: {}", node, exception);
                         }
 
-                        throw new UnhandledVirtualException(exception);
+                        throw new UnhandledVirtualException(exception.getThrowable());
                     } else {
                         // Op has children, doesn't *always* throw, probably virtual exception
                         if (log.isTraceEnabled()) {
@@ -68,6 +83,88 @@ public class NodeExecutor {
     }
 
     public void execute(ExecutionNode node) throws UnhandledVirtualException {
+        execute(node, null);
+    }
+
+    /**
+     * Execute a node and, while its instruction can only continue to one next instruction, keep executing the following
+     * instructions with the same node and context. The node ends up in the pile of the last instruction it executed,
+     * and only that instruction's children are spawned.
+     *
+     * @param continuesAt tests if the node may go on to execute the instruction at an address, or null to execute just
+     *                    the one instruction
+     */
+    public void execute(ExecutionNode node, @Nullable IntPredicate continuesAt) throws UnhandledVirtualException {
+        if (profiler == null) {
+            executeNode(node, continuesAt);
+            return;
+        }
+
+        profiler.enterOp(node.getOp());
+        try {
+            executeNode(node, continuesAt);
+        } finally {
+            profiler.exitOp(node.getChildren().size());
+        }
+    }
+
+    /*
+     * Ops which don't change anything outside of the method and don't throw may be executed with the next op.
+     * Static field access and invocations may initialize classes or have side effects, so they end the node. The
+     * fill-array-data pseudo-instructions read the state of the instruction before them, so they're never continued.
+     */
+    private boolean continuesBlock(ExecutionNode node, @Nullable IntPredicate continuesAt) {
+        if (continuesAt == null || !node.getChildren().isEmpty() || node.mayThrowException()) {
+            return false;
+        }
+
+        Op op = node.getOp();
+        if (node.getSideEffectLevel() != SideEffect.Level.NONE || op instanceof InvokeOp || op instanceof SGetOp ||
+            op instanceof SPutOp || op instanceof FillArrayDataOp) {
+            return false;
+        }
+
+        MethodLocation[] childLocations = node.getChildLocations();
+        if (childLocations.length != 1) {
+            return false;
+        }
+
+        int childAddress = childLocations[0].getCodeAddress();
+        Op childOp = graph.getTemplateNode(childAddress).getOp();
+        if (childOp instanceof FillArrayDataOp || childOp instanceof FillArrayDataPayloadOp ||
+            childOp instanceof SwitchPayloadOp) {
+            return false;
+        }
+
+        return continuesAt.test(childAddress);
+    }
+
+    private void executeNode(ExecutionNode node,
+                             @Nullable IntPredicate continuesAt) throws UnhandledVirtualException {
+        executeOp(node);
+        if (continuesBlock(node, continuesAt)) {
+            graph.removeNode(node);
+            do {
+                Op nextOp = graph.getTemplateNode(node.getChildLocations()[0].getCodeAddress()).getOp();
+                if (profiler != null) {
+                    profiler.exitOp(0);
+                    profiler.enterOp(nextOp);
+                }
+                node.continueBlock(nextOp);
+                executeOp(node);
+            } while (continuesBlock(node, continuesAt));
+            graph.addNode(node);
+        }
+
+        spawnChildren(graph, node);
+        spawnExceptionChildren(graph, node, exceptionResolver);
+
+        if (log.isDebugEnabled()) {
+            log.debug("Context after:\n{}", node.getContext());
+        }
+    }
+
+    private void executeOp(ExecutionNode node) throws UnhandledVirtualException {
         if (log.isDebugEnabled()) {
             Op op = node.getOp();
             log.debug("Handling @{}: {}\nContext before:\n{}", op.getAddress(), op, node.getContext());
@@ -96,13 +193,6 @@ public class NodeExecutor {
             }
             spawnChild(graph, node, childAddress);
         }
-
-        spawnChildren(graph, node);
-        spawnExceptionChildren(graph, node, exceptionResolver);
-
-        if (log.isDebugEnabled()) {
-            log.debug("Context after:\n{}", node.getContext());
-        }
     }
 
 }
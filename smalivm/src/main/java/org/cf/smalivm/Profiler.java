@@ -0,0 +1,277 @@
+package org.cf.smalivm;
+
+import org.cf.smalivm.opcode.Op;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nullable;
+
+/**
+ * Records where execution time goes. For each op class and each method, it counts executions, wall time, nodes created,
+ * approximate bytes deep cloned by the heap, and time spent reflecting or emulating non-local methods.
+ *
+ * Profiling is off unless a profiler is given to {@link VirtualMachine#setProfiler(Profiler)}. One profiler may be
+ * shared by virtual machines on different threads, and each thread keeps its own call stack.
+ */
+public class Profiler {
+
+    // Profiler of the method executing on this thread, so heaps can report clones without knowing their virtual machine
+    private static final ThreadLocal<Profiler> active = new ThreadLocal<>();
+
+    private final Map<String, Stats> opToStats;
+    private final Map<String, Stats> methodToStats;
+    private final Map<String, LongAdder> stackToSelfTime;
+    private final ThreadLocal<Deque<Frame>> frames;
+
+    public Profiler() {
+        opToStats = new ConcurrentHashMap<>();
+        methodToStats = new ConcurrentHashMap<>();
+        stackToSelfTime = new ConcurrentHashMap<>();
+        frames = ThreadLocal.withInitial(ArrayDeque::new);
+    }
+
+    /**
+     * Record a deep clone of a value by whichever profiler is active on this thread, if any.
+     */
+    public static void recordClone(@Nullable Object value) {
+        Profiler profiler = active.get();
+        if (profiler == null) {
+            return;
+        }
+
+        Frame frame = profiler.frames.get().peek();
+        if (frame == null) {
+            return;
+        }
+
+        long bytes = estimateSize(value);
+        frame.stats.clonedBytes.add(bytes);
+        if (frame.opStats != null) {
+            frame.opStats.clonedBytes.add(bytes);
+        }
+    }
+
+    /*
+     * Rough size of a value and everything it holds. This is only to compare costs, e.g. a large array against many
+     * small strings, so object fields aren't followed.
+     */
+    private static long estimateSize(@Nullable Object value) {
+        if (value == null) {
+            return 0;
+        }
+
+        Class<?> klazz = value.getClass();
+        if (value instanceof String) {
+            return 40 + 2L * ((String) value).length();
+        } else if (klazz.isArray()) {
+            int length = Array.getLength(value);
+            Class<?> componentType = klazz.getComponentType();
+            if (!componentType.isPrimitive()) {
+                long size = 16 + 4L * length;
+                for (int i = 0; i < length; i++) {
+                    size += estimateSize(Array.get(value, i));
+                }
+
+                return size;
+            }
+
+            int componentSize;
+            if (componentType == long.class || componentType == double.class) {
+                componentSize = 8;
+            } else if (componentType == int.class || componentType == float.class) {
+                componentSize = 4;
+            } else if (componentType == short.class || componentType == char.class) {
+                componentSize = 2;
+            } else {
+                componentSize = 1;
+            }
+
+            return 16 + (long) componentSize * length;
+        }
+
+        return 16;
+    }
+
+    private static String toFrameName(String signature) {
+        // Collapsed stacks are separated by semicolons, so drop the ones ending class names
+        return signature.replace(";", "");
+    }
+
+    private static String toMillis(long nanos) {
+        return String.format("%.3f", nanos / 1_000_000.0);
+    }
+
+    public void enterMethod(String signature) {
+        Deque<Frame> stack = frames.get();
+        if (stack.isEmpty()) {
+            active.set(this);
+        }
+        Stats stats = methodToStats.computeIfAbsent(signature, k -> new Stats());
+        stack.push(new Frame(signature, stats, System.nanoTime()));
+    }
+
+    public void exitMethod() {
+        exitMethod(null);
+    }
+
+    /**
+     * Exit a non-local method which was executed by reflection or emulation rather than by the virtual machine.
+     *
+     * @param emulated true if it was emulated, false if it was reflected
+     */
+    public void exitNonLocalMethod(boolean emulated) {
+        exitMethod(emulated);
+    }
+
+    public void enterOp(Op op) {
+        Frame frame = frames.get().peek();
+        if (frame == null) {
+            return;
+        }
+
+        frame.opStats = opToStats.computeIfAbsent(op.getClass().getSimpleName(), k -> new Stats());
+        frame.opChildTime = frame.childTime;
+        frame.opStartTime = System.nanoTime();
+    }
+
+    public void exitOp(int nodesCreated) {
+        Frame frame = frames.get().peek();
+        if (frame == null || frame.opStats == null) {
+            return;
+        }
+
+        long elapsed = System.nanoTime() - frame.opStartTime;
+        Stats stats = frame.opStats;
+        stats.executions.increment();
+        stats.totalTime.add(elapsed);
+        // Time of any methods invoked by the op is counted for those methods
+        stats.selfTime.add(elapsed - (frame.childTime - frame.opChildTime));
+        stats.nodes.add(nodesCreated);
+        frame.stats.nodes.add(nodesCreated);
+        frame.opStats = null;
+    }
+
+    public void clear() {
+        opToStats.clear();
+        methodToStats.clear();
+        stackToSelfTime.clear();
+    }
+
+    /**
+     * Write a table for ops and one for methods, each sorted by self time, i.e. time not spent in invoked methods.
+     */
+    public void writeReport(Writer writer) throws IOException {
+        writeTable(writer, "Op", opToStats);
+        writer.write('\n');
+        writeTable(writer, "Method", methodToStats);
+        writer.flush();
+    }
+
+    /**
+     * Write each call stack and its self time in microseconds, one per line, in the collapsed stack format read by
+     * flame graph tools, e.g. "Lcaller->a()V;Lcallee->b()I 1234".
+     */
+    public void writeCollapsedStacks(Writer writer) throws IOException {
+        List<Map.Entry<String, LongAdder>> entries = new ArrayList<>(stackToSelfTime.entrySet());
+        entries.sort(Map.Entry.comparingByKey());
+        for (Map.Entry<String, LongAdder> entry : entries) {
+            long micros = entry.getValue().sum() / 1000;
+            if (micros > 0) {
+                writer.write(entry.getKey() + ' ' + micros + '\n');
+            }
+        }
+        writer.flush();
+    }
+
+    private void exitMethod(@Nullable Boolean emulated) {
+        Deque<Frame> stack = frames.get();
+        Frame frame = stack.peek();
+        long elapsed = System.nanoTime() - frame.startTime;
+        String stackName = buildStackName(stack);
+        stack.pop();
+
+        Stats stats = frame.stats;
+        stats.executions.increment();
+        stats.totalTime.add(elapsed);
+        stats.selfTime.add(elapsed - frame.childTime);
+        if (emulated != null) {
+            (emulated ? stats.emulationTime : stats.reflectionTime).add(elapsed);
+        }
+        stackToSelfTime.computeIfAbsent(stackName, k -> new LongAdder()).add(elapsed - frame.childTime);
+
+        Frame parent = stack.peek();
+        if (parent == null) {
+            active.remove();
+        } else {
+            parent.childTime += elapsed;
+        }
+    }
+
+    private String buildStackName(Deque<Frame> stack) {
+        StringBuilder sb = new StringBuilder();
+        for (Iterator<Frame> it = stack.descendingIterator(); it.hasNext(); ) {
+            sb.append(toFrameName(it.next().signature));
+            if (it.hasNext()) {
+                sb.append(';');
+            }
+        }
+
+        return sb.toString();
+    }
+
+    private void writeTable(Writer writer, String title, Map<String, Stats> nameToStats) throws IOException {
+        List<Map.Entry<String, Stats>> entries = new ArrayList<>(nameToStats.entrySet());
+        entries.sort(Comparator.comparingLong((Map.Entry<String, Stats> e) -> e.getValue().selfTime.sum()).reversed());
+        writer.write(String.format("%-12s %-12s %-12s %-10s %-14s %-12s %-12s %s%n", "Self ms", "Total ms",
+                "Executions", "Nodes", "Cloned bytes", "Reflect ms", "Emulate ms", title));
+        for (Map.Entry<String, Stats> entry : entries) {
+            Stats stats = entry.getValue();
+            writer.write(String.format("%-12s %-12s %-12d %-10d %-14d %-12s %-12s %s%n", toMillis(stats.selfTime.sum()),
+                    toMillis(stats.totalTime.sum()), stats.executions.sum(), stats.nodes.sum(),
+                    stats.clonedBytes.sum(), toMillis(stats.reflectionTime.sum()),
+                    toMillis(stats.emulationTime.sum()), entry.getKey()));
+        }
+    }
+
+    private static class Stats {
+
+        private final LongAdder executions = new LongAdder();
+        private final LongAdder totalTime = new LongAdder();
+        private final LongAdder selfTime = new LongAdder();
+        private final LongAdder nodes = new LongAdder();
+        private final LongAdder clonedBytes = new LongAdder();
+        private final LongAdder reflectionTime = new LongAdder();
+        private final LongAdder emulationTime = new LongAdder();
+
+    }
+
+    private static class Frame {
+
+        private final String signature;
+        private final Stats stats;
+        private final long startTime;
+        private long childTime;
+        private Stats opStats;
+        private long opStartTime;
+        private long opChildTime;
+
+        Frame(String signature, Stats stats, long startTime) {
+            this.signature = signature;
+            this.stats = stats;
+            this.startTime = startTime;
+        }
+
+    }
+
+}
@@ -0,0 +1,77 @@
+package org.cf.smalivm;
+
+import java.lang.reflect.Constructor;
+
+import javax.annotation.Nullable;
+
+/**
+ * An exception which an instruction may throw. Most instructions which may throw never do, so this is just the class and
+ * message, and the {@link Throwable} is only built when it's needed, e.g. when it's assigned to a register.
+ */
+public class VirtualException {
+
+    private static final StackTraceElement[] NO_STACK_TRACE = new StackTraceElement[0];
+
+    private final Class<? extends Throwable> exceptionClass;
+    private final String message;
+    private Throwable exception;
+
+    public VirtualException(Class<? extends Throwable> exceptionClass, @Nullable String message) {
+        this.exceptionClass = exceptionClass;
+        this.message = message;
+    }
+
+    /**
+     * Describe an exception which already exists, e.g. one thrown by an emulated method.
+     */
+    public VirtualException(Throwable exception) {
+        exceptionClass = exception.getClass();
+        message = exception.getMessage();
+        this.exception = exception;
+    }
+
+    public Class<? extends Throwable> getExceptionClass() {
+        return exceptionClass;
+    }
+
+    public
+    @Nullable
+    String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return the exception, built the first time it's needed
+     */
+    public synchronized Throwable getThrowable() {
+        if (exception == null) {
+            exception = build();
+        }
+
+        return exception;
+    }
+
+    @Override
+    public String toString() {
+        String className = exceptionClass.getName();
+
+        return message == null ? className : className + ": " + message;
+    }
+
+    private Throwable build() {
+        Throwable throwable;
+        try {
+            Constructor<? extends Throwable> ctor = exceptionClass.getDeclaredConstructor(String.class);
+            ctor.setAccessible(true);
+            throwable = ctor.newInstance(message);
+        } catch (Exception e) {
+            e.printStackTrace();
+            throwable = new Exception();
+        }
+        // It's a virtual exception, so where it was built in the virtual machine doesn't matter
+        throwable.setStackTrace(NO_STACK_TRACE);
+
+        return throwable;
+    }
+
+}
@@ -7,7 +7,10 @@ import org.cf.smalivm.context.ExecutionGraph;
 import org.cf.smalivm.context.ExecutionNode;
 import org.cf.smalivm.context.HeapItem;
 import org.cf.smalivm.context.MethodState;
+import org.cf.smalivm.dex.MethodCompiler;
 import org.cf.smalivm.dex.SmaliClassLoader;
+import org.cf.smalivm.jfr.MethodExecutionEvent;
+import org.cf.smalivm.jfr.VirtualMachineEvent;
 import org.cf.smalivm.type.ClassManager;
 import org.cf.smalivm.type.VirtualClass;
 import org.cf.smalivm.type.VirtualField;
@@ -17,12 +20,20 @@ import org.cf.util.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Nullable;
 
+/**
+ * Executes methods and keeps the state shared between executions, e.g. template execution graphs and loaded classes.
+ *
+ * A virtual machine may be used by several threads at once, as long as each thread executes different methods with its
+ * own execution contexts. Template graphs and classes are built at most once and shared. Ops are shared between every
+ * graph spawned for a method, so details of a particular execution, e.g. the side effect level of an invoke, are kept
+ * by the execution node. Any number of virtual machines may share one {@link ClassManager}.
+ */
 public class VirtualMachine {
 
     private static final Logger log = LoggerFactory.getLogger(VirtualMachine.class.getSimpleName());
@@ -34,17 +45,21 @@ public class VirtualMachine {
     private final StaticFieldAccessor staticFieldAccessor;
     private final Configuration configuration;
     private final ExceptionFactory exceptionFactory;
+    private final MethodSummaryCache methodSummaryCache;
+    private final MethodCompiler methodCompiler;
+    private boolean compileMethods;
 
     VirtualMachine(ClassManager manager, int maxAddressVisits, int maxCallDepth, int maxMethodVisits,
                    int maxExecutionTime) {
         this.classManager = manager;
         classLoader = new SmaliClassLoader(classManager);
-        methodExecutor =
-                new MethodExecutor(classManager, maxCallDepth, maxAddressVisits, maxMethodVisits, maxExecutionTime);
-        methodToTemplateExecutionGraph = new HashMap<>();
+        methodExecutor = new MethodExecutor(maxCallDepth, maxAddressVisits, maxMethodVisits, maxExecutionTime);
+        methodToTemplateExecutionGraph = new ConcurrentHashMap<>();
         staticFieldAccessor = new StaticFieldAccessor(this);
         configuration = Configuration.instance();
         exceptionFactory = new ExceptionFactory(this);
+        methodSummaryCache = new MethodSummaryCache();
+        methodCompiler = new MethodCompiler(classLoader, configuration, maxMethodVisits);
     }
 
     private static String getClassNameFromMethodSignature(String methodSignature) {
@@ -123,17 +138,41 @@ public class VirtualMachine {
 
         calleeContext.staticallyInitializeClassIfNecessary(virtualMethod.getDefiningClass());
 
-        ExecutionGraph graph = spawnInstructionGraph(virtualMethod);
-        ExecutionNode rootNode = new ExecutionNode(graph.getRoot());
-        rootNode.setContext(calleeContext);
-        graph.addNode(rootNode);
+        ExecutionGraph graph = null;
+        MethodExecutionEvent event = new MethodExecutionEvent(virtualMethod.getSignature());
+        event.begin();
+        Throwable failure = null;
+        try {
+            ExecutionGraph execution = null;
+            if (callerContext != null && methodExecutor.isExecutingConcretely() && hasKnownParameters(calleeContext)) {
+                // Execute in a child so nothing needs to be undone if it has to be executed again
+                ExecutionContext concreteContext = calleeContext.spawnChild();
+                if (calleeContext.getCallerContext() != null) {
+                    concreteContext.registerCaller(calleeContext.getCallerContext(), calleeContext.getCallerAddress());
+                }
+                graph = spawnRootedGraph(virtualMethod, concreteContext);
+                execution = methodExecutor.executeConcretely(graph);
+            }
+            if (execution == null) {
+                graph = spawnRootedGraph(virtualMethod, calleeContext);
+                execution = methodExecutor.execute(graph, callerContext != null);
+            }
+            if ((execution != null) && (callerContext != null)) {
+                collapseMultiverse(virtualMethod, graph, callerContext, parameterRegisters);
+            }
 
-        ExecutionGraph execution = methodExecutor.execute(graph);
-        if ((execution != null) && (callerContext != null)) {
-            collapseMultiverse(virtualMethod, graph, callerContext, parameterRegisters);
+            return execution;
+        } catch (VirtualMachineException | RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            if (event.shouldCommit()) {
+                event.setCallDepth(calleeContext.getCallDepth());
+                event.setNodeCount(graph == null ? 0 : graph.getNodeCount());
+                event.setOutcome(VirtualMachineEvent.getOutcome(failure));
+                event.commit();
+            }
         }
-
-        return execution;
     }
 
     public SmaliClassLoader getClassLoader() {
@@ -148,6 +187,14 @@ public class VirtualMachine {
         return configuration;
     }
 
+    public MethodCompiler getMethodCompiler() {
+        return methodCompiler;
+    }
+
+    public MethodSummaryCache getMethodSummaryCache() {
+        return methodSummaryCache;
+    }
+
     public StaticFieldAccessor getStaticFieldAccessor() {
         return staticFieldAccessor;
     }
@@ -156,11 +203,111 @@ public class VirtualMachine {
         return getConfiguration().isSafe(virtualClass.toString());
     }
 
+    public boolean isMergingJoinStates() {
+        return methodExecutor.isMergingJoinStates();
+    }
+
+    /**
+     * When several execution paths reach the same instruction, merge their states and continue executing only one node
+     * instead of one for each path. Values which differ between the paths become unknown. This trades precision for
+     * execution graphs which grow with the size of the method rather than the number of paths through it.
+     *
+     * @param mergeJoinStates true to merge states at join points, false to execute every path separately (default)
+     */
+    public void setMergeJoinStates(boolean mergeJoinStates) {
+        methodExecutor.setMergeJoinStates(mergeJoinStates);
+    }
+
+    public boolean isExecutingConcretely() {
+        return methodExecutor.isExecutingConcretely();
+    }
+
+    /**
+     * Execute invoked methods whose arguments are all known, including class initializers, along their only path
+     * without a node for each instruction. If a branch or exception can't be decided because of an unknown value, the
+     * method is executed again normally. This is much faster for methods such as string decryptors which are usually
+     * invoked with constants.
+     *
+     * @param executeConcretely true to execute invoked methods with known arguments concretely, false to always execute
+     *                          every path (default)
+     */
+    public void setExecuteConcretely(boolean executeConcretely) {
+        methodExecutor.setExecuteConcretely(executeConcretely);
+    }
+
+    public boolean isCompilingMethods() {
+        return compileMethods;
+    }
+
+    /**
+     * Compile local methods to JVM bytecode once an execution shows they have no side effects, and run the compiled
+     * code when they're invoked again with known, immutable arguments. If the compiled code throws or loops too long,
+     * the method is executed normally. Only simple methods, e.g. those which only do math, build strings, or work
+     * with arrays, can be compiled.
+     *
+     * @param compileMethods true to compile methods without side effects, false to always execute them (default)
+     */
+    public void setCompileMethods(boolean compileMethods) {
+        this.compileMethods = compileMethods;
+    }
+
+    public boolean isExecutingBasicBlocks() {
+        return methodExecutor.isExecutingBasicBlocks();
+    }
+
+    /**
+     * Execute methods invoked by other methods, including class initializers, a basic block per node rather than an
+     * instruction per node. Instructions in a block which can't branch, throw, or have side effects are executed with
+     * one context, so far fewer nodes and contexts are created. Graphs returned by executing a method directly always
+     * have a node for each instruction since they may be inspected or optimized.
+     *
+     * @param executeBasicBlocks true to execute invoked methods by basic blocks, false for every instruction (default)
+     */
+    public void setExecuteBasicBlocks(boolean executeBasicBlocks) {
+        methodExecutor.setExecuteBasicBlocks(executeBasicBlocks);
+    }
+
+    @Nullable
+    public Profiler getProfiler() {
+        return methodExecutor.getProfiler();
+    }
+
+    /**
+     * Record where execution time goes, for each op and method. Profiling adds some overhead, so it's off by default.
+     *
+     * @param profiler profiler to record with, which may be shared by several virtual machines, or null to stop
+     */
+    public void setProfiler(@Nullable Profiler profiler) {
+        methodExecutor.setProfiler(profiler);
+    }
+
+    public int getLoopWideningThreshold() {
+        return methodExecutor.getLoopWideningThreshold();
+    }
+
+    /**
+     * Loops whose exit depends on an unknown value would otherwise be executed until the address visit limit is
+     * exceeded. After this many iterations without knowing whether to exit, values which change each iteration are made
+     * unknown and the loop stops once an iteration has nothing new to execute. This is off by default since it's less
+     * precise.
+     *
+     * @param loopWideningThreshold iterations before widening, or 0 to disable widening
+     */
+    public void setLoopWideningThreshold(int loopWideningThreshold) {
+        methodExecutor.setLoopWideningThreshold(loopWideningThreshold);
+    }
+
     public ExecutionGraph spawnInstructionGraph(VirtualMethod method) {
-        if (!methodToTemplateExecutionGraph.containsKey(method)) {
-            updateInstructionGraph(method);
-        }
         ExecutionGraph graph = methodToTemplateExecutionGraph.get(method);
+        if (graph == null) {
+            // Not computeIfAbsent() since building a template may be slow and shouldn't block other methods. If two
+            // threads race, both build one but only the first is kept so every spawned graph shares the same ops.
+            ExecutionGraph newGraph = new ExecutionGraph(this, method);
+            graph = methodToTemplateExecutionGraph.putIfAbsent(method, newGraph);
+            if (graph == null) {
+                graph = newGraph;
+            }
+        }
 
         return new ExecutionGraph(graph);
     }
@@ -212,6 +359,16 @@ public class VirtualMachine {
         methodToTemplateExecutionGraph.put(method, graph);
     }
 
+    /**
+     * Forget the template graph for a method so it's rebuilt the next time the method is executed. Use this when the
+     * method implementation was changed by something other than this virtual machine.
+     *
+     * @param method method whose implementation has changed
+     */
+    public void invalidateInstructionGraph(VirtualMethod method) {
+        methodToTemplateExecutionGraph.remove(method);
+    }
+
     public ExceptionFactory getExceptionFactory() {
         return exceptionFactory;
     }
@@ -286,6 +443,20 @@ public class VirtualMachine {
         }
     }
 
+    private static boolean hasKnownParameters(ExecutionContext context) {
+        MethodState mState = context.getMethodState();
+        int parameterRegister = mState.getParameterStart();
+        for (String type : context.getMethod().getParameterTypeNames()) {
+            HeapItem item = mState.peekParameter(parameterRegister);
+            if (item == null || item.isUnknown()) {
+                return false;
+            }
+            parameterRegister += Utils.getRegisterSize(type);
+        }
+
+        return true;
+    }
+
     private void inheritClassStates(ExecutionContext parentContext, ExecutionContext childContext) {
         for (VirtualClass virtualClass : classManager.getLoadedClasses()) {
             if (!parentContext.isClassInitialized(virtualClass)) {
@@ -304,4 +475,13 @@ public class VirtualMachine {
         }
     }
 
+    private ExecutionGraph spawnRootedGraph(VirtualMethod method, ExecutionContext rootContext) {
+        ExecutionGraph graph = spawnInstructionGraph(method);
+        ExecutionNode rootNode = new ExecutionNode(graph.getRoot());
+        rootNode.setContext(rootContext);
+        graph.addNode(rootNode);
+
+        return graph;
+    }
+
 }
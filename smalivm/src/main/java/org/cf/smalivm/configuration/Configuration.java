@@ -46,14 +46,14 @@ public class Configuration {
      * @return
      */
     public boolean isSafe(String typeSignature) {
-        String[] parts = typeSignature.split("->");
-        String className = parts[0];
+        int methodStart = typeSignature.indexOf("->");
+        String className = methodStart < 0 ? typeSignature : typeSignature.substring(0, methodStart);
 
         if (safeClasses.contains(className) && !unsafeMethods.contains(typeSignature)) {
             return true;
         }
 
-        if (parts.length > 1) {
+        if (methodStart >= 0) {
             // It's a method name
             if (safeMethods.contains(typeSignature)) {
                 return true;
@@ -67,7 +67,7 @@ public class Configuration {
         return !unsafeMethods.contains(methodDescriptor);
     }
 
-    public static Configuration instance() {
+    public static synchronized Configuration instance() {
         if (instance == null) {
             instance = new Configuration();
         }
@@ -1,8 +1,5 @@
 package org.cf.smalivm.context;
 
-import gnu.trove.set.TIntSet;
-import gnu.trove.set.hash.TIntHashSet;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -10,16 +7,17 @@ class BaseState {
 
     private static final Logger log = LoggerFactory.getLogger(BaseState.class.getSimpleName());
 
+    private static final int[] NO_REGISTERS = new int[0];
+
     private final int registerCount;
-    private final TIntSet registersAssigned;
-    private final TIntSet registersRead;
+    // The number of instances of contexts in memory could be very high, so these are only created when needed
+    private RegisterSet registersAssigned;
+    private RegisterSet registersRead;
 
     private final ExecutionContext context;
 
     BaseState(BaseState parent, ExecutionContext context) {
         registerCount = parent.registerCount;
-        registersAssigned = new TIntHashSet();
-        registersRead = new TIntHashSet();
         this.context = context;
     }
 
@@ -28,10 +26,6 @@ class BaseState {
     }
 
     BaseState(ExecutionContext context, int registerCount) {
-        // The number of instances of contexts in memory could be very high. Allocate minimally.
-        registersAssigned = new TIntHashSet();
-        registersRead = new TIntHashSet();
-
         // This is locals + parameters
         this.registerCount = registerCount;
 
@@ -43,29 +37,29 @@ class BaseState {
     }
 
     public int[] getRegistersAssigned() {
-        return registersAssigned.toArray();
+        return registersAssigned == null ? NO_REGISTERS : registersAssigned.toArray();
     }
 
     public int[] getRegistersRead() {
-        return registersRead.toArray();
+        return registersRead == null ? NO_REGISTERS : registersRead.toArray();
     }
 
     public boolean wasRegisterAssigned(int register) {
-        return registersAssigned.contains(register);
+        return registersAssigned != null && registersAssigned.contains(register);
     }
 
-    void assignRegister(int register, HeapItem item, String heapId) {
-        registersAssigned.add(register);
+    void assignRegister(int register, HeapItem item, int heapId) {
+        markAssigned(register);
         pokeRegister(register, item, heapId);
     }
 
-    void assignRegisterAndUpdateIdentities(int register, HeapItem item, String heapId) {
-        registersAssigned.add(register);
+    void assignRegisterAndUpdateIdentities(int register, HeapItem item, int heapId) {
+        markAssigned(register);
         context.getHeap().update(heapId, register, item);
     }
 
-    void updateKey(String key, HeapItem item) {
-        context.getHeap().update(key, item);
+    void updateIdentities(int register, HeapItem item, int heapId) {
+        context.getHeap().update(heapId, register, item);
     }
 
     ExecutionContext getContext() {
@@ -82,15 +76,15 @@ class BaseState {
         return parent;
     }
 
-    boolean hasRegister(int register, String heapId) {
+    boolean hasRegister(int register, int heapId) {
         return context.getHeap().hasRegister(heapId, register);
     }
 
-    HeapItem peekRegister(int register, String heapId) {
+    HeapItem peekRegister(int register, int heapId) {
         return context.getHeap().get(heapId, register);
     }
 
-    void pokeRegister(int register, HeapItem item, String heapId) {
+    void pokeRegister(int register, HeapItem item, int heapId) {
         if (log.isTraceEnabled()) {
             StringBuilder sb = new StringBuilder();
             sb.append("Setting ").append(heapId).append(':').append(register).append(" = ").append(item);
@@ -105,18 +99,82 @@ class BaseState {
         context.getHeap().set(heapId, register, item);
     }
 
-    HeapItem readRegister(int register, String heapId) {
-        registersRead.add(register);
+    HeapItem readRegister(int register, int heapId) {
+        markRead(register);
 
         return peekRegister(register, heapId);
     }
 
-    void removeRegister(int register, String heapId) {
+    HeapItem readSharedRegister(int register, int heapId) {
+        markRead(register);
+
+        return context.getHeap().getShared(heapId, register);
+    }
+
+    /*
+     * Keep this state's value if the other state has the same value, otherwise make it unknown.
+     */
+    void mergeRegister(BaseState other, int register, int heapId) {
+        HeapItem item = context.getHeap().peek(heapId, register);
+        HeapItem otherItem = other.context.getHeap().peek(heapId, register);
+        if (item == null && otherItem == null) {
+            return;
+        }
+        if (item != null && otherItem != null && isSameValue(item, otherItem)) {
+            return;
+        }
+
+        String type = item != null ? item.getType() : otherItem.getType();
+        pokeRegister(register, HeapItem.newUnknown(type), heapId);
+    }
+
+    /*
+     * Make this state's value unknown if it changed since a previous state. A previous unknown value covers any value
+     * of this state, so it isn't a change. This way, repeatedly widening a loop's states reaches a fixed point.
+     *
+     * Returns true if a known value changed.
+     */
+    boolean widenRegister(BaseState previous, int register, int heapId) {
+        HeapItem item = context.getHeap().peek(heapId, register);
+        HeapItem previousItem = previous.context.getHeap().peek(heapId, register);
+        if (item == null && previousItem == null) {
+            return false;
+        }
+        if (item != null && previousItem != null && isSameValue(item, previousItem)) {
+            return false;
+        }
+
+        if (item == null || !item.isUnknown()) {
+            String type = item != null ? item.getType() : previousItem.getType();
+            pokeRegister(register, HeapItem.newUnknown(type), heapId);
+        }
+
+        return previousItem == null || !previousItem.isUnknown();
+    }
+
+    void removeRegister(int register, int heapId) {
         context.getHeap().remove(heapId, register);
     }
 
-    boolean wasRegisterRead(int register, String heapId) {
-        if (registersRead.contains(register)) {
+    private static boolean isSameValue(HeapItem item, HeapItem otherItem) {
+        if (!item.getType().equals(otherItem.getType())) {
+            return false;
+        }
+        if (item.getValue() == otherItem.getValue()) {
+            return true;
+        }
+        if (item.isUnknown() && otherItem.isUnknown()) {
+            return true;
+        }
+
+        // Equal mutable objects may be aliased by different registers in each state, so they're not the same
+        return item.isImmutable() && item.equals(otherItem);
+    }
+
+    boolean wasRegisterRead(int register, int heapId) {
+        if (registersRead == null) {
+            return false;
+        } else if (registersRead.contains(register)) {
             return true;
         }
 
@@ -130,17 +188,24 @@ class BaseState {
          * However, result register must be excluded because move-result will always read and assign an identical object
          * every time it's executed.
          */
-        for (int currentRegister : getRegistersRead()) {
-            if (currentRegister == MethodState.ResultRegister) {
-                continue;
-            }
-            HeapItem currentItem = peekRegister(currentRegister, heapId);
-            if (item.getValue() == currentItem.getValue()) {
-                return true;
-            }
+        Object value = item.getValue();
+
+        return registersRead.anyMatch(currentRegister -> currentRegister != MethodState.ResultRegister &&
+                                                         value == peekRegister(currentRegister, heapId).getValue());
+    }
+
+    private void markAssigned(int register) {
+        if (registersAssigned == null) {
+            registersAssigned = new RegisterSet(registerCount);
         }
+        registersAssigned.add(register);
+    }
 
-        return false;
+    private void markRead(int register) {
+        if (registersRead == null) {
+            registersRead = new RegisterSet(registerCount);
+        }
+        registersRead.add(register);
     }
 
 }
@@ -11,6 +11,8 @@ public class ClassState extends BaseState {
 
     private static final Logger log = LoggerFactory.getLogger(ClassState.class.getSimpleName());
 
+    private static final int FIELD_HEAP_OFFSET = MethodState.MUTABLE_PARAMETER_HEAP + 1;
+
     private final VirtualGeneric virtualClass;
 
     public ClassState(VirtualGeneric virtualClass, ExecutionContext context) {
@@ -25,14 +27,14 @@ public class ClassState extends BaseState {
 
     public void assignField(VirtualField field, Object value) {
         int register = 0;
-        String heapId = getHeapId(field);
+        int heapId = getHeapId(field);
         String type = field.getType();
         assignRegister(register, new HeapItem(value, type), heapId);
     }
 
     public void assignField(VirtualField field, HeapItem item) {
         int register = 0;
-        String heapId = getHeapId(field);
+        int heapId = getHeapId(field);
         assignRegister(register, item, heapId);
     }
 
@@ -77,7 +79,7 @@ public class ClassState extends BaseState {
 
     public HeapItem peekField(VirtualField field) {
         int register = 0;
-        String heapId = getHeapId(field);
+        int heapId = getHeapId(field);
         HeapItem fieldItem = peekRegister(register, heapId);
         if (fieldItem == null) {
             log.error("Undefined field: {}; returning unknown", field);
@@ -89,25 +91,42 @@ public class ClassState extends BaseState {
 
     public void pokeField(VirtualField field, Object value) {
         int register = 0;
-        String heapId = getHeapId(field);
+        int heapId = getHeapId(field);
         String type = field.getType();
         pokeRegister(register, new HeapItem(value, type), heapId);
     }
 
     public void pokeField(VirtualField field, HeapItem item) {
         int register = 0;
-        String heapId = getHeapId(field);
+        int heapId = getHeapId(field);
         pokeRegister(register, item, heapId);
     }
 
     public void updateIdentities(VirtualField field, HeapItem item) {
         int register = 0;
-        String heapId = getHeapId(field);
-        String heapKey = heapId + ":" + register;
-        updateKey(heapKey, item);
+        int heapId = getHeapId(field);
+        updateIdentities(register, item, heapId);
+    }
+
+    void merge(ClassState other) {
+        int register = 0;
+        for (VirtualField field : virtualClass.getFields()) {
+            mergeRegister(other, register, getHeapId(field));
+        }
+    }
+
+    boolean widen(ClassState previous) {
+        int register = 0;
+        boolean changed = false;
+        for (VirtualField field : virtualClass.getFields()) {
+            changed |= widenRegister(previous, register, getHeapId(field));
+        }
+
+        return changed;
     }
 
-    private String getHeapId(VirtualField field) {
-        return field.toString();
+    private int getHeapId(VirtualField field) {
+        // Each field gets its own heap, after the method heaps
+        return FIELD_HEAP_OFFSET + field.getId();
     }
 }
@@ -28,7 +28,7 @@ class ClonerFactory {
      * The reason there is some ClassManager related caching is to speed up tests, i.e. to prevent having to read
      * configuration, create classes, and create a new cloner for every test.
      */
-    static Cloner build(VirtualMachine vm) {
+    static synchronized Cloner build(VirtualMachine vm) {
         ClassManager classManager = vm.getClassManager();
         Cloner cloner = cache.get(classManager);
         if (cloner != null) {
@@ -7,6 +7,8 @@ import org.cf.smalivm.TemplateStateFactory;
 import org.cf.smalivm.UnhandledVirtualException;
 import org.cf.smalivm.VirtualMachine;
 import org.cf.smalivm.VirtualMachineException;
+import org.cf.smalivm.jfr.ClassInitializationEvent;
+import org.cf.smalivm.jfr.VirtualMachineEvent;
 import org.cf.smalivm.type.VirtualClass;
 import org.cf.smalivm.type.VirtualGeneric;
 import org.cf.smalivm.type.VirtualMethod;
@@ -15,6 +17,7 @@ import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Modifier;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -135,6 +138,48 @@ public class ExecutionContext {
         return peekClassState(virtualClass);
     }
 
+    /**
+     * Merge the state of another execution of the same instruction into this one, so execution can continue from one
+     * node instead of both. Registers and fields which don't have the same value in both become unknown.
+     *
+     * @param other context for the same instruction and call which won't be executed
+     * @return true if merged, false if the contexts differ in which classes are initialized and can't be merged
+     */
+    public boolean merge(ExecutionContext other) {
+        Set<VirtualGeneric> initializedClasses = getAllInitializedClasses();
+        if (!initializedClasses.equals(other.getAllInitializedClasses())) {
+            return false;
+        }
+
+        mState.merge(other.getMethodState());
+        for (VirtualGeneric virtualClass : initializedClasses) {
+            peekClassState(virtualClass).merge(other.peekClassState(virtualClass));
+        }
+
+        return true;
+    }
+
+    /**
+     * Widen this context, which starts another iteration of a loop, against the context which started an earlier
+     * iteration. Registers and fields which changed become unknown so that iterating again eventually stops changing
+     * anything.
+     *
+     * @param previous context of the same instruction in an earlier iteration
+     * @return true if any known value changed since the earlier iteration, false if this iteration would repeat it
+     */
+    public boolean widen(ExecutionContext previous) {
+        Set<VirtualGeneric> initializedClasses = getAllInitializedClasses();
+        boolean changed = !initializedClasses.equals(previous.getAllInitializedClasses());
+        changed |= mState.widen(previous.getMethodState());
+        for (VirtualGeneric virtualClass : initializedClasses) {
+            if (previous.isClassInitialized(virtualClass)) {
+                changed |= peekClassState(virtualClass).widen(previous.peekClassState(virtualClass));
+            }
+        }
+
+        return changed;
+    }
+
     public void registerCaller(ExecutionContext callerContext, int callerAddress) {
         this.callDepth = callerContext.getCallDepth() + 1;
         this.callerContext = callerContext;
@@ -201,14 +246,26 @@ public class ExecutionContext {
         ClassState cState = initContext.peekClassState(virtualClass);
         initContext.initializeClass(cState, SideEffect.Level.NONE);
 
+        ClassInitializationEvent event = new ClassInitializationEvent(virtualClass.getName());
+        event.begin();
         ExecutionGraph graph = null;
+        String outcome = VirtualMachineEvent.EXCEPTION;
         try {
             graph = vm.execute(method, initContext, this, null);
+            outcome = VirtualMachineEvent.SUCCESS;
         } catch (VirtualMachineException e) {
+            outcome = VirtualMachineEvent.getOutcome(e);
             log.warn(e.toString());
             if (e instanceof UnhandledVirtualException) {
                 // TODO: handle this properly by bubbling up the exception
             }
+        } finally {
+            if (event.shouldCommit()) {
+                event.setCallDepth(getCallDepth());
+                event.setNodeCount(graph == null ? 0 : graph.getNodeCount());
+                event.setOutcome(outcome);
+                event.commit();
+            }
         }
 
         SideEffect.Level sideEffectLevel;
@@ -246,6 +303,23 @@ public class ExecutionContext {
         return heap;
     }
 
+    private Set<VirtualGeneric> getAllInitializedClasses() {
+        // The closest ancestor with a status for a class decides if it's initialized
+        Set<VirtualGeneric> seenClasses = new HashSet<>();
+        Set<VirtualGeneric> initializedClasses = new HashSet<>();
+        ExecutionContext ancestor = this;
+        do {
+            for (Entry<VirtualGeneric, ClassStatus> entry : ancestor.classToStatus.entrySet()) {
+                if (seenClasses.add(entry.getKey()) && entry.getValue().isInitialized()) {
+                    initializedClasses.add(entry.getKey());
+                }
+            }
+            ancestor = ancestor.getParent();
+        } while (ancestor != null);
+
+        return initializedClasses;
+    }
+
     private ExecutionContext getAncestorWithClass(VirtualGeneric virtualClass) {
         ExecutionContext ancestor = this;
         do {
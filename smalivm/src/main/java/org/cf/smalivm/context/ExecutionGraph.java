@@ -5,6 +5,7 @@ import gnu.trove.list.linked.TIntLinkedList;
 import gnu.trove.map.TIntObjectMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
 
+import org.cf.smalivm.ExceptionHandlerAddressResolver;
 import org.cf.smalivm.SideEffect;
 import org.cf.smalivm.VirtualMachine;
 import org.cf.smalivm.opcode.Op;
@@ -23,6 +24,7 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -40,30 +42,55 @@ public class ExecutionGraph implements Iterable<ExecutionNode> {
     protected static final int TEMPLATE_NODE_INDEX = 0;
     protected static final int METHOD_ROOT_ADDRESS = 0;
     private static final Logger log = LoggerFactory.getLogger(ExecutionGraph.class.getSimpleName());
-    protected final Map<MethodLocation, List<ExecutionNode>> locationToNodePile;
     protected final TIntObjectMap<MethodLocation> addressToLocation;
+
+    /*
+     * Locations, template nodes and node piles are kept in arrays indexed by instruction index, and addresses are
+     * mapped to indexes by a dense array, so finding the pile of a node or an address doesn't need any hashing.
+     *
+     * Template nodes are shared by every graph spawned from the same template, and a node pile, starting with a copy
+     * of the template node, is only built once something is added at that location. Most methods only visit some of
+     * their addresses, and building every pile up front made spawning cost more than executing for large methods.
+     */
+    private MethodLocation[] locations;
+    private int[] addressToIndex;
+    private ExecutionNode[] templateNodes;
+    private List<ExecutionNode>[] nodePiles;
     private final VirtualMachine vm;
     private final VirtualMethod method;
     private final int[] terminatingAddresses;
+    private final ExceptionHandlerAddressResolver exceptionResolver;
 
+    /**
+     * Spawn a new graph with the same template nodes as {@code other} but no executed nodes.
+     */
     public ExecutionGraph(ExecutionGraph other) {
         method = other.method;
-        locationToNodePile = new HashMap<>();
-        for (MethodLocation location : other.locationToNodePile.keySet()) {
-            List<ExecutionNode> otherNodePile = other.locationToNodePile.get(location);
-            List<ExecutionNode> nodePile = new ArrayList<>(otherNodePile.size());
-            nodePile.addAll(otherNodePile.stream().map(ExecutionNode::new).collect(Collectors.toList()));
-            locationToNodePile.put(location, nodePile);
-        }
+        locations = other.locations;
+        addressToIndex = other.addressToIndex;
+        templateNodes = other.templateNodes;
+        nodePiles = newNodePiles(locations.length);
         terminatingAddresses = other.terminatingAddresses;
+        exceptionResolver = other.exceptionResolver;
         addressToLocation = other.addressToLocation;
         vm = other.vm;
     }
 
+    /**
+     * Wrap {@code other} so its node piles can be manipulated directly. The wrapped graph shouldn't be used afterward
+     * since node piles are rebuilt into new arrays as instructions are added and removed.
+     */
     public ExecutionGraph(ExecutionGraph other, boolean wrap) {
+        // Wrapping graphs manipulate the node piles directly, so they must all exist.
+        other.buildMissingNodePiles();
+
         method = other.method;
-        locationToNodePile = other.locationToNodePile;
+        locations = other.locations;
+        addressToIndex = other.addressToIndex;
+        templateNodes = other.templateNodes;
+        nodePiles = other.nodePiles;
         terminatingAddresses = other.terminatingAddresses;
+        exceptionResolver = other.exceptionResolver;
         addressToLocation = other.addressToLocation;
         vm = other.vm;
     }
@@ -72,9 +99,20 @@ public class ExecutionGraph implements Iterable<ExecutionNode> {
         this.method = method;
         MutableMethodImplementation implementation = method.getImplementation();
         addressToLocation = buildAddressToLocation(implementation);
-        locationToNodePile = buildLocationToNodePile(vm, addressToLocation);
         List<BuilderInstruction> instructions = implementation.getInstructions();
+        locations = buildLocations(instructions);
+        addressToIndex = buildAddressToIndex(locations);
+        templateNodes = buildTemplateNodes(vm, addressToLocation, locations);
+        nodePiles = newNodePiles(locations.length);
+        for (int i = 0; i < templateNodes.length; i++) {
+            // Most node piles will be a template node and 1+ ExecutionNodes.
+            List<ExecutionNode> pile = new ArrayList<>(2);
+            pile.add(templateNodes[i]);
+            nodePiles[i] = pile;
+        }
         terminatingAddresses = buildTerminatingAddresses(instructions);
+        // Handlers are indexed once per method and shared by every graph spawned from this one
+        exceptionResolver = new ExceptionHandlerAddressResolver(vm.getClassManager(), method);
         this.vm = vm;
     }
 
@@ -94,21 +132,44 @@ public class ExecutionGraph implements Iterable<ExecutionNode> {
         return new OpCreator(vm, addressToLocation);
     }
 
-    private static Map<MethodLocation, List<ExecutionNode>> buildLocationToNodePile(VirtualMachine vm,
-                                                                                    TIntObjectMap<MethodLocation> addressToLocation) {
-        OpCreator opCreator = getOpCreator(vm, addressToLocation);
-        Map<MethodLocation, List<ExecutionNode>> locationToNodePile = new HashMap<>();
-        for (MethodLocation location : addressToLocation.values(new MethodLocation[addressToLocation.size()])) {
-            Op op = opCreator.create(location);
-            ExecutionNode node = new ExecutionNode(op);
+    private static MethodLocation[] buildLocations(List<BuilderInstruction> instructions) {
+        MethodLocation[] locations = new MethodLocation[instructions.size()];
+        int index = 0;
+        for (BuilderInstruction instruction : instructions) {
+            locations[index++] = instruction.getLocation();
+        }
 
-            // Most node piles will be a template node and 1+ ExecutionNodes.
-            List<ExecutionNode> pile = new ArrayList<>(2);
-            pile.add(node);
-            locationToNodePile.put(location, pile);
+        return locations;
+    }
+
+    private static int[] buildAddressToIndex(MethodLocation[] locations) {
+        int size = locations.length == 0 ? 0 : locations[locations.length - 1].getCodeAddress() + 1;
+        int[] addressToIndex = new int[size];
+        // Addresses in the middle of an instruction have no index
+        Arrays.fill(addressToIndex, -1);
+        for (int i = 0; i < locations.length; i++) {
+            addressToIndex[locations[i].getCodeAddress()] = i;
         }
 
-        return locationToNodePile;
+        return addressToIndex;
+    }
+
+    private static ExecutionNode[] buildTemplateNodes(VirtualMachine vm,
+                                                      TIntObjectMap<MethodLocation> addressToLocation,
+                                                      MethodLocation[] locations) {
+        OpCreator opCreator = getOpCreator(vm, addressToLocation);
+        ExecutionNode[] templateNodes = new ExecutionNode[locations.length];
+        for (int i = 0; i < locations.length; i++) {
+            Op op = opCreator.create(locations[i]);
+            templateNodes[i] = new ExecutionNode(op);
+        }
+
+        return templateNodes;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<ExecutionNode>[] newNodePiles(int size) {
+        return (List<ExecutionNode>[]) new List[size];
     }
 
     private static int[] buildTerminatingAddresses(List<BuilderInstruction> instructions) {
@@ -133,13 +194,35 @@ public class ExecutionGraph implements Iterable<ExecutionNode> {
         return addresses.toArray();
     }
 
+    private static SideEffect.Level getHighestSideEffectLevel(Iterable<ExecutionNode> nodes) {
+        SideEffect.Level result = SideEffect.Level.NONE;
+        for (ExecutionNode node : nodes) {
+            SideEffect.Level level = node.getSideEffectLevel();
+            switch (level) {
+                case STRONG:
+                    return level;
+                case WEAK:
+                    result = level;
+                    break;
+                case NONE:
+                    break;
+            }
+        }
+
+        return result;
+    }
+
     public String toString() {
         return "ExecutionGraph{" + method + "}";
     }
 
     public void addNode(ExecutionNode node) {
-        MethodLocation location = node.getOp().getInstruction().getLocation();
-        locationToNodePile.get(location).add(node);
+        int index = node.getOp().getLocation().getIndex();
+        List<ExecutionNode> nodePile = nodePiles[index];
+        if (nodePile == null) {
+            nodePile = buildNodePile(index);
+        }
+        nodePile.add(node);
     }
 
     /**
@@ -175,6 +258,10 @@ public class ExecutionGraph implements Iterable<ExecutionNode> {
         return addresses.toArray();
     }
 
+    public ExceptionHandlerAddressResolver getExceptionResolver() {
+        return exceptionResolver;
+    }
+
     public HeapItem getFieldConsensus(int[] addresses, VirtualField field) {
         VirtualGeneric virtualClass = field.getDefiningClass();
         Set<HeapItem> items = new HashSet<>();
@@ -241,22 +328,19 @@ public class ExecutionGraph implements Iterable<ExecutionNode> {
     }
 
     public SideEffect.Level getHighestMethodSideEffectLevel() {
-        SideEffect.Level result = SideEffect.Level.NONE;
-        for (ExecutionNode node : this) {
-            Op op = node.getOp();
-            SideEffect.Level level = op.getSideEffectLevel();
-            switch (level) {
-                case STRONG:
-                    return level;
-                case WEAK:
-                    result = level;
-                    break;
-                case NONE:
-                    break;
-            }
+        return getHighestSideEffectLevel(this);
+    }
+
+    /**
+     * Highest side effect level of every execution of an address, or of its op if it was never executed.
+     */
+    public SideEffect.Level getHighestSideEffectLevel(int address) {
+        List<ExecutionNode> pile = getNodePile(address);
+        if (pile.isEmpty()) {
+            return getOp(address).getSideEffectLevel();
         }
 
-        return result;
+        return getHighestSideEffectLevel(pile);
     }
 
     public SideEffect.Level getHighestSideEffectLevel() {
@@ -292,14 +376,23 @@ public class ExecutionGraph implements Iterable<ExecutionNode> {
     }
 
     public int getNodeCount() {
-        int totalSize = locationToNodePile.size();
-        int templateCount = locationToNodePile.keySet().size();
+        int nodeCount = 0;
+        for (List<ExecutionNode> nodePile : nodePiles) {
+            if (nodePile != null) {
+                // Exclude template
+                nodeCount += nodePile.size() - 1;
+            }
+        }
 
-        return totalSize - templateCount;
+        return nodeCount;
     }
 
     public List<ExecutionNode> getNodePile(int address) {
         List<ExecutionNode> nodePile = getNodePileByAddress(address);
+        if (nodePile == null) {
+            // Never visited
+            return Collections.emptyList();
+        }
         nodePile = nodePile.subList(1, nodePile.size()); // exclude template
 
         return nodePile;
@@ -378,19 +471,23 @@ public class ExecutionGraph implements Iterable<ExecutionNode> {
     public ExecutionNode getRoot() {
         List<ExecutionNode> pile = getNodePileByAddress(METHOD_ROOT_ADDRESS);
         // Return node with initialized context if available.
-        if (pile.size() > 1) {
+        if (pile != null && pile.size() > 1) {
             return pile.get(1);
         } else {
-            return pile.get(TEMPLATE_NODE_INDEX);
+            return getTemplateNode(METHOD_ROOT_ADDRESS);
         }
     }
 
     public
     @Nullable
     ExecutionNode getTemplateNode(int address) {
-        List<ExecutionNode> nodePile = getNodePileByAddress(address);
+        int index = getIndex(address);
+        if (index < 0) {
+            return null;
+        }
+        List<ExecutionNode> nodePile = nodePiles[index];
 
-        return nodePile.get(TEMPLATE_NODE_INDEX);
+        return nodePile == null ? templateNodes[index] : nodePile.get(TEMPLATE_NODE_INDEX);
     }
 
     public int[] getTerminatingAddresses() {
@@ -452,6 +549,13 @@ public class ExecutionGraph implements Iterable<ExecutionNode> {
         return new ExecutionGraphIterator(this);
     }
 
+    public void removeNode(ExecutionNode node) {
+        List<ExecutionNode> nodePile = getNodePileByLocation(node.getOp().getLocation());
+        if (nodePile != null) {
+            nodePile.remove(node);
+        }
+    }
+
     public boolean wasAddressReached(int address) {
         if (METHOD_ROOT_ADDRESS == address) {
             // Root is always reachable
@@ -460,7 +564,12 @@ public class ExecutionGraph implements Iterable<ExecutionNode> {
 
         // If this address was reached during execution there will be clones in the pile.
         List<ExecutionNode> nodePile = getNodePileByAddress(address);
-        if ((nodePile == null) || (1 > nodePile.size())) {
+        if (nodePile == null) {
+            if (getTemplateNode(address) == null) {
+                log.warn("Node pile @{} has no template node.", address);
+            }
+            return false;
+        } else if (1 > nodePile.size()) {
             log.warn("Node pile @{} has no template node.", address);
             return false;
         }
@@ -472,12 +581,81 @@ public class ExecutionGraph implements Iterable<ExecutionNode> {
         return getNodePile(node.getAddress()).indexOf(node);
     }
 
+    /**
+     * @return every node pile, including template nodes, by location
+     */
+    protected Map<MethodLocation, List<ExecutionNode>> getLocationToNodePile() {
+        Map<MethodLocation, List<ExecutionNode>> locationToNodePile = new HashMap<>(nodePiles.length);
+        for (int i = 0; i < nodePiles.length; i++) {
+            if (nodePiles[i] != null) {
+                locationToNodePile.put(locations[i], nodePiles[i]);
+            }
+        }
+
+        return locationToNodePile;
+    }
+
+    /**
+     * Replace the node piles after instructions were added or removed. Every instruction in the implementation must
+     * have a pile, and {@link #addressToLocation} must already be rebuilt.
+     */
+    protected void setNodePiles(Map<MethodLocation, List<ExecutionNode>> locationToNodePile) {
+        locations = buildLocations(method.getImplementation().getInstructions());
+        addressToIndex = buildAddressToIndex(locations);
+        templateNodes = new ExecutionNode[locations.length];
+        nodePiles = newNodePiles(locations.length);
+        for (int i = 0; i < locations.length; i++) {
+            List<ExecutionNode> nodePile = locationToNodePile.get(locations[i]);
+            templateNodes[i] = nodePile.get(TEMPLATE_NODE_INDEX);
+            nodePiles[i] = nodePile;
+        }
+    }
+
+    /**
+     * @return node pile of the location, including the template node, or null if it's not in this graph or was never
+     * visited
+     */
+    protected
+    @Nullable
+    List<ExecutionNode> getNodePileByLocation(MethodLocation location) {
+        int index = location.getIndex();
+        if (index >= locations.length || locations[index] != location) {
+            return null;
+        }
+
+        return nodePiles[index];
+    }
+
+    private int getIndex(int address) {
+        return address >= 0 && address < addressToIndex.length ? addressToIndex[address] : -1;
+    }
+
+    private List<ExecutionNode> buildNodePile(int index) {
+        // Most node piles will be a template node and 1+ ExecutionNodes.
+        List<ExecutionNode> nodePile = new ArrayList<>(2);
+        // Copy so the template can't be changed through this graph, e.g. when ops are replaced while optimizing.
+        nodePile.add(new ExecutionNode(templateNodes[index]));
+        nodePiles[index] = nodePile;
+
+        return nodePile;
+    }
+
+    private void buildMissingNodePiles() {
+        for (int i = 0; i < locations.length; i++) {
+            MethodLocation location = locations[i];
+            boolean isRemoved = addressToLocation.get(location.getCodeAddress()) != location;
+            if (!isRemoved && nodePiles[i] == null) {
+                buildNodePile(i);
+            }
+        }
+    }
+
     private
     @Nullable
     List<ExecutionNode> getNodePileByAddress(int address) {
-        MethodLocation location = addressToLocation.get(address);
+        int index = getIndex(address);
 
-        return locationToNodePile.get(location);
+        return index < 0 ? null : nodePiles[index];
     }
 
 }
@@ -1,5 +1,7 @@
 package org.cf.smalivm.context;
 
+import org.cf.smalivm.SideEffect;
+import org.cf.smalivm.VirtualException;
 import org.cf.smalivm.opcode.ExecutionContextOp;
 import org.cf.smalivm.opcode.MethodStateOp;
 import org.cf.smalivm.opcode.Op;
@@ -8,7 +10,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -22,11 +24,13 @@ public class ExecutionNode {
     private Op op;
     private ExecutionContext context;
     private ExecutionNode parent;
-    private Set<Throwable> exceptions;
+    private Set<VirtualException> exceptions;
     private MethodLocation[] childLocations;
+    private SideEffect.Level sideEffectLevel;
 
     public ExecutionNode(ExecutionNode other) {
         op = other.op;
+        sideEffectLevel = other.sideEffectLevel;
         children = new ArrayList<>(other.getChildren());
     }
 
@@ -40,11 +44,12 @@ public class ExecutionNode {
     }
 
     public void clearExceptions() {
-        exceptions = new HashSet<>();
+        exceptions = Collections.emptySet();
     }
 
     public void execute() {
         ExecutionContext context = getContext();
+        sideEffectLevel = null;
         if (op instanceof MethodStateOp) {
             MethodState mState = context.getMethodState();
             ((MethodStateOp) op).execute(this, mState);
@@ -61,6 +66,11 @@ public class ExecutionNode {
         if (exceptions == null) {
             setExceptions(op.getExceptions());
         }
+
+        // Op didn't set side effect level; pull in template value.
+        if (sideEffectLevel == null) {
+            sideEffectLevel = op.getSideEffectLevel();
+        }
     }
 
     public int getAddress() {
@@ -91,14 +101,26 @@ public class ExecutionNode {
         this.context = context;
     }
 
-    public Set<Throwable> getExceptions() {
+    public Set<VirtualException> getExceptions() {
         return exceptions;
     }
 
-    public void setExceptions(Set<Throwable> exceptions) {
+    public void setExceptions(Set<VirtualException> exceptions) {
         this.exceptions = exceptions;
     }
 
+    /**
+     * Side effect level of this execution of the op. Some ops, e.g. invoke, only know their level once they're executed
+     * with a particular context, and ops are shared by every execution of the method, so it's kept here.
+     */
+    public SideEffect.Level getSideEffectLevel() {
+        return sideEffectLevel == null ? op.getSideEffectLevel() : sideEffectLevel;
+    }
+
+    public void setSideEffectLevel(SideEffect.Level sideEffectLevel) {
+        this.sideEffectLevel = sideEffectLevel;
+    }
+
     public Op getOp() {
         return op;
     }
@@ -107,6 +129,16 @@ public class ExecutionNode {
         this.op = op;
     }
 
+    /**
+     * Move this node on to the next instruction of a basic block, so it's executed against the same context instead of
+     * a new child node. Children and exceptions are cleared so they're set again by the next op.
+     */
+    public void continueBlock(Op nextOp) {
+        op = nextOp;
+        childLocations = null;
+        exceptions = null;
+    }
+
     public ExecutionNode getParent() {
         return parent;
     }
@@ -134,9 +166,17 @@ public class ExecutionNode {
         newChild.setParent(this);
     }
 
-    public void setException(Throwable exception) {
-        exceptions = new HashSet<>();
-        exceptions.add(exception);
+    /**
+     * Replace a child with a node which continues execution for several parents, e.g. after merging their states at a
+     * join point. Unlike {@link #replaceChild(ExecutionNode, ExecutionNode)}, the join node keeps its own parent and
+     * context.
+     */
+    public void replaceChildWithJoin(ExecutionNode child, ExecutionNode joinNode) {
+        children.set(children.indexOf(child), joinNode);
+    }
+
+    public void setException(VirtualException exception) {
+        exceptions = Collections.singleton(exception);
     }
 
     public void setMethodState(MethodState mState) {
@@ -2,114 +2,192 @@ package org.cf.smalivm.context;
 
 import com.rits.cloning.Cloner;
 
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+
+import org.cf.smalivm.Profiler;
+import org.cf.util.PersistentLongMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
 
 class Heap {
 
     private static final Logger log = LoggerFactory.getLogger(Heap.class.getSimpleName());
 
-    private final Map<String, HeapItem> keyToHeapItem;
+    /*
+     * Ticks whenever a heap which may have children changes. Parents don't keep their children, so this is how
+     * children find out their cached view may be stale.
+     */
+    private static final AtomicLong changeClock = new AtomicLong();
+
+    /*
+     * Keys pack the heap ID into the high int and the register into the low int. This is on the path of every register
+     * access, so avoid building anything per lookup.
+     */
+    private final TLongObjectMap<HeapItem> keyToHeapItem;
     private final Cloner cloner;
     private Heap parent;
+    private boolean hasChildren;
+
+    /*
+     * Every key visible from this heap, i.e. local keys plus unshadowed ancestor keys, and which heap owns each. It
+     * shares structure with the parent's map so building it costs about as much as the local keys, and it turns the
+     * walk up the parent chain into a single lookup. Parents may still change after children exist (e.g. when
+     * re-executing nodes). Any local change gives a heap a new map, so this one is only current if it was built on the
+     * parent's current map. That's rechecked after the change clock ticks. Null means it must be rebuilt.
+     */
+    private PersistentLongMap<VisibleItem> visible;
+    private PersistentLongMap<VisibleItem> visibleParent;
+    private long visibleCheckedAt;
+
+    /*
+     * Keys whose values are still shared with an ancestor. Copying a large array at every instruction which reads it
+     * is expensive, so it's only copied once something may modify it. Only allocated once something is shared.
+     */
+    private TLongSet sharedKeys;
 
     Heap(Cloner cloner) {
-        keyToHeapItem = new HashMap<>();
+        keyToHeapItem = new TLongObjectHashMap<>();
         this.cloner = cloner;
+        visible = PersistentLongMap.empty();
+        visibleParent = PersistentLongMap.empty();
+        visibleCheckedAt = changeClock.get();
+    }
+
+    static long buildKey(int heapId, int register) {
+        return ((long) heapId << 32) | (register & 0xFFFFFFFFL);
+    }
+
+    static int getHeapId(long key) {
+        return (int) (key >>> 32);
     }
 
-    private static Set<String> getReassignedKeysBetweenChildAndAncestor(Heap child, Heap ancestor) {
-        Heap current = child;
-        Set<String> reassigned = new HashSet<>();
-        while (current != ancestor) {
-            reassigned.addAll(current.keySet());
-            current = current.getParent();
+    static int getRegister(long key) {
+        return (int) key;
+    }
+
+    HeapItem get(long key) {
+        HeapItem item = getShared(key);
+        if (sharedKeys != null && sharedKeys.contains(key)) {
+            item = unshare(item);
         }
 
-        return reassigned;
+        return item;
     }
 
-    HeapItem get(String key) {
-        if (hasKey(key)) {
-            return keyToHeapItem.get(key);
+    HeapItem get(int heapId, int register) {
+        return get(buildKey(heapId, register));
+    }
+
+    /**
+     * Same as {@link #get(long)} but arrays may still be shared with an ancestor rather than copied. The value must
+     * not be modified, and any mutable value taken from it must not be stored.
+     */
+    HeapItem getShared(long key) {
+        HeapItem item = keyToHeapItem.get(key);
+        if (item != null || keyToHeapItem.containsKey(key)) {
+            return item;
         }
 
         /*
          * To save space, only registers that are accessed are contained in any given heap.
          */
-        Heap ancestor = getAncestorWithKey(key);
-        if (ancestor == null) {
+        PersistentLongMap<VisibleItem> visibleItems = getVisible();
+        VisibleItem target = visibleItems.get(key);
+        if (target == null) {
             if (log.isTraceEnabled()) {
-                log.trace("Undefined value for " + key + "; possibly a mistake!", new Exception());
+                log.trace("Undefined value for " + getHeapId(key) + ":" + getRegister(key) + "; possibly a mistake!",
+                        new Exception());
             }
 
             return null;
         }
 
         /*
-         * Store *clone* of target value to preserve history. Also, pull down any mappings to the target value,
-         * excluding mappings which are no longer valid. E.g. peeking v0 when v0 and v1 both reference the same object,
-         * pull down both mappings, but only if v1 was not reassigned between now and then.
+         * Store *clone* of target value to preserve history, or share it until it's modified if it's an array. Also,
+         * pull down any mappings to the target value, excluding mappings which are no longer valid. E.g. peeking v0
+         * when v0 and v1 both reference the same object, pull down both mappings, but only if v1 was not reassigned
+         * between now and then, i.e. if v1 is still visible from the same ancestor.
          */
-        HeapItem targetItem = ancestor.get(key);
-        HeapItem cloneItem = cloneItem(targetItem);
-        Set<String> reassigned = getReassignedKeysBetweenChildAndAncestor(this, ancestor);
-        Set<String> potential = ancestor.keySet();
-        for (String currentKey : potential) {
-            if (reassigned.contains(currentKey)) {
+        Heap ancestor = target.owner;
+        HeapItem targetItem = target.item;
+        boolean share = isCopyOnWrite(targetItem.getValue());
+        HeapItem pulledItem = share ? targetItem : cloneItem(targetItem);
+        for (long currentKey : ancestor.keyToHeapItem.keys()) {
+            VisibleItem current = visibleItems.get(currentKey);
+            if (current.owner != ancestor) {
                 continue;
             }
 
-            HeapItem currentItem = ancestor.get(currentKey);
-            if (targetItem.getValue() == currentItem.getValue()) {
-                set(currentKey, cloneItem);
+            if (targetItem.getValue() == current.item.getValue()) {
+                put(currentKey, pulledItem);
+                if (share) {
+                    if (sharedKeys == null) {
+                        sharedKeys = new TLongHashSet();
+                    }
+                    sharedKeys.add(currentKey);
+                }
             }
         }
 
-        return cloneItem;
+        return pulledItem;
     }
 
-    HeapItem get(String heapId, int register) {
-        String key = buildKey(heapId, register);
-
-        return get(key);
+    HeapItem getShared(int heapId, int register) {
+        return getShared(buildKey(heapId, register));
     }
 
-    Map<String, HeapItem> getKeyToItem() {
-        return keyToHeapItem;
+    /**
+     * Get an item without pulling it into this heap, so it's not cloned. Don't modify it.
+     */
+    @Nullable
+    HeapItem peek(int heapId, int register) {
+        long key = buildKey(heapId, register);
+        HeapItem item = keyToHeapItem.get(key);
+        if (item != null || keyToHeapItem.containsKey(key)) {
+            return item;
+        }
+        VisibleItem target = getVisible().get(key);
+
+        return target == null ? null : target.item;
     }
 
-    boolean hasKey(String key) {
+    boolean hasKey(long key) {
         return keyToHeapItem.containsKey(key);
     }
 
-    boolean hasRegister(String heapId, int register) {
-        String key = buildKey(heapId, register);
-
-        return hasKey(key);
+    boolean hasRegister(int heapId, int register) {
+        return hasKey(buildKey(heapId, register));
     }
 
-    void remove(String heapId, int register) {
-        String key = buildKey(heapId, register);
-
-        remove(key);
+    void remove(int heapId, int register) {
+        long key = buildKey(heapId, register);
+        keyToHeapItem.remove(key);
+        if (sharedKeys != null) {
+            sharedKeys.remove(key);
+        }
+        visible = null;
+        changed();
     }
 
-    void set(String heapId, int register, HeapItem item) {
-        String key = buildKey(heapId, register);
-        set(key, item);
+    void set(int heapId, int register, HeapItem item) {
+        set(buildKey(heapId, register), item);
     }
 
-    void set(String heapId, int register, Object value, String type) {
+    void set(int heapId, int register, Object value, String type) {
         set(heapId, register, new HeapItem(value, type));
     }
 
-    void update(String key, HeapItem updatedItem) {
+    void update(long key, HeapItem updatedItem) {
         /*
          * When replacing an uninitialized instance with a new instance (e.g. when executing new-instance), need to
          * update all registers that reference the uninitialized instance to also point at the new item.
@@ -118,18 +196,24 @@ class Heap {
         if (oldItem == null || oldItem.getValue() == null) {
             set(key, updatedItem);
         } else {
-            for (String currentKey : keySet()) {
-                HeapItem currentItem = get(currentKey);
-                if (oldItem.valueIdentity(currentItem)) {
-                    set(currentKey, updatedItem);
+            for (TLongObjectIterator<HeapItem> it = keyToHeapItem.iterator(); it.hasNext(); ) {
+                it.advance();
+                if (oldItem.valueIdentity(it.value())) {
+                    it.setValue(updatedItem);
+                    if (sharedKeys != null) {
+                        sharedKeys.remove(it.key());
+                    }
+                    if (visible != null) {
+                        visible = visible.plus(it.key(), new VisibleItem(updatedItem, this));
+                    }
                 }
             }
+            changed();
         }
     }
 
-    void update(String heapId, int register, HeapItem item) {
-        String key = buildKey(heapId, register);
-        update(key, item);
+    void update(int heapId, int register, HeapItem item) {
+        update(buildKey(heapId, register), item);
     }
 
     protected Heap getParent() {
@@ -138,42 +222,108 @@ class Heap {
 
     void setParent(Heap parent) {
         this.parent = parent;
+        if (parent != null) {
+            parent.hasChildren = true;
+        }
+        visible = null;
+        changed();
     }
 
-    private String buildKey(String heapId, int register) {
-        return heapId + ':' + register;
+    private static boolean isCopyOnWrite(Object value) {
+        return value != null && value.getClass().isArray();
     }
 
     private HeapItem cloneItem(HeapItem original) {
+        Profiler.recordClone(original.getValue());
         Object cloneValue = cloner.deepClone(original.getValue());
 
         return new HeapItem(cloneValue, original.getType());
     }
 
-    private Heap getAncestorWithKey(String key) {
-        Heap ancestor = this;
-        do {
-            if (ancestor.hasKey(key)) {
-                break;
+    private PersistentLongMap<VisibleItem> getVisible() {
+        long now = changeClock.get();
+        if (visible != null && visibleCheckedAt == now) {
+            return visible;
+        }
+
+        // Iterative because execution chains can be much deeper than the stack
+        Deque<Heap> unchecked = new ArrayDeque<>();
+        Heap current = this;
+        while (current != null && (current.visible == null || current.visibleCheckedAt != now)) {
+            unchecked.push(current);
+            current = current.parent;
+        }
+
+        PersistentLongMap<VisibleItem> parentItems = current == null ? PersistentLongMap.empty() : current.visible;
+        while (!unchecked.isEmpty()) {
+            Heap heap = unchecked.pop();
+            if (heap.visible == null || heap.visibleParent != parentItems) {
+                PersistentLongMap<VisibleItem> visibleItems = parentItems;
+                for (TLongObjectIterator<HeapItem> it = heap.keyToHeapItem.iterator(); it.hasNext(); ) {
+                    it.advance();
+                    visibleItems = visibleItems.plus(it.key(), new VisibleItem(it.value(), heap));
+                }
+                heap.visible = visibleItems;
+                heap.visibleParent = parentItems;
             }
+            heap.visibleCheckedAt = now;
+            parentItems = heap.visible;
+        }
 
-            ancestor = ancestor.getParent();
-        } while (ancestor != null);
+        return parentItems;
+    }
 
-        return ancestor;
+    /*
+     * Children only look at the change clock, so only tick it if there may be children to tell.
+     */
+    private void changed() {
+        if (hasChildren) {
+            changeClock.incrementAndGet();
+        }
     }
 
-    private Set<String> keySet() {
-        // Note: mutating this directly alters keyToHeapItem's keys
-        return keyToHeapItem.keySet();
+    private void set(long key, HeapItem item) {
+        put(key, item);
+        if (sharedKeys != null) {
+            sharedKeys.remove(key);
+        }
     }
 
-    private void remove(String key) {
-        keyToHeapItem.remove(key);
+    /*
+     * Give this heap its own copy of a shared value. Every register still sharing the value gets the same copy so
+     * they continue to alias each other.
+     */
+    private HeapItem unshare(HeapItem sharedItem) {
+        HeapItem cloneItem = cloneItem(sharedItem);
+        for (long currentKey : sharedKeys.toArray()) {
+            HeapItem currentItem = keyToHeapItem.get(currentKey);
+            if (currentItem.getValue() == sharedItem.getValue()) {
+                put(currentKey, cloneItem);
+                sharedKeys.remove(currentKey);
+            }
+        }
+
+        return cloneItem;
     }
 
-    private void set(String key, HeapItem item) {
+    private void put(long key, HeapItem item) {
         keyToHeapItem.put(key, item);
+        if (visible != null) {
+            visible = visible.plus(key, new VisibleItem(item, this));
+        }
+        changed();
+    }
+
+    private static class VisibleItem {
+
+        private final HeapItem item;
+        private final Heap owner;
+
+        VisibleItem(HeapItem item, Heap owner) {
+            this.item = item;
+            this.owner = owner;
+        }
+
     }
 
 }
@@ -21,8 +21,18 @@ public class HeapItem {
     private static final Cloner cloner = new Cloner(new ObjenesisInstantiationStrategy());
     //private final Cloner cloner = new Cloner(new ObjenesisInstantiationStrategy());
 
+    // Kinds of unboxed primitive values
+    private static final byte BOXED = 0;
+    private static final byte INT = 1;
+    private static final byte LONG = 2;
+    private static final byte FLOAT = 3;
+    private static final byte DOUBLE = 4;
+
     private String type;
     private Object value;
+    // Math results are kept unboxed until something needs them as an object, e.g. reflection
+    private byte primitiveKind;
+    private long primitiveBits;
 
     public HeapItem(Object value, String type) {
         this.value = value;
@@ -30,28 +40,100 @@ public class HeapItem {
     }
 
     HeapItem(HeapItem other) {
-        value = cloner.deepClone(other.getValue());
         type = other.getType();
+        primitiveKind = other.primitiveKind;
+        primitiveBits = other.primitiveBits;
+        if (primitiveKind == BOXED) {
+            value = cloner.deepClone(other.getValue());
+        } else {
+            // Share the box so the copy's value is identical, like a deep clone of an immutable value
+            value = other.getValue();
+        }
+    }
+
+    private HeapItem(byte primitiveKind, long primitiveBits, String type) {
+        this.primitiveKind = primitiveKind;
+        this.primitiveBits = primitiveBits;
+        this.type = type.intern();
     }
 
     public static HeapItem newUnknown(String type) {
         return new HeapItem(new UnknownValue(), type);
     }
 
+    public static HeapItem newInteger(int value, String type) {
+        return new HeapItem(INT, value, type);
+    }
+
+    public static HeapItem newLong(long value, String type) {
+        return new HeapItem(LONG, value, type);
+    }
+
+    public static HeapItem newFloat(float value, String type) {
+        return new HeapItem(FLOAT, Float.floatToRawIntBits(value), type);
+    }
+
+    public static HeapItem newDouble(double value, String type) {
+        return new HeapItem(DOUBLE, Double.doubleToRawLongBits(value), type);
+    }
+
+    /*
+     * Conversions between unboxed values are the same as those of Number, e.g. Float.intValue() for a float as an int.
+     */
     public double asDouble() {
-        return Utils.getDoubleValue(getValue());
+        switch (primitiveKind) {
+            case INT:
+            case LONG:
+                return primitiveBits;
+            case FLOAT:
+                return Float.intBitsToFloat((int) primitiveBits);
+            case DOUBLE:
+                return Double.longBitsToDouble(primitiveBits);
+            default:
+                return Utils.getDoubleValue(getValue());
+        }
     }
 
     public float asFloat() {
-        return Utils.getFloatValue(getValue());
+        switch (primitiveKind) {
+            case INT:
+            case LONG:
+                return primitiveBits;
+            case FLOAT:
+                return Float.intBitsToFloat((int) primitiveBits);
+            case DOUBLE:
+                return (float) Double.longBitsToDouble(primitiveBits);
+            default:
+                return Utils.getFloatValue(getValue());
+        }
     }
 
     public int asInteger() {
-        return Utils.getIntegerValue(getValue());
+        switch (primitiveKind) {
+            case INT:
+            case LONG:
+                return (int) primitiveBits;
+            case FLOAT:
+                return (int) Float.intBitsToFloat((int) primitiveBits);
+            case DOUBLE:
+                return (int) Double.longBitsToDouble(primitiveBits);
+            default:
+                return Utils.getIntegerValue(getValue());
+        }
     }
 
     public long asLong() {
-        return Utils.getLongValue(getValue());
+        switch (primitiveKind) {
+            case INT:
+            case LONG:
+                return primitiveBits;
+            case FLOAT:
+                return (long) Float.intBitsToFloat((int) primitiveBits);
+            case DOUBLE:
+                return (long) Double.longBitsToDouble(primitiveBits);
+            default:
+                return Utils.getLongValue(getValue());
+        }
     }
 
     public String getComponentBase() {
@@ -84,6 +166,10 @@ public class HeapItem {
     public
     @Nullable
     Object getValue() {
+        if (value == null && primitiveKind != BOXED) {
+            value = box();
+        }
+
         return value;
     }
 
@@ -146,7 +232,33 @@ public class HeapItem {
     }
 
     public boolean isNull() {
-        return getValue() == null;
+        return primitiveKind == BOXED && getValue() == null;
+    }
+
+    /**
+     * @return true if the value is a number, boolean, or character, which can be read with {@link #asInteger()}
+     */
+    public boolean isNumeric() {
+        if (primitiveKind != BOXED) {
+            return true;
+        }
+
+        Object value = getValue();
+
+        return value instanceof Number || value instanceof Boolean || value instanceof Character;
+    }
+
+    /**
+     * @return true if the value is a float or double which is NaN
+     */
+    public boolean isNaN() {
+        if (primitiveKind == FLOAT || primitiveKind == DOUBLE) {
+            return Double.isNaN(asDouble());
+        }
+
+        Object value = getValue();
+
+        return value instanceof Float && ((Float) value).isNaN() || value instanceof Double && ((Double) value).isNaN();
     }
 
     public boolean isObject() {
@@ -166,11 +278,24 @@ public class HeapItem {
     }
 
     public boolean isUnknown() {
-        return getValue() instanceof UnknownValue;
+        return primitiveKind == BOXED && getValue() instanceof UnknownValue;
     }
 
     public boolean valueIdentity(HeapItem other) {
         return getValue() == other.getValue();
     }
 
+    private Object box() {
+        switch (primitiveKind) {
+            case INT:
+                return (int) primitiveBits;
+            case LONG:
+                return primitiveBits;
+            case FLOAT:
+                return Float.intBitsToFloat((int) primitiveBits);
+            default:
+                return Double.longBitsToDouble(primitiveBits);
+        }
+    }
+
 }
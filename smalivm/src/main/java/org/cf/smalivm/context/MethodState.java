@@ -17,8 +17,8 @@ public class MethodState extends BaseState {
     public static final int ThrowRegister = -4;
     public static final int ExceptionRegister = -5;
 
-    public static final String MUTABLE_PARAMETER_HEAP = "mutable";
-    public static final String METHOD_HEAP = "method";
+    public static final int METHOD_HEAP = 0;
+    public static final int MUTABLE_PARAMETER_HEAP = 1;
     private static final Logger log = LoggerFactory.getLogger(MethodState.class.getSimpleName());
     private final int parameterCount;
     private final int parameterSize;
@@ -180,6 +180,14 @@ public class MethodState extends BaseState {
         return readRegister(register, METHOD_HEAP);
     }
 
+    /**
+     * Same as {@link #readRegister(int)} except an array value may still be shared with earlier states instead of
+     * being copied. Use this only if the value won't be modified and no mutable value taken from it will be stored.
+     */
+    public HeapItem readSharedRegister(int register) {
+        return readSharedRegister(register, METHOD_HEAP);
+    }
+
     public HeapItem readResultRegister() {
         HeapItem item = readRegister(ResultRegister, METHOD_HEAP);
 
@@ -192,7 +200,7 @@ public class MethodState extends BaseState {
 
     public void setPseudoInstructionReturnLocation(MethodLocation location) {
         // Pseudo instructions like array-data-payload need return addresses.
-        pokeRegister(ReturnAddressRegister, location, METHOD_HEAP);
+        pokeRegister(ReturnAddressRegister, new HeapItem(location, "method"), METHOD_HEAP);
     }
 
     @Override
@@ -241,6 +249,31 @@ public class MethodState extends BaseState {
         return wasRegisterRead(register, METHOD_HEAP);
     }
 
+    void merge(MethodState other) {
+        for (int register = 0; register < getRegisterCount(); register++) {
+            mergeRegister(other, register, METHOD_HEAP);
+        }
+        mergeRegister(other, ExceptionRegister, METHOD_HEAP);
+        mergeRegister(other, ReturnAddressRegister, METHOD_HEAP);
+        for (int register : mutableParameters.toArray()) {
+            mergeRegister(other, register, MUTABLE_PARAMETER_HEAP);
+        }
+    }
+
+    boolean widen(MethodState previous) {
+        boolean changed = false;
+        for (int register = 0; register < getRegisterCount(); register++) {
+            changed |= widenRegister(previous, register, METHOD_HEAP);
+        }
+        changed |= widenRegister(previous, ExceptionRegister, METHOD_HEAP);
+        changed |= widenRegister(previous, ReturnAddressRegister, METHOD_HEAP);
+        for (int register : mutableParameters.toArray()) {
+            changed |= widenRegister(previous, register, MUTABLE_PARAMETER_HEAP);
+        }
+
+        return changed;
+    }
+
     MethodState getChild(ExecutionContext childContext) {
         MethodState child = new MethodState(this, childContext, mutableParameters);
 
@@ -0,0 +1,102 @@
+package org.cf.smalivm.context;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Set of registers kept as bits. Special registers, e.g. {@link MethodState#ResultRegister}, are negative and have
+ * their own small set of bits.
+ */
+final class RegisterSet {
+
+    private static final int MAX_SPECIAL_REGISTERS = Integer.SIZE;
+
+    private long[] words;
+    private int specialBits;
+
+    RegisterSet(int registerCount) {
+        words = new long[Math.max(1, (registerCount + Long.SIZE - 1) / Long.SIZE)];
+    }
+
+    private static int getSpecialBit(int register) {
+        int bit = -register - 1;
+        if (bit >= MAX_SPECIAL_REGISTERS) {
+            throw new IllegalArgumentException("Unknown special register: " + register);
+        }
+
+        return 1 << bit;
+    }
+
+    private static int size(long[] words) {
+        int size = 0;
+        for (long word : words) {
+            size += Long.bitCount(word);
+        }
+
+        return size;
+    }
+
+    void add(int register) {
+        if (register < 0) {
+            specialBits |= getSpecialBit(register);
+            return;
+        }
+
+        int word = register / Long.SIZE;
+        if (word >= words.length) {
+            words = Arrays.copyOf(words, word + 1);
+        }
+        words[word] |= 1L << register;
+    }
+
+    boolean contains(int register) {
+        if (register < 0) {
+            return (specialBits & getSpecialBit(register)) != 0;
+        }
+
+        int word = register / Long.SIZE;
+
+        return word < words.length && (words[word] & (1L << register)) != 0;
+    }
+
+    /**
+     * @return true if any register satisfies the predicate, checking special registers first
+     */
+    boolean anyMatch(IntPredicate predicate) {
+        for (int bits = specialBits; bits != 0; bits &= bits - 1) {
+            if (predicate.test(-Integer.numberOfTrailingZeros(bits) - 1)) {
+                return true;
+            }
+        }
+        for (int i = 0; i < words.length; i++) {
+            for (long bits = words[i]; bits != 0; bits &= bits - 1) {
+                if (predicate.test(i * Long.SIZE + Long.numberOfTrailingZeros(bits))) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return registers in ascending order
+     */
+    int[] toArray() {
+        int[] registers = new int[Integer.bitCount(specialBits) + size(words)];
+        int index = 0;
+        for (int bit = MAX_SPECIAL_REGISTERS - 1; bit >= 0; bit--) {
+            if ((specialBits & (1 << bit)) != 0) {
+                registers[index++] = -bit - 1;
+            }
+        }
+        for (int i = 0; i < words.length; i++) {
+            for (long bits = words[i]; bits != 0; bits &= bits - 1) {
+                registers[index++] = i * Long.SIZE + Long.numberOfTrailingZeros(bits);
+            }
+        }
+
+        return registers;
+    }
+
+}
@@ -0,0 +1,91 @@
+package org.cf.smalivm.dex;
+
+import org.cf.smalivm.type.VirtualMethod;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import javax.annotation.Nullable;
+
+/**
+ * A local method translated to JVM bytecode by {@link MethodCompiler}.
+ */
+public class CompiledMethod {
+
+    private final VirtualMethod method;
+    private final Method jvmMethod;
+    private final int maxLoopIterations;
+
+    CompiledMethod(VirtualMethod method, Method jvmMethod, int maxLoopIterations) {
+        this.method = method;
+        this.jvmMethod = jvmMethod;
+        this.maxLoopIterations = maxLoopIterations;
+    }
+
+    public VirtualMethod getMethod() {
+        return method;
+    }
+
+    /*
+     * Values of primitive registers may be boxed as any primitive type, e.g. an Integer for a boolean parameter.
+     */
+    @Nullable
+    private static Object castToParameterType(@Nullable Object value, Class<?> parameterType) {
+        if (!parameterType.isPrimitive()) {
+            return value;
+        }
+
+        Number number;
+        if (value instanceof Boolean) {
+            number = (Boolean) value ? 1 : 0;
+        } else if (value instanceof Character) {
+            number = (int) (Character) value;
+        } else {
+            number = (Number) value;
+        }
+        if (parameterType == boolean.class) {
+            return number.intValue() != 0;
+        } else if (parameterType == byte.class) {
+            return number.byteValue();
+        } else if (parameterType == short.class) {
+            return number.shortValue();
+        } else if (parameterType == char.class) {
+            return (char) number.intValue();
+        } else if (parameterType == long.class) {
+            return number.longValue();
+        } else if (parameterType == float.class) {
+            return number.floatValue();
+        } else if (parameterType == double.class) {
+            return number.doubleValue();
+        } else {
+            return number.intValue();
+        }
+    }
+
+    /**
+     * @param arguments argument values of the method's parameters
+     * @return the return value, or null if the method returns void
+     * @throws InvocationTargetException if the compiled code threw, including if it looped too many times
+     */
+    @Nullable
+    public Object invoke(Object[] arguments) throws InvocationTargetException {
+        Class<?>[] parameterTypes = jvmMethod.getParameterTypes();
+        Object[] jvmArguments = new Object[arguments.length + 1];
+        for (int i = 0; i < arguments.length; i++) {
+            jvmArguments[i] = castToParameterType(arguments[i], parameterTypes[i]);
+        }
+        jvmArguments[arguments.length] = maxLoopIterations;
+        try {
+            return jvmMethod.invoke(null, jvmArguments);
+        } catch (IllegalAccessException e) {
+            // Compiled methods are always public
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledMethod{" + method + "}";
+    }
+
+}
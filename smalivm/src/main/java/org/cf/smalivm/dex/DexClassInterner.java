@@ -0,0 +1,255 @@
+package org.cf.smalivm.dex;
+
+import org.jf.dexlib2.Opcode;
+import org.jf.dexlib2.base.BaseExceptionHandler;
+import org.jf.dexlib2.base.BaseTryBlock;
+import org.jf.dexlib2.builder.BuilderDebugItem;
+import org.jf.dexlib2.builder.BuilderInstruction;
+import org.jf.dexlib2.builder.MethodLocation;
+import org.jf.dexlib2.builder.MutableMethodImplementation;
+import org.jf.dexlib2.builder.instruction.BuilderInstruction20bc;
+import org.jf.dexlib2.builder.instruction.BuilderInstruction21c;
+import org.jf.dexlib2.builder.instruction.BuilderInstruction22c;
+import org.jf.dexlib2.builder.instruction.BuilderInstruction31c;
+import org.jf.dexlib2.builder.instruction.BuilderInstruction35c;
+import org.jf.dexlib2.builder.instruction.BuilderInstruction3rc;
+import org.jf.dexlib2.iface.ClassDef;
+import org.jf.dexlib2.iface.ExceptionHandler;
+import org.jf.dexlib2.iface.Field;
+import org.jf.dexlib2.iface.Method;
+import org.jf.dexlib2.iface.MethodImplementation;
+import org.jf.dexlib2.iface.TryBlock;
+import org.jf.dexlib2.iface.debug.DebugItem;
+import org.jf.dexlib2.iface.debug.SetSourceFile;
+import org.jf.dexlib2.iface.debug.StartLocal;
+import org.jf.dexlib2.iface.instruction.Instruction;
+import org.jf.dexlib2.iface.instruction.ReferenceInstruction;
+import org.jf.dexlib2.iface.instruction.formats.Instruction20bc;
+import org.jf.dexlib2.iface.instruction.formats.Instruction21c;
+import org.jf.dexlib2.iface.instruction.formats.Instruction22c;
+import org.jf.dexlib2.iface.instruction.formats.Instruction31c;
+import org.jf.dexlib2.iface.instruction.formats.Instruction35c;
+import org.jf.dexlib2.iface.instruction.formats.Instruction3rc;
+import org.jf.dexlib2.iface.reference.Reference;
+import org.jf.dexlib2.iface.reference.TypeReference;
+import org.jf.dexlib2.writer.builder.BuilderClassDef;
+import org.jf.dexlib2.writer.builder.BuilderField;
+import org.jf.dexlib2.writer.builder.BuilderMethod;
+import org.jf.dexlib2.writer.builder.DexBuilder;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+/**
+ * Interns class definitions read from a dex file into a {@link DexBuilder} so they can be executed and optimized the
+ * same way as classes parsed from Smali, without disassembling them first.
+ *
+ * DexBuilder only writes references it created, so every reference in instructions, try blocks, and debug items is
+ * re-interned. Annotations, field initial values, and method parameters are interned by DexBuilder itself.
+ */
+public class DexClassInterner {
+
+    public static BuilderClassDef intern(ClassDef classDef, DexBuilder builder) {
+        List<BuilderField> fields = new ArrayList<>();
+        for (Field field : classDef.getFields()) {
+            fields.add(builder.internField(field.getDefiningClass(), field.getName(), field.getType(),
+                    field.getAccessFlags(), field.getInitialValue(), field.getAnnotations()));
+        }
+
+        List<BuilderMethod> methods = new ArrayList<>();
+        for (Method method : classDef.getMethods()) {
+            MutableMethodImplementation implementation = null;
+            if (method.getImplementation() != null) {
+                implementation = internImplementation(method.getImplementation(), builder);
+            }
+            methods.add(builder.internMethod(method.getDefiningClass(), method.getName(), method.getParameters(),
+                    method.getReturnType(), method.getAccessFlags(), method.getAnnotations(), implementation));
+        }
+
+        return builder.internClassDef(classDef.getType(), classDef.getAccessFlags(), classDef.getSuperclass(),
+                classDef.getInterfaces(), classDef.getSourceFile(), classDef.getAnnotations(), fields, methods);
+    }
+
+    private static MutableMethodImplementation internImplementation(MethodImplementation dexImplementation,
+                                                                    DexBuilder builder) {
+        MutableMethodImplementation implementation = new MutableMethodImplementation(
+                new InternedTryBlocksImplementation(dexImplementation, builder));
+        List<BuilderInstruction> instructions = implementation.getInstructions();
+        for (int index = 0; index < instructions.size(); index++) {
+            BuilderInstruction instruction = instructions.get(index);
+            MethodLocation location = instruction.getLocation();
+            internDebugItems(location, builder);
+            if (instruction instanceof ReferenceInstruction) {
+                implementation.replaceInstruction(index, internReferenceInstruction(instruction, builder));
+            }
+        }
+
+        return implementation;
+    }
+
+    private static void internDebugItems(MethodLocation location, DexBuilder builder) {
+        List<DebugItem> referencingItems = new ArrayList<>();
+        Iterator<BuilderDebugItem> it = location.getDebugItems().iterator();
+        while (it.hasNext()) {
+            BuilderDebugItem debugItem = it.next();
+            if (debugItem instanceof StartLocal || debugItem instanceof SetSourceFile) {
+                referencingItems.add(debugItem);
+                it.remove();
+            }
+        }
+
+        for (DebugItem debugItem : referencingItems) {
+            if (debugItem instanceof StartLocal) {
+                StartLocal startLocal = (StartLocal) debugItem;
+                location.addStartLocal(startLocal.getRegister(),
+                        builder.internNullableStringReference(startLocal.getName()),
+                        builder.internNullableTypeReference(startLocal.getType()),
+                        builder.internNullableStringReference(startLocal.getSignature()));
+            } else {
+                SetSourceFile setSourceFile = (SetSourceFile) debugItem;
+                location.addSetSourceFile(builder.internNullableStringReference(setSourceFile.getSourceFile()));
+            }
+        }
+    }
+
+    private static BuilderInstruction internReferenceInstruction(BuilderInstruction instruction,
+                                                                 DexBuilder builder) {
+        Opcode opcode = instruction.getOpcode();
+        Reference reference = builder.internReference(((ReferenceInstruction) instruction).getReference());
+        switch (opcode.format) {
+            case Format20bc: {
+                Instruction20bc instr = (Instruction20bc) instruction;
+                return new BuilderInstruction20bc(opcode, instr.getVerificationError(), reference);
+            }
+            case Format21c: {
+                Instruction21c instr = (Instruction21c) instruction;
+                return new BuilderInstruction21c(opcode, instr.getRegisterA(), reference);
+            }
+            case Format22c: {
+                Instruction22c instr = (Instruction22c) instruction;
+                return new BuilderInstruction22c(opcode, instr.getRegisterA(), instr.getRegisterB(), reference);
+            }
+            case Format31c: {
+                Instruction31c instr = (Instruction31c) instruction;
+                return new BuilderInstruction31c(opcode, instr.getRegisterA(), reference);
+            }
+            case Format35c: {
+                Instruction35c instr = (Instruction35c) instruction;
+                return new BuilderInstruction35c(opcode, instr.getRegisterCount(), instr.getRegisterC(),
+                        instr.getRegisterD(), instr.getRegisterE(), instr.getRegisterF(), instr.getRegisterG(),
+                        reference);
+            }
+            case Format3rc: {
+                Instruction3rc instr = (Instruction3rc) instruction;
+                return new BuilderInstruction3rc(opcode, instr.getStartRegister(), instr.getRegisterCount(),
+                        reference);
+            }
+            default:
+                throw new RuntimeException("Unexpected reference instruction format: " + opcode.format);
+        }
+    }
+
+    /*
+     * MutableMethodImplementation keeps exception types as given, so they must be interned before it copies them.
+     */
+    private static class InternedTryBlocksImplementation implements MethodImplementation {
+
+        private final MethodImplementation implementation;
+        private final List<InternedTryBlock> tryBlocks;
+
+        InternedTryBlocksImplementation(MethodImplementation implementation, DexBuilder builder) {
+            this.implementation = implementation;
+            tryBlocks = new ArrayList<>();
+            for (TryBlock<? extends ExceptionHandler> tryBlock : implementation.getTryBlocks()) {
+                tryBlocks.add(new InternedTryBlock(tryBlock, builder));
+            }
+        }
+
+        @Override
+        public int getRegisterCount() {
+            return implementation.getRegisterCount();
+        }
+
+        @Override
+        public Iterable<? extends Instruction> getInstructions() {
+            return implementation.getInstructions();
+        }
+
+        @Override
+        public List<? extends TryBlock<? extends ExceptionHandler>> getTryBlocks() {
+            return tryBlocks;
+        }
+
+        @Override
+        public Iterable<? extends DebugItem> getDebugItems() {
+            return implementation.getDebugItems();
+        }
+
+    }
+
+    private static class InternedTryBlock extends BaseTryBlock<InternedExceptionHandler> {
+
+        private final int startCodeAddress;
+        private final int codeUnitCount;
+        private final List<InternedExceptionHandler> exceptionHandlers;
+
+        InternedTryBlock(TryBlock<? extends ExceptionHandler> tryBlock, DexBuilder builder) {
+            startCodeAddress = tryBlock.getStartCodeAddress();
+            codeUnitCount = tryBlock.getCodeUnitCount();
+            exceptionHandlers = new ArrayList<>();
+            for (ExceptionHandler handler : tryBlock.getExceptionHandlers()) {
+                TypeReference exceptionType = builder.internNullableTypeReference(handler.getExceptionType());
+                exceptionHandlers.add(new InternedExceptionHandler(exceptionType, handler.getHandlerCodeAddress()));
+            }
+        }
+
+        @Override
+        public int getStartCodeAddress() {
+            return startCodeAddress;
+        }
+
+        @Override
+        public int getCodeUnitCount() {
+            return codeUnitCount;
+        }
+
+        @Override
+        public List<InternedExceptionHandler> getExceptionHandlers() {
+            return exceptionHandlers;
+        }
+
+    }
+
+    private static class InternedExceptionHandler extends BaseExceptionHandler {
+
+        private final TypeReference exceptionType;
+        private final int handlerCodeAddress;
+
+        InternedExceptionHandler(@Nullable TypeReference exceptionType, int handlerCodeAddress) {
+            this.exceptionType = exceptionType;
+            this.handlerCodeAddress = handlerCodeAddress;
+        }
+
+        @Nullable
+        @Override
+        public String getExceptionType() {
+            return exceptionType == null ? null : exceptionType.getType();
+        }
+
+        @Nullable
+        @Override
+        public TypeReference getExceptionTypeReference() {
+            return exceptionType;
+        }
+
+        @Override
+        public int getHandlerCodeAddress() {
+            return handlerCodeAddress;
+        }
+
+    }
+
+}
@@ -0,0 +1,87 @@
+package org.cf.smalivm.dex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.jf.dexlib2.Opcodes;
+import org.jf.dexlib2.dexbacked.DexBackedDexFile;
+import org.jf.dexlib2.iface.ClassDef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Framework class definitions compiled ahead of time by {@link FrameworkSnapshotBuilder}. Looking up a class here is
+ * much cheaper than parsing its Smali. If the snapshot resource is missing, every lookup returns null and framework
+ * classes are parsed from Smali as usual.
+ */
+public class FrameworkSnapshot {
+
+    private static final Logger log = LoggerFactory.getLogger(FrameworkSnapshot.class.getSimpleName());
+
+    private static final String FRAMEWORK_SNAPSHOT_DEX = "/framework/android-23.dex";
+
+    private static Map<String, ClassDef> classNameToClassDef;
+
+    private static synchronized Map<String, ClassDef> getClassDefs() {
+        if (classNameToClassDef == null) {
+            classNameToClassDef = load(FrameworkSnapshot.class.getResourceAsStream(FRAMEWORK_SNAPSHOT_DEX));
+        }
+
+        return classNameToClassDef;
+    }
+
+    /**
+     * Replace the snapshot, e.g. with one built by a test. If null, the snapshot resource is loaded on the next lookup.
+     */
+    static synchronized void setClassDefs(@Nullable Map<String, ClassDef> classDefs) {
+        classNameToClassDef = classDefs;
+    }
+
+    /**
+     * @return class definitions in the snapshot, or an empty map if there's no snapshot or it can't be read
+     */
+    static Map<String, ClassDef> load(@Nullable InputStream is) {
+        if (is == null) {
+            log.debug("No framework snapshot found; framework classes will be parsed from Smali.");
+            return Collections.emptyMap();
+        }
+
+        long startTime = System.currentTimeMillis();
+        Map<String, ClassDef> classDefs;
+        try {
+            byte[] buf = ByteStreams.toByteArray(is);
+            is.close();
+            DexBackedDexFile dexFile = new DexBackedDexFile(Opcodes.forApi(SmaliParser.DEFAULT_API_LEVEL), buf);
+            classDefs = new HashMap<>(dexFile.getClassCount());
+            for (ClassDef classDef : dexFile.getClasses()) {
+                classDefs.put(classDef.getType(), classDef);
+            }
+        } catch (IOException e) {
+            log.warn("Unable to read framework snapshot; framework classes will be parsed from Smali.", e);
+            return Collections.emptyMap();
+        }
+
+        if (log.isDebugEnabled()) {
+            long totalTime = System.currentTimeMillis() - startTime;
+            log.debug("Loaded {} framework snapshot classes in {} ms.", classDefs.size(), totalTime);
+        }
+
+        return classDefs;
+    }
+
+    /**
+     * @return precompiled class definition, or null if the class is not in the snapshot
+     */
+    @Nullable
+    public static ClassDef getClassDef(String className) {
+        return getClassDefs().get(className);
+    }
+
+}
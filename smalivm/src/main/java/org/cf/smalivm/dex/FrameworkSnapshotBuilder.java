@@ -0,0 +1,63 @@
+package org.cf.smalivm.dex;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.cf.util.Utils;
+import org.jf.dexlib2.Opcodes;
+import org.jf.dexlib2.writer.builder.DexBuilder;
+import org.jf.dexlib2.writer.io.FileDataStore;
+
+/**
+ * This compiles all framework Smali files into a single dex file, android-23.dex, which should be placed next to
+ * android-23.jar in the framework resources. It's used by {@link FrameworkSnapshot} so framework classes don't have to
+ * be parsed from Smali when smalivm starts.
+ *
+ * Run this after {@link FrameworkCacheBuilder} whenever the framework Smali changes.
+ */
+public class FrameworkSnapshotBuilder {
+
+    private static final String FRAMEWORK_SMALI_PATH = "/framework/smali";
+    private static final String DEFAULT_FRAMEWORK_PATH = FRAMEWORK_SMALI_PATH + "/android-23";
+
+    public static void main(String[] argv) throws Exception {
+        System.out.println("Building framework snapshot ...");
+        DexBuilder dexBuilder = buildFrameworkSnapshot();
+
+        String fileName = "android-23.dex";
+        dexBuilder.writeTo(new FileDataStore(new File(fileName)));
+
+        System.out.println("Saved snapshot to " + fileName);
+    }
+
+    public static DexBuilder buildFrameworkSnapshot() throws Exception {
+        return buildFrameworkSnapshot(DEFAULT_FRAMEWORK_PATH);
+    }
+
+    public static DexBuilder buildFrameworkSnapshot(String resPath) throws Exception {
+        List<File> resFiles = new LinkedList<>();
+        try {
+            URL url = FrameworkSnapshotBuilder.class.getResource(resPath);
+            File file = new File(url.toURI());
+            resFiles.addAll(Utils.getFilesWithSmaliExtension(file));
+        } catch (URISyntaxException e) {
+            e.printStackTrace();
+        }
+
+        DexBuilder dexBuilder = DexBuilder.makeDexBuilder(Opcodes.forApi(SmaliParser.DEFAULT_API_LEVEL));
+        for (File resFile : resFiles) {
+            String absPath = resFile.getAbsolutePath();
+            String path = absPath.substring(absPath.lastIndexOf(FRAMEWORK_SMALI_PATH));
+            InputStream is = FrameworkSnapshotBuilder.class.getResourceAsStream(path);
+            SmaliParser.parse(path, is, dexBuilder);
+            is.close();
+        }
+
+        return dexBuilder;
+    }
+
+}
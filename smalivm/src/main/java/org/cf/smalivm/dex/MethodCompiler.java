@@ -0,0 +1,1397 @@
+package org.cf.smalivm.dex;
+
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+
+import org.cf.smalivm.configuration.Configuration;
+import org.cf.smalivm.emulate.MethodEmulator;
+import org.cf.smalivm.type.VirtualMethod;
+import org.cf.util.ClassNameUtils;
+import org.cf.util.Utils;
+import org.jf.dexlib2.Opcode;
+import org.jf.dexlib2.builder.BuilderInstruction;
+import org.jf.dexlib2.iface.instruction.FiveRegisterInstruction;
+import org.jf.dexlib2.iface.instruction.NarrowLiteralInstruction;
+import org.jf.dexlib2.iface.instruction.OffsetInstruction;
+import org.jf.dexlib2.iface.instruction.OneRegisterInstruction;
+import org.jf.dexlib2.iface.instruction.ReferenceInstruction;
+import org.jf.dexlib2.iface.instruction.RegisterRangeInstruction;
+import org.jf.dexlib2.iface.instruction.SwitchElement;
+import org.jf.dexlib2.iface.instruction.SwitchPayload;
+import org.jf.dexlib2.iface.instruction.ThreeRegisterInstruction;
+import org.jf.dexlib2.iface.instruction.TwoRegisterInstruction;
+import org.jf.dexlib2.iface.instruction.WideLiteralInstruction;
+import org.jf.dexlib2.iface.instruction.formats.ArrayPayload;
+import org.jf.dexlib2.iface.reference.MethodReference;
+import org.jf.dexlib2.iface.reference.StringReference;
+import org.jf.dexlib2.iface.reference.TypeReference;
+import org.jf.dexlib2.util.ReferenceUtil;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+/**
+ * Translates local methods to JVM bytecode so they can be executed directly rather than by the virtual machine. This
+ * is for methods such as custom ciphers which are invoked often with known arguments and have no side effects.
+ *
+ * Only static methods are translated, and only if they operate on primitives, strings, and arrays, and only invoke safe
+ * framework methods. Field access, exception handlers, monitors, and invoking local methods aren't supported, and
+ * methods using them aren't compiled. A method is only compiled once executing it has shown it has no side effects.
+ *
+ * Dalvik registers are untyped, so each register gets a JVM local for each kind of value it may hold. Types are
+ * inferred only to pick between instructions where Dalvik has one for several types, e.g. if-eqz for ints and
+ * references.
+ */
+public class MethodCompiler {
+
+    private static final Logger log = LoggerFactory.getLogger(MethodCompiler.class.getSimpleName());
+
+    private static final String CLASS_NAME_PREFIX = "org/cf/smalivm/compiled/Method";
+    private static final String METHOD_NAME = "execute";
+
+    // JVM locals for each register: int, float, reference, long (2), double (2)
+    private static final int SLOTS_PER_REGISTER = 7;
+
+    // Register types which don't say exactly what's in a register
+    private static final String ZERO = "0";
+    private static final String NARROW_CONSTANT = "C";
+    private static final String WIDE_CONSTANT = "W";
+    private static final String UNINITIALIZED_PREFIX = "N";
+    private static final String OBJECT = "Ljava/lang/Object;";
+
+    private final ClassLoader parentClassLoader;
+    private final CompiledClassLoader classLoader;
+    private final Configuration configuration;
+    private final int maxLoopIterations;
+    private final Map<VirtualMethod, Optional<CompiledMethod>> methodToCompiledMethod;
+    private final Set<VirtualMethod> sideEffectFreeMethods;
+    private final AtomicInteger compiledCount;
+
+    /**
+     * @param parentClassLoader loads classes referenced by compiled methods, e.g. the one used for reflection
+     * @param maxLoopIterations loop iterations after which compiled code gives up
+     */
+    public MethodCompiler(ClassLoader parentClassLoader, Configuration configuration, int maxLoopIterations) {
+        this.parentClassLoader = parentClassLoader;
+        this.configuration = configuration;
+        this.maxLoopIterations = maxLoopIterations;
+        classLoader = new CompiledClassLoader(parentClassLoader);
+        methodToCompiledMethod = new ConcurrentHashMap<>();
+        sideEffectFreeMethods = ConcurrentHashMap.newKeySet();
+        compiledCount = new AtomicInteger();
+    }
+
+    private static boolean isReference(@Nullable String type) {
+        return type != null && (type.charAt(0) == 'L' || type.charAt(0) == '[');
+    }
+
+    private static char getKind(String type) {
+        switch (type.charAt(0)) {
+            case 'Z':
+            case 'B':
+            case 'S':
+            case 'C':
+            case 'I':
+                return 'I';
+            case 'F':
+            case 'J':
+            case 'D':
+                return type.charAt(0);
+            default:
+                return 'L';
+        }
+    }
+
+    private static String getRegisterType(String type) {
+        char kind = getKind(type);
+
+        return kind == 'L' ? type : String.valueOf(kind);
+    }
+
+    private static String getInternalName(String type) {
+        return type.charAt(0) == 'L' ? type.substring(1, type.length() - 1) : type;
+    }
+
+    /*
+     * Join of the types of a register from two paths, or null if it's unusable after they join.
+     */
+    @Nullable
+    private static String mergeTypes(@Nullable String type1, @Nullable String type2) {
+        if (type1 == null || type2 == null) {
+            return null;
+        } else if (type1.equals(type2)) {
+            return type1;
+        } else if (isReference(type1) && isReference(type2)) {
+            return OBJECT;
+        }
+
+        String merged = mergeConstant(type1, type2);
+
+        return merged != null ? merged : mergeConstant(type2, type1);
+    }
+
+    @Nullable
+    private static String mergeConstant(String constant, String type) {
+        if (ZERO.equals(constant) && (isReference(type) || "I".equals(type) || "F".equals(type) ||
+                                      NARROW_CONSTANT.equals(type))) {
+            return type;
+        } else if (NARROW_CONSTANT.equals(constant) && ("I".equals(type) || "F".equals(type))) {
+            return type;
+        } else if (WIDE_CONSTANT.equals(constant) && ("J".equals(type) || "D".equals(type))) {
+            return type;
+        }
+
+        return null;
+    }
+
+    /**
+     * Note that executing a method had no side effects and its outcome only depended on its arguments. Only such
+     * methods are compiled.
+     */
+    public void recordSideEffectFree(VirtualMethod method) {
+        sideEffectFreeMethods.add(method);
+    }
+
+    /**
+     * @return compiled method, or null if the method isn't known to be free of side effects or can't be compiled
+     */
+    @Nullable
+    public CompiledMethod getCompiledMethod(VirtualMethod method) {
+        if (!sideEffectFreeMethods.contains(method)) {
+            return null;
+        }
+
+        return methodToCompiledMethod.computeIfAbsent(method, m -> Optional.ofNullable(compile(m))).orElse(null);
+    }
+
+    @Nullable
+    private CompiledMethod compile(VirtualMethod method) {
+        if (!method.isStatic() || !method.hasImplementation() || !method.getTryBlocks().isEmpty()) {
+            return null;
+        }
+
+        String className = CLASS_NAME_PREFIX + compiledCount.incrementAndGet();
+        try {
+            byte[] classBytes = new Translation(method).build(className);
+            String binaryName = className.replace('/', '.');
+            classLoader.define(binaryName, classBytes);
+            // Initializing the class verifies the compiled code
+            Class<?> klazz = Class.forName(binaryName, true, classLoader);
+            Method jvmMethod = klazz.getDeclaredMethods()[0];
+            log.debug("Compiled {}", method);
+
+            return new CompiledMethod(method, jvmMethod, maxLoopIterations);
+        } catch (NotCompilableException e) {
+            log.debug("Not compiling {}: {}", method, e.getMessage());
+        } catch (ClassNotFoundException | LinkageError | RuntimeException e) {
+            log.warn("Failed to compile {}: {}", method, e.toString());
+        }
+
+        return null;
+    }
+
+    private static class NotCompilableException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        NotCompilableException(String message) {
+            super(message);
+        }
+
+    }
+
+    private static class CompiledClassLoader extends ClassLoader {
+
+        CompiledClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        synchronized void define(String name, byte[] classBytes) {
+            defineClass(name, classBytes, 0, classBytes.length);
+        }
+
+    }
+
+    private class Translation {
+
+        private final VirtualMethod method;
+        private final List<BuilderInstruction> instructions;
+        private final TIntIntMap addressToIndex;
+        private final int registerCount;
+        // Pseudo register holding the result of the last invocation, for move-result
+        private final int resultRegister;
+        private final int loopIterationsSlot;
+        private final int firstRegisterSlot;
+        private final Label[] labels;
+        private MethodVisitor mv;
+
+        Translation(VirtualMethod method) {
+            this.method = method;
+            instructions = method.getImplementation().getInstructions();
+            addressToIndex = new TIntIntHashMap();
+            for (int i = 0; i < instructions.size(); i++) {
+                addressToIndex.put(instructions.get(i).getLocation().getCodeAddress(), i);
+            }
+            registerCount = method.getRegisterCount();
+            resultRegister = registerCount;
+            int parameterSlots = 0;
+            for (String type : method.getParameterTypeNames()) {
+                parameterSlots += Utils.getRegisterSize(type);
+            }
+            // The iteration limit is passed after the method's own parameters
+            loopIterationsSlot = parameterSlots;
+            firstRegisterSlot = parameterSlots + 1;
+            labels = new Label[instructions.size()];
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = new Label();
+            }
+        }
+
+        byte[] build(String className) throws NotCompilableException {
+            for (String type : method.getParameterTypeNames()) {
+                checkType(type);
+            }
+            checkType(method.getReturnType());
+
+            String[][] inTypes = inferTypes();
+            TIntSet loopHeaders = findLoopHeaders(inTypes);
+
+            ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+            // No stack map frames before Java 6, so they don't need to be computed
+            classWriter.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, className, null,
+                    "java/lang/Object", null);
+            StringBuilder descriptor = new StringBuilder("(");
+            method.getParameterTypeNames().forEach(descriptor::append);
+            descriptor.append("I)").append(method.getReturnType());
+            mv = classWriter.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, METHOD_NAME, descriptor.toString(),
+                    null, null);
+            mv.visitCode();
+            visitPrologue();
+            for (int i = 0; i < instructions.size(); i++) {
+                mv.visitLabel(labels[i]);
+                if (inTypes[i] == null) {
+                    // Unreachable, e.g. payloads
+                    continue;
+                }
+                if (loopHeaders.contains(i)) {
+                    visitLoopIteration();
+                }
+                translate(i, inTypes[i].clone());
+            }
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+            classWriter.visitEnd();
+
+            return classWriter.toByteArray();
+        }
+
+        /*
+         * Forward data flow of register types, by translating each instruction without emitting anything.
+         */
+        private String[][] inferTypes() throws NotCompilableException {
+            String[][] inTypes = new String[instructions.size()][];
+            // Room for the result register and, if it's wide, its second half
+            String[] types = new String[registerCount + 2];
+            int register = registerCount - Utils.getRegisterSize(method.getParameterTypeNames());
+            for (String type : method.getParameterTypeNames()) {
+                writeType(types, register, getRegisterType(type));
+                register += Utils.getRegisterSize(type);
+            }
+            inTypes[0] = types;
+
+            mv = new MethodVisitor(Opcodes.ASM5) {
+            };
+            Deque<Integer> queue = new ArrayDeque<>();
+            queue.add(0);
+            while (!queue.isEmpty()) {
+                int index = queue.poll();
+                String[] outTypes = inTypes[index].clone();
+                translate(index, outTypes);
+                for (int successor : getSuccessors(index)) {
+                    if (successor >= instructions.size()) {
+                        throw new NotCompilableException("execution falls off the end");
+                    }
+                    if (inTypes[successor] == null) {
+                        inTypes[successor] = outTypes.clone();
+                        queue.add(successor);
+                        continue;
+                    }
+
+                    boolean changed = false;
+                    for (int r = 0; r < outTypes.length; r++) {
+                        String merged = mergeTypes(inTypes[successor][r], outTypes[r]);
+                        if (merged == null ? inTypes[successor][r] != null : !merged.equals(inTypes[successor][r])) {
+                            inTypes[successor][r] = merged;
+                            changed = true;
+                        }
+                    }
+                    if (changed) {
+                        queue.add(successor);
+                    }
+                }
+            }
+
+            return inTypes;
+        }
+
+        private TIntSet findLoopHeaders(String[][] inTypes) throws NotCompilableException {
+            TIntSet loopHeaders = new TIntHashSet();
+            for (int i = 0; i < instructions.size(); i++) {
+                if (inTypes[i] == null) {
+                    continue;
+                }
+                for (int successor : getSuccessors(i)) {
+                    if (successor <= i) {
+                        loopHeaders.add(successor);
+                    }
+                }
+            }
+
+            return loopHeaders;
+        }
+
+        private int[] getSuccessors(int index) throws NotCompilableException {
+            BuilderInstruction instruction = instructions.get(index);
+            switch (instruction.getOpcode()) {
+                case RETURN_VOID:
+                case RETURN:
+                case RETURN_WIDE:
+                case RETURN_OBJECT:
+                    return new int[0];
+                case GOTO:
+                case GOTO_16:
+                case GOTO_32:
+                    return new int[] { getTargetIndex(instruction) };
+                case PACKED_SWITCH:
+                case SPARSE_SWITCH: {
+                    int address = instruction.getLocation().getCodeAddress();
+                    List<? extends SwitchElement> elements = getSwitchPayload(instruction).getSwitchElements();
+                    int[] successors = new int[elements.size() + 1];
+                    for (int i = 0; i < elements.size(); i++) {
+                        successors[i] = getIndex(address + elements.get(i).getOffset());
+                    }
+                    successors[elements.size()] = index + 1;
+
+                    return successors;
+                }
+                default:
+                    if (instruction.getOpcode().name.startsWith("if-")) {
+                        return new int[] { getTargetIndex(instruction), index + 1 };
+                    }
+
+                    return new int[] { index + 1 };
+            }
+        }
+
+        private int getIndex(int address) throws NotCompilableException {
+            if (!addressToIndex.containsKey(address)) {
+                throw new NotCompilableException("no instruction @" + address);
+            }
+
+            return addressToIndex.get(address);
+        }
+
+        private int getTargetIndex(BuilderInstruction instruction) throws NotCompilableException {
+            int offset = ((OffsetInstruction) instruction).getCodeOffset();
+
+            return getIndex(instruction.getLocation().getCodeAddress() + offset);
+        }
+
+        private SwitchPayload getSwitchPayload(BuilderInstruction instruction) throws NotCompilableException {
+            BuilderInstruction payload = instructions.get(getTargetIndex(instruction));
+            if (!(payload instanceof SwitchPayload)) {
+                throw new NotCompilableException("switch without payload");
+            }
+
+            return (SwitchPayload) payload;
+        }
+
+        private void visitPrologue() {
+            // Every local always holds one kind of value, so the verifier never sees conflicting types
+            for (int register = 0; register <= resultRegister; register++) {
+                mv.visitInsn(Opcodes.ICONST_0);
+                mv.visitVarInsn(Opcodes.ISTORE, getSlot(register, 'I'));
+                mv.visitInsn(Opcodes.FCONST_0);
+                mv.visitVarInsn(Opcodes.FSTORE, getSlot(register, 'F'));
+                mv.visitInsn(Opcodes.ACONST_NULL);
+                mv.visitVarInsn(Opcodes.ASTORE, getSlot(register, 'L'));
+                mv.visitInsn(Opcodes.LCONST_0);
+                mv.visitVarInsn(Opcodes.LSTORE, getSlot(register, 'J'));
+                mv.visitInsn(Opcodes.DCONST_0);
+                mv.visitVarInsn(Opcodes.DSTORE, getSlot(register, 'D'));
+            }
+
+            int slot = 0;
+            int register = registerCount - Utils.getRegisterSize(method.getParameterTypeNames());
+            for (String type : method.getParameterTypeNames()) {
+                char kind = getKind(type);
+                mv.visitVarInsn(getLoadOpcode(kind), slot);
+                mv.visitVarInsn(getStoreOpcode(kind), getSlot(register, kind));
+                slot += Utils.getRegisterSize(type);
+                register += Utils.getRegisterSize(type);
+            }
+        }
+
+        private void visitLoopIteration() {
+            Label withinLimit = new Label();
+            mv.visitIincInsn(loopIterationsSlot, -1);
+            mv.visitVarInsn(Opcodes.ILOAD, loopIterationsSlot);
+            mv.visitJumpInsn(Opcodes.IFGE, withinLimit);
+            visitThrow("java/lang/IllegalStateException", "Exceeded loop iteration limit");
+            mv.visitLabel(withinLimit);
+        }
+
+        private void visitThrow(String exceptionClass, String message) {
+            mv.visitTypeInsn(Opcodes.NEW, exceptionClass);
+            mv.visitInsn(Opcodes.DUP);
+            mv.visitLdcInsn(message);
+            mv.visitMethodInsn(Opcodes.INVOKESPECIAL, exceptionClass, "<init>", "(Ljava/lang/String;)V", false);
+            mv.visitInsn(Opcodes.ATHROW);
+        }
+
+        private int getSlot(int register, char kind) {
+            int slot = firstRegisterSlot + register * SLOTS_PER_REGISTER;
+            switch (kind) {
+                case 'I':
+                    return slot;
+                case 'F':
+                    return slot + 1;
+                case 'L':
+                    return slot + 2;
+                case 'J':
+                    return slot + 3;
+                default:
+                    return slot + 5;
+            }
+        }
+
+        private int getLoadOpcode(char kind) {
+            switch (kind) {
+                case 'I':
+                    return Opcodes.ILOAD;
+                case 'F':
+                    return Opcodes.FLOAD;
+                case 'J':
+                    return Opcodes.LLOAD;
+                case 'D':
+                    return Opcodes.DLOAD;
+                default:
+                    return Opcodes.ALOAD;
+            }
+        }
+
+        private int getStoreOpcode(char kind) {
+            return getLoadOpcode(kind) + (Opcodes.ISTORE - Opcodes.ILOAD);
+        }
+
+        /*
+         * Load a register as a kind of value, checking the register may hold it.
+         */
+        private String load(String[] types, int register, char kind) throws NotCompilableException {
+            String type = types[register];
+            boolean compatible;
+            if (type == null || type.startsWith(UNINITIALIZED_PREFIX)) {
+                compatible = false;
+            } else if (kind == 'I' || kind == 'F') {
+                compatible = String.valueOf(kind).equals(type) || ZERO.equals(type) || NARROW_CONSTANT.equals(type);
+            } else if (kind == 'J' || kind == 'D') {
+                compatible = String.valueOf(kind).equals(type) || WIDE_CONSTANT.equals(type);
+            } else {
+                compatible = isReference(type) || ZERO.equals(type);
+            }
+            if (!compatible) {
+                throw new NotCompilableException("v" + register + " holds " + type + ", not " + kind);
+            }
+            mv.visitVarInsn(getLoadOpcode(kind), getSlot(register, kind));
+
+            return type;
+        }
+
+        private void loadReference(String[] types, int register, String type) throws NotCompilableException {
+            load(types, register, 'L');
+            if (!OBJECT.equals(type)) {
+                mv.visitTypeInsn(Opcodes.CHECKCAST, getInternalName(type));
+            }
+        }
+
+        private void store(String[] types, int register, String type) {
+            char kind = isReference(type) ? 'L' : type.charAt(0);
+            mv.visitVarInsn(getStoreOpcode(kind), getSlot(register, kind));
+            writeType(types, register, type);
+        }
+
+        private void writeType(String[] types, int register, String type) {
+            types[register] = type;
+            if ("J".equals(type) || "D".equals(type) || WIDE_CONSTANT.equals(type)) {
+                types[register + 1] = null;
+            }
+            if (register > 0) {
+                String previous = types[register - 1];
+                if ("J".equals(previous) || "D".equals(previous) || WIDE_CONSTANT.equals(previous)) {
+                    types[register - 1] = null;
+                }
+            }
+        }
+
+        private void copyRegister(String[] types, int toRegister, int fromRegister, String... kinds) {
+            for (String kind : kinds) {
+                mv.visitVarInsn(getLoadOpcode(kind.charAt(0)), getSlot(fromRegister, kind.charAt(0)));
+                mv.visitVarInsn(getStoreOpcode(kind.charAt(0)), getSlot(toRegister, kind.charAt(0)));
+            }
+            writeType(types, toRegister, types[fromRegister]);
+        }
+
+        private void translate(int index, String[] types) throws NotCompilableException {
+            BuilderInstruction instruction = instructions.get(index);
+            Opcode opcode = instruction.getOpcode();
+            switch (opcode) {
+                case NOP:
+                    return;
+                case MOVE:
+                case MOVE_FROM16:
+                case MOVE_16:
+                    checkReadable(types, getRegisterB(instruction));
+                    copyRegister(types, getRegisterA(instruction), getRegisterB(instruction), "I", "F", "L");
+                    return;
+                case MOVE_WIDE:
+                case MOVE_WIDE_FROM16:
+                case MOVE_WIDE_16:
+                    checkReadable(types, getRegisterB(instruction));
+                    copyRegister(types, getRegisterA(instruction), getRegisterB(instruction), "J", "D");
+                    return;
+                case MOVE_OBJECT:
+                case MOVE_OBJECT_FROM16:
+                case MOVE_OBJECT_16:
+                    checkReadable(types, getRegisterB(instruction));
+                    copyRegister(types, getRegisterA(instruction), getRegisterB(instruction), "L");
+                    return;
+                case MOVE_RESULT:
+                case MOVE_RESULT_OBJECT:
+                    checkReadable(types, resultRegister);
+                    copyRegister(types, getRegisterA(instruction), resultRegister, "I", "F", "L");
+                    return;
+                case MOVE_RESULT_WIDE:
+                    checkReadable(types, resultRegister);
+                    copyRegister(types, getRegisterA(instruction), resultRegister, "J", "D");
+                    return;
+                case RETURN_VOID:
+                    mv.visitInsn(Opcodes.RETURN);
+                    return;
+                case RETURN:
+                case RETURN_WIDE:
+                case RETURN_OBJECT:
+                    visitReturn(types, getRegisterA(instruction));
+                    return;
+                case CONST_4:
+                case CONST_16:
+                case CONST:
+                case CONST_HIGH16:
+                    visitNarrowConstant(types, instruction);
+                    return;
+                case CONST_WIDE_16:
+                case CONST_WIDE_32:
+                case CONST_WIDE:
+                case CONST_WIDE_HIGH16:
+                    visitWideConstant(types, instruction);
+                    return;
+                case CONST_STRING:
+                case CONST_STRING_JUMBO: {
+                    String value = ((StringReference) ((ReferenceInstruction) instruction).getReference()).getString();
+                    mv.visitLdcInsn(value);
+                    store(types, getRegisterA(instruction), "Ljava/lang/String;");
+                    return;
+                }
+                case CHECK_CAST: {
+                    String type = getTypeReference(instruction);
+                    loadReference(types, getRegisterA(instruction), type);
+                    store(types, getRegisterA(instruction), type);
+                    return;
+                }
+                case INSTANCE_OF: {
+                    String type = getTypeReference(instruction);
+                    load(types, getRegisterB(instruction), 'L');
+                    mv.visitTypeInsn(Opcodes.INSTANCEOF, getInternalName(type));
+                    store(types, getRegisterA(instruction), "I");
+                    return;
+                }
+                case ARRAY_LENGTH:
+                    loadReference(types, getRegisterB(instruction), getArrayType(types, getRegisterB(instruction)));
+                    mv.visitInsn(Opcodes.ARRAYLENGTH);
+                    store(types, getRegisterA(instruction), "I");
+                    return;
+                case NEW_INSTANCE: {
+                    // Created when it's initialized since the JVM doesn't allow uninitialized objects in locals
+                    String type = getTypeReference(instruction);
+                    writeType(types, getRegisterA(instruction), UNINITIALIZED_PREFIX + type);
+                    return;
+                }
+                case NEW_ARRAY:
+                    visitNewArray(types, instruction);
+                    return;
+                case FILL_ARRAY_DATA:
+                    visitFillArrayData(types, instruction);
+                    return;
+                case GOTO:
+                case GOTO_16:
+                case GOTO_32:
+                    mv.visitJumpInsn(Opcodes.GOTO, labels[getTargetIndex(instruction)]);
+                    return;
+                case PACKED_SWITCH:
+                case SPARSE_SWITCH:
+                    visitSwitch(types, index, instruction);
+                    return;
+                case CMPL_FLOAT:
+                case CMPG_FLOAT:
+                case CMPL_DOUBLE:
+                case CMPG_DOUBLE:
+                case CMP_LONG:
+                    visitCompare(types, instruction);
+                    return;
+                case IF_EQ:
+                case IF_NE:
+                case IF_LT:
+                case IF_GE:
+                case IF_GT:
+                case IF_LE:
+                    visitIf(types, instruction);
+                    return;
+                case IF_EQZ:
+                case IF_NEZ:
+                case IF_LTZ:
+                case IF_GEZ:
+                case IF_GTZ:
+                case IF_LEZ:
+                    visitIfZero(types, instruction);
+                    return;
+                case AGET:
+                case AGET_WIDE:
+                case AGET_OBJECT:
+                case AGET_BOOLEAN:
+                case AGET_BYTE:
+                case AGET_CHAR:
+                case AGET_SHORT:
+                    visitArrayGet(types, instruction);
+                    return;
+                case APUT:
+                case APUT_WIDE:
+                case APUT_OBJECT:
+                case APUT_BOOLEAN:
+                case APUT_BYTE:
+                case APUT_CHAR:
+                case APUT_SHORT:
+                    visitArrayPut(types, instruction);
+                    return;
+                case INVOKE_VIRTUAL:
+                case INVOKE_DIRECT:
+                case INVOKE_STATIC:
+                case INVOKE_INTERFACE:
+                case INVOKE_VIRTUAL_RANGE:
+                case INVOKE_DIRECT_RANGE:
+                case INVOKE_STATIC_RANGE:
+                case INVOKE_INTERFACE_RANGE:
+                    visitInvoke(types, instruction);
+                    return;
+                case PACKED_SWITCH_PAYLOAD:
+                case SPARSE_SWITCH_PAYLOAD:
+                case ARRAY_PAYLOAD:
+                    throw new NotCompilableException("execution reaches a payload");
+                default:
+                    visitMath(types, instruction);
+            }
+        }
+
+        private void checkReadable(String[] types, int register) throws NotCompilableException {
+            String type = types[register];
+            if (type == null || type.startsWith(UNINITIALIZED_PREFIX)) {
+                throw new NotCompilableException("v" + register + " can't be read");
+            }
+        }
+
+        private int getRegisterA(BuilderInstruction instruction) {
+            return ((OneRegisterInstruction) instruction).getRegisterA();
+        }
+
+        private int getRegisterB(BuilderInstruction instruction) {
+            return ((TwoRegisterInstruction) instruction).getRegisterB();
+        }
+
+        private int getRegisterC(BuilderInstruction instruction) {
+            return ((ThreeRegisterInstruction) instruction).getRegisterC();
+        }
+
+        private String getTypeReference(BuilderInstruction instruction) throws NotCompilableException {
+            String type = ((TypeReference) ((ReferenceInstruction) instruction).getReference()).getType();
+            checkType(type);
+
+            return type;
+        }
+
+        /*
+         * Local classes are only known to the virtual machine, so compiled code can only use safe framework classes.
+         */
+        private void checkType(String type) throws NotCompilableException {
+            String baseType = ClassNameUtils.getComponentBase(type);
+            if (!ClassNameUtils.isPrimitive(baseType) && !"V".equals(baseType) && !configuration.isSafe(baseType)) {
+                throw new NotCompilableException("uses " + type);
+            }
+        }
+
+        private String getArrayType(String[] types, int register) throws NotCompilableException {
+            String type = types[register];
+            if (type == null || type.charAt(0) != '[') {
+                throw new NotCompilableException("v" + register + " isn't known to be an array: " + type);
+            }
+
+            return type;
+        }
+
+        private void visitReturn(String[] types, int register) throws NotCompilableException {
+            String returnType = method.getReturnType();
+            char kind = getKind(returnType);
+            if (kind == 'L') {
+                loadReference(types, register, returnType);
+            } else {
+                load(types, register, kind);
+            }
+            mv.visitInsn(getLoadOpcode(kind) - Opcodes.ILOAD + Opcodes.IRETURN);
+        }
+
+        private void visitNarrowConstant(String[] types, BuilderInstruction instruction) {
+            int value = ((NarrowLiteralInstruction) instruction).getNarrowLiteral();
+            int register = getRegisterA(instruction);
+            // Could be an int, a float, or if it's 0, null
+            pushInt(value);
+            mv.visitVarInsn(Opcodes.ISTORE, getSlot(register, 'I'));
+            pushFloat(Float.intBitsToFloat(value));
+            mv.visitVarInsn(Opcodes.FSTORE, getSlot(register, 'F'));
+            if (value == 0) {
+                mv.visitInsn(Opcodes.ACONST_NULL);
+                mv.visitVarInsn(Opcodes.ASTORE, getSlot(register, 'L'));
+            }
+            writeType(types, register, value == 0 ? ZERO : NARROW_CONSTANT);
+        }
+
+        private void visitWideConstant(String[] types, BuilderInstruction instruction) {
+            long value = ((WideLiteralInstruction) instruction).getWideLiteral();
+            int register = getRegisterA(instruction);
+            pushLong(value);
+            mv.visitVarInsn(Opcodes.LSTORE, getSlot(register, 'J'));
+            pushDouble(Double.longBitsToDouble(value));
+            mv.visitVarInsn(Opcodes.DSTORE, getSlot(register, 'D'));
+            writeType(types, register, WIDE_CONSTANT);
+        }
+
+        private void visitNewArray(String[] types, BuilderInstruction instruction) throws NotCompilableException {
+            String type = getTypeReference(instruction);
+            String componentType = type.substring(1);
+            load(types, getRegisterB(instruction), 'I');
+            if (isReference(componentType)) {
+                mv.visitTypeInsn(Opcodes.ANEWARRAY, getInternalName(componentType));
+            } else {
+                mv.visitIntInsn(Opcodes.NEWARRAY, getNewArrayType(componentType.charAt(0)));
+            }
+            store(types, getRegisterA(instruction), type);
+        }
+
+        private int getNewArrayType(char componentType) {
+            switch (componentType) {
+                case 'Z':
+                    return Opcodes.T_BOOLEAN;
+                case 'B':
+                    return Opcodes.T_BYTE;
+                case 'S':
+                    return Opcodes.T_SHORT;
+                case 'C':
+                    return Opcodes.T_CHAR;
+                case 'I':
+                    return Opcodes.T_INT;
+                case 'J':
+                    return Opcodes.T_LONG;
+                case 'F':
+                    return Opcodes.T_FLOAT;
+                default:
+                    return Opcodes.T_DOUBLE;
+            }
+        }
+
+        private void visitFillArrayData(String[] types, BuilderInstruction instruction) throws NotCompilableException {
+            int register = getRegisterA(instruction);
+            String arrayType = getArrayType(types, register);
+            char componentType = arrayType.charAt(1);
+            if (isReference(arrayType.substring(1))) {
+                throw new NotCompilableException("fill-array-data of " + arrayType);
+            }
+
+            BuilderInstruction payload = instructions.get(getTargetIndex(instruction));
+            if (!(payload instanceof ArrayPayload)) {
+                throw new NotCompilableException("fill-array-data without payload");
+            }
+            List<Number> elements = ((ArrayPayload) payload).getArrayElements();
+            for (int i = 0; i < elements.size(); i++) {
+                loadReference(types, register, arrayType);
+                pushInt(i);
+                Number element = elements.get(i);
+                switch (componentType) {
+                    case 'J':
+                        pushLong(element.longValue());
+                        break;
+                    case 'F':
+                        pushFloat(Float.intBitsToFloat(element.intValue()));
+                        break;
+                    case 'D':
+                        pushDouble(Double.longBitsToDouble(element.longValue()));
+                        break;
+                    case 'Z':
+                        pushInt(element.intValue() != 0 ? 1 : 0);
+                        break;
+                    default:
+                        pushInt(element.intValue());
+                }
+                mv.visitInsn(getArrayStoreOpcode(componentType));
+            }
+        }
+
+        private void visitSwitch(String[] types, int index,
+                                 BuilderInstruction instruction) throws NotCompilableException {
+            int address = instruction.getLocation().getCodeAddress();
+            List<? extends SwitchElement> elements = getSwitchPayload(instruction).getSwitchElements();
+            SwitchElement[] sorted = elements.toArray(new SwitchElement[elements.size()]);
+            Arrays.sort(sorted, (e1, e2) -> Integer.compare(e1.getKey(), e2.getKey()));
+            int[] keys = new int[sorted.length];
+            Label[] targets = new Label[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                keys[i] = sorted[i].getKey();
+                targets[i] = labels[getIndex(address + sorted[i].getOffset())];
+            }
+            load(types, getRegisterA(instruction), 'I');
+            mv.visitLookupSwitchInsn(labels[index + 1], keys, targets);
+        }
+
+        private void visitCompare(String[] types, BuilderInstruction instruction) throws NotCompilableException {
+            Opcode opcode = instruction.getOpcode();
+            char kind;
+            int jvmOpcode;
+            if (opcode == Opcode.CMP_LONG) {
+                kind = 'J';
+                jvmOpcode = Opcodes.LCMP;
+            } else if (opcode == Opcode.CMPL_FLOAT || opcode == Opcode.CMPG_FLOAT) {
+                kind = 'F';
+                jvmOpcode = opcode == Opcode.CMPL_FLOAT ? Opcodes.FCMPL : Opcodes.FCMPG;
+            } else {
+                kind = 'D';
+                jvmOpcode = opcode == Opcode.CMPL_DOUBLE ? Opcodes.DCMPL : Opcodes.DCMPG;
+            }
+            load(types, getRegisterB(instruction), kind);
+            load(types, getRegisterC(instruction), kind);
+            mv.visitInsn(jvmOpcode);
+            store(types, getRegisterA(instruction), "I");
+        }
+
+        private void visitIf(String[] types, BuilderInstruction instruction) throws NotCompilableException {
+            int registerA = getRegisterA(instruction);
+            int registerB = getRegisterB(instruction);
+            Opcode opcode = instruction.getOpcode();
+            boolean references = isReference(types[registerA]) || isReference(types[registerB]);
+            int jvmOpcode;
+            if (references) {
+                if (opcode != Opcode.IF_EQ && opcode != Opcode.IF_NE) {
+                    throw new NotCompilableException(opcode.name + " of references");
+                }
+                load(types, registerA, 'L');
+                load(types, registerB, 'L');
+                jvmOpcode = opcode == Opcode.IF_EQ ? Opcodes.IF_ACMPEQ : Opcodes.IF_ACMPNE;
+            } else {
+                load(types, registerA, 'I');
+                load(types, registerB, 'I');
+                jvmOpcode = getIfOpcode(opcode.name.substring(3, 5)) + (Opcodes.IF_ICMPEQ - Opcodes.IFEQ);
+            }
+            mv.visitJumpInsn(jvmOpcode, labels[getTargetIndex(instruction)]);
+        }
+
+        private void visitIfZero(String[] types, BuilderInstruction instruction) throws NotCompilableException {
+            int register = getRegisterA(instruction);
+            Opcode opcode = instruction.getOpcode();
+            int jvmOpcode;
+            if (isReference(types[register])) {
+                if (opcode != Opcode.IF_EQZ && opcode != Opcode.IF_NEZ) {
+                    throw new NotCompilableException(opcode.name + " of reference");
+                }
+                load(types, register, 'L');
+                jvmOpcode = opcode == Opcode.IF_EQZ ? Opcodes.IFNULL : Opcodes.IFNONNULL;
+            } else {
+                load(types, register, 'I');
+                jvmOpcode = getIfOpcode(opcode.name.substring(3, 5));
+            }
+            mv.visitJumpInsn(jvmOpcode, labels[getTargetIndex(instruction)]);
+        }
+
+        private int getIfOpcode(String condition) {
+            switch (condition) {
+                case "eq":
+                    return Opcodes.IFEQ;
+                case "ne":
+                    return Opcodes.IFNE;
+                case "lt":
+                    return Opcodes.IFLT;
+                case "ge":
+                    return Opcodes.IFGE;
+                case "gt":
+                    return Opcodes.IFGT;
+                default:
+                    return Opcodes.IFLE;
+            }
+        }
+
+        private void visitArrayGet(String[] types, BuilderInstruction instruction) throws NotCompilableException {
+            String arrayType = getArrayType(types, getRegisterB(instruction));
+            String componentType = arrayType.substring(1);
+            checkArrayAccess(instruction.getOpcode(), componentType);
+            loadReference(types, getRegisterB(instruction), arrayType);
+            load(types, getRegisterC(instruction), 'I');
+            if (isReference(componentType)) {
+                mv.visitInsn(Opcodes.AALOAD);
+            } else {
+                mv.visitInsn(getArrayStoreOpcode(componentType.charAt(0)) - (Opcodes.IASTORE - Opcodes.IALOAD));
+            }
+            store(types, getRegisterA(instruction), getRegisterType(componentType));
+        }
+
+        private void visitArrayPut(String[] types, BuilderInstruction instruction) throws NotCompilableException {
+            String arrayType = getArrayType(types, getRegisterB(instruction));
+            String componentType = arrayType.substring(1);
+            checkArrayAccess(instruction.getOpcode(), componentType);
+            loadReference(types, getRegisterB(instruction), arrayType);
+            load(types, getRegisterC(instruction), 'I');
+            if (isReference(componentType)) {
+                loadReference(types, getRegisterA(instruction), componentType);
+                mv.visitInsn(Opcodes.AASTORE);
+            } else {
+                load(types, getRegisterA(instruction), getKind(componentType));
+                mv.visitInsn(getArrayStoreOpcode(componentType.charAt(0)));
+            }
+        }
+
+        private void checkArrayAccess(Opcode opcode, String componentType) throws NotCompilableException {
+            String suffix = opcode.name.substring(4);
+            String expected;
+            switch (componentType.charAt(0)) {
+                case 'Z':
+                    expected = "-boolean";
+                    break;
+                case 'B':
+                    expected = "-byte";
+                    break;
+                case 'C':
+                    expected = "-char";
+                    break;
+                case 'S':
+                    expected = "-short";
+                    break;
+                case 'J':
+                case 'D':
+                    expected = "-wide";
+                    break;
+                case 'I':
+                case 'F':
+                    expected = "";
+                    break;
+                default:
+                    expected = "-object";
+            }
+            if (!suffix.equals(expected)) {
+                throw new NotCompilableException(opcode.name + " of " + componentType + "[]");
+            }
+        }
+
+        private int getArrayStoreOpcode(char componentType) {
+            switch (componentType) {
+                case 'Z':
+                case 'B':
+                    return Opcodes.BASTORE;
+                case 'C':
+                    return Opcodes.CASTORE;
+                case 'S':
+                    return Opcodes.SASTORE;
+                case 'I':
+                    return Opcodes.IASTORE;
+                case 'J':
+                    return Opcodes.LASTORE;
+                case 'F':
+                    return Opcodes.FASTORE;
+                default:
+                    return Opcodes.DASTORE;
+            }
+        }
+
+        private void visitInvoke(String[] types, BuilderInstruction instruction) throws NotCompilableException {
+            MethodReference reference = (MethodReference) ((ReferenceInstruction) instruction).getReference();
+            String signature = ReferenceUtil.getMethodDescriptor(reference);
+            Opcode opcode = instruction.getOpcode();
+            boolean isStatic = opcode == Opcode.INVOKE_STATIC || opcode == Opcode.INVOKE_STATIC_RANGE;
+            boolean isConstructor = reference.getName().equals("<init>");
+            boolean isDirect = opcode == Opcode.INVOKE_DIRECT || opcode == Opcode.INVOKE_DIRECT_RANGE;
+            if (isDirect != isConstructor) {
+                throw new NotCompilableException("invoke-direct of " + signature);
+            }
+            if (!configuration.isSafe(signature) || MethodEmulator.canEmulate(signature)) {
+                throw new NotCompilableException("invokes " + signature);
+            }
+            boolean isInterface = checkAccessible(reference, isStatic, isConstructor);
+
+            int[] registers = getInvokeRegisters(instruction);
+            String owner = getInternalName(reference.getDefiningClass());
+            int argumentIndex = 0;
+            if (isConstructor) {
+                String type = types[registers[0]];
+                if (!(UNINITIALIZED_PREFIX + reference.getDefiningClass()).equals(type)) {
+                    throw new NotCompilableException("constructor of " + type);
+                }
+                mv.visitTypeInsn(Opcodes.NEW, owner);
+                mv.visitInsn(Opcodes.DUP);
+                argumentIndex = 1;
+            } else if (!isStatic) {
+                loadReference(types, registers[0], reference.getDefiningClass());
+                argumentIndex = 1;
+            }
+
+            StringBuilder descriptor = new StringBuilder("(");
+            for (CharSequence parameterType : reference.getParameterTypes()) {
+                String type = parameterType.toString();
+                descriptor.append(type);
+                if (argumentIndex >= registers.length) {
+                    throw new NotCompilableException("too few arguments for " + signature);
+                }
+                if (getKind(type) == 'L') {
+                    loadReference(types, registers[argumentIndex], type);
+                } else {
+                    load(types, registers[argumentIndex], getKind(type));
+                }
+                argumentIndex += Utils.getRegisterSize(type);
+            }
+            descriptor.append(')').append(reference.getReturnType());
+
+            if (isConstructor) {
+                mv.visitMethodInsn(Opcodes.INVOKESPECIAL, owner, "<init>", descriptor.toString(), false);
+                store(types, registers[0], reference.getDefiningClass());
+                return;
+            }
+
+            int jvmOpcode;
+            if (isStatic) {
+                jvmOpcode = Opcodes.INVOKESTATIC;
+            } else {
+                jvmOpcode = isInterface ? Opcodes.INVOKEINTERFACE : Opcodes.INVOKEVIRTUAL;
+            }
+            mv.visitMethodInsn(jvmOpcode, owner, reference.getName(), descriptor.toString(), isInterface);
+            String returnType = reference.getReturnType();
+            if (!"V".equals(returnType)) {
+                store(types, resultRegister, getRegisterType(returnType));
+            }
+        }
+
+        private int[] getInvokeRegisters(BuilderInstruction instruction) {
+            if (instruction instanceof RegisterRangeInstruction) {
+                RegisterRangeInstruction rangeInstruction = (RegisterRangeInstruction) instruction;
+                int[] registers = new int[rangeInstruction.getRegisterCount()];
+                for (int i = 0; i < registers.length; i++) {
+                    registers[i] = rangeInstruction.getStartRegister() + i;
+                }
+
+                return registers;
+            }
+
+            FiveRegisterInstruction fiveRegisterInstruction = (FiveRegisterInstruction) instruction;
+            int[] registers = new int[] {
+                    fiveRegisterInstruction.getRegisterC(), fiveRegisterInstruction.getRegisterD(),
+                    fiveRegisterInstruction.getRegisterE(), fiveRegisterInstruction.getRegisterF(),
+                    fiveRegisterInstruction.getRegisterG()
+            };
+
+            return Arrays.copyOf(registers, fiveRegisterInstruction.getRegisterCount());
+        }
+
+        /*
+         * Compiled code can only call public members of public classes. Returns true if the class is an interface.
+         */
+        private boolean checkAccessible(MethodReference reference, boolean isStatic,
+                                        boolean isConstructor) throws NotCompilableException {
+            try {
+                Class<?> klazz = Class.forName(ClassNameUtils.internalToBinary(reference.getDefiningClass()), false,
+                        parentClassLoader);
+                List<? extends CharSequence> parameterTypeNames = reference.getParameterTypes();
+                Class<?>[] parameterTypes = new Class<?>[parameterTypeNames.size()];
+                for (int i = 0; i < parameterTypes.length; i++) {
+                    parameterTypes[i] = loadType(parameterTypeNames.get(i).toString());
+                }
+                int modifiers;
+                if (isConstructor) {
+                    modifiers = klazz.getConstructor(parameterTypes).getModifiers();
+                } else {
+                    Method jvmMethod = klazz.getMethod(reference.getName(), parameterTypes);
+                    if (Modifier.isStatic(jvmMethod.getModifiers()) != isStatic) {
+                        throw new NotCompilableException("wrong kind of invoke for " + reference);
+                    }
+                    modifiers = jvmMethod.getModifiers();
+                }
+                if (!Modifier.isPublic(klazz.getModifiers()) || !Modifier.isPublic(modifiers)) {
+                    throw new NotCompilableException(reference + " isn't public");
+                }
+
+                return klazz.isInterface();
+            } catch (ClassNotFoundException | NoSuchMethodException | LinkageError e) {
+                throw new NotCompilableException("can't resolve " + reference + ": " + e);
+            }
+        }
+
+        private Class<?> loadType(String type) throws ClassNotFoundException {
+            switch (type) {
+                case "Z":
+                    return boolean.class;
+                case "B":
+                    return byte.class;
+                case "S":
+                    return short.class;
+                case "C":
+                    return char.class;
+                case "I":
+                    return int.class;
+                case "J":
+                    return long.class;
+                case "F":
+                    return float.class;
+                case "D":
+                    return double.class;
+                default:
+                    return Class.forName(ClassNameUtils.internalToBinary(type), false, parentClassLoader);
+            }
+        }
+
+        private void visitMath(String[] types, BuilderInstruction instruction) throws NotCompilableException {
+            String name = instruction.getOpcode().name;
+            if (name.contains("-to-")) {
+                String[] conversion = name.split("-to-");
+                visitConversion(types, instruction, conversion[0], conversion[1]);
+                return;
+            }
+
+            int dash = name.indexOf('-');
+            if (dash < 0) {
+                throw new NotCompilableException(name + " isn't supported");
+            }
+            String operation = name.substring(0, dash);
+            String rest = name.substring(dash + 1);
+            int slash = rest.indexOf('/');
+            String typeName = slash < 0 ? rest : rest.substring(0, slash);
+            String variant = slash < 0 ? "" : rest.substring(slash + 1);
+
+            char kind = getKindForName(typeName);
+            int registerA = getRegisterA(instruction);
+            switch (operation) {
+                case "neg":
+                    load(types, getRegisterB(instruction), kind);
+                    mv.visitInsn(Opcodes.INEG + getTypeOffset(kind));
+                    store(types, registerA, String.valueOf(kind));
+                    return;
+                case "not":
+                    load(types, getRegisterB(instruction), kind);
+                    if (kind == 'J') {
+                        pushLong(-1L);
+                        mv.visitInsn(Opcodes.LXOR);
+                    } else {
+                        mv.visitInsn(Opcodes.ICONST_M1);
+                        mv.visitInsn(Opcodes.IXOR);
+                    }
+                    store(types, registerA, String.valueOf(kind));
+                    return;
+                case "rsub":
+                    pushInt(((NarrowLiteralInstruction) instruction).getNarrowLiteral());
+                    load(types, getRegisterB(instruction), 'I');
+                    mv.visitInsn(Opcodes.ISUB);
+                    store(types, registerA, "I");
+                    return;
+            }
+
+            int jvmOpcode = getBinaryOpcode(operation, kind);
+            boolean isShift = operation.endsWith("shl") || operation.endsWith("shr");
+            char secondKind = isShift ? 'I' : kind;
+            if (variant.equals("2addr")) {
+                load(types, registerA, kind);
+                load(types, getRegisterB(instruction), secondKind);
+            } else if (variant.startsWith("lit")) {
+                load(types, getRegisterB(instruction), kind);
+                pushInt(((NarrowLiteralInstruction) instruction).getNarrowLiteral());
+            } else if (variant.isEmpty()) {
+                load(types, getRegisterB(instruction), kind);
+                load(types, getRegisterC(instruction), secondKind);
+            } else {
+                throw new NotCompilableException(name + " isn't supported");
+            }
+            mv.visitInsn(jvmOpcode);
+            store(types, registerA, String.valueOf(kind));
+        }
+
+        private char getKindForName(String typeName) throws NotCompilableException {
+            switch (typeName) {
+                case "int":
+                    return 'I';
+                case "long":
+                    return 'J';
+                case "float":
+                    return 'F';
+                case "double":
+                    return 'D';
+                default:
+                    throw new NotCompilableException(typeName + " math isn't supported");
+            }
+        }
+
+        private int getTypeOffset(char kind) {
+            switch (kind) {
+                case 'I':
+                    return 0;
+                case 'J':
+                    return 1;
+                case 'F':
+                    return 2;
+                default:
+                    return 3;
+            }
+        }
+
+        private int getBinaryOpcode(String operation, char kind) throws NotCompilableException {
+            int offset = getTypeOffset(kind);
+            int base;
+            switch (operation) {
+                case "add":
+                    base = Opcodes.IADD;
+                    break;
+                case "sub":
+                    base = Opcodes.ISUB;
+                    break;
+                case "mul":
+                    base = Opcodes.IMUL;
+                    break;
+                case "div":
+                    base = Opcodes.IDIV;
+                    break;
+                case "rem":
+                    base = Opcodes.IREM;
+                    break;
+                case "and":
+                    base = Opcodes.IAND;
+                    break;
+                case "or":
+                    base = Opcodes.IOR;
+                    break;
+                case "xor":
+                    base = Opcodes.IXOR;
+                    break;
+                case "shl":
+                    base = Opcodes.ISHL;
+                    break;
+                case "shr":
+                    base = Opcodes.ISHR;
+                    break;
+                case "ushr":
+                    base = Opcodes.IUSHR;
+                    break;
+                default:
+                    throw new NotCompilableException(operation + " isn't supported");
+            }
+            if (base >= Opcodes.ISHL && offset > 1) {
+                throw new NotCompilableException(operation + " of " + kind);
+            }
+
+            return base + offset;
+        }
+
+        private void visitConversion(String[] types, BuilderInstruction instruction, String from,
+                                     String to) throws NotCompilableException {
+            char fromKind = getKindForName(from);
+            load(types, getRegisterB(instruction), fromKind);
+            int jvmOpcode;
+            String resultType;
+            switch (to) {
+                case "byte":
+                    jvmOpcode = Opcodes.I2B;
+                    resultType = "I";
+                    break;
+                case "char":
+                    jvmOpcode = Opcodes.I2C;
+                    resultType = "I";
+                    break;
+                case "short":
+                    jvmOpcode = Opcodes.I2S;
+                    resultType = "I";
+                    break;
+                default:
+                    char toKind = getKindForName(to);
+                    // I2L .. D2F are laid out by source type, then by the other three target types
+                    int fromOffset = getTypeOffset(fromKind);
+                    int toOffset = getTypeOffset(toKind);
+                    jvmOpcode = Opcodes.I2L + fromOffset * 3 + (toOffset < fromOffset ? toOffset : toOffset - 1);
+                    resultType = String.valueOf(toKind);
+            }
+            mv.visitInsn(jvmOpcode);
+            store(types, getRegisterA(instruction), resultType);
+        }
+
+        private void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                mv.visitInsn(Opcodes.ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                mv.visitIntInsn(Opcodes.BIPUSH, value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                mv.visitIntInsn(Opcodes.SIPUSH, value);
+            } else {
+                mv.visitLdcInsn(value);
+            }
+        }
+
+        private void pushLong(long value) {
+            if (value == 0L || value == 1L) {
+                mv.visitInsn(Opcodes.LCONST_0 + (int) value);
+            } else {
+                mv.visitLdcInsn(value);
+            }
+        }
+
+        private void pushFloat(float value) {
+            // Compare bits so -0.0 isn't mistaken for 0.0
+            if (Float.floatToRawIntBits(value) == 0 || value == 1.0f || value == 2.0f) {
+                mv.visitInsn(Opcodes.FCONST_0 + (int) value);
+            } else {
+                mv.visitLdcInsn(value);
+            }
+        }
+
+        private void pushDouble(double value) {
+            if (Double.doubleToRawLongBits(value) == 0L || value == 1.0d) {
+                mv.visitInsn(Opcodes.DCONST_0 + (int) value);
+            } else {
+                mv.visitLdcInsn(value);
+            }
+        }
+
+    }
+
+}
@@ -9,8 +9,8 @@ import org.slf4j.LoggerFactory;
 
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class SmaliClassLoader extends ClassLoader {
 
@@ -27,7 +27,9 @@ public class SmaliClassLoader extends ClassLoader {
 
     public SmaliClassLoader(ClassManager classManager) {
         super(SmaliClassLoader.class.getClassLoader());
-        cachedClasses = new HashMap<>();
+        // This loader isn't registered as parallel capable, so loadClass() locks the whole loader and classes are only
+        // built by one thread at a time. The cache is still read by any thread.
+        cachedClasses = new ConcurrentHashMap<>();
         URL jarURL = SmaliClassLoader.class.getResource(FRAMEWORK_STUBS_JAR);
         jarLoader = new URLClassLoader(new URL[] { jarURL });
         this.classBuilder = new ClassBuilder();
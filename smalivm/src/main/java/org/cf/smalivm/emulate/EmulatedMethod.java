@@ -2,13 +2,14 @@ package org.cf.smalivm.emulate;
 
 import org.cf.smalivm.SideEffect;
 import org.cf.smalivm.SideEffect.Level;
+import org.cf.smalivm.VirtualException;
 
 import java.util.HashSet;
 import java.util.Set;
 
 public abstract class EmulatedMethod {
 
-    protected final Set<Throwable> exceptions;
+    protected final Set<VirtualException> exceptions;
     protected SideEffect.Level level;
 
     EmulatedMethod() {
@@ -24,11 +25,11 @@ public abstract class EmulatedMethod {
         this.level = level;
     }
 
-    public Set<Throwable> getExceptions() {
+    public Set<VirtualException> getExceptions() {
         return exceptions;
     }
 
-    protected void setException(Throwable exception) {
+    protected void setException(VirtualException exception) {
         exceptions.add(exception);
     }
 
@@ -1,8 +1,11 @@
 package org.cf.smalivm.emulate;
 
 import org.cf.smalivm.SideEffect;
+import org.cf.smalivm.VirtualException;
 import org.cf.smalivm.VirtualMachine;
 import org.cf.smalivm.context.ExecutionContext;
+import org.cf.smalivm.jfr.MethodEmulationEvent;
+import org.cf.smalivm.jfr.VirtualMachineEvent;
 import org.cf.smalivm.opcode.Op;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,16 +67,24 @@ public class MethodEmulator {
     }
 
     public void emulate(Op op) {
+        MethodEmulationEvent event = new MethodEmulationEvent(methodDescriptor);
+        event.begin();
+        String outcome = VirtualMachineEvent.EXCEPTION;
         try {
             if (method instanceof MethodStateMethod) {
                 ((MethodStateMethod) method).execute(vm, op, context.getMethodState());
             } else {
                 ((ExecutionContextMethod) method).execute(vm, op, context);
             }
+            outcome = VirtualMachineEvent.SUCCESS;
         } catch (Exception e) {
             if (log.isWarnEnabled()) {
                 log.warn("Unexpected real exception emulating " + methodDescriptor, e);
             }
+        } finally {
+            event.setCallDepth(context.getCallDepth());
+            event.setOutcome(outcome);
+            event.commit();
         }
     }
 
@@ -81,7 +92,7 @@ public class MethodEmulator {
         return method.getSideEffectLevel();
     }
 
-    public Set<Throwable> getExceptions() {
+    public Set<VirtualException> getExceptions() {
         return method.getExceptions();
     }
 
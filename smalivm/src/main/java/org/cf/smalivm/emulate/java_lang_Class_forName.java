@@ -1,5 +1,6 @@
 package org.cf.smalivm.emulate;
 
+import org.cf.smalivm.VirtualException;
 import org.cf.smalivm.VirtualMachine;
 import org.cf.smalivm.context.ExecutionContext;
 import org.cf.smalivm.context.MethodState;
@@ -49,7 +50,7 @@ class java_lang_Class_forName extends ExecutionContextMethod {
             }
             mState.assignReturnRegister(value, RETURN_TYPE);
         } catch (ClassNotFoundException e) {
-            Throwable exception = vm.getExceptionFactory().build(op, ClassNotFoundException.class, binaryClassName);
+            VirtualException exception = vm.getExceptionFactory().build(op, ClassNotFoundException.class, binaryClassName);
             setException(exception);
         }
     }
@@ -2,6 +2,7 @@ package org.cf.smalivm.emulate;
 
 import org.cf.smalivm.ExceptionFactory;
 import org.cf.smalivm.StaticFieldAccessor;
+import org.cf.smalivm.VirtualException;
 import org.cf.smalivm.VirtualMachine;
 import org.cf.smalivm.context.ExecutionContext;
 import org.cf.smalivm.context.HeapItem;
@@ -70,7 +71,7 @@ class java_lang_reflect_Field_get extends ExecutionContextMethod {
             (isPackagePrivate && !callingClass.isSamePackageOf(fieldClass))) {
             String error = callingClass.getBinaryName() + " can't access a member of " + fieldClass.getBinaryName() +
                            " with modifiers \"" + Modifier.toString(accessFlags) + "\"";
-            Throwable exception = exceptionFactory.build(op, IllegalAccessException.class, error);
+            VirtualException exception = exceptionFactory.build(op, IllegalAccessException.class, error);
             setException(exception);
 
             return false;
@@ -108,7 +109,7 @@ class java_lang_reflect_Field_get extends ExecutionContextMethod {
             VirtualGeneric callingClass = callingMethod.getDefiningClass();
             message = message.replace(java_lang_reflect_Field_get.class.getName(), callingClass.getBinaryName());
 
-            Throwable exception = exceptionFactory.build(op, e.getClass(), message);
+            VirtualException exception = exceptionFactory.build(op, e.getClass(), message);
             setException(exception);
         }
 
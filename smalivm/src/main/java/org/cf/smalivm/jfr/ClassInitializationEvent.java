@@ -0,0 +1,16 @@
+package org.cf.smalivm.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.cf.smalivm.ClassInitialization")
+@Label("Class Initialization")
+@Description("Static initialization of a class, including executing its static initializer")
+public class ClassInitializationEvent extends VirtualMachineEvent {
+
+    public ClassInitializationEvent(String className) {
+        super(className);
+    }
+
+}
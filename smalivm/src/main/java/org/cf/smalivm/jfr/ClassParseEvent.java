@@ -0,0 +1,16 @@
+package org.cf.smalivm.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.cf.smalivm.ClassParse")
+@Label("Class Parse")
+@Description("Parsing a class from Smali or dex")
+public class ClassParseEvent extends VirtualMachineEvent {
+
+    public ClassParseEvent(String className) {
+        super(className);
+    }
+
+}
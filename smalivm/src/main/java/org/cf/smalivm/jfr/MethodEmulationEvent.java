@@ -0,0 +1,16 @@
+package org.cf.smalivm.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.cf.smalivm.MethodEmulation")
+@Label("Method Emulation")
+@Description("Execution of an emulated method")
+public class MethodEmulationEvent extends VirtualMachineEvent {
+
+    public MethodEmulationEvent(String methodSignature) {
+        super(methodSignature);
+    }
+
+}
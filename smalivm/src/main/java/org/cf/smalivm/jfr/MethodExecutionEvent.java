@@ -0,0 +1,16 @@
+package org.cf.smalivm.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.cf.smalivm.MethodExecution")
+@Label("Method Execution")
+@Description("Execution of a method by the virtual machine, including any methods it calls")
+public class MethodExecutionEvent extends VirtualMachineEvent {
+
+    public MethodExecutionEvent(String methodSignature) {
+        super(methodSignature);
+    }
+
+}
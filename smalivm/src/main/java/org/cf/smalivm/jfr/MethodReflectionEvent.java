@@ -0,0 +1,16 @@
+package org.cf.smalivm.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.cf.smalivm.MethodReflection")
+@Label("Method Reflection")
+@Description("Invocation of a safe JVM method by reflection")
+public class MethodReflectionEvent extends VirtualMachineEvent {
+
+    public MethodReflectionEvent(String methodSignature) {
+        super(methodSignature);
+    }
+
+}
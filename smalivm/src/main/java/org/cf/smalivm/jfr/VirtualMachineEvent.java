@@ -0,0 +1,85 @@
+package org.cf.smalivm.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+import org.cf.smalivm.MaxAddressVisitsExceededException;
+import org.cf.smalivm.MaxCallDepthExceededException;
+import org.cf.smalivm.MaxExecutionTimeExceededException;
+import org.cf.smalivm.MaxMethodVisitsExceededException;
+
+import javax.annotation.Nullable;
+
+/**
+ * Flight recorder event for a phase of execution, so GC pressure and allocations in a recording can be tied to the
+ * methods and classes which caused them. Fields which don't apply to an event are left at zero or null.
+ */
+@Category("smalivm")
+@StackTrace(false)
+public abstract class VirtualMachineEvent extends Event {
+
+    public static final String SUCCESS = "success";
+    public static final String LIMIT_EXCEEDED = "limit exceeded";
+    public static final String EXCEPTION = "exception";
+
+    // Flight recorder ignores private fields of event superclasses
+    @Label("Signature")
+    protected String signature;
+
+    @Label("Call Depth")
+    protected int callDepth;
+
+    @Label("Node Count")
+    protected int nodeCount;
+
+    @Label("Outcome")
+    protected String outcome;
+
+    protected VirtualMachineEvent(String signature) {
+        this.signature = signature;
+    }
+
+    public static String getOutcome(@Nullable Throwable exception) {
+        if (exception == null) {
+            return SUCCESS;
+        } else if (exception instanceof MaxAddressVisitsExceededException ||
+                   exception instanceof MaxCallDepthExceededException ||
+                   exception instanceof MaxExecutionTimeExceededException ||
+                   exception instanceof MaxMethodVisitsExceededException) {
+            return LIMIT_EXCEEDED;
+        } else {
+            return EXCEPTION;
+        }
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    public int getCallDepth() {
+        return callDepth;
+    }
+
+    public void setCallDepth(int callDepth) {
+        this.callDepth = callDepth;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public void setNodeCount(int nodeCount) {
+        this.nodeCount = nodeCount;
+    }
+
+    public String getOutcome() {
+        return outcome;
+    }
+
+    public void setOutcome(String outcome) {
+        this.outcome = outcome;
+    }
+
+}
@@ -1,6 +1,7 @@
 package org.cf.smalivm.opcode;
 
 import org.cf.smalivm.ExceptionFactory;
+import org.cf.smalivm.VirtualException;
 import org.cf.smalivm.context.ExecutionNode;
 import org.cf.smalivm.context.HeapItem;
 import org.cf.smalivm.context.MethodState;
@@ -44,9 +45,23 @@ public class AGetOp extends MethodStateOp {
         return result;
     }
 
+    private static boolean hasImmutableElements(Object array) {
+        if (array == null || !array.getClass().isArray()) {
+            return true;
+        }
+
+        Class<?> componentType = array.getClass().getComponentType();
+
+        return componentType.isPrimitive() || componentType == String.class;
+    }
+
     @Override
     public void execute(ExecutionNode node, MethodState mState) {
-        HeapItem arrayItem = mState.readRegister(arrayRegister);
+        // Reading elements which are immutable doesn't need a private copy of the array.
+        HeapItem arrayItem = mState.readSharedRegister(arrayRegister);
+        if (!hasImmutableElements(arrayItem.getValue())) {
+            arrayItem = mState.readRegister(arrayRegister);
+        }
         HeapItem indexItem = mState.readRegister(indexRegister);
         HeapItem getItem;
         if (arrayItem.isUnknown()) {
@@ -62,7 +77,7 @@ public class AGetOp extends MethodStateOp {
                 node.clearExceptions();
 
                 if (null == array) {
-                    Throwable exception = exceptionFactory.build(this, NullPointerException.class);
+                    VirtualException exception = exceptionFactory.build(this, NullPointerException.class);
                     node.setException(exception);
                     node.clearChildren();
                     return;
@@ -71,7 +86,7 @@ public class AGetOp extends MethodStateOp {
                 int index = indexItem.asInteger();
                 String innerType = arrayItem.getType().replaceFirst("\\[", "");
                 if (index >= Array.getLength(array)) {
-                    Throwable exception = exceptionFactory.build(this, ArrayIndexOutOfBoundsException.class);
+                    VirtualException exception = exceptionFactory.build(this, ArrayIndexOutOfBoundsException.class);
                     node.setException(exception);
                     node.clearChildren();
                     return;
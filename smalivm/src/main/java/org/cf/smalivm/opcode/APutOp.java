@@ -1,6 +1,7 @@
 package org.cf.smalivm.opcode;
 
 import org.cf.smalivm.ExceptionFactory;
+import org.cf.smalivm.VirtualException;
 import org.cf.smalivm.context.ExecutionNode;
 import org.cf.smalivm.context.HeapItem;
 import org.cf.smalivm.context.MethodState;
@@ -110,7 +111,7 @@ public class APutOp extends MethodStateOp {
         boolean throwsStoreException = throwsArrayStoreException(arrayItem, valueItem, classManager);
         if (throwsStoreException) {
             String storeType = ClassNameUtils.internalToBinary(valueItem.getType());
-            Throwable exception = exceptionFactory.build(this, ArrayStoreException.class, storeType);
+            VirtualException exception = exceptionFactory.build(this, ArrayStoreException.class, storeType);
             node.setException(exception);
             node.clearChildren();
             return;
@@ -125,7 +126,7 @@ public class APutOp extends MethodStateOp {
             } else {
                 Object array = arrayItem.getValue();
                 if (null == array) {
-                    Throwable exception = exceptionFactory.build(this, NullPointerException.class);
+                    VirtualException exception = exceptionFactory.build(this, NullPointerException.class);
                     node.setException(exception);
                     node.clearChildren();
                     return;
@@ -133,7 +134,7 @@ public class APutOp extends MethodStateOp {
 
                 int index = indexItem.asInteger();
                 if (index >= Array.getLength(array)) {
-                    Throwable exception = exceptionFactory.build(this, ArrayIndexOutOfBoundsException.class);
+                    VirtualException exception = exceptionFactory.build(this, ArrayIndexOutOfBoundsException.class);
                     node.setException(exception);
                     node.clearChildren();
                     return;
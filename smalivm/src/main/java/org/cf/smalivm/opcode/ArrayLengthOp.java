@@ -30,7 +30,7 @@ public class ArrayLengthOp extends MethodStateOp {
 
     @Override
     public void execute(ExecutionNode node, MethodState mState) {
-        HeapItem arrayItem = mState.readRegister(arrayRegister);
+        HeapItem arrayItem = mState.readSharedRegister(arrayRegister);
         Object array = arrayItem.getValue();
         Object lengthValue = null;
         if (arrayItem.isUnknown()) {
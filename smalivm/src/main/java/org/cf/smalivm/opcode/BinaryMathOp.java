@@ -1,17 +1,16 @@
 package org.cf.smalivm.opcode;
 
 import org.cf.smalivm.ExceptionFactory;
+import org.cf.smalivm.VirtualException;
 import org.cf.smalivm.context.ExecutionNode;
 import org.cf.smalivm.context.HeapItem;
 import org.cf.smalivm.context.MethodState;
 import org.cf.smalivm.dex.CommonTypes;
-import org.cf.smalivm.type.UnknownValue;
-import org.cf.util.Utils;
 import org.jf.dexlib2.builder.MethodLocation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 public class BinaryMathOp extends MethodStateOp {
 
@@ -47,146 +46,101 @@ public class BinaryMathOp extends MethodStateOp {
         addException(exceptionFactory.build(this, ArithmeticException.class, "/ by zero"));
     }
 
-    @SuppressWarnings("incomplete-switch")
-    private static Object doDoubleOperation(MathOperator mathOperator, Double lhs, Double rhs) {
-        Object result = null;
+    private static double doDoubleOperation(MathOperator mathOperator, double lhs, double rhs) {
         switch (mathOperator) {
             case ADD:
-                result = lhs + rhs;
-                break;
+                return lhs + rhs;
             case DIV:
-                result = lhs / rhs;
-                break;
+                return lhs / rhs;
             case MUL:
-                result = lhs * rhs;
-                break;
+                return lhs * rhs;
             case REM:
-                result = lhs % rhs;
-                break;
+                return lhs % rhs;
             case SUB:
-                result = lhs - rhs;
-                break;
+                return lhs - rhs;
+            default:
+                throw new IllegalArgumentException("Not a double operator: " + mathOperator);
         }
-
-        return result;
     }
 
-    @SuppressWarnings("incomplete-switch")
-    private static Object doFloatOperation(MathOperator mathOperator, Float lhs, Float rhs) {
-        Object result = null;
+    private static float doFloatOperation(MathOperator mathOperator, float lhs, float rhs) {
         switch (mathOperator) {
             case ADD:
-                result = lhs + rhs;
-                break;
+                return lhs + rhs;
             case DIV:
-                result = lhs / rhs;
-                break;
+                return lhs / rhs;
             case MUL:
-                result = lhs * rhs;
-                break;
+                return lhs * rhs;
             case REM:
-                result = lhs % rhs;
-                break;
+                return lhs % rhs;
             case SUB:
-                result = lhs - rhs;
-                break;
+                return lhs - rhs;
+            default:
+                throw new IllegalArgumentException("Not a float operator: " + mathOperator);
         }
-
-        return result;
     }
 
-    private static Object doIntegerOperation(MathOperator mathOperator, Integer lhs, Integer rhs) {
-        Object result = null;
-        try {
-            switch (mathOperator) {
-                case ADD:
-                    result = lhs + rhs;
-                    break;
-                case AND:
-                    result = lhs & rhs;
-                    break;
-                case DIV:
-                    result = lhs / rhs;
-                    break;
-                case MUL:
-                    result = lhs * rhs;
-                    break;
-                case OR:
-                    result = lhs | rhs;
-                    break;
-                case REM:
-                    result = lhs % rhs;
-                    break;
-                case RSUB:
-                    result = rhs - lhs;
-                    break;
-                case SHL:
-                    result = lhs << (rhs & 0x1f);
-                    break;
-                case SHR:
-                    result = lhs >> (rhs & 0x1f);
-                    break;
-                case SUB:
-                    result = lhs - rhs;
-                    break;
-                case USHR:
-                    result = lhs >>> (rhs & 0x1f);
-                    break;
-                case XOR:
-                    result = lhs ^ rhs;
-                    break;
-            }
-        } catch (ArithmeticException e) {
-            return e;
+    /*
+     * Division and remainder by zero throw ArithmeticException, which becomes the op's virtual exception.
+     */
+    private static int doIntegerOperation(MathOperator mathOperator, int lhs, int rhs) {
+        switch (mathOperator) {
+            case ADD:
+                return lhs + rhs;
+            case AND:
+                return lhs & rhs;
+            case DIV:
+                return lhs / rhs;
+            case MUL:
+                return lhs * rhs;
+            case OR:
+                return lhs | rhs;
+            case REM:
+                return lhs % rhs;
+            case RSUB:
+                return rhs - lhs;
+            case SHL:
+                return lhs << (rhs & 0x1f);
+            case SHR:
+                return lhs >> (rhs & 0x1f);
+            case SUB:
+                return lhs - rhs;
+            case USHR:
+                return lhs >>> (rhs & 0x1f);
+            case XOR:
+                return lhs ^ rhs;
+            default:
+                throw new IllegalArgumentException("Not an int operator: " + mathOperator);
         }
-
-        return result;
     }
 
-    @SuppressWarnings("incomplete-switch")
-    private static Object doLongOperation(MathOperator mathOperator, Long lhs, Long rhs) {
-        Object result = null;
-        try {
-            switch (mathOperator) {
-                case ADD:
-                    result = lhs + rhs;
-                    break;
-                case AND:
-                    result = lhs & rhs;
-                    break;
-                case DIV:
-                    result = lhs / rhs;
-                    break;
-                case MUL:
-                    result = lhs * rhs;
-                    break;
-                case OR:
-                    result = lhs | rhs;
-                    break;
-                case REM:
-                    result = lhs % rhs;
-                    break;
-                case SHL:
-                    result = lhs << rhs;
-                    break;
-                case SHR:
-                    result = lhs >> rhs;
-                    break;
-                case SUB:
-                    result = lhs - rhs;
-                    break;
-                case USHR:
-                    result = lhs >>> rhs;
-                    break;
-                case XOR:
-                    result = lhs ^ rhs;
-                    break;
-            }
-        } catch (ArithmeticException e) {
-            return e;
+    private static long doLongOperation(MathOperator mathOperator, long lhs, long rhs) {
+        switch (mathOperator) {
+            case ADD:
+                return lhs + rhs;
+            case AND:
+                return lhs & rhs;
+            case DIV:
+                return lhs / rhs;
+            case MUL:
+                return lhs * rhs;
+            case OR:
+                return lhs | rhs;
+            case REM:
+                return lhs % rhs;
+            case SHL:
+                return lhs << rhs;
+            case SHR:
+                return lhs >> rhs;
+            case SUB:
+                return lhs - rhs;
+            case USHR:
+                return lhs >>> rhs;
+            case XOR:
+                return lhs ^ rhs;
+            default:
+                throw new IllegalArgumentException("Not a long operator: " + mathOperator);
         }
-
-        return result;
     }
 
     private static MathOperator getMathOp(String opName) {
@@ -238,31 +192,23 @@ public class BinaryMathOp extends MethodStateOp {
     @Override
     public void execute(ExecutionNode node, MethodState mState) {
         HeapItem lhsItem = mState.readRegister(arg1Register);
-        HeapItem rhsItem;
-        if (hasLiteral) {
-            rhsItem = new HeapItem(narrowLiteral, CommonTypes.INTEGER);
-        } else {
-            rhsItem = mState.readRegister(arg2Register);
-        }
+        HeapItem rhsItem = hasLiteral ? null : mState.readRegister(arg2Register);
 
-        Object result = null;
-        if (!lhsItem.isUnknown() && !rhsItem.isUnknown()) {
-            result = getResult(lhsItem.getValue(), rhsItem.getValue());
-            if (result instanceof Throwable) {
-                Throwable exception = (Throwable) result;
-                node.setException(exception);
+        HeapItem resultItem;
+        if (lhsItem.isUnknown() || (rhsItem != null && rhsItem.isUnknown())) {
+            resultItem = HeapItem.newUnknown(mathOperandType.getType());
+        } else {
+            try {
+                resultItem = getResult(lhsItem, rhsItem);
+            } catch (ArithmeticException e) {
+                node.setException(new VirtualException(e));
                 node.clearChildren();
                 return;
-            } else {
-                node.clearExceptions();
             }
+            node.clearExceptions();
         }
 
-        if (null == result) {
-            result = new UnknownValue();
-        }
-
-        mState.assignRegister(destRegister, result, mathOperandType.getType());
+        mState.assignRegister(destRegister, resultItem);
     }
 
     @Override
@@ -285,36 +231,26 @@ public class BinaryMathOp extends MethodStateOp {
         return sb.toString();
     }
 
-    private
-    @Nonnull
-    Object getResult(Object lhs, Object rhs) {
-        Object result;
+    /*
+     * Operates on unboxed values. The right hand side is null if it's the literal.
+     */
+    private HeapItem getResult(HeapItem lhsItem, @Nullable HeapItem rhsItem) {
+        String type = mathOperandType.getType();
         switch (mathOperandType) {
-            case INT:
-                lhs = Utils.getIntegerValue(lhs);
-                rhs = Utils.getIntegerValue(rhs);
-                result = doIntegerOperation(mathOperator, (Integer) lhs, (Integer) rhs);
-                break;
+            case INT: {
+                int rhs = rhsItem == null ? narrowLiteral : rhsItem.asInteger();
+                return HeapItem.newInteger(doIntegerOperation(mathOperator, lhsItem.asInteger(), rhs), type);
+            }
             case LONG:
-                lhs = Utils.getLongValue(lhs);
-                rhs = Utils.getLongValue(rhs);
-                result = doLongOperation(mathOperator, (Long) lhs, (Long) rhs);
-                break;
+                return HeapItem.newLong(doLongOperation(mathOperator, lhsItem.asLong(), rhsItem.asLong()), type);
             case FLOAT:
-                lhs = Utils.getFloatValue(lhs);
-                rhs = Utils.getFloatValue(rhs);
-                result = doFloatOperation(mathOperator, (Float) lhs, (Float) rhs);
-                break;
+                return HeapItem.newFloat(doFloatOperation(mathOperator, lhsItem.asFloat(), rhsItem.asFloat()), type);
             case DOUBLE:
-                lhs = Utils.getDoubleValue(lhs);
-                rhs = Utils.getDoubleValue(rhs);
-                result = doDoubleOperation(mathOperator, (Double) lhs, (Double) rhs);
-                break;
+                return HeapItem.newDouble(doDoubleOperation(mathOperator, lhsItem.asDouble(), rhsItem.asDouble()),
+                        type);
             default:
                 throw new RuntimeException("Unknown math operand class!");
         }
-
-        return result;
     }
 
     private enum MathOperandType {
@@ -1,6 +1,7 @@
 package org.cf.smalivm.opcode;
 
 import org.cf.smalivm.ExceptionFactory;
+import org.cf.smalivm.VirtualException;
 import org.cf.smalivm.context.ExecutionNode;
 import org.cf.smalivm.context.HeapItem;
 import org.cf.smalivm.context.MethodState;
@@ -62,7 +63,7 @@ public class CheckCastOp extends MethodStateOp {
             // E.g. java.lang.ClassCastException: java.lang.String cannot be cast to java.io.File
             String error =
                     ClassNameUtils.internalToBinary(item.getType()) + " cannot be cast to " + castType.getBinaryName();
-            Throwable exception = exceptionFactory.build(this, ClassCastException.class, error);
+            VirtualException exception = exceptionFactory.build(this, ClassCastException.class, error);
             node.setException(exception);
 
             if (!item.isUnknown()) {
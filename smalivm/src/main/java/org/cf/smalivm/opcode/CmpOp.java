@@ -3,7 +3,6 @@ package org.cf.smalivm.opcode;
 import org.cf.smalivm.context.ExecutionNode;
 import org.cf.smalivm.context.HeapItem;
 import org.cf.smalivm.context.MethodState;
-import org.cf.util.Utils;
 import org.jf.dexlib2.builder.MethodLocation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,14 +33,9 @@ public class CmpOp extends MethodStateOp {
         if (lhsItem.isUnknown() || rhsItem.isUnknown()) {
             item = HeapItem.newUnknown("I");
         } else {
-            Number lhs = (Number) lhsItem.getValue();
-            Number rhs = (Number) rhsItem.getValue();
-
-            assert lhs.getClass() == rhs.getClass();
             assert lhsItem.getType().equals(rhsItem.getType());
 
-            int cmp = cmp(lhs, rhs);
-            item = new HeapItem(cmp, "I");
+            item = HeapItem.newInteger(cmp(lhsItem, rhsItem), "I");
         }
 
         mState.assignRegister(destRegister, item);
@@ -52,14 +46,9 @@ public class CmpOp extends MethodStateOp {
         return getName() + " r" + destRegister + ", r" + lhsRegister + ", r" + rhsRegister;
     }
 
-    private int cmp(Number val1, Number val2) {
-        boolean arg1IsNan =
-                val1 instanceof Float && ((Float) val1).isNaN() || val1 instanceof Double && ((Double) val1).isNaN();
-        boolean arg2IsNan =
-                val2 instanceof Float && ((Float) val2).isNaN() || val2 instanceof Double && ((Double) val2).isNaN();
-
-        int value = 0;
-        if (arg1IsNan || arg2IsNan) {
+    private int cmp(HeapItem lhsItem, HeapItem rhsItem) {
+        int value;
+        if (lhsItem.isNaN() || rhsItem.isNaN()) {
             if (getName().startsWith("cmpg")) {
                 value = 1;
             } else { // cmpl
@@ -67,19 +56,13 @@ public class CmpOp extends MethodStateOp {
             }
         } else {
             if (getName().endsWith("float")) {
-                Float castVal1 = Utils.getFloatValue(val1);
-                Float castVal2 = Utils.getFloatValue(val2);
                 // The docs say "b == c" but I don't think they mean identity.
-                value = Float.compare(castVal1, castVal2);
+                value = Float.compare(lhsItem.asFloat(), rhsItem.asFloat());
             } else if (getName().endsWith("double")) {
-                Double castVal1 = Utils.getDoubleValue(val1);
-                Double castVal2 = Utils.getDoubleValue(val2);
                 // The docs say "b == c" but I don't think they mean identity.
-                value = Double.compare(castVal1, castVal2);
+                value = Double.compare(lhsItem.asDouble(), rhsItem.asDouble());
             } else {
-                Long castVal1 = Utils.getLongValue(val1);
-                Long castVal2 = Utils.getLongValue(val2);
-                value = Long.compare(castVal1, castVal2);
+                value = Long.compare(lhsItem.asLong(), rhsItem.asLong());
             }
         }
 
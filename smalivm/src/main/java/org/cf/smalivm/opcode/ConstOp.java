@@ -2,6 +2,7 @@ package org.cf.smalivm.opcode;
 
 import org.apache.commons.lang3.ClassUtils;
 import org.cf.smalivm.ExceptionFactory;
+import org.cf.smalivm.VirtualException;
 import org.cf.smalivm.context.ExecutionNode;
 import org.cf.smalivm.context.MethodState;
 import org.cf.smalivm.dex.CommonTypes;
@@ -35,7 +36,7 @@ class ConstOp extends MethodStateOp {
     public void execute(ExecutionNode node, MethodState mState) {
         Object constant = buildConstant();
         if (constant instanceof Throwable) {
-            node.setException((Throwable) constant);
+            node.setException(new VirtualException((Throwable) constant));
             node.clearChildren();
             return;
         } else {
@@ -3,7 +3,6 @@ package org.cf.smalivm.opcode;
 import java.lang.reflect.Array;
 import java.util.List;
 
-import org.apache.commons.lang3.ClassUtils;
 import org.cf.smalivm.context.ExecutionNode;
 import org.cf.smalivm.context.HeapItem;
 import org.cf.smalivm.context.MethodState;
@@ -17,33 +16,25 @@ public class FillArrayDataPayloadOp extends MethodStateOp {
     private static final Logger log = LoggerFactory.getLogger(FillArrayDataPayloadOp.class.getSimpleName());
 
     private static Object getProperValue(Number number, Class<?> expectedClass) {
-        Class<?> klazz = ClassUtils.wrapperToPrimitive(number.getClass());
+        // Element boxing depends on where the payload came from, e.g. Smali gives Short, dex files give Integer.
+        // Only the element width is reliable, so convert based on the array type.
         Object value = null;
-
-        // Dexlib will only ever make byte (t), int, long (l), or short (s)
-        if (klazz == byte.class) {
+        if (expectedClass == boolean.class) {
+            value = number.byteValue() == 1;
+        } else if (expectedClass == byte.class) {
             value = number.byteValue();
-            if (expectedClass == boolean.class) {
-                value = (byte) value == 1;
-            }
-        } else if (klazz == short.class) {
+        } else if (expectedClass == char.class) {
+            value = (char) number.shortValue();
+        } else if (expectedClass == short.class) {
             value = number.shortValue();
-            if (expectedClass == char.class) {
-                value = (char) number.shortValue();
-            }
-        } else if (klazz == int.class) {
-            if (expectedClass == int.class) {
-                value = number.intValue();
-            } else if (expectedClass == float.class) {
-                value = Float.intBitsToFloat(number.intValue());
-            }
-        } else if (klazz == long.class) {
+        } else if (expectedClass == int.class) {
+            value = number.intValue();
+        } else if (expectedClass == float.class) {
+            value = Float.intBitsToFloat(number.intValue());
+        } else if (expectedClass == long.class) {
             value = number.longValue();
-            if (expectedClass == long.class) {
-                value = number.longValue();
-            } else if (expectedClass == double.class) {
-                value = Double.longBitsToDouble(number.longValue());
-            }
+        } else if (expectedClass == double.class) {
+            value = Double.longBitsToDouble(number.longValue());
         }
 
         return value;
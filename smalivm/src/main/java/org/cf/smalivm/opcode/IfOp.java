@@ -3,7 +3,6 @@ package org.cf.smalivm.opcode;
 import org.cf.smalivm.context.ExecutionNode;
 import org.cf.smalivm.context.HeapItem;
 import org.cf.smalivm.context.MethodState;
-import org.cf.util.Utils;
 import org.jf.dexlib2.builder.MethodLocation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -61,38 +60,31 @@ public class IfOp extends MethodStateOp {
     @Override
     public void execute(ExecutionNode node, MethodState mState) {
         HeapItem lhsItem = mState.readRegister(register1);
-        HeapItem rhsItem = compareToZero ? new HeapItem(0, "I") : mState.readRegister(register2);
+        HeapItem rhsItem = compareToZero ? null : mState.readRegister(register2);
 
         // Ambiguous predicate. Return to add both possible branches as children.
-        if (lhsItem.isUnknown() || rhsItem.isUnknown()) {
+        if (lhsItem.isUnknown() || (rhsItem != null && rhsItem.isUnknown())) {
             return;
         }
 
-        Object lhs = lhsItem.getValue();
-        Object rhs = rhsItem.getValue();
         int cmp;
         if (compareToZero) {
-            if (lhs == null) {
+            if (lhsItem.isNull()) {
                 // if-*z ops are used to check for null refs
                 cmp = 0;
-            } else if ((lhs instanceof Number || lhs instanceof Boolean || lhs instanceof Character) &&
-                       (rhs instanceof Number || rhs instanceof Boolean || rhs instanceof Character)) {
-                Integer aIntValue = Utils.getIntegerValue(lhs);
-                cmp = aIntValue.compareTo((Integer) rhs);
+            } else if (lhsItem.isNumeric()) {
+                cmp = Integer.compare(lhsItem.asInteger(), 0);
             } else {
-                cmp = lhs == rhs ? 0 : 1;
+                cmp = 1;
             }
-        } else if ((lhs instanceof Number || lhs instanceof Boolean || lhs instanceof Character) &&
-                   (rhs instanceof Number || rhs instanceof Boolean || rhs instanceof Character)) {
-            Integer aIntValue = Utils.getIntegerValue(lhs);
-            Integer bIntValue = Utils.getIntegerValue(rhs);
-            cmp = aIntValue.compareTo(bIntValue);
+        } else if (lhsItem.isNumeric() && rhsItem.isNumeric()) {
+            cmp = Integer.compare(lhsItem.asInteger(), rhsItem.asInteger());
         } else {
-            cmp = lhs == rhs ? 0 : 1;
+            cmp = lhsItem.getValue() == rhsItem.getValue() ? 0 : 1;
         }
 
         if (log.isTraceEnabled()) {
-            log.trace("IF compare: {} vs {} = {}", lhs, rhs, cmp);
+            log.trace("IF compare: {} vs {} = {}", lhsItem.getValue(), rhsItem == null ? 0 : rhsItem.getValue(), cmp);
         }
 
         int childIndex = isTrue(ifType, cmp) ? 1 : 0;
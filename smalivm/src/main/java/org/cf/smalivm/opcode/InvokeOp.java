@@ -1,9 +1,12 @@
 package org.cf.smalivm.opcode;
 
 import org.cf.smalivm.MethodReflector;
+import org.cf.smalivm.MethodSummaryCache.MethodSummary;
 import org.cf.smalivm.ObjectInstantiator;
+import org.cf.smalivm.Profiler;
 import org.cf.smalivm.SideEffect;
 import org.cf.smalivm.UnhandledVirtualException;
+import org.cf.smalivm.VirtualException;
 import org.cf.smalivm.VirtualMachine;
 import org.cf.smalivm.VirtualMachineException;
 import org.cf.smalivm.context.ExecutionContext;
@@ -12,6 +15,7 @@ import org.cf.smalivm.context.ExecutionNode;
 import org.cf.smalivm.context.HeapItem;
 import org.cf.smalivm.context.MethodState;
 import org.cf.smalivm.dex.CommonTypes;
+import org.cf.smalivm.dex.CompiledMethod;
 import org.cf.smalivm.emulate.MethodEmulator;
 import org.cf.smalivm.type.ClassManager;
 import org.cf.smalivm.type.UninitializedInstance;
@@ -37,20 +41,31 @@ public class InvokeOp extends ExecutionContextOp {
 
     private final VirtualMethod method;
     private final int[] parameterRegisters;
-    private final String[] analyzedParameterTypes;
     private final VirtualMachine vm;
     private final ClassManager classManager;
-    private SideEffect.Level sideEffectLevel;
+    private final boolean isObjectInit;
+    private final boolean isArrayClone;
+    private final boolean isVirtualDispatch;
+    private final CallTarget declaredTarget;
+    // Volatile since ops are shared by every graph spawned for a method, which may be executing on other threads
+    private volatile boolean mayAccessClassState;
+    // A call from here, or from somewhere inside the callee, was stopped by an execution limit, e.g. call depth
+    private volatile boolean wasCutOff;
+    // Target for the last receiver type seen by this call site, since most call sites only ever see one
+    private volatile CallTarget receiverTarget;
 
     InvokeOp(MethodLocation location, MethodLocation child, VirtualMethod method, int[] parameterRegisters,
              VirtualMachine vm) {
         super(location, child);
         this.method = method;
         this.parameterRegisters = parameterRegisters;
-        analyzedParameterTypes = new String[method.getParameterTypeNames().size()];
         this.vm = vm;
         classManager = vm.getClassManager();
-        sideEffectLevel = SideEffect.Level.STRONG;
+        String signature = method.getSignature();
+        isObjectInit = signature.equals(CommonTypes.OBJECT + "-><init>()V");
+        isArrayClone = signature.charAt(0) == '[' && method.getName().equals("clone");
+        isVirtualDispatch = getName().startsWith("invoke-virtual") && !method.isFinal();
+        declaredTarget = new CallTarget(null, method);
     }
 
     @Override
@@ -62,7 +77,7 @@ public class InvokeOp extends ExecutionContextOp {
         // With this mapping, stack traces can be reconstructed.
 
         MethodState callerMethodState = context.getMethodState();
-        if (method.getSignature().equals(CommonTypes.OBJECT + "-><init>()V")) {
+        if (isObjectInit) {
             // Object.<init> is a special little snow flake
             try {
                 executeLocalObjectInit(callerMethodState);
@@ -70,49 +85,53 @@ public class InvokeOp extends ExecutionContextOp {
                 log.error("Unexpected real exception initializing Object", e);
             }
             return;
-        } else {
-            String signature = method.getSignature();
-            if (signature.charAt(0) == '[' && method.getName().equals("clone")) {
-                // [Object;->clone()Ljava/lang/Object; is also a special snow flake
-                executeArrayClone(callerMethodState);
-                return;
-            }
+        } else if (isArrayClone) {
+            // [Object;->clone()Ljava/lang/Object; is also a special snow flake
+            executeArrayClone(callerMethodState);
+            return;
         }
 
-        analyzeParameterTypes(callerMethodState);
+        String[] parameterTypes = analyzeParameterTypes(callerMethodState);
 
         // Have to do this at run time because robust type flow analysis is harder than just examining at run time
-        VirtualMethod targetMethod = method;
-        if (getName().startsWith("invoke-virtual") && !method.isFinal()) {
+        CallTarget target = declaredTarget;
+        if (isVirtualDispatch) {
             int targetRegister = parameterRegisters[0];
             HeapItem item = context.getMethodState().peekRegister(targetRegister);
-            targetMethod = resolveTargetMethod(item.getValue());
+            target = resolveCallTarget(item.getValue());
         }
         // Shouldn't reference method member now. Should use targetMethod for everything.
+        VirtualMethod targetMethod = target.method;
         String targetSignature = targetMethod.getSignature();
 
         // Try to reflect or emulate before executing local method.
-        if (vm.getConfiguration().isSafe(targetSignature) || MethodEmulator.canEmulate(targetSignature)) {
-            ExecutionContext calleeContext = buildNonLocalCalleeContext(context);
+        if (target.dispatch == Dispatch.EMULATE || target.dispatch == Dispatch.REFLECT) {
+            if (target.dispatch == Dispatch.EMULATE) {
+                // Some emulated methods read static fields or initialize classes through the context.
+                mayAccessClassState = true;
+            }
+            if (target.dispatch == Dispatch.REFLECT && mayReadRealClassState(targetMethod)) {
+                mayAccessClassState = true;
+            }
+            ExecutionContext calleeContext = buildNonLocalCalleeContext(context, parameterTypes);
             boolean allArgumentsKnown = allArgumentsKnown(calleeContext.getMethodState());
-            if (allArgumentsKnown || MethodEmulator.canHandleUnknownValues(targetSignature)) {
-                executeNonLocalMethod(targetSignature, callerMethodState, calleeContext, node);
+            if (allArgumentsKnown || target.canHandleUnknownValues) {
+                executeNonLocalMethod(targetSignature, target.dispatch, callerMethodState, calleeContext, node);
                 return;
             } else {
                 if (log.isTraceEnabled()) {
                     log.trace("Not emulating / reflecting {}; not all arguments are known", targetSignature);
                 }
-                assumeMaximumUnknown(callerMethodState);
+                assumeMaximumUnknown(callerMethodState, parameterTypes);
                 return;
             }
         }
 
-        if (classManager.isFrameworkClass(targetMethod.getDefiningClass()) &&
-            !classManager.isSafeFrameworkClass(targetMethod.getDefiningClass())) {
+        if (target.dispatch == Dispatch.UNSAFE_FRAMEWORK) {
             if (log.isDebugEnabled()) {
                 log.debug("Not executing unsafe framework method: {}. Assuming maximum ambiguity.", targetSignature);
             }
-            assumeMaximumUnknown(callerMethodState);
+            assumeMaximumUnknown(callerMethodState, parameterTypes);
             return;
         }
 
@@ -128,12 +147,28 @@ public class InvokeOp extends ExecutionContextOp {
                     log.warn("Cannot execute local native method: {}. Assuming maximum ambiguity.", targetSignature);
                 }
             }
-            assumeMaximumUnknown(callerMethodState);
+            assumeMaximumUnknown(callerMethodState, parameterTypes);
             return;
         }
 
-        ExecutionContext calleeContext = buildLocalCalleeContext(context, targetMethod);
-        executeLocalMethod(targetSignature, context, calleeContext, node);
+        HeapItem[] summaryArguments = buildSummaryArguments(callerMethodState, targetMethod, parameterTypes);
+        if (summaryArguments != null) {
+            MethodSummary summary = vm.getMethodSummaryCache().get(targetMethod, summaryArguments);
+            if (summary != null) {
+                applyMethodSummary(summary, targetMethod, callerMethodState, summaryArguments, node);
+                return;
+            }
+            if (vm.isCompilingMethods() &&
+                executeCompiledMethod(targetMethod, callerMethodState, summaryArguments, node)) {
+                return;
+            }
+        }
+
+        ExecutionContext calleeContext = buildLocalCalleeContext(context, targetMethod, parameterTypes);
+        ExecutionGraph graph = executeLocalMethod(targetSignature, context, calleeContext, node, parameterTypes);
+        if (graph != null && summaryArguments != null) {
+            cacheMethodSummary(graph, targetMethod, context, summaryArguments, node.getSideEffectLevel());
+        }
     }
 
     public int[] getParameterRegisters() {
@@ -144,9 +179,12 @@ public class InvokeOp extends ExecutionContextOp {
         return method.getReturnType();
     }
 
+    /**
+     * The level is only known once executed, and it's kept by the node. See {@link ExecutionNode#getSideEffectLevel()}.
+     */
     @Override
     public SideEffect.Level getSideEffectLevel() {
-        return sideEffectLevel;
+        return SideEffect.Level.STRONG;
     }
 
     @Override
@@ -196,7 +234,10 @@ public class InvokeOp extends ExecutionContextOp {
         return true;
     }
 
-    private void analyzeParameterTypes(MethodState callerState) {
+    /*
+     * Returns types rather than storing them in the op because ops are shared with other executions of the method.
+     */
+    private String[] analyzeParameterTypes(MethodState callerState) {
         /*
          * Type can be confused here. For example, creating a short, int, boolean, or *null* all appear:
          * const/4 v0,0x0 (could be true, (int)0, or (short)0, null, etc.)
@@ -207,6 +248,7 @@ public class InvokeOp extends ExecutionContextOp {
          * method argument is Lchild_class; but signature says Lparent_class;, prefer Lchild_class;
          */
         List<String> parameterTypes = method.getParameterTypeNames();
+        String[] analyzedParameterTypes = new String[parameterTypes.size()];
         for (int i = 0; i < parameterRegisters.length; i++) {
             int callerRegister = parameterRegisters[i];
             HeapItem item = callerState.readRegister(callerRegister);
@@ -218,7 +260,7 @@ public class InvokeOp extends ExecutionContextOp {
             } else {
                 VirtualGeneric baseType = vm.getClassManager().getVirtualType(baseTypeName);
                 VirtualGeneric parameterType = vm.getClassManager().getVirtualType(parameterTypeName);
-                if (baseType.getAncestors().contains(parameterType)) {
+                if (baseType.hasAncestor(parameterType)) {
                     type = item.getType();
                 } else {
                     type = parameterTypeName;
@@ -226,32 +268,85 @@ public class InvokeOp extends ExecutionContextOp {
             }
             analyzedParameterTypes[i] = type;
         }
+
+        return analyzedParameterTypes;
+    }
+
+    private void applyMethodSummary(MethodSummary summary, VirtualMethod targetMethod, MethodState callerState,
+                                    HeapItem[] arguments, ExecutionNode node) {
+        // Same as what collapsing the callee's graph into the caller would do
+        List<String> parameterTypes = targetMethod.getParameterTypeNames();
+        for (int i = 0; i < parameterRegisters.length; i++) {
+            if (!vm.getConfiguration().isImmutable(parameterTypes.get(i))) {
+                callerState.assignRegister(parameterRegisters[i], arguments[i]);
+            }
+        }
+
+        HeapItem returnItem = summary.getReturnItem();
+        if (returnItem != null) {
+            if (returnItem.isUnknown()) {
+                // Unknown values are compared by identity, so don't share one between calls.
+                returnItem = HeapItem.newUnknown(returnItem.getType());
+            }
+            callerState.assignResultRegister(returnItem);
+        }
+        node.setSideEffectLevel(summary.getSideEffectLevel());
     }
 
-    private void assignCalleeMethodArguments(MethodState callerState, MethodState calleeState) {
+    /*
+     * Returns false if the method isn't compiled or the compiled code threw, in which case it should be executed
+     * normally to get the virtual exception or unknown result.
+     */
+    private boolean executeCompiledMethod(VirtualMethod targetMethod, MethodState callerState, HeapItem[] arguments,
+                                          ExecutionNode node) {
+        CompiledMethod compiledMethod = vm.getMethodCompiler().getCompiledMethod(targetMethod);
+        if (compiledMethod == null) {
+            return false;
+        }
+
+        Object[] values = new Object[arguments.length];
+        for (int i = 0; i < arguments.length; i++) {
+            values[i] = arguments[i].getValue();
+        }
+
+        Object returnValue;
+        try {
+            returnValue = compiledMethod.invoke(values);
+        } catch (InvocationTargetException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Compiled {} threw {}, executing normally", targetMethod, e.getCause().toString());
+            }
+            return false;
+        }
+
+        HeapItem returnItem = null;
+        if (!targetMethod.returnsVoid()) {
+            returnItem = new HeapItem(returnValue, targetMethod.getReturnType());
+            callerState.assignResultRegister(returnItem);
+        }
+        node.setSideEffectLevel(SideEffect.Level.NONE);
+        if (returnItem == null || isImmutableValue(returnItem.getValue())) {
+            MethodSummary summary = new MethodSummary(returnItem, SideEffect.Level.NONE);
+            vm.getMethodSummaryCache().put(targetMethod, arguments, summary);
+        }
+
+        return true;
+    }
+
+    private void assignCalleeMethodArguments(MethodState callerState, MethodState calleeState,
+                                             String[] analyzedParameterTypes) {
         int parameterRegister = calleeState.getParameterStart();
         for (int i = 0; i < parameterRegisters.length; i++) {
             int callerRegister = parameterRegisters[i];
             HeapItem item = callerState.readRegister(callerRegister);
             String parameterType = analyzedParameterTypes[i];
-            Object value = item.getValue();
-            if (item.isPrimitive() && !item.isUnknown()) {
-                boolean hasNullByteValue =
-                        item.getType().equals("I") && value instanceof Number && item.asInteger() == 0;
-                if (hasNullByteValue && ClassNameUtils.isObject(parameterType)) {
-                    value = null;
-                } else {
-                    // An I virtual may actually be a S, B, C, etc. Pass the cast virtual to simplify things.
-                    value = Utils.castToPrimitive(value, parameterType);
-                }
-            }
-            HeapItem parameterItem = new HeapItem(value, parameterType);
+            HeapItem parameterItem = buildParameterItem(item, parameterType);
             calleeState.assignParameter(parameterRegister, parameterItem);
             parameterRegister += Utils.getRegisterSize(parameterType);
         }
     }
 
-    private void assumeMaximumUnknown(MethodState callerMethodState) {
+    private void assumeMaximumUnknown(MethodState callerMethodState, String[] analyzedParameterTypes) {
         // TODO: add option to mark all class states unknown instead of just method state
         for (int i = 0; i < method.getParameterTypeNames().size(); i++) {
             int register = parameterRegisters[i];
@@ -296,32 +391,164 @@ public class InvokeOp extends ExecutionContextOp {
         }
     }
 
-    private ExecutionContext buildLocalCalleeContext(ExecutionContext callerContext, VirtualMethod method) {
+    private HeapItem buildParameterItem(HeapItem item, String parameterType) {
+        Object value = item.getValue();
+        if (item.isPrimitive() && !item.isUnknown()) {
+            boolean hasNullByteValue = item.getType().equals("I") && value instanceof Number && item.asInteger() == 0;
+            if (hasNullByteValue && ClassNameUtils.isObject(parameterType)) {
+                value = null;
+            } else {
+                // An I virtual may actually be a S, B, C, etc. Pass the cast virtual to simplify things.
+                value = Utils.castToPrimitive(value, parameterType);
+            }
+        }
+
+        return new HeapItem(value, parameterType);
+    }
+
+    /*
+     * A call can be summarized only if its outcome can't depend on anything but the arguments, so every argument must
+     * be known and immutable. Returns null if the call can't be summarized.
+     */
+    private
+    @Nullable
+    HeapItem[] buildSummaryArguments(MethodState callerState, VirtualMethod targetMethod,
+                                     String[] analyzedParameterTypes) {
+        if (targetMethod.getName().equals("<init>")) {
+            return null;
+        }
+
+        HeapItem[] arguments = new HeapItem[parameterRegisters.length];
+        for (int i = 0; i < parameterRegisters.length; i++) {
+            HeapItem item = callerState.readRegister(parameterRegisters[i]);
+            if (item.isUnknown() || !isImmutableValue(item.getValue())) {
+                return null;
+            }
+            arguments[i] = buildParameterItem(item, analyzedParameterTypes[i]);
+        }
+
+        return arguments;
+    }
+
+    private boolean isImmutableValue(@Nullable Object value) {
+        return value == null || vm.getConfiguration().isImmutable(ClassNameUtils.toInternal(value.getClass()));
+    }
+
+    private void cacheMethodSummary(ExecutionGraph graph, VirtualMethod targetMethod, ExecutionContext callerContext,
+                                    HeapItem[] arguments, SideEffect.Level sideEffectLevel) {
+        if (accessesClassState(graph, callerContext)) {
+            return;
+        }
+        if (wasCutOff) {
+            // The result depends on how deep the call was, not just on the arguments
+            return;
+        }
+
+        for (int endAddress : graph.getConnectedTerminatingAddresses()) {
+            if (graph.getOp(endAddress) instanceof ThrowOp) {
+                return;
+            }
+        }
+
+        HeapItem returnItem = null;
+        if (!method.returnsVoid()) {
+            returnItem = callerContext.getMethodState().peekResultRegister();
+        }
+        if (vm.isCompilingMethods() && sideEffectLevel == SideEffect.Level.NONE &&
+            (returnItem == null || !returnItem.isUnknown())) {
+            // Known arguments gave a known result without side effects, so compiled code can give the same result
+            vm.getMethodCompiler().recordSideEffectFree(targetMethod);
+        }
+        if (returnItem != null && !returnItem.isUnknown() && !isImmutableValue(returnItem.getValue())) {
+            return;
+        }
+        vm.getMethodSummaryCache().put(targetMethod, arguments, new MethodSummary(returnItem, sideEffectLevel));
+    }
+
+    /*
+     * Static methods of mutable classes may read static state of the real class, which isn't visible to the virtual
+     * machine. Instance methods and methods of immutable classes only depend on their arguments.
+     */
+    private boolean mayReadRealClassState(VirtualMethod targetMethod) {
+        return targetMethod.isStatic() && !vm.getConfiguration().isImmutable(targetMethod.getClassName());
+    }
+
+    /*
+     * Called after every local execution, even if the call can't be summarized, so callers of this call site know it
+     * may access class state or was cut off. Nested call sites have already recorded this about themselves when they
+     * executed.
+     */
+    private void recordCalleeProperties(ExecutionGraph graph) {
+        if (mayAccessClassState && wasCutOff) {
+            return;
+        }
+
+        for (int address : graph.getAddresses()) {
+            if (!graph.wasAddressReached(address)) {
+                continue;
+            }
+
+            Op op = graph.getOp(address);
+            if (op instanceof SGetOp || op instanceof SPutOp) {
+                mayAccessClassState = true;
+            } else if (op instanceof InvokeOp) {
+                InvokeOp invokeOp = (InvokeOp) op;
+                if (invokeOp.mayAccessClassState) {
+                    mayAccessClassState = true;
+                }
+                if (invokeOp.wasCutOff) {
+                    wasCutOff = true;
+                }
+            }
+        }
+    }
+
+    private boolean accessesClassState(ExecutionGraph graph, ExecutionContext callerContext) {
+        if (mayAccessClassState) {
+            return true;
+        }
+
+        int[] terminatingAddresses = graph.getConnectedTerminatingAddresses();
+        for (VirtualGeneric virtualClass : graph.getAllPossiblyInitializedClasses(terminatingAddresses)) {
+            if (!callerContext.isClassInitialized(virtualClass)) {
+                // Class was initialized by this call, which must be reflected in the caller.
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private ExecutionContext buildLocalCalleeContext(ExecutionContext callerContext, VirtualMethod method,
+                                                     String[] parameterTypes) {
         ExecutionContext calleeContext = vm.spawnRootContext(method, callerContext, getAddress());
         MethodState callerMethodState = callerContext.getMethodState();
         MethodState calleeMethodState = calleeContext.getMethodState();
-        assignCalleeMethodArguments(callerMethodState, calleeMethodState);
+        assignCalleeMethodArguments(callerMethodState, calleeMethodState, parameterTypes);
 
         // VirtualClass state merging is handled by the VM.
 
         return calleeContext;
     }
 
-    private ExecutionContext buildNonLocalCalleeContext(ExecutionContext callerContext) {
+    private ExecutionContext buildNonLocalCalleeContext(ExecutionContext callerContext, String[] parameterTypes) {
         ExecutionContext calleeContext = new ExecutionContext(vm, method);
         int parameterSize = method.getParameterSize();
         int registerCount = parameterSize;
         MethodState calleeMethodState =
                 new MethodState(calleeContext, registerCount, method.getParameterTypeNames().size(), parameterSize);
-        assignCalleeMethodArguments(callerContext.getMethodState(), calleeMethodState);
+        assignCalleeMethodArguments(callerContext.getMethodState(), calleeMethodState, parameterTypes);
         calleeContext.setMethodState(calleeMethodState);
         calleeContext.registerCaller(callerContext, getAddress());
 
         return calleeContext;
     }
 
-    private void executeLocalMethod(String methodSignature, ExecutionContext callerContext,
-                                    ExecutionContext calleeContext, ExecutionNode node) {
+    private
+    @Nullable
+    ExecutionGraph executeLocalMethod(String methodSignature, ExecutionContext callerContext,
+                                      ExecutionContext calleeContext, ExecutionNode node,
+                                      String[] parameterTypes) {
         ExecutionGraph graph = null;
         try {
             graph = vm.execute(methodSignature, calleeContext, callerContext, parameterRegisters);
@@ -337,10 +564,12 @@ public class InvokeOp extends ExecutionContextOp {
         if (graph == null) {
             // Maybe node visits or call depth exceeded?
             log.info("Problem executing {}, propagating ambiguity.", methodSignature);
-            assumeMaximumUnknown(callerContext.getMethodState());
+            assumeMaximumUnknown(callerContext.getMethodState(), parameterTypes);
+            wasCutOff = true;
 
-            return;
+            return null;
         }
+        recordCalleeProperties(graph);
 
         boolean hasOneNonThrow = false;
         for (int endAddress : graph.getConnectedTerminatingAddresses()) {
@@ -352,7 +581,7 @@ public class InvokeOp extends ExecutionContextOp {
                 for (HeapItem item : items) {
                     if (item.getValue() instanceof Throwable) {
                         Throwable exception = (Throwable) item.getValue();
-                        addException(exception);
+                        addException(new VirtualException(exception));
                     } else {
                         // probably an UninitializedInstance
                         if (log.isWarnEnabled()) {
@@ -383,7 +612,9 @@ public class InvokeOp extends ExecutionContextOp {
                 }
             }
         }
-        sideEffectLevel = graph.getHighestSideEffectLevel();
+        node.setSideEffectLevel(graph.getHighestSideEffectLevel());
+
+        return graph;
     }
 
     private void executeLocalObjectInit(MethodState callerMethodState) throws ClassNotFoundException, InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException {
@@ -399,29 +630,46 @@ public class InvokeOp extends ExecutionContextOp {
         callerMethodState.assignRegisterAndUpdateIdentities(instanceRegister, newInstanceItem);
     }
 
-    private void executeNonLocalMethod(String methodDescriptor, MethodState callerMethodState,
+    private void executeNonLocalMethod(String methodDescriptor, Dispatch dispatch, MethodState callerMethodState,
                                        ExecutionContext calleeContext, ExecutionNode node) {
-        if (MethodEmulator.canEmulate(methodDescriptor)) {
+        Profiler profiler = vm.getProfiler();
+        if (dispatch == Dispatch.EMULATE) {
             MethodEmulator emulator = new MethodEmulator(vm, calleeContext, methodDescriptor);
-            emulator.emulate(this);
-            sideEffectLevel = emulator.getSideEffectLevel();
+            if (profiler == null) {
+                emulator.emulate(this);
+            } else {
+                profiler.enterMethod(methodDescriptor);
+                try {
+                    emulator.emulate(this);
+                } finally {
+                    profiler.exitNonLocalMethod(true);
+                }
+            }
+            node.setSideEffectLevel(emulator.getSideEffectLevel());
             if (emulator.getExceptions().size() > 0) {
                 node.clearChildren();
                 node.setExceptions(emulator.getExceptions());
                 return;
             }
-        } else if (vm.getConfiguration().isSafe(methodDescriptor)) {
+        } else if (dispatch == Dispatch.REFLECT) {
             MethodReflector reflector = new MethodReflector(vm, method);
+            if (profiler != null) {
+                profiler.enterMethod(methodDescriptor);
+            }
             try {
                 reflector.reflect(calleeContext.getMethodState()); // playa play
             } catch (Exception e) {
-                node.setException(e);
+                node.setException(new VirtualException(e));
                 node.clearChildren();
                 return;
+            } finally {
+                if (profiler != null) {
+                    profiler.exitNonLocalMethod(false);
+                }
             }
 
             // Only safe, non-side-effect methods are allowed to be reflected.
-            sideEffectLevel = SideEffect.Level.NONE;
+            node.setSideEffectLevel(SideEffect.Level.NONE);
         }
 
         if (!method.isStatic()) {
@@ -449,18 +697,38 @@ public class InvokeOp extends ExecutionContextOp {
         }
     }
 
-    private
-    @Nullable
-    VirtualMethod resolveTargetMethod(Object virtualReference) {
+    /*
+     * The target only depends on the receiver's type, so the last one resolved is kept and reused while the receiver
+     * type stays the same. Real objects are keyed by their class, which avoids building the class name.
+     */
+    private CallTarget resolveCallTarget(Object virtualReference) {
+        if (virtualReference == null || virtualReference instanceof UnknownValue) {
+            return declaredTarget;
+        }
+
+        Object receiverKey;
+        if (virtualReference instanceof UninitializedInstance) {
+            receiverKey = ((UninitializedInstance) virtualReference).getType();
+        } else {
+            receiverKey = virtualReference.getClass();
+        }
+        CallTarget target = receiverTarget;
+        if (target != null && target.receiverKey.equals(receiverKey)) {
+            return target;
+        }
+
+        target = new CallTarget(receiverKey, resolveTargetMethod(virtualReference));
+        receiverTarget = target;
+
+        return target;
+    }
+
+    private VirtualMethod resolveTargetMethod(Object virtualReference) {
         /*
          * A method may not be defined in the class referenced by invoke op. The method implementation may be part
          * of the super class. This method searches ancestor hierarchy for the class which implements the method.
          */
         VirtualGeneric referenceType;
-        if (virtualReference == null || virtualReference instanceof UnknownValue) {
-            return method;
-        }
-
         if (virtualReference instanceof UninitializedInstance) {
             UninitializedInstance instance = (UninitializedInstance) virtualReference;
             referenceType = instance.getType();
@@ -477,4 +745,38 @@ public class InvokeOp extends ExecutionContextOp {
         return method;
     }
 
+    /*
+     * How a target method is executed. This only depends on the method, so it's decided once rather than on every
+     * execution. Methods added to the emulator after a call site has resolved its target aren't seen by it.
+     */
+    private enum Dispatch {
+        EMULATE, REFLECT, UNSAFE_FRAMEWORK, LOCAL
+    }
+
+    private final class CallTarget {
+
+        private final Object receiverKey;
+        private final VirtualMethod method;
+        private final Dispatch dispatch;
+        private final boolean canHandleUnknownValues;
+
+        private CallTarget(@Nullable Object receiverKey, VirtualMethod method) {
+            this.receiverKey = receiverKey;
+            this.method = method;
+            String signature = method.getSignature();
+            if (MethodEmulator.canEmulate(signature)) {
+                dispatch = Dispatch.EMULATE;
+            } else if (vm.getConfiguration().isSafe(signature)) {
+                dispatch = Dispatch.REFLECT;
+            } else if (classManager.isFrameworkClass(method.getDefiningClass()) &&
+                       !classManager.isSafeFrameworkClass(method.getDefiningClass())) {
+                dispatch = Dispatch.UNSAFE_FRAMEWORK;
+            } else {
+                dispatch = Dispatch.LOCAL;
+            }
+            canHandleUnknownValues = MethodEmulator.canHandleUnknownValues(signature);
+        }
+
+    }
+
 }
@@ -1,5 +1,6 @@
 package org.cf.smalivm.opcode;
 
+import org.cf.smalivm.VirtualException;
 import org.cf.smalivm.context.ExecutionNode;
 import org.cf.smalivm.context.HeapItem;
 import org.cf.smalivm.context.MethodState;
@@ -33,7 +34,7 @@ public class NewArrayOp extends MethodStateOp {
         HeapItem lengthItem = mState.readRegister(lengthRegister);
         Object instance = buildInstance(lengthItem);
         if (instance instanceof Throwable) {
-            node.setException((Throwable) instance);
+            node.setException(new VirtualException((Throwable) instance));
             node.clearChildren();
             return;
         } else {
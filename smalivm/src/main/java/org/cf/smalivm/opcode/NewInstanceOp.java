@@ -15,7 +15,6 @@ public class NewInstanceOp extends ExecutionContextOp {
     private final VirtualClass virtualClass;
     private final int destRegister;
     private final VirtualMachine vm;
-    private SideEffect.Level sideEffectLevel;
 
     NewInstanceOp(MethodLocation location, MethodLocation child, int destRegister, VirtualClass virtualClass,
                   VirtualMachine vm) {
@@ -24,18 +23,17 @@ public class NewInstanceOp extends ExecutionContextOp {
         this.destRegister = destRegister;
         this.virtualClass = virtualClass;
         this.vm = vm;
-        sideEffectLevel = SideEffect.Level.STRONG;
     }
 
     @Override
     public void execute(ExecutionNode node, ExecutionContext context) {
         Object instance = new UninitializedInstance(virtualClass);
         if (vm.isSafe(virtualClass)) {
-            sideEffectLevel = SideEffect.Level.NONE;
+            node.setSideEffectLevel(SideEffect.Level.NONE);
         } else {
             // New-instance causes static initialization (but not new-array!)
             context.readClassState(virtualClass); // access will initialize if necessary
-            sideEffectLevel = context.getClassSideEffectLevel(virtualClass);
+            node.setSideEffectLevel(context.getClassSideEffectLevel(virtualClass));
         }
 
         MethodState mState = context.getMethodState();
@@ -43,9 +41,12 @@ public class NewInstanceOp extends ExecutionContextOp {
         mState.assignRegister(destRegister, instanceItem);
     }
 
+    /**
+     * The level depends on the class's static initializer, so it's kept by the node once executed.
+     */
     @Override
     public SideEffect.Level getSideEffectLevel() {
-        return sideEffectLevel;
+        return SideEffect.Level.STRONG;
     }
 
     @Override
@@ -1,9 +1,11 @@
 package org.cf.smalivm.opcode;
 
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.cf.smalivm.SideEffect;
+import org.cf.smalivm.VirtualException;
 import org.jf.dexlib2.builder.BuilderInstruction;
 import org.jf.dexlib2.builder.MethodLocation;
 
@@ -11,7 +13,7 @@ public abstract class Op {
 
     private final MethodLocation location;
     private final MethodLocation[] children;
-    private final Set<Throwable> exceptions;
+    private volatile Set<VirtualException> exceptions;
 
     Op(MethodLocation location, MethodLocation child) {
         this(location, new MethodLocation[] { child });
@@ -20,7 +22,8 @@ public abstract class Op {
     Op(MethodLocation location, MethodLocation[] children) {
         this.location = location;
         this.children = children;
-        exceptions = new HashSet<>();
+        // Most ops never throw, so the set is only created once an exception is added
+        exceptions = Collections.emptySet();
     }
 
     public final int getAddress() {
@@ -31,7 +34,7 @@ public abstract class Op {
         return children;
     }
 
-    public Set<Throwable> getExceptions() {
+    public Set<VirtualException> getExceptions() {
         return exceptions;
     }
 
@@ -59,7 +62,12 @@ public abstract class Op {
     @Override
     public abstract String toString();
 
-    void addException(Throwable exception) {
+    synchronized void addException(VirtualException exception) {
+        if (exceptions.isEmpty()) {
+            // Ops are shared by every graph spawned for a method, which may be executing on other threads. Exceptions
+            // are few and rarely added, so copy on write is cheap.
+            exceptions = new CopyOnWriteArraySet<>();
+        }
         exceptions.add(exception);
     }
 
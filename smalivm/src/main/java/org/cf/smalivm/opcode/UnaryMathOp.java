@@ -3,7 +3,6 @@ package org.cf.smalivm.opcode;
 import org.cf.smalivm.context.ExecutionNode;
 import org.cf.smalivm.context.HeapItem;
 import org.cf.smalivm.context.MethodState;
-import org.cf.util.Utils;
 import org.jf.dexlib2.builder.MethodLocation;
 
 public class UnaryMathOp extends MethodStateOp {
@@ -48,8 +47,7 @@ public class UnaryMathOp extends MethodStateOp {
         if (item.isUnknown()) {
             resultItem = HeapItem.newUnknown(type);
         } else {
-            Object resultValue = perform(item.getValue(), getName());
-            resultItem = new HeapItem(resultValue, type);
+            resultItem = perform(item, getName(), type);
         }
         mState.assignRegister(destRegister, resultItem);
     }
@@ -59,77 +57,71 @@ public class UnaryMathOp extends MethodStateOp {
         return getName() + " r" + destRegister + ", r" + srcRegister;
     }
 
-    private Object perform(Object value, String opName) {
-        // Stupid, but simple. Deals.
-        Object resultValue = null;
+    private HeapItem perform(HeapItem item, String opName, String type) {
+        // Stupid, but simple. Deals. Ints, longs, floats, and doubles stay unboxed.
+        HeapItem resultItem = null;
         if (opName.startsWith("double")) {
-            Double typedValue = Utils.getDoubleValue(value);
+            double value = item.asDouble();
             if (opName.endsWith("float")) {
-                resultValue = typedValue.floatValue();
+                resultItem = HeapItem.newFloat((float) value, type);
             } else if (opName.endsWith("int")) {
-                resultValue = typedValue.intValue();
+                resultItem = HeapItem.newInteger((int) value, type);
             } else if (opName.endsWith("long")) {
-                resultValue = typedValue.longValue();
+                resultItem = HeapItem.newLong((long) value, type);
             }
         } else if (opName.startsWith("float")) {
-            Float typedValue = Utils.getFloatValue(value);
+            float value = item.asFloat();
             if (opName.endsWith("double")) {
-                resultValue = typedValue.doubleValue();
+                resultItem = HeapItem.newDouble(value, type);
             } else if (opName.endsWith("int")) {
-                resultValue = typedValue.intValue();
+                resultItem = HeapItem.newInteger((int) value, type);
             } else if (opName.endsWith("long")) {
-                resultValue = typedValue.longValue();
+                resultItem = HeapItem.newLong((long) value, type);
             }
         } else if (opName.startsWith("long")) {
-            Long typedValue = Utils.getLongValue(value);
+            long value = item.asLong();
             if (opName.endsWith("double")) {
-                resultValue = typedValue.doubleValue();
+                resultItem = HeapItem.newDouble(value, type);
             } else if (opName.endsWith("int")) {
-                resultValue = typedValue.intValue();
+                resultItem = HeapItem.newInteger((int) value, type);
             } else if (opName.endsWith("float")) {
-                resultValue = typedValue.floatValue();
+                resultItem = HeapItem.newFloat(value, type);
             }
         } else if (opName.startsWith("int")) {
             // Could be something other than an int, such as short
-            Integer typedValue = Utils.getIntegerValue(value);
+            int value = item.asInteger();
             if (opName.endsWith("byte")) {
-                resultValue = typedValue.byteValue();
+                resultItem = new HeapItem((byte) value, type);
             } else if (opName.endsWith("char")) {
-                resultValue = (char) typedValue.intValue();
+                resultItem = new HeapItem((char) value, type);
             } else if (opName.endsWith("short")) {
-                resultValue = typedValue.shortValue();
+                resultItem = new HeapItem((short) value, type);
             } else if (opName.endsWith("double")) {
-                resultValue = typedValue.doubleValue();
+                resultItem = HeapItem.newDouble(value, type);
             } else if (opName.endsWith("long")) {
-                resultValue = typedValue.longValue();
+                resultItem = HeapItem.newLong(value, type);
             } else if (opName.endsWith("float")) {
-                resultValue = typedValue.floatValue();
+                resultItem = HeapItem.newFloat(value, type);
             }
         } else if (opName.startsWith("neg")) {
             if (opName.endsWith("double")) {
-                Double typedValue = Utils.getDoubleValue(value);
-                resultValue = -typedValue;
+                resultItem = HeapItem.newDouble(-item.asDouble(), type);
             } else if (opName.endsWith("float")) {
-                Float typedValue = Utils.getFloatValue(value);
-                resultValue = -typedValue;
+                resultItem = HeapItem.newFloat(-item.asFloat(), type);
             } else if (opName.endsWith("int")) {
-                Integer typedValue = Utils.getIntegerValue(value);
-                resultValue = -typedValue;
+                resultItem = HeapItem.newInteger(-item.asInteger(), type);
             } else if (opName.endsWith("long")) {
-                Long typedValue = Utils.getLongValue(value);
-                resultValue = -typedValue;
+                resultItem = HeapItem.newLong(-item.asLong(), type);
             }
         } else if (opName.startsWith("not")) {
             if (opName.endsWith("int")) {
-                Integer typedValue = Utils.getIntegerValue(value);
-                resultValue = ~typedValue;
+                resultItem = HeapItem.newInteger(~item.asInteger(), type);
             } else if (opName.endsWith("long")) {
-                Long typedValue = Utils.getLongValue(value);
-                resultValue = ~typedValue;
+                resultItem = HeapItem.newLong(~item.asLong(), type);
             }
         }
 
-        return resultValue;
+        return resultItem;
     }
 
 }
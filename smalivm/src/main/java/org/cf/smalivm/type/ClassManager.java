@@ -1,9 +1,15 @@
 package org.cf.smalivm.type;
 
+import org.cf.smalivm.dex.DexClassInterner;
+import org.cf.smalivm.dex.FrameworkSnapshot;
 import org.cf.smalivm.dex.SmaliFile;
 import org.cf.smalivm.dex.SmaliFileFactory;
 import org.cf.smalivm.dex.SmaliParser;
+import org.cf.smalivm.jfr.ClassParseEvent;
+import org.cf.smalivm.jfr.VirtualMachineEvent;
 import org.cf.util.ClassNameUtils;
+import org.jf.dexlib2.iface.ClassDef;
+import org.jf.dexlib2.iface.DexFile;
 import org.jf.dexlib2.iface.reference.TypeReference;
 import org.jf.dexlib2.writer.builder.BuilderClassDef;
 import org.jf.dexlib2.writer.builder.DexBuilder;
@@ -14,25 +20,40 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
- * The class manager is responsible for loading Smali files into Dexlib2 objects and making them available.
+ * The class manager is responsible for loading Smali files and dex class definitions into Dexlib2 objects and making
+ * them available.
+ *
+ * It's thread safe, so one class manager can be shared by virtual machines on different threads. Each class is parsed
+ * at most once. Loaded classes are looked up without locking, but parsing and interning into the DexBuilders, which
+ * aren't thread safe, hold this class manager's lock.
+ *
+ * Each type is created once and given a small type id, which is unique within this class manager, so type checks can
+ * be done with bit sets rather than by walking the class hierarchy.
  */
 public class ClassManager {
 
     private static final Logger log = LoggerFactory.getLogger(ClassManager.class.getSimpleName());
 
-    private final HashMap<String, VirtualClass> classNameToClass;
+    private final Map<String, VirtualClass> classNameToClass;
+    private final Map<String, VirtualGeneric> typeNameToArrayOrPrimitive;
     private final Map<String, SmaliFile> classNameToSmaliFile;
+    private final Map<String, ClassDef> classNameToDexClassDef;
 
     private final SmaliFileFactory smaliFileFactory;
     private final DexBuilder dexBuilder;
     // Use separate DexBuilder to intern framework classes to avoid including in output dex
     private final DexBuilder frameworkDexBuilder = DexBuilder.makeDexBuilder();
+    // Guarded by this class manager's lock
+    private int nextTypeId;
 
     ClassManager(DexBuilder dexBuilder) {
         this(dexBuilder, false);
@@ -42,9 +63,10 @@ public class ClassManager {
     private ClassManager(DexBuilder dexBuilder, boolean internalOnly) {
         this.dexBuilder = dexBuilder;
         smaliFileFactory = new SmaliFileFactory();
-        classNameToClass = new HashMap<>();
+        classNameToClass = new ConcurrentHashMap<>();
+        typeNameToArrayOrPrimitive = new ConcurrentHashMap<>();
         classNameToSmaliFile = new HashMap<>();
-        VirtualGeneric.setClassManager(this);
+        classNameToDexClassDef = new HashMap<>();
     }
 
     ClassManager(DexBuilder dexBuilder, File smaliPath) throws IOException {
@@ -52,13 +74,21 @@ public class ClassManager {
         cacheSmaliFiles(smaliFileFactory.getSmaliFiles(smaliPath));
     }
 
+    ClassManager(DexBuilder dexBuilder, DexFile dexFile) {
+        this(dexBuilder);
+        cacheDexClassDefs(dexFile);
+    }
+
     /**
      * Does not load any Smali files.
      *
      * @return all local class names, including framework
      */
     public Set<String> getClassNames() {
-        return classNameToSmaliFile.keySet();
+        Set<String> classNames = new HashSet<>(classNameToSmaliFile.keySet());
+        classNames.addAll(classNameToDexClassDef.keySet());
+
+        return classNames;
     }
 
     /**
@@ -79,7 +109,8 @@ public class ClassManager {
     }
 
     public Collection<VirtualClass> getLoadedClasses() {
-        return classNameToClass.values();
+        // Iterating is safe while another thread loads classes, which may or may not be seen
+        return Collections.unmodifiableCollection(classNameToClass.values());
     }
 
     public VirtualMethod getMethod(String methodSignature) {
@@ -102,7 +133,7 @@ public class ClassManager {
      * @return all local class names which are not part of the framework
      */
     public Set<String> getNonFrameworkClassNames() {
-        return classNameToSmaliFile.keySet().stream().filter(className -> !smaliFileFactory.isFrameworkClass(className))
+        return getClassNames().stream().filter(className -> !smaliFileFactory.isFrameworkClass(className))
                        .collect(Collectors.toSet());
     }
 
@@ -114,20 +145,36 @@ public class ClassManager {
         char first = typeReference.charAt(0);
         if (first == 'L') {
             String className = typeReference.getType();
-            parseClassIfNecessary(className);
+            VirtualClass virtualClass = classNameToClass.get(className);
+            if (virtualClass == null) {
+                virtualClass = parseClassIfNecessary(className);
+            }
 
-            return classNameToClass.get(className);
-        } else if (first == '[') {
-            return new VirtualArray(typeReference);
-        } else if (ClassNameUtils.isPrimitive(typeReference.getType())) {
-            return new VirtualPrimitive(typeReference);
-        } else {
-            throw new RuntimeException("Unrecognized type: " + typeReference);
+            return virtualClass;
+        }
+
+        VirtualGeneric virtualType = typeNameToArrayOrPrimitive.get(typeReference.getType());
+        if (virtualType == null) {
+            virtualType = buildArrayOrPrimitive(typeReference);
         }
+
+        return virtualType;
     }
 
     public VirtualGeneric getVirtualType(String typeSignature) {
-        TypeReference typeReference = getFrameworkDexBuilder().internTypeReference(typeSignature);
+        VirtualClass virtualClass = classNameToClass.get(typeSignature);
+        if (virtualClass != null) {
+            return virtualClass;
+        }
+        VirtualGeneric virtualType = typeNameToArrayOrPrimitive.get(typeSignature);
+        if (virtualType != null) {
+            return virtualType;
+        }
+
+        TypeReference typeReference;
+        synchronized (this) {
+            typeReference = getFrameworkDexBuilder().internTypeReference(typeSignature);
+        }
 
         return getVirtualType(typeReference);
     }
@@ -144,14 +191,59 @@ public class ClassManager {
         return frameworkDexBuilder;
     }
 
+    private synchronized VirtualGeneric buildArrayOrPrimitive(TypeReference typeReference) {
+        String typeName = typeReference.getType();
+        VirtualGeneric virtualType = typeNameToArrayOrPrimitive.get(typeName);
+        if (virtualType != null) {
+            // Built by another thread while waiting
+            return virtualType;
+        }
+
+        if (typeName.charAt(0) == '[') {
+            virtualType = new VirtualArray(typeReference, this, nextTypeId++);
+        } else if (ClassNameUtils.isPrimitive(typeName)) {
+            virtualType = new VirtualPrimitive(typeReference, this, nextTypeId++);
+        } else {
+            throw new RuntimeException("Unrecognized type: " + typeReference);
+        }
+        typeNameToArrayOrPrimitive.put(typeName, virtualType);
+
+        return virtualType;
+    }
+
     private void cacheSmaliFiles(Set<SmaliFile> smaliFiles) {
         for (SmaliFile smaliFile : smaliFiles) {
             classNameToSmaliFile.put(smaliFile.getClassName(), smaliFile);
         }
     }
 
+    private void cacheDexClassDefs(DexFile dexFile) {
+        for (ClassDef classDef : dexFile.getClasses()) {
+            // Same as with Smali files, framework classes take precedence over local classes.
+            String className = classDef.getType();
+            if (smaliFileFactory.isFrameworkClass(className) && !className.startsWith("Landroid/support/")) {
+                log.warn("Input class '{}' has an earlier definition; ignoring", className);
+                continue;
+            }
+            classNameToDexClassDef.put(className, classDef);
+        }
+    }
+
     private BuilderClassDef parseClass(String className, DexBuilder builder) {
+        ClassDef dexClassDef = classNameToDexClassDef.get(className);
+        if (dexClassDef != null) {
+            // Already compiled, just needs interning
+            return DexClassInterner.intern(dexClassDef, builder);
+        }
+
         SmaliFile smaliFile = classNameToSmaliFile.get(className);
+        if (smaliFile.isResource()) {
+            ClassDef frameworkClassDef = FrameworkSnapshot.getClassDef(className);
+            if (frameworkClassDef != null) {
+                return DexClassInterner.intern(frameworkClassDef, builder);
+            }
+        }
+
         BuilderClassDef classDef;
         try {
             InputStream is = smaliFile.open();
@@ -164,21 +256,33 @@ public class ClassManager {
         return classDef;
     }
 
-    private void parseClassIfNecessary(String className) {
-        if (classNameToClass.containsKey(className)) {
-            return;
+    private synchronized VirtualClass parseClassIfNecessary(String className) {
+        VirtualClass virtualClass = classNameToClass.get(className);
+        if (virtualClass != null) {
+            // Parsed by another thread while waiting
+            return virtualClass;
         }
 
-        SmaliFile smaliFile = classNameToSmaliFile.get(className);
-        if (smaliFile == null) {
+        if (!classNameToSmaliFile.containsKey(className) && !classNameToDexClassDef.containsKey(className)) {
             throw new RuntimeException("Can't find Smali file for " + className);
         }
 
-        boolean isFramework = smaliFileFactory.isFrameworkClass(className);
-        DexBuilder builder = isFramework ? frameworkDexBuilder : dexBuilder;
-        BuilderClassDef classDef = parseClass(className, builder);
-        VirtualClass virtualClass = new VirtualClass(classDef);
-        classNameToClass.put(className, virtualClass);
+        ClassParseEvent event = new ClassParseEvent(className);
+        event.begin();
+        String outcome = VirtualMachineEvent.EXCEPTION;
+        try {
+            boolean isFramework = smaliFileFactory.isFrameworkClass(className);
+            DexBuilder builder = isFramework ? frameworkDexBuilder : dexBuilder;
+            BuilderClassDef classDef = parseClass(className, builder);
+            virtualClass = new VirtualClass(classDef, this, nextTypeId++);
+            classNameToClass.put(className, virtualClass);
+            outcome = VirtualMachineEvent.SUCCESS;
+        } finally {
+            event.setOutcome(outcome);
+            event.commit();
+        }
+
+        return virtualClass;
     }
 
 }
@@ -1,26 +1,16 @@
 package org.cf.smalivm.type;
 
+import org.cf.smalivm.dex.SmaliParser;
+import org.jf.dexlib2.DexFileFactory;
 import org.jf.dexlib2.Opcodes;
+import org.jf.dexlib2.dexbacked.DexBackedDexFile;
 import org.jf.dexlib2.writer.builder.DexBuilder;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 
 public class ClassManagerFactory {
 
-    private static final String TEMP_DIR_NAME = "simplify";
-
-    private static File disassemble(File file) throws IOException {
-        Path tempDir = Files.createTempDirectory(TEMP_DIR_NAME);
-        String[] args = new String[] { "--use-locals", "--sequential-labels", "--code-offsets", file.getAbsolutePath(),
-                                       "--output", tempDir.toString(), };
-        org.jf.baksmali.main.main(args);
-
-        return tempDir.toFile();
-    }
-
     /**
      * Create a ClassManager with no input Smali classes. It will only contain parse library classes.
      */
@@ -46,15 +36,19 @@ public class ClassManagerFactory {
         return new ClassManager(dexBuilder);
     }
 
+    /**
+     * @param inFile
+     *         Path to Smali file or folder, or DEX, APK, or other zip with a classes.dex
+     */
     public ClassManager build(File inFile, DexBuilder dexBuilder) throws IOException {
-        File smaliPath;
-        if (inFile.isFile()) {
-            smaliPath = disassemble(inFile);
-        } else {
-            smaliPath = inFile;
+        if (inFile.isFile() && !inFile.getName().endsWith(".smali")) {
+            // Classes are read straight from the dex and only interned when they're first used.
+            DexBackedDexFile dexFile = DexFileFactory.loadDexFile(inFile, SmaliParser.DEFAULT_API_LEVEL, false);
+
+            return new ClassManager(dexBuilder, dexFile);
         }
 
-        return new ClassManager(dexBuilder, smaliPath);
+        return new ClassManager(dexBuilder, inFile);
     }
 
     /**
@@ -20,12 +20,13 @@ import java.util.Set;
 public class VirtualArray extends VirtualGeneric {
 
     private final int dimensionRank;
-    private Set<VirtualGeneric> ancestors;
-    private Map<String, VirtualArrayMethod> methodDescriptorToMethod;
+    // Arrays are shared by every virtual machine using the class manager, so these are built into a local first
+    private volatile Set<VirtualGeneric> ancestors;
+    private volatile Map<String, VirtualArrayMethod> methodDescriptorToMethod;
 
-    VirtualArray(TypeReference typeReference) {
+    VirtualArray(TypeReference typeReference, ClassManager classManager, int typeId) {
         super(typeReference, typeReference.getType(), ClassNameUtils.internalToBinary(typeReference.getType()),
-                ClassNameUtils.internalToSource(typeReference.getType()));
+                ClassNameUtils.internalToSource(typeReference.getType()), classManager, typeId);
         dimensionRank = ClassNameUtils.getDimensionCount(typeReference.getType());
     }
 
@@ -40,6 +41,7 @@ public class VirtualArray extends VirtualGeneric {
 
     @Override
     public Set<? extends VirtualGeneric> getAncestors() {
+        Set<VirtualGeneric> ancestors = this.ancestors;
         if (ancestors != null) {
             return ancestors;
         }
@@ -50,7 +52,6 @@ public class VirtualArray extends VirtualGeneric {
         if (!ClassNameUtils.isPrimitive(baseType)) {
             // It's an array of object type, so get ancestry for that object
             // Primitives have no ancestors. They're primordial. THEY ARE ETERNAL. ALL ONE OR NONE!
-            ClassManager classManager = getClassManager();
             VirtualClass baseClass = classManager.getVirtualClass(baseType);
             String rankString = buildRankString(dimensionRank);
 
@@ -69,6 +70,7 @@ public class VirtualArray extends VirtualGeneric {
             VirtualGeneric ancestor = classManager.getVirtualType(objectType);
             ancestors.add(ancestor);
         }
+        this.ancestors = ancestors;
 
         return ancestors;
     }
@@ -104,27 +106,15 @@ public class VirtualArray extends VirtualGeneric {
 
     @Override
     public Collection<VirtualMethod> getMethods() {
-        if (methodDescriptorToMethod == null) {
-            methodDescriptorToMethod = buildMethodsMap();
-        }
         List<VirtualMethod> methods = new LinkedList<>();
-        methods.addAll(methodDescriptorToMethod.values());
+        methods.addAll(getMethodDescriptorToMethod().values());
 
         return methods;
     }
 
     @Override
     public boolean instanceOf(VirtualGeneric targetType) {
-        if (equals(targetType)) {
-            return true;
-        }
-        for (VirtualGeneric ancestor : getAncestors()) {
-            if (ancestor.equals(targetType)) {
-                return true;
-            }
-        }
-
-        return false;
+        return equals(targetType) || hasAncestor(targetType);
     }
 
     @Override
@@ -150,18 +140,33 @@ public class VirtualArray extends VirtualGeneric {
     }
 
     private VirtualArrayMethod getMethod0(String methodDescriptor) {
-        if (methodDescriptorToMethod == null) {
-            methodDescriptorToMethod = buildMethodsMap();
+        return getMethodDescriptorToMethod().get(methodDescriptor);
+    }
+
+    private Map<String, VirtualArrayMethod> getMethodDescriptorToMethod() {
+        Map<String, VirtualArrayMethod> methods = methodDescriptorToMethod;
+        if (methods == null) {
+            synchronized (this) {
+                methods = methodDescriptorToMethod;
+                if (methods == null) {
+                    methods = buildMethodsMap();
+                    methodDescriptorToMethod = methods;
+                }
+            }
         }
 
-        return methodDescriptorToMethod.get(methodDescriptor);
+        return methods;
     }
 
     private Map<String, VirtualArrayMethod> buildMethodsMap() {
         Map<String, VirtualArrayMethod> methods = new HashMap<>(2);
         String methodDescriptor = "clone()Ljava/lang/Object;";
         String methodSignature = getName() + "->" + methodDescriptor;
-        TypeReference reference = classManager.getFrameworkDexBuilder().internTypeReference(methodSignature);
+        TypeReference reference;
+        synchronized (classManager) {
+            // Interning isn't thread safe and classes may be shared by several virtual machines.
+            reference = classManager.getFrameworkDexBuilder().internTypeReference(methodSignature);
+        }
 
         VirtualArrayMethod method = new VirtualArrayMethod(reference, this);
         methods.put(methodDescriptor, method);
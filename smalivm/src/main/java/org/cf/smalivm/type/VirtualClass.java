@@ -25,13 +25,14 @@ public class VirtualClass extends VirtualGeneric {
     private static final Logger log = LoggerFactory.getLogger(VirtualClass.class.getSimpleName());
 
     private final BuilderClassDef classDef;
-    private Set<VirtualClass> ancestors;
-    private Map<String, VirtualMethod> methodDescriptorToMethod;
-    private Map<String, VirtualField> fieldNameToField;
+    // Built lazily, at most once, since methods and fields are compared by identity and may be used by many threads.
+    private volatile Set<VirtualClass> ancestors;
+    private volatile Map<String, VirtualMethod> methodDescriptorToMethod;
+    private volatile Map<String, VirtualField> fieldNameToField;
 
-    VirtualClass(BuilderClassDef classDef) {
+    VirtualClass(BuilderClassDef classDef, ClassManager classManager, int typeId) {
         super(classDef, classDef.getType(), ClassNameUtils.internalToBinary(classDef.getType()),
-                ClassNameUtils.internalToSource(classDef.getType()));
+                ClassNameUtils.internalToSource(classDef.getType()), classManager, typeId);
         this.classDef = classDef;
         methodDescriptorToMethod = null;
         fieldNameToField = null;
@@ -56,12 +57,13 @@ public class VirtualClass extends VirtualGeneric {
             parentNames.add(classDef.getSuperclass());
         }
 
-        ClassManager classManager = getClassManager();
+        ClassManager classManager = virtualClass.getClassManager();
         return parentNames.stream().map(classManager::getVirtualClass).collect(Collectors.toSet());
     }
 
     @Override
     public Set<VirtualClass> getAncestors() {
+        Set<VirtualClass> ancestors = this.ancestors;
         if (ancestors != null) {
             return ancestors;
         }
@@ -69,6 +71,7 @@ public class VirtualClass extends VirtualGeneric {
         ancestors = new LinkedHashSet<>(3);
         getAncestors0(this, ancestors);
         ancestors.remove(this);
+        this.ancestors = ancestors;
 
         return ancestors;
     }
@@ -102,11 +105,8 @@ public class VirtualClass extends VirtualGeneric {
 
     @Override
     public Collection<VirtualField> getFields() {
-        if (fieldNameToField == null) {
-            fieldNameToField = buildFieldsMap();
-        }
         List<VirtualField> fields = new LinkedList<>();
-        fields.addAll(fieldNameToField.values());
+        fields.addAll(getFieldNameToField().values());
 
         return fields;
     }
@@ -131,31 +131,16 @@ public class VirtualClass extends VirtualGeneric {
 
     @Override
     public Collection<VirtualMethod> getMethods() {
-        if (methodDescriptorToMethod == null) {
-            methodDescriptorToMethod = buildMethodsMap();
-        }
         List<VirtualMethod> methods = new LinkedList<>();
-        methods.addAll(methodDescriptorToMethod.values());
+        methods.addAll(getMethodDescriptorToMethod().values());
 
         return methods;
     }
 
     @Override
     public boolean instanceOf(VirtualGeneric targetType) {
-        if (targetType instanceof VirtualArray || targetType instanceof VirtualPrimitive) {
-            return false;
-        }
-
-        if (equals(targetType)) {
-            return true;
-        }
-        for (VirtualGeneric ancestor : getAncestors()) {
-            if (ancestor.equals(targetType)) {
-                return true;
-            }
-        }
-
-        return false;
+        // Ancestors of classes are only ever classes, so arrays and primitives are never found
+        return equals(targetType) || hasAncestor(targetType);
     }
 
     @Override
@@ -222,19 +207,41 @@ public class VirtualClass extends VirtualGeneric {
     }
 
     private VirtualField getField0(String fieldName) {
-        if (fieldNameToField == null) {
-            fieldNameToField = buildFieldsMap();
+        return getFieldNameToField().get(fieldName);
+    }
+
+    private Map<String, VirtualField> getFieldNameToField() {
+        Map<String, VirtualField> fields = fieldNameToField;
+        if (fields == null) {
+            synchronized (this) {
+                fields = fieldNameToField;
+                if (fields == null) {
+                    fields = buildFieldsMap();
+                    fieldNameToField = fields;
+                }
+            }
         }
 
-        return fieldNameToField.get(fieldName);
+        return fields;
     }
 
     private VirtualMethod getMethod0(String methodDescriptor) {
-        if (methodDescriptorToMethod == null) {
-            methodDescriptorToMethod = buildMethodsMap();
+        return getMethodDescriptorToMethod().get(methodDescriptor);
+    }
+
+    private Map<String, VirtualMethod> getMethodDescriptorToMethod() {
+        Map<String, VirtualMethod> methods = methodDescriptorToMethod;
+        if (methods == null) {
+            synchronized (this) {
+                methods = methodDescriptorToMethod;
+                if (methods == null) {
+                    methods = buildMethodsMap();
+                    methodDescriptorToMethod = methods;
+                }
+            }
         }
 
-        return methodDescriptorToMethod.get(methodDescriptor);
+        return methods;
     }
 
 }
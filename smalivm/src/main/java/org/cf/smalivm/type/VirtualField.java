@@ -15,14 +15,19 @@ import org.jf.dexlib2.writer.builder.BuilderEncodedValues;
 import org.jf.dexlib2.writer.builder.BuilderField;
 
 import java.lang.reflect.Modifier;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class VirtualField extends VirtualClassItem {
 
+    private static final AtomicInteger nextId = new AtomicInteger();
+
     private final BuilderField field;
+    private final int id;
 
     VirtualField(BuilderField field, VirtualClass virtualClass) {
         super(field, virtualClass);
         this.field = field;
+        id = nextId.getAndIncrement();
     }
 
     public BuilderField getField() {
@@ -96,6 +101,13 @@ public class VirtualField extends VirtualClassItem {
         return getSignature();
     }
 
+    /**
+     * @return number which is unique to this field, useful as a cheap key where building the signature is too slow
+     */
+    public int getId() {
+        return id;
+    }
+
     public String getType() {
         return field.getType();
     }
@@ -7,6 +7,7 @@ import org.jf.dexlib2.writer.builder.BuilderClassDef;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Set;
 
@@ -16,29 +17,54 @@ public abstract class VirtualGeneric {
 
     private static final Logger log = LoggerFactory.getLogger(VirtualGeneric.class.getSimpleName());
 
-    protected static ClassManager classManager;
+    // Manager which created this type, so ancestors have type ids from the same manager
+    protected final ClassManager classManager;
     private final TypeReference typeReference;
     private final String internalName;
     private final String binaryName;
     private final String sourceName;
+    private final int typeId;
+    // Type ids of all ancestors, built lazily, so subtype checks don't walk the class hierarchy
+    private volatile BitSet ancestorTypeIds;
 
-    VirtualGeneric(TypeReference typeReference, String internalName, String binaryName, String sourceName) {
+    VirtualGeneric(TypeReference typeReference, String internalName, String binaryName, String sourceName,
+                   ClassManager classManager, int typeId) {
+        this.classManager = classManager;
         this.typeReference = typeReference;
         this.internalName = internalName;
         this.binaryName = binaryName;
         this.sourceName = sourceName;
+        this.typeId = typeId;
     }
 
-    static ClassManager getClassManager() {
+    ClassManager getClassManager() {
         return classManager;
     }
 
-    static void setClassManager(ClassManager classManager) {
-        VirtualGeneric.classManager = classManager;
-    }
-
     public abstract Set<? extends VirtualGeneric> getAncestors();
 
+    /**
+     * Type ids are only comparable between types created by the same class manager.
+     *
+     * @return true if the type is an ancestor of this type, e.g. a superclass or an implemented interface
+     */
+    public boolean hasAncestor(VirtualGeneric type) {
+        BitSet ids = ancestorTypeIds;
+        if (ids == null) {
+            ids = new BitSet();
+            for (VirtualGeneric ancestor : getAncestors()) {
+                ids.set(ancestor.getTypeId());
+            }
+            ancestorTypeIds = ids;
+        }
+
+        if (type.getClassManager() != classManager) {
+            return getAncestors().contains(type);
+        }
+
+        return ids.get(type.getTypeId());
+    }
+
     public String getPackage() {
         return null;
     }
@@ -71,6 +97,13 @@ public abstract class VirtualGeneric {
         return sourceName;
     }
 
+    /**
+     * @return a small number which is unique to this type within its class manager
+     */
+    public final int getTypeId() {
+        return typeId;
+    }
+
     public final TypeReference getTypeReference() {
         return typeReference;
     }
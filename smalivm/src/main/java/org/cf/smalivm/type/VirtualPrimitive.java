@@ -6,19 +6,18 @@ import org.jf.dexlib2.writer.builder.BuilderClassDef;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Set;
 
 public class VirtualPrimitive extends VirtualGeneric {
 
-    VirtualPrimitive(TypeReference typeReference) {
+    VirtualPrimitive(TypeReference typeReference, ClassManager classManager, int typeId) {
         super(typeReference, typeReference.getType(), ClassNameUtils.internalToBinary(typeReference.getType()),
-                ClassNameUtils.internalToSource(typeReference.getType()));
+                ClassNameUtils.internalToSource(typeReference.getType()), classManager, typeId);
     }
 
     @Override
     public Set<VirtualPrimitive> getAncestors() {
-        return new HashSet<>(0);
+        return Collections.emptySet();
     }
 
     @Override
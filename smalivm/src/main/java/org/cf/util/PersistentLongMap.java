@@ -0,0 +1,208 @@
+package org.cf.util;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import javax.annotation.Nullable;
+
+/**
+ * Immutable map of long keys which shares structure between versions. Adding a mapping copies only the path to the
+ * changed entry, so it's cheap to keep many slightly different versions, e.g. one for every execution state.
+ *
+ * This is a hash array mapped trie. Keys are scrambled with a reversible mix so there are no collisions to handle.
+ */
+public final class PersistentLongMap<V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    @SuppressWarnings("rawtypes")
+    private static final PersistentLongMap EMPTY = new PersistentLongMap<>(new Node(0, new Object[0]), 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentLongMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentLongMap<V> empty() {
+        return EMPTY;
+    }
+
+    private static long hash(long key) {
+        // MurmurHash3 fmix64, a bijection, so different keys always have different hashes
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+
+        return h;
+    }
+
+    private static int bit(long hash, int shift) {
+        return 1 << (int) ((hash >>> shift) & MASK);
+    }
+
+    public boolean containsKey(long key) {
+        return getLeaf(key) != null;
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        Leaf leaf = getLeaf(key);
+
+        return leaf == null ? null : (V) leaf.value;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return map with the added or replaced mapping; this map is unchanged
+     */
+    public PersistentLongMap<V> plus(long key, V value) {
+        Leaf leaf = new Leaf(key, hash(key), value);
+        boolean[] added = new boolean[1];
+        Node newRoot = root.plus(leaf, 0, added);
+        if (newRoot == root) {
+            return this;
+        }
+
+        return new PersistentLongMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * Visit every mapping. Order is arbitrary but stable for a given map.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<? super V> consumer) {
+        Deque<Node> nodes = new ArrayDeque<>();
+        nodes.push(root);
+        while (!nodes.isEmpty()) {
+            Node node = nodes.pop();
+            for (Object slot : node.slots) {
+                if (slot instanceof Leaf) {
+                    Leaf leaf = (Leaf) slot;
+                    consumer.accept(leaf.key, (V) leaf.value);
+                } else {
+                    nodes.push((Node) slot);
+                }
+            }
+        }
+    }
+
+    private Leaf getLeaf(long key) {
+        long hash = hash(key);
+        Node node = root;
+        int shift = 0;
+        while (true) {
+            int bit = bit(hash, shift);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+
+            Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (slot instanceof Leaf) {
+                Leaf leaf = (Leaf) slot;
+                return leaf.key == key ? leaf : null;
+            }
+            node = (Node) slot;
+            shift += BITS;
+        }
+    }
+
+    public interface EntryConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    private static final class Leaf {
+
+        private final long key;
+        private final long hash;
+        private final Object value;
+
+        Leaf(long key, long hash, Object value) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+        }
+
+    }
+
+    private static final class Node {
+
+        private final int bitmap;
+        private final Object[] slots;
+
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        private static Node merge(Leaf leaf1, Leaf leaf2, int shift) {
+            int bit1 = bit(leaf1.hash, shift);
+            int bit2 = bit(leaf2.hash, shift);
+            if (bit1 == bit2) {
+                return new Node(bit1, new Object[] { merge(leaf1, leaf2, shift + BITS) });
+            }
+
+            Object[] slots = Integer.compareUnsigned(bit1, bit2) < 0 ? new Object[] { leaf1, leaf2 } :
+                             new Object[] { leaf2, leaf1 };
+
+            return new Node(bit1 | bit2, slots);
+        }
+
+        Node plus(Leaf leaf, int shift, boolean[] added) {
+            int bit = bit(leaf.hash, shift);
+            int index = Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0) {
+                Object[] newSlots = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, newSlots, 0, index);
+                newSlots[index] = leaf;
+                System.arraycopy(slots, index, newSlots, index + 1, slots.length - index);
+                added[0] = true;
+
+                return new Node(bitmap | bit, newSlots);
+            }
+
+            Object slot = slots[index];
+            Object newSlot;
+            if (slot instanceof Leaf) {
+                Leaf existing = (Leaf) slot;
+                if (existing.key == leaf.key) {
+                    if (existing.value == leaf.value) {
+                        return this;
+                    }
+                    newSlot = leaf;
+                } else {
+                    newSlot = merge(existing, leaf, shift + BITS);
+                    added[0] = true;
+                }
+            } else {
+                Node child = (Node) slot;
+                newSlot = child.plus(leaf, shift + BITS, added);
+                if (newSlot == child) {
+                    return this;
+                }
+            }
+
+            Object[] newSlots = slots.clone();
+            newSlots[index] = newSlot;
+
+            return new Node(bitmap, newSlots);
+        }
+
+    }
+
+}
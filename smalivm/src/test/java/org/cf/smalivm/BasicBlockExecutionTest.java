@@ -0,0 +1,66 @@
+package org.cf.smalivm;
+
+import org.cf.smalivm.context.ExecutionContext;
+import org.cf.smalivm.context.ExecutionGraph;
+import org.cf.smalivm.context.MethodState;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BasicBlockExecutionTest {
+
+    private static final String CLASS_NAME = "Lbasic_block_test;";
+
+    private VirtualMachine vm;
+
+    @Before
+    public void setUp() {
+        vm = VMTester.spawnVM();
+        vm.setExecuteBasicBlocks(true);
+    }
+
+    @Test
+    public void invokedStraightLineMethodHasCorrectResult() {
+        assertEquals(36, VMTester.executeForReturnValue(vm, CLASS_NAME, "callStraightLine()I").getValue());
+    }
+
+    @Test
+    public void invokedMethodWhichBranchesOnUnknownValueHasUnknownResult() {
+        assertTrue(VMTester.executeForReturnValue(vm, CLASS_NAME, "callBranchOnUnknown(I)I").isUnknown());
+    }
+
+    @Test
+    public void invokedMethodWithLoopHasCorrectResult() {
+        assertEquals(40, VMTester.executeForReturnValue(vm, CLASS_NAME, "callKnownBoundLoop()I").getValue());
+    }
+
+    @Test
+    public void invokedMethodWithCaughtExceptionHasCorrectResult() {
+        assertEquals(-1, VMTester.executeForReturnValue(vm, CLASS_NAME, "callDivideByZero()I").getValue());
+    }
+
+    @Test
+    public void invokedMethodWithArrayDataHasCorrectResult() {
+        assertEquals(3, VMTester.executeForReturnValue(vm, CLASS_NAME, "callArrayData()I").getValue());
+    }
+
+    @Test
+    public void straightLineCalleeIsExecutedWithFewerNodes() throws VirtualMachineException {
+        String signature = CLASS_NAME + "->straightLine()I";
+        ExecutionContext callerContext = vm.spawnRootContext(CLASS_NAME + "->callStraightLine()I");
+        ExecutionGraph graph = vm.execute(signature, vm.spawnRootContext(signature), callerContext, null);
+
+        // The root is always executed alone, and the rest is one block
+        assertEquals(2, graph.getNodeCount());
+        assertEquals(36, graph.getTerminatingRegisterConsensus(MethodState.ReturnRegister).getValue());
+    }
+
+    @Test
+    public void directlyExecutedMethodHasNodeForEachInstruction() {
+        ExecutionGraph graph = VMTester.execute(vm, CLASS_NAME, "straightLine()I");
+
+        assertEquals(7, graph.getNodeCount());
+    }
+}
@@ -0,0 +1,58 @@
+package org.cf.smalivm;
+
+import org.cf.smalivm.context.ExecutionContext;
+import org.cf.smalivm.context.ExecutionGraph;
+import org.cf.smalivm.context.HeapItem;
+import org.cf.smalivm.context.MethodState;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConcreteExecutionTest {
+
+    private static final String CLASS_NAME = "Lconcrete_execution_test;";
+
+    private VirtualMachine vm;
+
+    @Before
+    public void setUp() {
+        vm = VMTester.spawnVM();
+        vm.setExecuteConcretely(true);
+    }
+
+    @Test
+    public void invokedDecryptorWithKnownArgumentsHasCorrectResult() {
+        HeapItem item = VMTester.executeForReturnValue(vm, CLASS_NAME, "callDecrypt()Ljava/lang/String;");
+
+        assertEquals("hello", item.getValue());
+    }
+
+    @Test
+    public void invokedDecryptorWithUnknownArgumentHasUnknownResult() {
+        String methodDescriptor = "callDecryptWithUnknownKey(I)Ljava/lang/String;";
+
+        assertTrue(VMTester.executeForReturnValue(vm, CLASS_NAME, methodDescriptor).isUnknown());
+    }
+
+    @Test
+    public void invokedMethodWhichBranchesOnUnknownValueFallsBackToEveryPath() {
+        assertTrue(VMTester.executeForReturnValue(vm, CLASS_NAME, "callBranchOnUnknownValue()I").isUnknown());
+    }
+
+    @Test
+    public void decryptorWithKnownArgumentsIsExecutedWithFewNodes() throws VirtualMachineException {
+        String signature = CLASS_NAME + "->decrypt(Ljava/lang/String;I)Ljava/lang/String;";
+        ExecutionContext callerContext = vm.spawnRootContext(CLASS_NAME + "->callDecrypt()Ljava/lang/String;");
+        ExecutionContext calleeContext = vm.spawnRootContext(signature);
+        MethodState mState = calleeContext.getMethodState();
+        mState.assignParameter(mState.getParameterStart(), "idmmn", "Ljava/lang/String;");
+        mState.assignParameter(mState.getParameterStart() + 1, 1, "I");
+        ExecutionGraph graph = vm.execute(signature, calleeContext, callerContext, null);
+
+        assertEquals("hello", graph.getTerminatingRegisterConsensus(MethodState.ReturnRegister).getValue());
+        // A node for each invocation and the instruction after it, rather than one for each of about 40 instructions
+        assertTrue(graph.getNodeCount() < 10);
+    }
+}
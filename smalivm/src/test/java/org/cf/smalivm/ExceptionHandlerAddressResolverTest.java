@@ -139,6 +139,45 @@ public class ExceptionHandlerAddressResolverTest {
         assertEquals(handlerCodeAddress, actual);
     }
 
+    @Test
+    public void catchAllHandlerResolvedWhenNoTypeMatches() {
+        int tryStartAddress = 1;
+        int tryCodeUnits = 10;
+        int handlerCodeAddress = 20;
+        int catchAllCodeAddress = 30;
+
+        List<BuilderExceptionHandler> handlers = new LinkedList<BuilderExceptionHandler>();
+        handlers.add(buildHandler(handlerCodeAddress, exceptionClass3));
+        BuilderExceptionHandler catchAll = mock(BuilderExceptionHandler.class);
+        when(catchAll.getHandlerCodeAddress()).thenReturn(catchAllCodeAddress);
+        handlers.add(catchAll);
+        tryBlocks.add(buildTryBlock(tryStartAddress, tryCodeUnits, handlers));
+
+        ExceptionHandlerAddressResolver exceptionResolver = new ExceptionHandlerAddressResolver(classManager, METHOD);
+
+        assertEquals(handlerCodeAddress, exceptionResolver.resolve(EXCEPTION3, 5));
+        assertEquals(catchAllCodeAddress, exceptionResolver.resolve(EXCEPTION2, 5));
+    }
+
+    @Test
+    public void addressesOutsideOfTryBlocksHaveNoHandler() {
+        int tryStartAddress = 4;
+        int tryCodeUnits = 2;
+        int handlerCodeAddress = 20;
+
+        List<BuilderExceptionHandler> handlers = new LinkedList<BuilderExceptionHandler>();
+        handlers.add(buildHandler(handlerCodeAddress, exceptionClass1));
+        tryBlocks.add(buildTryBlock(tryStartAddress, tryCodeUnits, handlers));
+
+        ExceptionHandlerAddressResolver exceptionResolver = new ExceptionHandlerAddressResolver(classManager, METHOD);
+        String name = exceptionClass1.getName();
+
+        assertEquals(-1, exceptionResolver.resolve(name, 3));
+        assertEquals(handlerCodeAddress, exceptionResolver.resolve(name, 4));
+        assertEquals(handlerCodeAddress, exceptionResolver.resolve(name, 5));
+        assertEquals(-1, exceptionResolver.resolve(name, 6));
+    }
+
     private VirtualClass mockException(String className) {
         VirtualClass exceptionClass = mock(VirtualClass.class);
         when(exceptionClass.getName()).thenReturn(className);
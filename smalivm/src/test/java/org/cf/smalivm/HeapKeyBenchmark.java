@@ -0,0 +1,69 @@
+package org.cf.smalivm;
+
+import org.cf.smalivm.context.ExecutionContext;
+import org.cf.smalivm.context.HeapItem;
+import org.cf.smalivm.context.MethodState;
+import org.cf.smalivm.type.VirtualMethod;
+import org.junit.BeforeClass;
+import org.perfidix.annotation.BeforeBenchClass;
+import org.perfidix.annotation.Bench;
+import org.perfidix.annotation.BenchClass;
+
+/**
+ * Times register writes and reads through {@link MethodState}, which sets, gets and checks for keys in the heap.
+ */
+@BenchClass(runs = 100)
+public class HeapKeyBenchmark {
+
+    private static final String METHOD_SIGNATURE = "Lmove_test;->moveRegisterPrimitive()V";
+    private static final int REGISTER_COUNT = 16;
+    private static final int OPERATIONS = 1000 * 1000;
+    private static final int CHAIN_LENGTH = 100;
+
+    private static ExecutionContext rootContext;
+
+    @BeforeBenchClass
+    @BeforeClass
+    public static void beforeClass() {
+        VirtualMachine vm = VMTester.spawnVM();
+        VirtualMethod method = vm.getClassManager().getMethod(METHOD_SIGNATURE);
+        rootContext = new ExecutionContext(vm, method);
+        MethodState mState = new MethodState(rootContext, REGISTER_COUNT);
+        rootContext.setMethodState(mState);
+        for (int register = 0; register < REGISTER_COUNT; register++) {
+            mState.assignRegister(register, register, "I");
+        }
+    }
+
+    @Bench
+    public void timeAssignAndReadRegisters() {
+        MethodState mState = rootContext.spawnChild().getMethodState();
+        HeapItem item = null;
+        for (int i = 0; i < OPERATIONS; i++) {
+            int register = i % REGISTER_COUNT;
+            mState.assignRegister(register, i, "I");
+            item = mState.readRegister(register);
+        }
+
+        item.toString();
+    }
+
+    @Bench
+    public void timeReadRegistersFromAncestors() {
+        // Like executing straight line code, each node reads a register last read further up the chain
+        ExecutionContext context = rootContext;
+        HeapItem item = null;
+        for (int i = 0; i < OPERATIONS / REGISTER_COUNT; i++) {
+            if (i % CHAIN_LENGTH == 0) {
+                context = rootContext;
+            }
+            context = context.spawnChild();
+            MethodState mState = context.getMethodState();
+            item = mState.readRegister(i % REGISTER_COUNT);
+            mState.peekRegister((i + 1) % REGISTER_COUNT);
+        }
+
+        item.toString();
+    }
+
+}
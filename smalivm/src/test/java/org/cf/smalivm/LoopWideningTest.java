@@ -0,0 +1,67 @@
+package org.cf.smalivm;
+
+import org.cf.smalivm.context.ExecutionGraph;
+import org.cf.smalivm.context.HeapItem;
+import org.cf.smalivm.context.MethodState;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LoopWideningTest {
+
+    private static final String CLASS_NAME = "Lloop_widening_test;";
+    private static final int LOOP_WIDENING_THRESHOLD = 8;
+
+    private VirtualMachine vm;
+
+    @Before
+    public void setUp() {
+        vm = VMTester.spawnVM();
+        vm.setLoopWideningThreshold(LOOP_WIDENING_THRESHOLD);
+    }
+
+    @Test
+    public void loopWithUnknownBoundReachesFixedPoint() {
+        ExecutionGraph graph = VMTester.execute(vm, CLASS_NAME, "unknownBoundLoop(I)I");
+        int returnAddress = graph.getConnectedTerminatingAddresses()[0];
+        HeapItem item = graph.getTerminatingRegisterConsensus(MethodState.ReturnRegister);
+
+        assertTrue(item.isUnknown());
+        assertEquals(7, graph.getRegisterConsensusValue(returnAddress, 2));
+        assertTrue(graph.getNodePile(returnAddress).size() <= LOOP_WIDENING_THRESHOLD + 2);
+    }
+
+    @Test
+    public void loopWithKnownBoundIsNotWidened() {
+        ExecutionGraph graph = VMTester.execute(vm, CLASS_NAME, "knownBoundLoop()I");
+        HeapItem item = graph.getTerminatingRegisterConsensus(MethodState.ReturnRegister);
+
+        assertEquals(40, item.getValue());
+    }
+
+    @Test
+    public void loopWithUnknownBoundAndMergedJoinStatesReachesFixedPoint() {
+        vm.setMergeJoinStates(true);
+        ExecutionGraph graph = VMTester.execute(vm, CLASS_NAME, "unknownBoundLoop(I)I");
+        HeapItem item = graph.getTerminatingRegisterConsensus(MethodState.ReturnRegister);
+
+        assertTrue(item.isUnknown());
+    }
+
+    @Test
+    public void loopWithKnownBoundAndUnknownBranchInBodyIsNotWidened() {
+        vm.setMergeJoinStates(true);
+        ExecutionGraph graph = VMTester.execute(vm, CLASS_NAME, "unknownBranchInKnownBoundLoop(I)I");
+        HeapItem item = graph.getTerminatingRegisterConsensus(MethodState.ReturnRegister);
+
+        assertEquals(20, item.getValue());
+    }
+
+    @Test
+    public void wideningIsOffByDefault() {
+        assertEquals(0, VMTester.spawnVM().getLoopWideningThreshold());
+    }
+
+}
@@ -0,0 +1,46 @@
+package org.cf.smalivm;
+
+import org.cf.smalivm.context.ExecutionGraph;
+import org.cf.smalivm.context.HeapItem;
+import org.cf.smalivm.context.MethodState;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MethodExecutorTest {
+
+    private static final String CLASS_NAME = "Ljoin_merging_test;";
+
+    private VirtualMachine vm;
+
+    @Before
+    public void setUp() {
+        vm = VMTester.spawnVM();
+        vm.setMergeJoinStates(true);
+    }
+
+    @Test
+    public void mergingJoinStatesKeepsValueWhichIsTheSameOnEveryPath() {
+        ExecutionGraph graph = VMTester.execute(vm, CLASS_NAME, "sameValueOnBothBranches(I)I");
+        int returnAddress = graph.getConnectedTerminatingAddresses()[0];
+        HeapItem item = graph.getTerminatingRegisterConsensus(MethodState.ReturnRegister);
+
+        assertEquals(3, item.getValue());
+        assertEquals(1, graph.getNodePile(returnAddress).size());
+    }
+
+    @Test
+    public void mergingJoinStatesMakesValuesWhichDifferUnknownAndExecutesEachAddressOnce() {
+        ExecutionGraph graph = VMTester.execute(vm, CLASS_NAME, "manyDiamonds(I)I");
+        int returnAddress = graph.getConnectedTerminatingAddresses()[0];
+
+        assertTrue(graph.getTerminatingRegisterConsensus(MethodState.ReturnRegister).isUnknown());
+        assertEquals(5, graph.getRegisterConsensusValue(returnAddress, 1));
+        for (int address : graph.getAddresses()) {
+            assertTrue("@" + address, graph.getNodePile(address).size() <= 1);
+        }
+    }
+
+}
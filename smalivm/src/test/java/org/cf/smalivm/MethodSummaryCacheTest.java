@@ -0,0 +1,95 @@
+package org.cf.smalivm;
+
+import org.cf.smalivm.MethodSummaryCache.MethodSummary;
+import org.cf.smalivm.context.ExecutionGraph;
+import org.cf.smalivm.context.HeapItem;
+import org.cf.smalivm.context.MethodState;
+import org.cf.smalivm.type.VirtualMethod;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MethodSummaryCacheTest {
+
+    private static final String CLASS_NAME = "Lmethod_summary_test;";
+
+    private VirtualMachine vm;
+
+    @Before
+    public void setUp() {
+        vm = VMTester.spawnVM();
+    }
+
+    @Test
+    public void repeatedCallWithSameArgumentsIsSummarized() {
+        ExecutionGraph graph = VMTester.execute(vm, CLASS_NAME, "callAddOneTwice()I");
+        HeapItem item = graph.getTerminatingRegisterConsensus(MethodState.ReturnRegister);
+
+        assertEquals(8, item.getValue());
+        assertEquals(1, vm.getMethodSummaryCache().getHitCount());
+        assertEquals(1, vm.getMethodSummaryCache().getMissCount());
+    }
+
+    @Test
+    public void callWhichAccessesStaticFieldsIsNotSummarized() {
+        ExecutionGraph graph = VMTester.execute(vm, CLASS_NAME, "callIncrementCounterTwice()I");
+        HeapItem item = graph.getTerminatingRegisterConsensus(MethodState.ReturnRegister);
+
+        assertEquals(2, item.getValue());
+        assertEquals(0, vm.getMethodSummaryCache().getHitCount());
+        assertEquals(0, vm.getMethodSummaryCache().size());
+    }
+
+    @Test
+    public void callWhichAccessesStaticFieldsThroughNestedCallIsNotSummarized() {
+        ExecutionGraph graph = VMTester.execute(vm, CLASS_NAME, "callDecryptWithChangingKey()I");
+        HeapItem item = graph.getTerminatingRegisterConsensus(MethodState.ReturnRegister);
+
+        // 3 + 0 with the initial key, then 3 + 5 after the key changes
+        assertEquals(11, item.getValue());
+        assertEquals(0, vm.getMethodSummaryCache().getHitCount());
+        assertEquals(0, vm.getMethodSummaryCache().size());
+    }
+
+    @Test
+    public void callCutOffByCallDepthIsNotSummarized() {
+        // deep -> outer -> mid -> leaf, and leaf is one call too deep
+        VirtualMachine shallowVM = new VirtualMachineFactory().build(vm.getClassManager(), 500, 2, 1_000_000, 60);
+        VMState initial = new VMState();
+        initial.setRegisters(0, 5, "I");
+        ExecutionGraph graph = VMTester.execute(shallowVM, CLASS_NAME, "deep(I)I", initial);
+        HeapItem item = graph.getTerminatingRegisterConsensus(MethodState.ReturnRegister);
+        assertTrue(item.isUnknown());
+
+        // mid is within the limit when called from outer, so it shouldn't be summarized as unknown
+        graph = VMTester.execute(shallowVM, CLASS_NAME, "outer(I)I", initial);
+        item = graph.getTerminatingRegisterConsensus(MethodState.ReturnRegister);
+
+        assertEquals(6, item.getValue());
+        assertEquals(0, shallowVM.getMethodSummaryCache().getHitCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedSummaryIsEvicted() {
+        MethodSummaryCache cache = new MethodSummaryCache(2);
+        VirtualMethod method = vm.getClassManager().getMethod(CLASS_NAME + "->addOne(I)I");
+        HeapItem[] arguments1 = new HeapItem[] { new HeapItem(1, "I") };
+        HeapItem[] arguments2 = new HeapItem[] { new HeapItem(2, "I") };
+        HeapItem[] arguments3 = new HeapItem[] { new HeapItem(3, "I") };
+        cache.put(method, arguments1, new MethodSummary(new HeapItem(2, "I"), SideEffect.Level.NONE));
+        cache.put(method, arguments2, new MethodSummary(new HeapItem(3, "I"), SideEffect.Level.NONE));
+        cache.get(method, new HeapItem[] { new HeapItem(1, "I") });
+        cache.put(method, arguments3, new MethodSummary(new HeapItem(4, "I"), SideEffect.Level.NONE));
+
+        assertNotNull(cache.get(method, arguments1));
+        assertNull(cache.get(method, arguments2));
+        assertNotNull(cache.get(method, arguments3));
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+}
@@ -0,0 +1,50 @@
+package org.cf.smalivm;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertTrue;
+
+public class ProfilerTest {
+
+    private static final String CLASS_NAME = "Lmethod_summary_test;";
+
+    private VirtualMachine vm;
+    private Profiler profiler;
+
+    @Before
+    public void setUp() {
+        vm = VMTester.spawnVM();
+        profiler = new Profiler();
+        vm.setProfiler(profiler);
+    }
+
+    @Test
+    public void reportIncludesExecutedOpsAndMethods() throws IOException {
+        VMTester.execute(vm, CLASS_NAME, "callAddOneTwice()I");
+        StringWriter writer = new StringWriter();
+        profiler.writeReport(writer);
+        String report = writer.toString();
+
+        assertTrue(report, report.contains("InvokeOp"));
+        assertTrue(report, report.contains("BinaryMathOp"));
+        assertTrue(report, report.contains("Lmethod_summary_test;->callAddOneTwice()I"));
+        assertTrue(report, report.contains("Lmethod_summary_test;->addOne(I)I"));
+    }
+
+    @Test
+    public void collapsedStacksIncludeCallerAndCallee() throws IOException {
+        VMTester.execute(vm, CLASS_NAME, "callAddOneTwice()I");
+        StringWriter writer = new StringWriter();
+        profiler.writeCollapsedStacks(writer);
+        String stacks = writer.toString();
+
+        String stack = "Lmethod_summary_test->callAddOneTwice()I;Lmethod_summary_test->addOne(I)I ";
+
+        assertTrue(stacks, stacks.contains(stack));
+    }
+
+}
@@ -123,6 +123,19 @@ public class TestSideEffects {
         vm = VMTester.spawnVM();
     }
 
+    @Test
+    public void sideEffectsOfInvokeAreKeptForEachExecution() throws VirtualMachineException {
+        // Both graphs share the invoke op, and only the first writes to the stream
+        String methodName = "invokeWriteOutputStreamIfNotNull(Ljava/io/OutputStream;[B)V";
+        ExecutionGraph unknownStreamGraph = vm.execute(CLASS_NAME, methodName);
+        VMState initial = new VMState();
+        initial.setRegisters(0, null, "Ljava/io/OutputStream;");
+        ExecutionGraph nullStreamGraph = VMTester.execute(vm, CLASS_NAME, methodName, initial);
+
+        assertEquals(SideEffect.Level.NONE, nullStreamGraph.getHighestSideEffectLevel());
+        assertEquals(SideEffect.Level.STRONG, unknownStreamGraph.getHighestSideEffectLevel());
+    }
+
     @Test
     public void writeOutputStreamHasStrongSideEffects() throws VirtualMachineException {
         String methodName = "writeOutputStream(Ljava/io/OutputStream;[B)V";
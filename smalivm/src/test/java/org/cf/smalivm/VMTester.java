@@ -70,6 +70,12 @@ public class VMTester {
         return graph;
     }
 
+    public static HeapItem executeForReturnValue(VirtualMachine vm, String className, String methodDescriptor) {
+        ExecutionGraph graph = execute(vm, className, methodDescriptor);
+
+        return graph.getTerminatingRegisterConsensus(MethodState.ReturnRegister);
+    }
+
     public static ClassManager getClassManager() {
         return classManager;
     }
@@ -81,8 +87,13 @@ public class VMTester {
     public static void setRegisterMock(MethodState mState, int register, Object value, String type) {
         HeapItem item = mock(HeapItem.class);
         when(item.getValue()).thenReturn(value);
-        if ("I".equals(type) && value instanceof Number) {
-            when(item.asInteger()).thenReturn((Integer) value);
+        if (value instanceof Number) {
+            Number number = (Number) value;
+            when(item.isNumeric()).thenReturn(true);
+            when(item.asInteger()).thenReturn(number.intValue());
+            when(item.asLong()).thenReturn(number.longValue());
+            when(item.asFloat()).thenReturn(number.floatValue());
+            when(item.asDouble()).thenReturn(number.doubleValue());
         } else if (value instanceof UnknownValue) {
             when(item.isUnknown()).thenReturn(true);
         }
@@ -152,7 +163,7 @@ public class VMTester {
         assertArrayEquals(expectedAddresses, actualAddresses);
     }
 
-    public static void verifyExceptionHandling(Set<Throwable> expectedExceptions, ExecutionNode node,
+    public static void verifyExceptionHandling(Set<VirtualException> expectedExceptions, ExecutionNode node,
                                                MethodState mState) {
         verify(node).setExceptions(eq(expectedExceptions));
         verify(node).clearChildren();
@@ -167,9 +178,9 @@ public class VMTester {
 
     public static void verifyExceptionHandling(Class<? extends Throwable> exceptionClass, String message,
                                                ExecutionNode node, MethodState mState) {
-        ArgumentCaptor<Throwable> argument = ArgumentCaptor.forClass(Throwable.class);
+        ArgumentCaptor<VirtualException> argument = ArgumentCaptor.forClass(VirtualException.class);
         verify(node).setException(argument.capture());
-        assertEquals(exceptionClass, argument.getValue().getClass());
+        assertEquals(exceptionClass, argument.getValue().getExceptionClass());
         assertEquals(message, argument.getValue().getMessage());
         verify(node).clearChildren();
         verify(node, times(0)).setChildLocations(any(MethodLocation[].class));
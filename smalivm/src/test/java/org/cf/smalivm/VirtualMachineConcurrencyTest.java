@@ -0,0 +1,60 @@
+package org.cf.smalivm;
+
+import org.cf.smalivm.context.ExecutionGraph;
+import org.cf.smalivm.context.HeapItem;
+import org.cf.smalivm.context.MethodState;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+public class VirtualMachineConcurrencyTest {
+
+    private static final String CLASS_NAME = "Lmethod_summary_test;";
+    private static final int THREAD_COUNT = 8;
+    private static final int EXECUTIONS_PER_THREAD = 20;
+
+    @Test
+    public void methodsExecutedOnManyThreadsWithOneVirtualMachineHaveCorrectResults() throws Exception {
+        // Reload classes so threads race to parse them
+        VirtualMachine vm = VMTester.spawnVM(true);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        List<Future<Integer>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < THREAD_COUNT; i++) {
+                String methodDescriptor = i % 2 == 0 ? "callAddOneTwice()I" : "callIncrementCounterTwice()I";
+                Callable<Integer> task = () -> {
+                    start.await();
+                    int failures = 0;
+                    for (int j = 0; j < EXECUTIONS_PER_THREAD; j++) {
+                        ExecutionGraph graph = VMTester.execute(vm, CLASS_NAME, methodDescriptor);
+                        HeapItem item = graph.getTerminatingRegisterConsensus(MethodState.ReturnRegister);
+                        int expected = methodDescriptor.startsWith("callAddOne") ? 8 : 2;
+                        if (!Integer.valueOf(expected).equals(item.getValue())) {
+                            failures++;
+                        }
+                    }
+
+                    return failures;
+                };
+                futures.add(executor.submit(task));
+            }
+            start.countDown();
+
+            for (Future<Integer> future : futures) {
+                assertEquals(0, (int) future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -8,6 +8,12 @@ import org.junit.Before;
 import org.junit.Test;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class ExecutionGraphTest {
 
@@ -34,4 +40,40 @@ public class ExecutionGraphTest {
         assertArrayEquals(expected, actual);
     }
 
+    @Test
+    public void spawnedGraphsShareTemplateNodesUntilAddressIsVisited() {
+        String methodDescriptor = "terminatingAddresses()V";
+        VirtualMethod method = virtualClass.getMethod(methodDescriptor);
+        ExecutionGraph graph1 = vm.spawnInstructionGraph(method);
+        ExecutionGraph graph2 = vm.spawnInstructionGraph(method);
+
+        assertSame(graph1.getTemplateNode(6), graph2.getTemplateNode(6));
+        assertFalse(graph1.wasAddressReached(6));
+        assertTrue(graph1.getNodePile(6).isEmpty());
+
+        ExecutionNode node = new ExecutionNode(graph1.getTemplateNode(6));
+        graph1.addNode(node);
+
+        assertTrue(graph1.wasAddressReached(6));
+        assertEquals(1, graph1.getNodePile(6).size());
+        assertSame(node, graph1.getNodePile(6).get(0));
+        assertNotSame(graph2.getTemplateNode(6), graph1.getTemplateNode(6));
+        assertFalse(graph2.wasAddressReached(6));
+    }
+
+    @Test
+    public void addressesWithoutAnInstructionHaveNoNodes() {
+        String methodDescriptor = "terminatingAddresses()V";
+        VirtualMethod method = virtualClass.getMethod(methodDescriptor);
+        ExecutionGraph graph = vm.spawnInstructionGraph(method);
+
+        // Inside the packed-switch at 0, and past the end of the method
+        for (int address : new int[] { 1, 1000 }) {
+            assertNull(graph.getTemplateNode(address));
+            assertTrue(graph.getNodePile(address).isEmpty());
+            assertFalse(graph.wasAddressReached(address));
+        }
+        assertEquals(0, graph.getNodeCount());
+    }
+
 }
@@ -0,0 +1,120 @@
+package org.cf.smalivm.context;
+
+import com.rits.cloning.Cloner;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class HeapTest {
+
+    private static final int HEAP_ID = MethodState.METHOD_HEAP;
+    private static final int FIELD_HEAP_ID = MethodState.MUTABLE_PARAMETER_HEAP + 1000;
+
+    private Heap parent;
+    private Heap child;
+
+    @Before
+    public void setUp() {
+        Cloner cloner = new Cloner();
+        parent = new Heap(cloner);
+        child = new Heap(cloner);
+        child.setParent(parent);
+    }
+
+    @Test
+    public void sharedReadOfArrayDoesNotCopy() {
+        byte[] array = new byte[] { 1, 2, 3 };
+        parent.set(HEAP_ID, 0, array, "[B");
+
+        HeapItem item = child.getShared(HEAP_ID, 0);
+
+        assertSame(array, item.getValue());
+    }
+
+    @Test
+    public void readAfterSharedReadCopiesArrayForAllAliases() {
+        byte[] array = new byte[] { 1, 2, 3 };
+        HeapItem arrayItem = new HeapItem(array, "[B");
+        parent.set(HEAP_ID, 0, arrayItem);
+        parent.set(HEAP_ID, 1, arrayItem);
+
+        child.getShared(HEAP_ID, 0);
+        byte[] copy = (byte[]) child.get(HEAP_ID, 0).getValue();
+        copy[0] = 9;
+
+        assertNotSame(array, copy);
+        assertSame(copy, child.get(HEAP_ID, 1).getValue());
+        assertArrayEquals(new byte[] { 1, 2, 3 }, array);
+    }
+
+    @Test
+    public void childSeesParentValueSetAfterChildExists() {
+        parent.set(HEAP_ID, 0, 1, "I");
+        assertEquals(1, child.get(HEAP_ID, 0).getValue());
+
+        parent.set(HEAP_ID, 2, 5, "I");
+        assertEquals(5, child.get(HEAP_ID, 2).getValue());
+    }
+
+    @Test
+    public void grandchildSeesGrandparentValueChangedAfterLookup() {
+        Heap grandchild = new Heap(new Cloner());
+        grandchild.setParent(child);
+        parent.set(HEAP_ID, 0, 1, "I");
+        assertEquals(1, grandchild.peek(HEAP_ID, 0).getValue());
+
+        parent.set(HEAP_ID, 0, 2, "I");
+
+        assertEquals(2, grandchild.peek(HEAP_ID, 0).getValue());
+    }
+
+    @Test
+    public void childSeesNewParentValuesAfterReparenting() {
+        Heap grandchild = new Heap(new Cloner());
+        grandchild.setParent(child);
+        parent.set(HEAP_ID, 0, 1, "I");
+        assertEquals(1, grandchild.peek(HEAP_ID, 0).getValue());
+
+        Heap otherParent = new Heap(new Cloner());
+        otherParent.set(HEAP_ID, 0, 3, "I");
+        child.setParent(otherParent);
+
+        assertEquals(3, grandchild.peek(HEAP_ID, 0).getValue());
+    }
+
+    @Test
+    public void packedKeysKeepNegativeRegistersAndFieldHeapIds() {
+        int[] registers = { MethodState.ResultRegister, MethodState.ExceptionRegister, 0, Integer.MAX_VALUE };
+        int[] heapIds = { HEAP_ID, MethodState.MUTABLE_PARAMETER_HEAP, FIELD_HEAP_ID };
+        for (int heapId : heapIds) {
+            for (int register : registers) {
+                long key = Heap.buildKey(heapId, register);
+
+                assertEquals(heapId, Heap.getHeapId(key));
+                assertEquals(register, Heap.getRegister(key));
+            }
+        }
+    }
+
+    @Test
+    public void specialRegistersDoNotCollideWithOtherKeys() {
+        parent.set(HEAP_ID, MethodState.ResultRegister, 1, "I");
+        parent.set(HEAP_ID, MethodState.ExceptionRegister, 2, "I");
+        parent.set(FIELD_HEAP_ID, MethodState.ResultRegister, 3, "I");
+        parent.set(FIELD_HEAP_ID, 1, 4, "I");
+
+        assertEquals(1, child.get(HEAP_ID, MethodState.ResultRegister).getValue());
+        assertEquals(2, child.get(HEAP_ID, MethodState.ExceptionRegister).getValue());
+        assertEquals(3, child.get(FIELD_HEAP_ID, MethodState.ResultRegister).getValue());
+        assertEquals(4, child.get(FIELD_HEAP_ID, 1).getValue());
+        assertFalse(parent.hasRegister(HEAP_ID, 1));
+        assertFalse(parent.hasRegister(FIELD_HEAP_ID - 1, MethodState.ResultRegister));
+    }
+
+}
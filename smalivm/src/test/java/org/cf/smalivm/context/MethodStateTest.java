@@ -3,7 +3,10 @@ package org.cf.smalivm.context;
 import org.cf.smalivm.VMTester;
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class MethodStateTest {
 
@@ -19,4 +22,35 @@ public class MethodStateTest {
 
         assertEquals(expected, state.toString());
     }
+
+    @Test
+    public void tracksAssignedRegistersIncludingSpecialRegisters() {
+        ExecutionGraph graph = VMTester.execute(CLASS_NAME, "simpleLoop()V");
+        MethodState state = graph.getRoot().getContext().spawnChild().getMethodState();
+        assertArrayEquals(new int[0], state.getRegistersAssigned());
+
+        state.assignRegister(100, 1, "I");
+        state.assignRegister(1, 2, "I");
+        state.assignResultRegister(3, "I");
+
+        assertArrayEquals(new int[] { MethodState.ResultRegister, 1, 100 }, state.getRegistersAssigned());
+        assertTrue(state.wasRegisterAssigned(100));
+        assertFalse(state.wasRegisterAssigned(0));
+    }
+
+    @Test
+    public void registerHoldingSameObjectAsReadRegisterWasRead() {
+        ExecutionGraph graph = VMTester.execute(CLASS_NAME, "simpleLoop()V");
+        MethodState state = graph.getRoot().getContext().spawnChild().getMethodState();
+        Object value = new Object();
+        state.assignRegister(0, value, "Ljava/lang/Object;");
+        state.assignRegister(1, value, "Ljava/lang/Object;");
+        assertFalse(state.wasRegisterRead(0));
+
+        state.readRegister(1);
+
+        assertArrayEquals(new int[] { 1 }, state.getRegistersRead());
+        assertTrue(state.wasRegisterRead(0));
+    }
+
 }
@@ -2,10 +2,17 @@ package org.cf.smalivm.dex;
 
 import org.cf.smalivm.type.ClassManager;
 import org.cf.smalivm.type.ClassManagerFactory;
+import org.cf.smalivm.type.VirtualGeneric;
 import org.junit.BeforeClass;
+import org.junit.Test;
 
 import java.io.IOException;
 
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
 public class ClassManagerTest {
 
     private static final String TEST_DIRECTORY = "resources/test/smali";
@@ -17,4 +24,55 @@ public class ClassManagerTest {
         manager = new ClassManagerFactory().build(TEST_DIRECTORY);
     }
 
+    @Test
+    public void arrayAndPrimitiveTypesAreOnlyCreatedOnce() {
+        assertSame(manager.getVirtualType("[Ljava/lang/String;"), manager.getVirtualType("[Ljava/lang/String;"));
+        assertSame(manager.getVirtualType("I"), manager.getVirtualType("I"));
+    }
+
+    @Test
+    public void typesHaveDistinctIds() {
+        VirtualGeneric stringType = manager.getVirtualType("Ljava/lang/String;");
+        VirtualGeneric stringArrayType = manager.getVirtualType("[Ljava/lang/String;");
+        VirtualGeneric intType = manager.getVirtualType("I");
+
+        assertNotEquals(stringType.getTypeId(), stringArrayType.getTypeId());
+        assertNotEquals(stringType.getTypeId(), intType.getTypeId());
+        assertNotEquals(stringArrayType.getTypeId(), intType.getTypeId());
+    }
+
+    @Test
+    public void ancestorsAreFoundByTypeId() {
+        VirtualGeneric objectType = manager.getVirtualType("Ljava/lang/Object;");
+        VirtualGeneric charSequenceType = manager.getVirtualType("Ljava/lang/CharSequence;");
+        VirtualGeneric stringType = manager.getVirtualType("Ljava/lang/String;");
+        VirtualGeneric objectArrayType = manager.getVirtualType("[Ljava/lang/Object;");
+        VirtualGeneric stringArrayType = manager.getVirtualType("[Ljava/lang/String;");
+
+        assertTrue(stringType.hasAncestor(objectType));
+        assertTrue(stringType.hasAncestor(charSequenceType));
+        assertFalse(objectType.hasAncestor(stringType));
+        assertFalse(stringType.hasAncestor(stringType));
+        assertTrue(stringArrayType.hasAncestor(objectArrayType));
+        assertTrue(stringArrayType.instanceOf(objectType));
+        assertFalse(stringType.instanceOf(stringArrayType));
+    }
+
+    @Test
+    public void typesFromDifferentManagersAreCheckedCorrectly() throws IOException {
+        VirtualGeneric threadType = manager.getVirtualType("Ljava/lang/Thread;");
+        VirtualGeneric runnableType = manager.getVirtualType("Ljava/lang/Runnable;");
+        ClassManager otherManager = new ClassManagerFactory().build(TEST_DIRECTORY);
+        VirtualGeneric otherObjectType = otherManager.getVirtualType("Ljava/lang/Object;");
+        VirtualGeneric otherThreadType = otherManager.getVirtualType("Ljava/lang/Thread;");
+        VirtualGeneric stringType = manager.getVirtualType("Ljava/lang/String;");
+        VirtualGeneric integerType = manager.getVirtualType("Ljava/lang/Integer;");
+
+        assertTrue(threadType.instanceOf(runnableType));
+        assertTrue(stringType.instanceOf(otherObjectType));
+        assertTrue(otherThreadType.instanceOf(runnableType));
+        assertFalse(integerType.instanceOf(otherThreadType));
+        assertFalse(stringType.hasAncestor(manager.getVirtualType("Ljava/lang/Number;")));
+    }
+
 }
@@ -0,0 +1,126 @@
+package org.cf.smalivm.dex;
+
+import org.cf.smalivm.VMTester;
+import org.cf.smalivm.VirtualMachine;
+import org.cf.smalivm.VirtualMachineFactory;
+import org.cf.smalivm.context.HeapItem;
+import org.cf.smalivm.type.ClassManager;
+import org.cf.smalivm.type.ClassManagerFactory;
+import org.cf.smalivm.type.VirtualClass;
+import org.jf.dexlib2.DexFileFactory;
+import org.jf.dexlib2.Opcodes;
+import org.jf.dexlib2.dexbacked.DexBackedDexFile;
+import org.jf.dexlib2.iface.ClassDef;
+import org.jf.dexlib2.iface.Method;
+import org.jf.dexlib2.iface.MethodImplementation;
+import org.jf.dexlib2.iface.TryBlock;
+import org.jf.dexlib2.iface.instruction.Instruction;
+import org.jf.dexlib2.writer.builder.DexBuilder;
+import org.jf.dexlib2.writer.io.MemoryDataStore;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class DexClassManagerTest {
+
+    private static final String CLASS_NAME = "Lfill_array_data_test;";
+    // Assembled from fill_array_data_test.smali in the same directory
+    private static final String TEST_DEX_PATH = "resources/test/dex/fill_array_data_test.dex";
+
+    private ClassManager manager;
+
+    private static ClassDef findClassDef(DexBackedDexFile dexFile, String className) {
+        for (ClassDef classDef : dexFile.getClasses()) {
+            if (classDef.getType().equals(className)) {
+                return classDef;
+            }
+        }
+
+        return null;
+    }
+
+    /*
+     * Everything about a method's implementation which is re-interned, as strings so differences are easy to read.
+     */
+    private static List<String> describe(ClassDef classDef) {
+        List<String> description = new ArrayList<>();
+        description.add(classDef.getType() + " extends " + classDef.getSuperclass() + " source " +
+                        classDef.getSourceFile());
+        for (Method method : classDef.getMethods()) {
+            description.add(method.getName() + method.getParameterTypes() + method.getReturnType());
+            MethodImplementation implementation = method.getImplementation();
+            for (Instruction instruction : implementation.getInstructions()) {
+                description.add("  " + instruction.getOpcode().name);
+            }
+            for (TryBlock<?> tryBlock : implementation.getTryBlocks()) {
+                description.add("  try " + tryBlock.getStartCodeAddress() + " " + tryBlock.getCodeUnitCount() + " " +
+                                tryBlock.getExceptionHandlers().get(0).getExceptionType());
+            }
+        }
+
+        return description;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        manager = new ClassManagerFactory().build(new File(TEST_DEX_PATH), VMTester.getDexBuilder());
+    }
+
+    @Test
+    public void classIsLoadedFromDex() {
+        VirtualClass virtualClass = manager.getVirtualClass(CLASS_NAME);
+
+        assertEquals(CLASS_NAME, virtualClass.getName());
+        assertNotNull(virtualClass.getMethod("fillByteArray()[B"));
+        assertNotNull(virtualClass.getField("lastName"));
+    }
+
+    @Test
+    public void fillArrayDataFromDexFillsByteArray() {
+        VirtualMachine vm = new VirtualMachineFactory().build(manager);
+        HeapItem item = VMTester.executeForReturnValue(vm, CLASS_NAME, "fillByteArray()[B");
+
+        assertArrayEquals(new byte[] { 1, 2, -1, 127 }, (byte[]) item.getValue());
+    }
+
+    @Test
+    public void fillArrayDataFromDexFillsShortArray() {
+        VirtualMachine vm = new VirtualMachineFactory().build(manager);
+        HeapItem item = VMTester.executeForReturnValue(vm, CLASS_NAME, "fillShortArray()[S");
+
+        assertArrayEquals(new short[] { 1, -2, Short.MAX_VALUE, Short.MIN_VALUE }, (short[]) item.getValue());
+    }
+
+    @Test
+    public void methodWithInvokeAndTryBlockFromDexIsExecuted() {
+        VirtualMachine vm = new VirtualMachineFactory().build(manager);
+        HeapItem item = VMTester.executeForReturnValue(vm, CLASS_NAME, "getFirstByte()I");
+
+        assertEquals(1, ((Number) item.getValue()).intValue());
+    }
+
+    @Test
+    public void classFromDexIsWrittenBackUnchanged() throws IOException {
+        manager.getVirtualClass(CLASS_NAME);
+        DexBuilder dexBuilder = manager.getDexBuilder();
+        MemoryDataStore dataStore = new MemoryDataStore();
+        dexBuilder.writeTo(dataStore);
+
+        Opcodes opcodes = Opcodes.forApi(SmaliParser.DEFAULT_API_LEVEL);
+        DexBackedDexFile written = new DexBackedDexFile(opcodes, dataStore.getData());
+        DexBackedDexFile original = DexFileFactory.loadDexFile(TEST_DEX_PATH, SmaliParser.DEFAULT_API_LEVEL);
+        ClassDef writtenClassDef = findClassDef(written, CLASS_NAME);
+        assertNotNull(writtenClassDef);
+
+        assertEquals(describe(findClassDef(original, CLASS_NAME)), describe(writtenClassDef));
+    }
+
+}
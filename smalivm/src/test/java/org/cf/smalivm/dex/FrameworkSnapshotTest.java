@@ -0,0 +1,129 @@
+package org.cf.smalivm.dex;
+
+import org.cf.smalivm.type.ClassManager;
+import org.cf.smalivm.type.ClassManagerFactory;
+import org.jf.dexlib2.Opcodes;
+import org.jf.dexlib2.iface.ClassDef;
+import org.jf.dexlib2.iface.Field;
+import org.jf.dexlib2.iface.Method;
+import org.jf.dexlib2.iface.MethodImplementation;
+import org.jf.dexlib2.iface.instruction.Instruction;
+import org.jf.dexlib2.writer.builder.DexBuilder;
+import org.jf.dexlib2.writer.io.MemoryDataStore;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+public class FrameworkSnapshotTest {
+
+    private static final String CLASS_NAME = "Ljava/lang/Integer;";
+    private static final String SMALI_PATH = "framework/smali/android-23/java/lang/Integer.smali";
+    private static final String SNAPSHOT_PATH = "/framework/android-23.dex";
+
+    private static ClassDef getClassDef(String className) throws IOException {
+        ClassManager classManager = new ClassManagerFactory().build();
+
+        return classManager.getVirtualClass(className).getClassDef();
+    }
+
+    /*
+     * Everything about a class which is used when executing it, as strings so differences are easy to read.
+     */
+    private static List<String> describe(ClassDef classDef) {
+        List<String> description = new ArrayList<>();
+        description.add(classDef.getType() + " extends " + classDef.getSuperclass() + " implements " +
+                        classDef.getInterfaces() + " flags " + classDef.getAccessFlags());
+        for (Field field : classDef.getFields()) {
+            description.add(field.getName() + ":" + field.getType() + " flags " + field.getAccessFlags());
+        }
+        for (Method method : classDef.getMethods()) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(method.getName()).append(method.getParameterTypes()).append(method.getReturnType());
+            sb.append(" flags ").append(method.getAccessFlags());
+            MethodImplementation implementation = method.getImplementation();
+            if (implementation != null) {
+                sb.append(" registers ").append(implementation.getRegisterCount()).append(':');
+                for (Instruction instruction : implementation.getInstructions()) {
+                    sb.append(' ').append(instruction.getOpcode().name);
+                }
+            }
+            description.add(sb.toString());
+        }
+        Collections.sort(description);
+
+        return description;
+    }
+
+    @After
+    public void tearDown() {
+        // Load the snapshot resource, if any, on the next lookup
+        FrameworkSnapshot.setClassDefs(null);
+    }
+
+    @Test
+    public void missingSnapshotHasNoClasses() {
+        Map<String, ClassDef> classDefs = FrameworkSnapshot.load(null);
+
+        assertTrue(classDefs.isEmpty());
+    }
+
+    @Test
+    public void frameworkClassIsParsedFromSmaliWithoutSnapshot() throws IOException {
+        FrameworkSnapshot.setClassDefs(Collections.emptyMap());
+
+        ClassDef classDef = getClassDef(CLASS_NAME);
+
+        assertEquals(CLASS_NAME, classDef.getType());
+        assertTrue(describe(classDef).size() > 1);
+    }
+
+    @Test
+    public void classFromSnapshotMatchesClassParsedFromSmali() throws Exception {
+        // Built the same way as FrameworkSnapshotBuilder does, but with only the one class
+        DexBuilder dexBuilder = DexBuilder.makeDexBuilder(Opcodes.forApi(SmaliParser.DEFAULT_API_LEVEL));
+        InputStream is = getClass().getClassLoader().getResourceAsStream(SMALI_PATH);
+        SmaliParser.parse(SMALI_PATH, is, dexBuilder);
+        is.close();
+        MemoryDataStore dataStore = new MemoryDataStore();
+        dexBuilder.writeTo(dataStore);
+        FrameworkSnapshot.setClassDefs(FrameworkSnapshot.load(new ByteArrayInputStream(dataStore.getData())));
+        assertNotNull(FrameworkSnapshot.getClassDef(CLASS_NAME));
+        ClassDef fromSnapshot = getClassDef(CLASS_NAME);
+
+        FrameworkSnapshot.setClassDefs(Collections.emptyMap());
+        ClassDef fromSmali = getClassDef(CLASS_NAME);
+
+        assertEquals(describe(fromSmali), describe(fromSnapshot));
+    }
+
+    @Test
+    public void classesFromSnapshotResourceMatchClassesParsedFromSmali() throws IOException {
+        // The snapshot is only on the class path once it's been built by FrameworkSnapshotBuilder
+        assumeNotNull(FrameworkSnapshot.class.getResource(SNAPSHOT_PATH));
+
+        String[] classNames = { CLASS_NAME, "Ljava/lang/String;", "Ljava/lang/StringBuilder;" };
+        for (String className : classNames) {
+            FrameworkSnapshot.setClassDefs(null);
+            assertNotNull(FrameworkSnapshot.getClassDef(className));
+            ClassDef fromSnapshot = getClassDef(className);
+
+            FrameworkSnapshot.setClassDefs(Collections.emptyMap());
+            ClassDef fromSmali = getClassDef(className);
+
+            assertEquals(describe(fromSmali), describe(fromSnapshot));
+        }
+    }
+
+}
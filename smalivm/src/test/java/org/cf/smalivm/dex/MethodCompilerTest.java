@@ -0,0 +1,89 @@
+package org.cf.smalivm.dex;
+
+import org.cf.smalivm.VMTester;
+import org.cf.smalivm.VirtualMachine;
+import org.cf.smalivm.context.HeapItem;
+import org.cf.smalivm.type.VirtualMethod;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class MethodCompilerTest {
+
+    private static final String CLASS_NAME = "Lmethod_compiler_test;";
+
+    private VirtualMachine vm;
+
+    @Before
+    public void setUp() {
+        vm = VMTester.spawnVM();
+        vm.setCompileMethods(true);
+    }
+
+    @Test
+    public void compiledMethodHasSameResultAsExecutedMethod() {
+        Object expected = VMTester.executeForReturnValue(VMTester.spawnVM(), CLASS_NAME, "callHash()I").getValue();
+        HeapItem item = VMTester.executeForReturnValue(vm, CLASS_NAME, "callHash()I");
+
+        assertEquals(expected, item.getValue());
+        assertNotNull(getCompiledMethod("hash(I)I"));
+    }
+
+    @Test
+    public void compiledDecryptorHasCorrectResult() {
+        HeapItem item = VMTester.executeForReturnValue(vm, CLASS_NAME, "callDecryptTwice()Ljava/lang/String;");
+
+        assertEquals("hello", item.getValue());
+        assertNotNull(getCompiledMethod("decrypt(Ljava/lang/String;I)Ljava/lang/String;"));
+    }
+
+    @Test
+    public void compiledMethodWithWideArgumentsHasCorrectResult() {
+        HeapItem item = VMTester.executeForReturnValue(vm, CLASS_NAME, "callSumLongs()J");
+
+        assertEquals(5L, item.getValue());
+        assertNotNull(getCompiledMethod("sumLongs(JJ)J"));
+    }
+
+    @Test
+    public void compiledMethodWhichThrowsIsExecutedNormally() {
+        HeapItem expected = VMTester.executeForReturnValue(VMTester.spawnVM(), CLASS_NAME, "callDivideByZero()I");
+        HeapItem item = VMTester.executeForReturnValue(vm, CLASS_NAME, "callDivideByZero()I");
+
+        // Unknown values are never equal, so compare what's known about them
+        assertEquals(expected.isUnknown(), item.isUnknown());
+        assertEquals(expected.getType(), item.getType());
+        assertNotNull(getCompiledMethod("divide(I)I"));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void compiledMethodThrowsSameException() throws Throwable {
+        VMTester.executeForReturnValue(vm, CLASS_NAME, "callDivideByZero()I");
+        CompiledMethod compiledMethod = getCompiledMethod("divide(I)I");
+
+        assertNotNull(compiledMethod);
+        assertEquals(2, compiledMethod.invoke(new Object[] { 5 }));
+        try {
+            compiledMethod.invoke(new Object[] { 0 });
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Test
+    public void methodIsNotCompiledBeforeItIsExecuted() {
+        assertTrue(getCompiledMethod("hash(I)I") == null);
+    }
+
+    private CompiledMethod getCompiledMethod(String methodDescriptor) {
+        VirtualMethod method = vm.getClassManager().getMethod(CLASS_NAME, methodDescriptor);
+
+        return vm.getMethodCompiler().getCompiledMethod(method);
+    }
+
+}
@@ -2,6 +2,7 @@ package org.cf.smalivm.emulate;
 
 import org.cf.smalivm.ExceptionFactory;
 import org.cf.smalivm.SideEffect;
+import org.cf.smalivm.VirtualException;
 import org.cf.smalivm.VirtualMachine;
 import org.cf.smalivm.configuration.Configuration;
 import org.cf.smalivm.context.ExecutionContext;
@@ -124,14 +125,14 @@ public class java_lang_Class_forName_Test {
         HeapItem item = new HeapItem(binaryName, CommonTypes.STRING);
         when(mState.peekParameter(0)).thenReturn(item);
         when(classManager.getVirtualClass(className)).thenThrow(new RuntimeException());
-        Throwable exception = mock(Throwable.class);
+        VirtualException exception = mock(VirtualException.class);
         when(exceptionFactory.build(eq(op), eq(ClassNotFoundException.class), eq(binaryName))).thenReturn(exception);
 
         method.execute(vm, op, context);
 
         assertEquals(1, method.getExceptions().size());
 
-        Throwable actualException = method.getExceptions().iterator().next();
+        VirtualException actualException = method.getExceptions().iterator().next();
         assertEquals(exception, actualException);
 
         verify(mState, times(0)).assignReturnRegister(any(UnknownValue.class), eq(CommonTypes.CLASS));
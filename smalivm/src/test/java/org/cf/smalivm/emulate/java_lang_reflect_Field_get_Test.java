@@ -1,6 +1,7 @@
 package org.cf.smalivm.emulate;
 
 import org.cf.smalivm.VMTester;
+import org.cf.smalivm.VirtualException;
 import org.cf.smalivm.VirtualMachine;
 import org.cf.smalivm.context.ExecutionContext;
 import org.cf.smalivm.context.HeapItem;
@@ -69,7 +70,7 @@ public class java_lang_reflect_Field_get_Test {
         ExecutionContext context = buildContext(vm);
         ExecutionContextMethod fieldGet = test(vm, context, fieldName, callingMethodSignature, false);
 
-        Set<Throwable> exceptions = fieldGet.getExceptions();
+        Set<VirtualException> exceptions = fieldGet.getExceptions();
         assertEquals("Should have one exception", 1, exceptions.size());
 
         VirtualGeneric callingClass = context.getCallerContext().getMethod().getDefiningClass();
@@ -77,8 +78,8 @@ public class java_lang_reflect_Field_get_Test {
         String error = callingClass.getBinaryName() + " can't access a member of " + DUMMY_CLASS_NAME_BINARY +
                        " with modifiers \"" + Modifier.toString(field.getField().getAccessFlags()) + "\"";
 
-        Throwable actualException = exceptions.iterator().next();
-        assertEquals(IllegalAccessException.class, actualException.getClass());
+        VirtualException actualException = exceptions.iterator().next();
+        assertEquals(IllegalAccessException.class, actualException.getExceptionClass());
         assertEquals(error, actualException.getMessage());
     }
 
@@ -0,0 +1,49 @@
+package org.cf.smalivm.jfr;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.cf.smalivm.VMTester;
+import org.cf.smalivm.VirtualMachine;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VirtualMachineEventTest {
+
+    private static final String CLASS_NAME = "Lmethod_summary_test;";
+
+    @Test
+    public void executingMethodRecordsExecutionEvents() throws IOException {
+        VirtualMachine vm = VMTester.spawnVM();
+        Path recordingFile = Files.createTempFile("smalivm", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("org.cf.smalivm.MethodExecution");
+            recording.start();
+            VMTester.execute(vm, CLASS_NAME, "callAddOneTwice()I");
+            recording.stop();
+            recording.dump(recordingFile);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile).stream()
+                    .filter(e -> e.getString("signature").equals(CLASS_NAME + "->addOne(I)I"))
+                    .collect(Collectors.toList());
+
+            assertTrue(events.size() > 0);
+            RecordedEvent event = events.get(0);
+            assertEquals(1, event.getInt("callDepth"));
+            assertTrue(event.getInt("nodeCount") > 0);
+            assertEquals(VirtualMachineEvent.SUCCESS, event.getString("outcome"));
+        } finally {
+            Files.delete(recordingFile);
+        }
+    }
+
+}
@@ -2,6 +2,7 @@ package org.cf.smalivm.opcode;
 
 import org.cf.smalivm.VMState;
 import org.cf.smalivm.VMTester;
+import org.cf.smalivm.VirtualException;
 import org.cf.smalivm.context.ExecutionGraph;
 import org.cf.smalivm.context.ExecutionNode;
 import org.cf.smalivm.context.HeapItem;
@@ -260,10 +261,11 @@ public class APutOpTest {
         ExecutionGraph graph = VMTester.execute(CLASS_NAME, "putWithCatch()V", initial);
 
         ExecutionNode putNode = graph.getNodePile(0).get(0);
-        Set<Throwable> exceptions = putNode.getExceptions();
+        Set<VirtualException> exceptions = putNode.getExceptions();
         assertEquals(2, exceptions.size());
 
-        List<Class<?>> exceptionClasses = exceptions.stream().map(Throwable::getClass).collect(Collectors.toList());
+        List<Class<?>> exceptionClasses =
+                exceptions.stream().map(VirtualException::getExceptionClass).collect(Collectors.toList());
         assertTrue(exceptionClasses.contains(ArrayIndexOutOfBoundsException.class));
         assertTrue(exceptionClasses.contains(NullPointerException.class));
 
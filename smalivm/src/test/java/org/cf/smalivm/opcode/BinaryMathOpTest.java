@@ -8,6 +8,7 @@ import org.cf.smalivm.VMState;
 import org.cf.smalivm.VMTester;
 import org.cf.smalivm.VirtualMachine;
 import org.cf.smalivm.context.ExecutionNode;
+import org.cf.smalivm.context.HeapItem;
 import org.cf.smalivm.context.MethodState;
 import org.cf.smalivm.type.UnknownValue;
 import org.jf.dexlib2.Opcode;
@@ -877,7 +878,7 @@ public class BinaryMathOpTest {
             op = opFactory.create(location, addressToLocation, vm);
             op.execute(node, mState);
 
-            verify(mState, times(1)).assignRegister(eq(ARG1_REGISTER), eq(expected), eq("D"));
+            verify(mState, times(1)).assignRegister(eq(ARG1_REGISTER), eq(new HeapItem(expected, "D")));
         }
 
         @Test
@@ -892,7 +893,7 @@ public class BinaryMathOpTest {
             op = opFactory.create(location, addressToLocation, vm);
             op.execute(node, mState);
 
-            verify(mState, times(1)).assignRegister(eq(ARG1_REGISTER), eq(expected), eq("F"));
+            verify(mState, times(1)).assignRegister(eq(ARG1_REGISTER), eq(new HeapItem(expected, "F")));
         }
 
         @Test
@@ -906,7 +907,7 @@ public class BinaryMathOpTest {
             op = opFactory.create(location, addressToLocation, vm);
             op.execute(node, mState);
 
-            verify(mState, times(1)).assignRegister(eq(DEST_REGISTER), eq(expected), eq("I"));
+            verify(mState, times(1)).assignRegister(eq(DEST_REGISTER), eq(new HeapItem(expected, "I")));
         }
 
         @Test
@@ -961,7 +962,7 @@ public class BinaryMathOpTest {
             op = opFactory.create(location, addressToLocation, vm);
             op.execute(node, mState);
 
-            verify(mState, times(1)).assignRegister(eq(DEST_REGISTER), eq(expected), eq("J"));
+            verify(mState, times(1)).assignRegister(eq(DEST_REGISTER), eq(new HeapItem(expected, "J")));
             assertEquals("div-long r" + DEST_REGISTER + ", r" + ARG1_REGISTER + ", r" + ARG2_REGISTER, op.toString());
         }
 
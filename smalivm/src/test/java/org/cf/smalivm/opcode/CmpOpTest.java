@@ -23,6 +23,7 @@ import org.mockito.runners.MockitoJUnitRunner;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -362,10 +363,11 @@ public class CmpOpTest {
             mState = mock(MethodState.class);
             node = mock(ExecutionNode.class);
             setItem = ArgumentCaptor.forClass(HeapItem.class);
-            itemB = mock(HeapItem.class);
+            // Real accessors, so reading a stubbed value as a primitive works
+            itemB = mock(HeapItem.class, CALLS_REAL_METHODS);
             when(itemB.isUnknown()).thenReturn(false);
             when(mState.readRegister(REGISTER_B)).thenReturn(itemB);
-            itemC = mock(HeapItem.class);
+            itemC = mock(HeapItem.class, CALLS_REAL_METHODS);
             when(itemC.isUnknown()).thenReturn(false);
             when(mState.readRegister(REGISTER_C)).thenReturn(itemC);
 
@@ -362,6 +362,24 @@ public class InvokeOpTest {
             assertNull(consensus);
         }
 
+        @Test
+        public void invokeToStringResolvesTargetForEachReceiverType() {
+            VirtualMachine vm = VMTester.spawnVM();
+            String methodDescriptor = "invokeToString()V";
+
+            initial.setRegisters(0, 5, "Ljava/lang/Object;");
+            expected.setRegisters(MethodState.ResultRegister, "5", CommonTypes.STRING);
+            VMTester.testState(VMTester.execute(vm, CLASS_NAME, methodDescriptor, initial), expected);
+
+            initial.setRegisters(0, new StringBuilder("builder"), "Ljava/lang/Object;");
+            expected.setRegisters(MethodState.ResultRegister, "builder", CommonTypes.STRING);
+            VMTester.testState(VMTester.execute(vm, CLASS_NAME, methodDescriptor, initial), expected);
+
+            initial.setRegisters(0, 5, "Ljava/lang/Object;");
+            expected.setRegisters(MethodState.ResultRegister, "5", CommonTypes.STRING);
+            VMTester.testState(VMTester.execute(vm, CLASS_NAME, methodDescriptor, initial), expected);
+        }
+
         @Test
         public void invokeVirtualManyParametersThrowsNoExceptions() throws InstantiationException, IllegalAccessException, ClassNotFoundException {
             VirtualMachine vm = VMTester.spawnVM();
@@ -22,6 +22,7 @@ import org.mockito.runners.MockitoJUnitRunner;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -507,7 +508,8 @@ public class UnaryMathOpTest {
             vm = mock(VirtualMachine.class);
             mState = mock(MethodState.class);
             node = mock(ExecutionNode.class);
-            item = mock(HeapItem.class);
+            // Real accessors, so reading a stubbed value as a primitive works
+            item = mock(HeapItem.class, CALLS_REAL_METHODS);
             when(mState.readRegister(REGISTER_B)).thenReturn(item);
 
             location = mock(MethodLocation.class);
@@ -0,0 +1,68 @@
+package org.cf.util;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PersistentLongMapTest {
+
+    @Test
+    public void addingMappingLeavesOriginalUnchanged() {
+        PersistentLongMap<String> map1 = PersistentLongMap.<String>empty().plus(1L, "one");
+        PersistentLongMap<String> map2 = map1.plus(2L, "two").plus(1L, "uno");
+
+        assertEquals(1, map1.size());
+        assertEquals("one", map1.get(1L));
+        assertFalse(map1.containsKey(2L));
+
+        assertEquals(2, map2.size());
+        assertEquals("uno", map2.get(1L));
+        assertEquals("two", map2.get(2L));
+    }
+
+    @Test
+    public void addingIdenticalMappingReturnsSameMap() {
+        String value = "value";
+        PersistentLongMap<String> map = PersistentLongMap.<String>empty().plus(42L, value);
+
+        assertSame(map, map.plus(42L, value));
+    }
+
+    @Test
+    public void missingKeyReturnsNull() {
+        PersistentLongMap<String> map = PersistentLongMap.empty();
+
+        assertTrue(map.isEmpty());
+        assertNull(map.get(0L));
+    }
+
+    @Test
+    public void manyKeysAreAllRetrievableAndVisited() {
+        Random random = new Random(0);
+        Map<Long, Long> expected = new HashMap<>();
+        PersistentLongMap<Long> map = PersistentLongMap.empty();
+        for (int i = 0; i < 10000; i++) {
+            long key = i % 2 == 0 ? random.nextLong() : ((long) (i % 7) << 32) | i;
+            expected.put(key, (long) i);
+            map = map.plus(key, (long) i);
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+
+        Map<Long, Long> visited = new HashMap<>();
+        map.forEach(visited::put);
+        assertEquals(expected, visited);
+    }
+
+}